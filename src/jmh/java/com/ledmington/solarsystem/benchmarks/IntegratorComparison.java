@@ -0,0 +1,78 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.benchmarks;
+
+import com.ledmington.solarsystem.model.Scenario;
+import com.ledmington.solarsystem.model.SolarSystem;
+import com.ledmington.solarsystem.physics.DirectSumSolver;
+import com.ledmington.solarsystem.physics.IntegratorType;
+import com.ledmington.solarsystem.physics.Simulation;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Compares the wall time and the relative energy error of the integrators over 1000 years
+ * of the Sun and the planets of the {@link SolarSystem} (without moons).
+ * Run it with {@code ./gradlew compareIntegrators}.
+ */
+public final class IntegratorComparison {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("IntegratorComparison");
+    private static final double ONE_DAY = 86_400.0;
+    private static final double ONE_YEAR = 365.25 * ONE_DAY;
+    private static final int YEARS = 1_000;
+
+    private IntegratorComparison() {}
+
+    public static void main(final String[] args) {
+        run(IntegratorType.LEAPFROG, 0.5);
+        run(IntegratorType.LEAPFROG, 1.0);
+        run(IntegratorType.RK4, 1.0);
+        run(IntegratorType.WISDOM_HOLMAN, 1.0);
+        run(IntegratorType.WISDOM_HOLMAN, 4.0);
+        run(IntegratorType.WISDOM_HOLMAN, 8.0);
+        run(IntegratorType.GAUSS_RADAU, 30.0);
+    }
+
+    /**
+     * Integrates for 1000 years with the given step (in days), then logs the elapsed time
+     * and the maximum relative energy error, sampled at the step closest to the end of each year.
+     * The whole run is the number of steps closest to 1000 years, whatever the step.
+     */
+    private static void run(final IntegratorType type, final double days) {
+        final Simulation sim = new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), type.create());
+        final double dt = days * ONE_DAY;
+        final double initial = sim.totalEnergy();
+        final double startTime = sim.time();
+        double maxError = 0.0;
+
+        final long start = System.nanoTime();
+        long done = 0L;
+        for (int year = 1; year <= YEARS; year++) {
+            final long target = Math.round(year * ONE_YEAR / dt);
+            sim.step(dt, (int) (target - done));
+            done = target;
+            maxError = Math.max(maxError, Math.abs((sim.totalEnergy() - initial) / initial));
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final double finalError = Math.abs((sim.totalEnergy() - initial) / initial);
+
+        logger.info(
+                "%-14s | dt = %5.1f days | %,9d steps | %7.2f years | %8.3f s | final relative energy error %.3e | max %.3e",
+                type.getName(), days, sim.steps(), (sim.time() - startTime) / ONE_YEAR, seconds, finalError, maxError);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.benchmarks;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.physics.BarnesHutSolver;
+import com.ledmington.solarsystem.physics.DirectSumSolver;
+import com.ledmington.solarsystem.physics.ForceSolver;
+import com.ledmington.solarsystem.physics.ParallelForceSolver;
+import com.ledmington.solarsystem.physics.Vectorization;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Compares the error and the speed of the Barnes-Hut solver against the direct summation,
+ * for different numbers of bodies and opening angles, measures how the parallel
+ * direct summation scales with the number of threads and how much faster the SIMD kernel is.
+ * Run it with {@code ./gradlew compareSolvers}.
+ */
+public final class SolverComparison {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("SolverComparison");
+    private static final int[] SIZES = {1_000, 10_000, 50_000};
+    private static final double[] THETAS = {0.3, 0.5, 0.7, 1.0};
+    private static final int REPETITIONS = 3;
+    private static final int SCALING_SIZE = 20_000;
+    private static final int[] SIMD_SIZES = {500, 1_000, 2_000, 5_000};
+
+    private SolverComparison() {}
+
+    public static void main(final String[] args) {
+        for (final int n : SIZES) {
+            final BodyStore store = randomBelt(n, 42L);
+            final double[] exactX = new double[n];
+            final double[] exactY = new double[n];
+            final double[] exactZ = new double[n];
+            final double directMs = time(new DirectSumSolver(), store, exactX, exactY, exactZ, 1);
+
+            final double[] ax = new double[n];
+            final double[] ay = new double[n];
+            final double[] az = new double[n];
+            for (final double theta : THETAS) {
+                final double treeMs = time(new BarnesHutSolver(theta), store, ax, ay, az, REPETITIONS);
+
+                double sumSquaredError = 0.0;
+                double maxError = 0.0;
+                for (int i = 0; i < n; i++) {
+                    final double dx = ax[i] - exactX[i];
+                    final double dy = ay[i] - exactY[i];
+                    final double dz = az[i] - exactZ[i];
+                    final double norm =
+                            Math.sqrt(exactX[i] * exactX[i] + exactY[i] * exactY[i] + exactZ[i] * exactZ[i]);
+                    final double error = Math.sqrt(dx * dx + dy * dy + dz * dz) / norm;
+                    sumSquaredError += error * error;
+                    maxError = Math.max(maxError, error);
+                }
+
+                logger.info(
+                        "N = %,7d | theta = %.1f | direct %10.3f ms | barnes-hut %10.3f ms | speedup %7.2fx | rms relative error %.3e | max relative error %.3e",
+                        n, theta, directMs, treeMs, directMs / treeMs, Math.sqrt(sumSquaredError / n), maxError);
+            }
+        }
+
+        final BodyStore store = randomBelt(SCALING_SIZE, 42L);
+        final double[] ax = new double[SCALING_SIZE];
+        final double[] ay = new double[SCALING_SIZE];
+        final double[] az = new double[SCALING_SIZE];
+        final double serialMs = time(new DirectSumSolver(), store, ax, ay, az, REPETITIONS);
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            try (ParallelForceSolver solver = new ParallelForceSolver(threads)) {
+                final double parallelMs = time(solver, store, ax, ay, az, REPETITIONS);
+                logger.info(
+                        "N = %,7d | threads = %3d | parallel direct %10.3f ms | speedup %6.2fx | efficiency %5.1f %%",
+                        SCALING_SIZE,
+                        threads,
+                        parallelMs,
+                        serialMs / parallelMs,
+                        100.0 * serialMs / parallelMs / threads);
+            }
+            if (threads == cores) {
+                break;
+            }
+        }
+
+        if (!Vectorization.isAvailable()) {
+            logger.info("SIMD kernels not available, run with --add-modules jdk.incubator.vector");
+            return;
+        }
+        for (final int n : SIMD_SIZES) {
+            final BodyStore belt = randomBelt(n, 42L);
+            final double scalarMs = time(new DirectSumSolver(), belt, ax, ay, az, 10 * REPETITIONS);
+            final double simdMs = time(Vectorization.directSum(0.0), belt, ax, ay, az, 10 * REPETITIONS);
+            logger.info(
+                    "N = %,7d | scalar direct %10.3f ms | SIMD direct %10.3f ms | speedup %6.2fx",
+                    n, scalarMs, simdMs, scalarMs / simdMs);
+        }
+    }
+
+    /**
+     * Returns the average time of a call to the given solver (in ms), after a warmup call.
+     */
+    private static double time(
+            final ForceSolver solver,
+            final BodyStore store,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final int repetitions) {
+        final int n = store.size();
+        solver.computeAccelerations(n, store.x(), store.y(), store.z(), store.mass(), ax, ay, az);
+        final long start = System.nanoTime();
+        for (int r = 0; r < repetitions; r++) {
+            solver.computeAccelerations(n, store.x(), store.y(), store.z(), store.mass(), ax, ay, az);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / repetitions;
+    }
+
+    /**
+     * Creates a Sun-like body surrounded by n-1 random asteroids between 2 and 3.5 AU.
+     */
+    public static BodyStore randomBelt(final int n, final long seed) {
+        final Random rng = new Random(seed);
+        final BodyStore store = new BodyStore(n);
+        store.add(1.98847e30, 696_340_000, 0, 0, 0, 0, 0, 0);
+        for (int i = 1; i < n; i++) {
+            final double r = (2.0 + 1.5 * rng.nextDouble()) * Constants.oneAstronomicalUnit;
+            final double angle = 2.0 * Math.PI * rng.nextDouble();
+            final double height = 0.05 * Constants.oneAstronomicalUnit * rng.nextGaussian();
+            store.add(
+                    Math.pow(10.0, 15.0 + 5.0 * rng.nextDouble()),
+                    1_000.0,
+                    r * Math.cos(angle),
+                    r * Math.sin(angle),
+                    height,
+                    0,
+                    0,
+                    0);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Vector3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    private final Vector3 position = new Vector3(1.5e11f, 0.0f, 0.0f);
+    private final Vector3 speed = new Vector3(0.0f, 29_782.7f, 0.0f);
+
+    @Benchmark
+    public Body buildBody() {
+        return Body.builder()
+                .name("earth")
+                .radius(6_371_000)
+                .mass(5.9722e24)
+                .position(position)
+                .speed(speed)
+                .texture("earth.jpg")
+                .color(Color.BLUE)
+                .build();
+    }
+
+    @Benchmark
+    public List<Body> planets() {
+        return SolarSystem.planets();
+    }
+}
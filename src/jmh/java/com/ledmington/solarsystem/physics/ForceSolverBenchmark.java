@@ -0,0 +1,87 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ledmington.solarsystem.benchmarks.SolverComparison;
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a single evaluation of all the accelerations for each {@link ForceSolverType}.
+ * The direct summations at N = 100k take seconds per call, so few iterations are used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ForceSolverBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int n;
+
+    @Param({"direct", "simd-direct", "barnes-hut", "parallel-direct", "parallel-barnes-hut"})
+    private String solverName;
+
+    private BodyStore store;
+    private ForceSolver solver;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = SolverComparison.randomBelt(n, 42L);
+        solver = ForceSolverType.fromName(solverName).create();
+        ax = new double[n];
+        ay = new double[n];
+        az = new double[n];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (solver instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public void computeAccelerations(final Blackhole bh) {
+        solver.computeAccelerations(n, store.x(), store.y(), store.z(), store.mass(), ax, ay, az);
+        bh.consume(ax);
+        bh.consume(ay);
+        bh.consume(az);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ledmington.solarsystem.model.KeplerianOrbits;
+import com.ledmington.solarsystem.model.SmallBodyPopulation;
+import com.ledmington.solarsystem.model.SolarSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the placement of a whole main belt on its Keplerian orbits, as done once per frame,
+ * with the scalar and the SIMD Kepler solvers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeplerPropagatorBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int n;
+
+    @Param({"halley", "simd-halley"})
+    private String solverName;
+
+    private KeplerianOrbits orbits;
+    private KeplerPropagator propagator;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double time = 0.0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        orbits = new KeplerianOrbits(n);
+        SmallBodyPopulation.MAIN_BELT.generate(SolarSystem.store(), orbits, n, new Random(42L));
+        propagator = new KeplerPropagator(
+                "halley".equals(solverName) ? new HalleyKeplerSolver() : Vectorization.keplerSolver());
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+    }
+
+    @Benchmark
+    public void propagate(final Blackhole bh) {
+        // a day per call, so that the anomalies change as in an animation
+        time += 86_400.0;
+        propagator.propagate(orbits, time, x, y, z);
+        bh.consume(x);
+        bh.consume(y);
+        bh.consume(z);
+    }
+}
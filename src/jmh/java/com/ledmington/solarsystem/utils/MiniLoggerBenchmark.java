@@ -0,0 +1,78 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.utils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link MiniLogger}. The standard output is replaced by a stream discarding everything,
+ * so that the formatting is measured instead of the console.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MiniLoggerBenchmark {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("MiniLoggerBenchmark");
+
+    @Param({"DEBUG", "INFO"})
+    private MiniLogger.LoggingLevel level;
+
+    private final long value = 1_234_567_890L;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        MiniLogger.setMinimumLevel(level);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+        MiniLogger.setMinimumLevel(MiniLogger.LoggingLevel.DEBUG);
+    }
+
+    /**
+     * With level DEBUG the message is formatted and printed, with level INFO it is discarded.
+     */
+    @Benchmark
+    public void debug() {
+        logger.debug("Step %,d took %.3f ms", value, 1.5);
+    }
+}
@@ -23,9 +23,9 @@ import java.util.List;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.utils.Disposable;
+import com.ledmington.solarsystem.render.CountingModelBatch;
 import com.ledmington.solarsystem.utils.MiniLogger;
 
 /**
@@ -36,7 +36,7 @@ import com.ledmington.solarsystem.utils.MiniLogger;
  *  - each AbstractScreen instance has an AssetManager called "assetManager"
  *    which gets disposed automatically
  *  - each AbstractScreen instance has a MiniLogger called "logger"
- *  - each AbstractScreen instance has a ModelBatch called "modelBatch"
+ *  - each AbstractScreen instance has a ModelBatch called "modelBatch", which counts its flushes
  *  - each AbstractScreen instance has a SpriteBatch called "spriteBatch"
  *  - each AbstractScreen instance has a ShapeRenderer called "shapeRenderer"
  *  - each AbstractScreen instance has a BitmapFont called "font"
@@ -45,7 +45,7 @@ public abstract class AbstractScreen implements Screen {
 
     protected final AssetManager assetManager = new AssetManager();
     protected final MiniLogger logger;
-    protected final ModelBatch modelBatch = new ModelBatch();
+    protected final CountingModelBatch modelBatch = new CountingModelBatch();
     protected final SpriteBatch spriteBatch = new SpriteBatch();
     protected final ShapeRenderer shapeRenderer = new ShapeRenderer();
     private final List<Disposable> disposableAssets = new LinkedList<>();
@@ -18,6 +18,7 @@
 package com.ledmington.solarsystem;
 
 import java.io.File;
+import java.util.Locale;
 
 public final class Constants {
     private Constants() {}
@@ -45,6 +46,34 @@ public final class Constants {
     public static final String MODELS_FOLDER = "models";
     public static final String DATA_FOLDER = "data";
 
+    /**
+     * The directory where the files generated at runtime are kept between two starts: the value of the
+     * {@code cache.dir} property if given, otherwise the cache directory of the user on this platform.
+     */
+    public static final String CACHE_DIR =
+            System.getProperties().containsKey("cache.dir") ? System.getProperty("cache.dir") : userCacheDir();
+
+    private static String userCacheDir() {
+        final String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        final String home = System.getProperty("user.home");
+        if (os.startsWith("windows")) {
+            final String local = System.getenv("LOCALAPPDATA");
+            return String.join(
+                    File.separator,
+                    local != null ? local : String.join(File.separator, home, "AppData", "Local"),
+                    "solarsystem",
+                    "cache");
+        }
+        if (os.startsWith("mac")) {
+            return String.join(File.separator, home, "Library", "Caches", "solarsystem");
+        }
+        final String xdg = System.getenv("XDG_CACHE_HOME");
+        return String.join(
+                File.separator,
+                xdg != null && !xdg.isEmpty() ? xdg : String.join(File.separator, home, ".cache"),
+                "solarsystem");
+    }
+
     /**
      * The interval between two frames when rendering at 60 FPS (in ms).
      */
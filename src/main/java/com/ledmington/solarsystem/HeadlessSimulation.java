@@ -0,0 +1,531 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.CatalogLoader;
+import com.ledmington.solarsystem.model.ParticleStore;
+import com.ledmington.solarsystem.model.Scenario;
+import com.ledmington.solarsystem.model.SmallBodyPopulation;
+import com.ledmington.solarsystem.physics.Checkpoint;
+import com.ledmington.solarsystem.physics.Ephemeris;
+import com.ledmington.solarsystem.physics.EphemerisBuilder;
+import com.ledmington.solarsystem.physics.ForceSolver;
+import com.ledmington.solarsystem.physics.ForceSolverType;
+import com.ledmington.solarsystem.physics.IntegratorType;
+import com.ledmington.solarsystem.physics.ParticleIntegrator;
+import com.ledmington.solarsystem.physics.Simulation;
+import com.ledmington.solarsystem.physics.TrajectoryRecorder;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Runs a simulation as fast as possible, without any window or GL context, then writes the final state
+ * of all the bodies as CSV, preceded by the timing statistics as comment lines.
+ * <p>
+ * It is selected by passing {@code --headless} to the {@link Launcher}, together with:
+ * <ul>
+ * <li>{@code --steps N} or {@code --duration SECONDS}, the length of the run (exactly one of them)</li>
+ * <li>{@code --dt SECONDS}, the timestep (default 3600)</li>
+ * <li>{@code --scenario NAME}, the initial conditions (default solar-system)</li>
+ * <li>{@code --integrator NAME} (default leapfrog)</li>
+ * <li>{@code --solver NAME} (default direct)</li>
+ * <li>{@code --particles NAME:COUNT[,NAME:COUNT...]}, the test particles to add (default none)</li>
+ * <li>{@code --seed N}, the seed used to generate the particles (default 42)</li>
+ * <li>{@code --catalog FILE[,FILE...]}, CSV catalogs of bodies or test particles to add, loaded in order
+ * with the {@link CatalogLoader} (default none)</li>
+ * <li>{@code --resume FILE}, a {@link Checkpoint} to continue from, instead of the scenario, the catalogs
+ * and the particles (default none)</li>
+ * <li>{@code --checkpoint FILE}, where to save a {@link Checkpoint} at the end of the run (default none)</li>
+ * <li>{@code --checkpoint-every N}, to also save it every N steps (default only at the end)</li>
+ * <li>{@code --record FILE}, where to record the trajectories with a {@link TrajectoryRecorder} (default none)</li>
+ * <li>{@code --record-every N}, the number of steps between two recorded samples (default 1)</li>
+ * <li>{@code --ephemeris FILE}, where to write an {@link Ephemeris} of the bodies fitted on the run (default none)</li>
+ * <li>{@code --ephemeris-granule SECONDS}, the length of each piece of the ephemeris, which should be a multiple
+ * of the timestep (default 691200, eight days)</li>
+ * <li>{@code --output FILE}, where to write the final state (default the standard output)</li>
+ * </ul>
+ */
+public final class HeadlessSimulation {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("HeadlessSimulation");
+
+    /**
+     * The number of progress messages logged during a run.
+     */
+    private static final int PROGRESS_REPORTS = 10;
+
+    private final Scenario scenario;
+    private final IntegratorType integrator;
+    private final ForceSolverType solver;
+    private final double dt;
+    private final long steps;
+    private final double lastDt;
+    private final Map<SmallBodyPopulation, Integer> particles;
+    private final long seed;
+    private final List<Path> catalogs;
+    private final Path resume;
+    private final Path checkpoint;
+    private final long checkpointEvery;
+    private final Path recording;
+    private final int recordEvery;
+    private final Path ephemeris;
+    private final double ephemerisGranule;
+    private final Path output;
+
+    private HeadlessSimulation(
+            final Scenario scenario,
+            final IntegratorType integrator,
+            final ForceSolverType solver,
+            final double dt,
+            final long steps,
+            final double lastDt,
+            final Map<SmallBodyPopulation, Integer> particles,
+            final long seed,
+            final List<Path> catalogs,
+            final Path resume,
+            final Path checkpoint,
+            final long checkpointEvery,
+            final Path recording,
+            final int recordEvery,
+            final Path ephemeris,
+            final double ephemerisGranule,
+            final Path output) {
+        this.scenario = Objects.requireNonNull(scenario);
+        this.integrator = Objects.requireNonNull(integrator);
+        this.solver = Objects.requireNonNull(solver);
+        this.dt = dt;
+        this.steps = steps;
+        this.lastDt = lastDt;
+        this.particles = Objects.requireNonNull(particles);
+        this.seed = seed;
+        this.catalogs = List.copyOf(catalogs);
+        this.resume = resume;
+        this.checkpoint = checkpoint;
+        this.checkpointEvery = checkpointEvery;
+        this.recording = recording;
+        this.recordEvery = recordEvery;
+        this.ephemeris = ephemeris;
+        this.ephemerisGranule = ephemerisGranule;
+        this.output = output;
+    }
+
+    /**
+     * Checks whether the given command line arguments ask for a headless run.
+     *
+     * @param args
+     *      The command line arguments.
+     * @return
+     *      True if {@code --headless} is among them, false otherwise.
+     */
+    public static boolean isRequested(final String[] args) {
+        for (final String arg : args) {
+            if ("--headless".equals(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the given command line arguments.
+     *
+     * @param args
+     *      The command line arguments, including {@code --headless}.
+     * @return
+     *      A HeadlessSimulation ready to be run.
+     * @throws IllegalArgumentException
+     *      If the arguments are invalid.
+     */
+    public static HeadlessSimulation fromArgs(final String[] args) {
+        Scenario scenario = Scenario.SOLAR_SYSTEM;
+        IntegratorType integrator = IntegratorType.LEAPFROG;
+        ForceSolverType solver = ForceSolverType.DIRECT;
+        double dt = 3_600.0;
+        long steps = -1L;
+        double duration = -1.0;
+        final Map<SmallBodyPopulation, Integer> particles = new EnumMap<>(SmallBodyPopulation.class);
+        long seed = 42L;
+        final List<Path> catalogs = new ArrayList<>();
+        Path resume = null;
+        Path checkpoint = null;
+        long checkpointEvery = 0L;
+        Path recording = null;
+        long recordEvery = 1L;
+        Path ephemeris = null;
+        double ephemerisGranule = -1.0;
+        Path output = null;
+        boolean hasScenario = false;
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--headless".equals(arg)) {
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(String.format("Missing value for '%s'", arg));
+            }
+            final String value = args[++i];
+            switch (arg) {
+                case "--scenario" -> {
+                    scenario = Scenario.fromName(value);
+                    hasScenario = true;
+                }
+                case "--integrator" -> integrator = IntegratorType.fromName(value);
+                case "--solver" -> solver = ForceSolverType.fromName(value);
+                case "--dt" -> dt = parseDouble(arg, value);
+                case "--steps" -> steps = parseLong(arg, value);
+                case "--duration" -> duration = parseDouble(arg, value);
+                case "--particles" -> parseParticles(value, particles);
+                case "--seed" -> seed = parseLong(arg, value);
+                case "--catalog" -> {
+                    for (final String c : value.split(",")) {
+                        catalogs.add(Path.of(c));
+                    }
+                }
+                case "--resume" -> resume = Path.of(value);
+                case "--checkpoint" -> checkpoint = Path.of(value);
+                case "--checkpoint-every" -> checkpointEvery = parseLong(arg, value);
+                case "--record" -> recording = Path.of(value);
+                case "--record-every" -> recordEvery = parseLong(arg, value);
+                case "--ephemeris" -> ephemeris = Path.of(value);
+                case "--ephemeris-granule" -> ephemerisGranule = parseDouble(arg, value);
+                case "--output" -> output = Path.of(value);
+                default -> throw new IllegalArgumentException(String.format("Unknown argument '%s'", arg));
+            }
+        }
+
+        if (!(dt > 0.0) || !Double.isFinite(dt)) {
+            throw new IllegalArgumentException(String.format("Invalid timestep %f", dt));
+        }
+        if ((steps < 0L) == (duration < 0.0)) {
+            throw new IllegalArgumentException("Exactly one of --steps and --duration must be given");
+        }
+        if (resume != null && (hasScenario || !catalogs.isEmpty() || !particles.isEmpty())) {
+            throw new IllegalArgumentException("--resume cannot be combined with --scenario, --catalog or --particles");
+        }
+        if (checkpointEvery > 0L && checkpoint == null) {
+            throw new IllegalArgumentException("--checkpoint-every needs --checkpoint");
+        }
+        if (recordEvery < 1L || recordEvery > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Invalid value %d for '--record-every'", recordEvery));
+        }
+        if (ephemerisGranule >= 0.0 && ephemeris == null) {
+            throw new IllegalArgumentException("--ephemeris-granule needs --ephemeris");
+        }
+        // the granule only matters when an ephemeris is written, so it cannot limit the timestep otherwise
+        if (ephemeris != null) {
+            if (ephemerisGranule < 0.0) {
+                ephemerisGranule = EphemerisBuilder.DEFAULT_GRANULE_LENGTH;
+            }
+            if (!(ephemerisGranule >= dt) || !Double.isFinite(ephemerisGranule)) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid granule %f, it must be at least the timestep", ephemerisGranule));
+            }
+        }
+        double lastDt = dt;
+        if (duration >= 0.0) {
+            if (!Double.isFinite(duration)) {
+                throw new IllegalArgumentException(String.format("Invalid duration %f", duration));
+            }
+            // the last step is shortened so that the run ends exactly at the given time
+            steps = (long) Math.floor(duration / dt);
+            final double remainder = duration - steps * dt;
+            if (remainder > 0.0) {
+                steps++;
+                lastDt = remainder;
+            }
+        }
+        return new HeadlessSimulation(
+                scenario,
+                integrator,
+                solver,
+                dt,
+                steps,
+                lastDt,
+                particles,
+                seed,
+                catalogs,
+                resume,
+                checkpoint,
+                checkpointEvery,
+                recording,
+                (int) recordEvery,
+                ephemeris,
+                ephemerisGranule,
+                output);
+    }
+
+    private static void parseParticles(final String value, final Map<SmallBodyPopulation, Integer> particles) {
+        for (final String entry : value.split(",")) {
+            final String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(String.format("Invalid particles '%s'", entry));
+            }
+            final long count = parseLong("--particles", parts[1]);
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("Too many particles '%s'", entry));
+            }
+            particles.merge(SmallBodyPopulation.fromName(parts[0]), (int) count, Integer::sum);
+        }
+    }
+
+    private static double parseDouble(final String arg, final String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for '%s'", value, arg), e);
+        }
+    }
+
+    private static long parseLong(final String arg, final String value) {
+        try {
+            final long result = Long.parseLong(value);
+            if (result < 0L) {
+                throw new IllegalArgumentException(String.format("Invalid value '%s' for '%s'", value, arg));
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for '%s'", value, arg), e);
+        }
+    }
+
+    /**
+     * @return
+     *      The number of steps of the run, including the last one.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * @return
+     *      The total simulated time of the run (in s).
+     */
+    public double duration() {
+        return steps == 0L ? 0.0 : (steps - 1) * dt + lastDt;
+    }
+
+    /**
+     * Runs the whole simulation and writes the final state.
+     *
+     * @return
+     *      The final state of the simulation.
+     */
+    public Simulation run() {
+        final ForceSolver forceSolver = solver.create();
+        final ParticleIntegrator particleIntegrator;
+        final Simulation sim;
+        if (resume != null) {
+            final Checkpoint saved = read(resume);
+            sim = new Simulation(saved.bodies(), forceSolver, integrator.create());
+            particleIntegrator = saved.particles() == null ? null : newParticleIntegrator();
+            if (particleIntegrator != null) {
+                sim.setParticles(saved.particles(), particleIntegrator);
+            }
+            sim.resumeAt(saved.time(), saved.steps());
+        } else {
+            final BodyStore bodies = scenario.create();
+            final ParticleStore store = new ParticleStore();
+            for (final Path catalog : catalogs) {
+                try {
+                    CatalogLoader.load(catalog, bodies, store);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            sim = new Simulation(bodies, forceSolver, integrator.create());
+            if (!particles.isEmpty() || store.size() > 0) {
+                final Random rng = new Random(seed);
+                for (final Map.Entry<SmallBodyPopulation, Integer> e : particles.entrySet()) {
+                    e.getKey().generate(sim.store(), store, e.getValue(), rng);
+                }
+                particleIntegrator = newParticleIntegrator();
+                sim.setParticles(store, particleIntegrator);
+            } else {
+                particleIntegrator = null;
+            }
+        }
+        final int particleCount = sim.particles() == null ? 0 : sim.particles().size();
+        logger.info(
+                "Running %s with %,d bodies and %,d test particles, %s and %s: %,d steps of %.3f s",
+                source(), sim.store().size(), particleCount, integrator.getName(), solver.getName(), steps, dt);
+
+        final double initialEnergy = sim.totalEnergy();
+        final long reportEvery = Math.max(1L, steps / PROGRESS_REPORTS);
+        final TrajectoryRecorder recorder =
+                recording == null ? null : new TrajectoryRecorder(recording, sim, recordEvery);
+        sim.setRecorder(recorder);
+        final EphemerisBuilder builder =
+                ephemeris == null ? null : new EphemerisBuilder(ephemerisGranule, EphemerisBuilder.DEFAULT_DEGREE);
+        if (builder != null) {
+            builder.add(sim);
+        }
+        final long start = System.nanoTime();
+        try {
+            for (long s = 0L; s < steps; s++) {
+                sim.step(s == steps - 1 ? lastDt : dt);
+                if (builder != null) {
+                    builder.add(sim);
+                }
+                if ((s + 1) % reportEvery == 0 && s + 1 < steps) {
+                    logger.debug("%,d / %,d steps", s + 1, steps);
+                }
+                if (checkpointEvery > 0L && (s + 1) % checkpointEvery == 0 && s + 1 < steps) {
+                    save(sim);
+                }
+            }
+            if (checkpoint != null) {
+                save(sim);
+            }
+            if (builder != null && steps > 0L) {
+                writeEphemeris(builder.build());
+            }
+        } finally {
+            if (recorder != null) {
+                close(recorder);
+            }
+            if (forceSolver instanceof AutoCloseable closeable) {
+                close(closeable);
+            }
+            if (particleIntegrator != null) {
+                particleIntegrator.close();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final double finalEnergy = sim.totalEnergy();
+        final double energyError = initialEnergy == 0.0 ? 0.0 : Math.abs((finalEnergy - initialEnergy) / initialEnergy);
+
+        final String[] statistics = {
+            String.format("scenario: %s", source()),
+            String.format("integrator: %s", integrator.getName()),
+            String.format("solver: %s", solver.getName()),
+            String.format("bodies: %d", sim.store().size()),
+            String.format("test particles: %d", particleCount),
+            String.format("steps: %d", sim.steps()),
+            String.format("simulated time: %.3f s", sim.time()),
+            String.format("wall time: %.3f s", seconds),
+            String.format("steps per second: %.1f", steps / seconds),
+            String.format("simulated seconds per second: %.1f", duration() / seconds),
+            String.format("relative energy error: %.3e", energyError)
+        };
+        for (final String line : statistics) {
+            logger.info("%s", line);
+        }
+
+        try {
+            write(sim.store(), statistics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sim;
+    }
+
+    private String source() {
+        return resume == null ? scenario.getName() : String.format("checkpoint '%s'", resume);
+    }
+
+    private static ParticleIntegrator newParticleIntegrator() {
+        return new ParticleIntegrator(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static Checkpoint read(final Path file) {
+        try {
+            return Checkpoint.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void save(final Simulation sim) {
+        try {
+            Checkpoint.write(sim, checkpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.debug("Checkpoint written to '%s' at step %,d", checkpoint, sim.steps());
+    }
+
+    private void writeEphemeris(final Ephemeris built) {
+        try {
+            built.write(ephemeris);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        logger.info(
+                "Ephemeris of %d bodies written to '%s': %,d granules of %.0f s",
+                built.bodies(), ephemeris, built.granules(), built.granuleLength());
+    }
+
+    private static void close(final AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.error(e);
+        }
+    }
+
+    private void write(final BodyStore store, final String[] statistics) throws IOException {
+        final PrintWriter pw = output == null
+                ? new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)))
+                : new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8));
+        try {
+            for (final String line : statistics) {
+                pw.printf("# %s%n", line);
+            }
+            pw.println("id,mass,radius,x,y,z,vx,vy,vz");
+            for (int i = 0; i < store.size(); i++) {
+                pw.printf(
+                        "%d,%s,%s,%s,%s,%s,%s,%s,%s%n",
+                        i,
+                        store.mass()[i],
+                        store.radius()[i],
+                        store.x()[i],
+                        store.y()[i],
+                        store.z()[i],
+                        store.vx()[i],
+                        store.vy()[i],
+                        store.vz()[i]);
+            }
+        } finally {
+            if (output == null) {
+                // do not close the standard output
+                pw.flush();
+            } else {
+                pw.close();
+            }
+        }
+        if (output != null) {
+            logger.info("Final state written to '%s'", output);
+        }
+    }
+}
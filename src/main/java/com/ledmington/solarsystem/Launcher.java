@@ -18,22 +18,50 @@
 package com.ledmington.solarsystem;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import com.badlogic.gdx.Files.FileType;
 import com.badlogic.gdx.Game;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
+import com.ledmington.solarsystem.model.SolarSystem;
 import com.ledmington.solarsystem.utils.MiniLogger;
+import com.ledmington.solarsystem.utils.StartupTimer;
+import com.ledmington.solarsystem.utils.language.Dictionary;
 
 public final class Launcher extends Game {
 
     private static final MiniLogger logger = MiniLogger.getLogger("Launcher");
 
-    private Launcher() {}
+    private final Path checkpoint;
+    private final Path replay;
+
+    private Launcher(final Path checkpoint, final Path replay) {
+        this.checkpoint = checkpoint;
+        this.replay = replay;
+    }
 
     public static void main(final String[] args) {
-        if (args.length > 0) {
-            logger.info("No command line arguments needed. Ignoring them.");
+        StartupTimer.start();
+        if (HeadlessSimulation.isRequested(args)) {
+            try {
+                HeadlessSimulation.fromArgs(args).run();
+            } catch (IllegalArgumentException e) {
+                logger.error("%s", e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        Path resume = null;
+        Path replay = null;
+        if (args.length == 2 && "--resume".equals(args[0])) {
+            resume = Paths.get(args[1]);
+        } else if (args.length == 2 && "--replay".equals(args[0])) {
+            replay = Paths.get(args[1]);
+        } else if (args.length > 0) {
+            logger.info(
+                    "Only '--resume FILE' or '--replay FILE' are accepted outside of headless mode. Ignoring the arguments.");
         }
 
         final Lwjgl3ApplicationConfiguration config = new Lwjgl3ApplicationConfiguration();
@@ -47,8 +75,9 @@ public final class Launcher extends Game {
         config.setWindowSizeLimits(1280, 720, -1, -1);
         config.setWindowIcon(FileType.Internal, Constants.IMAGES_FOLDER + File.separator + "icon.png");
 
+        StartupTimer.mark("configuration");
         try {
-            new Lwjgl3Application(new Launcher(), config);
+            new Lwjgl3Application(new Launcher(resume, replay), config);
         } catch (Throwable t) {
             logger.error(t);
         }
@@ -56,6 +85,22 @@ public final class Launcher extends Game {
 
     @Override
     public void create() {
-        this.setScreen(new MainScreen());
+        StartupTimer.mark("window");
+        // both are needed by the main screen right away, they are only initialized first to be measured apart
+        SolarSystem.store();
+        StartupTimer.mark("solar system");
+        Dictionary.getInstance();
+        StartupTimer.mark("dictionary");
+        this.setScreen(new MainScreen(checkpoint, replay));
+        StartupTimer.mark("main screen");
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        // Game only hides the current screen, which would keep its threads running after the window is closed
+        if (screen != null) {
+            screen.dispose();
+        }
     }
 }
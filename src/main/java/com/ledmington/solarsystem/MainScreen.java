@@ -18,41 +18,56 @@
 package com.ledmington.solarsystem;
 
 import java.io.File;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.function.Function;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.InputProcessor;
-import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.assets.loaders.TextureLoader.TextureParameter;
+import com.badlogic.gdx.assets.loaders.resolvers.AbsoluteFileHandleResolver;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g3d.Environment;
-import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
 import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
 import com.badlogic.gdx.graphics.g3d.environment.DirectionalLight;
-import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
+import com.ledmington.solarsystem.assets.MappedKtxTextureLoader;
+import com.ledmington.solarsystem.assets.TextureCache;
 import com.ledmington.solarsystem.model.Body;
 import com.ledmington.solarsystem.model.SolarSystem;
+import com.ledmington.solarsystem.physics.Checkpoint;
+import com.ledmington.solarsystem.physics.DirectSumSolver;
+import com.ledmington.solarsystem.physics.HierarchicalIntegrator;
+import com.ledmington.solarsystem.physics.Playback;
+import com.ledmington.solarsystem.physics.Simulation;
+import com.ledmington.solarsystem.physics.SimulationThread;
+import com.ledmington.solarsystem.physics.Snapshot;
+import com.ledmington.solarsystem.physics.TrajectoryRecorder;
+import com.ledmington.solarsystem.render.BodyRenderCache;
+import com.ledmington.solarsystem.render.FrameStats;
+import com.ledmington.solarsystem.render.RenderScene;
+import com.ledmington.solarsystem.render.SphereLod;
 import com.ledmington.solarsystem.utils.FormatUtils;
 import com.ledmington.solarsystem.utils.MiniLogger;
+import com.ledmington.solarsystem.utils.StartupTimer;
 
 public final class MainScreen extends AbstractScreen implements InputProcessor {
 
@@ -60,6 +75,62 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
     private static final float VIEWPORT_HEIGHT = (float) Constants.TARGET_RESOLUTION_HEIGHT * 0.2f;
     private static final MiniLogger logger = MiniLogger.getLogger("MainScreen");
 
+    /**
+     * The fixed timestep of the simulation (in s).
+     */
+    private static final double SIMULATION_DT = 3_600.0;
+
+    /**
+     * The default speed of the simulation: one day per second.
+     */
+    private static final double SIMULATION_TIME_SCALE = 86_400.0;
+
+    /**
+     * The distance (in pixels) within which the mouse picks a body, however small it looks.
+     */
+    private static final float PICK_TOLERANCE_PIXELS = 10.0f;
+
+    /**
+     * When not negative, the number of frames after which the application exits, once the assets are loaded.
+     * Used by the training run which generates the AppCDS archive.
+     */
+    private static final int EXIT_AFTER_FRAMES = Integer.getInteger("solarsystem.exitAfterFrames", -1);
+
+    /**
+     * The file written with F5 and read back with F9, when no other checkpoint was given at launch.
+     */
+    private static final Path DEFAULT_CHECKPOINT = Paths.get("solarsystem.ssck");
+
+    /**
+     * The file where F6 records the trajectories.
+     */
+    private static final Path RECORDING = Paths.get("solarsystem.sstr");
+
+    /**
+     * The longest time to wait for the recording to be written when closing (in ms).
+     */
+    private static final long RECORDING_WRITE_TIMEOUT = 10_000L;
+
+    /**
+     * How far the replay jumps with the bracket keys: thirty days (in s).
+     */
+    private static final double REPLAY_JUMP = 30.0 * 86_400.0;
+
+    /**
+     * The bodies drawn in the minimap, besides the Sun.
+     */
+    private static final Body[] MINIMAP_BODIES = {
+        SolarSystem.MERCURY,
+        SolarSystem.VENUS,
+        SolarSystem.EARTH,
+        SolarSystem.MARS,
+        SolarSystem.JUPITER,
+        SolarSystem.SATURN,
+        SolarSystem.URANUS,
+        SolarSystem.NEPTUNE,
+        SolarSystem.PLUTO
+    };
+
     private final PerspectiveCamera camera;
     private final float initialCameraSpeed = 0.1f;
     private float cameraSpeed = initialCameraSpeed;
@@ -67,7 +138,6 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
     private final float maxFOV = 80.0f; // maximum field of view in degrees
 
     private final Viewport viewport;
-    private final Map<Body, ModelInstance> bodiesToModels = new HashMap<>();
     private final Environment environment;
     private boolean loading;
     private final String skyBoxFileName = Constants.MODELS_FOLDER + File.separator + "skybox.obj";
@@ -77,9 +147,161 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
     private float mouseX;
     private float mouseY;
     private boolean isTouched = false;
+    private final SimulationThread simulation;
+    private final Path checkpoint;
+    private boolean recording = false;
+
+    /**
+     * The last recording stopped, whose file may still be being written. Set by the simulation thread.
+     */
+    private volatile TrajectoryRecorder finishedRecorder = null;
+
+    /**
+     * The recording or the ephemeris played back instead of running the simulation, or null.
+     */
+    private final Playback replay;
+
+    private double replayTime;
+    private double replaySpeed = SIMULATION_TIME_SCALE;
+    private boolean replayPaused = false;
+
+    /**
+     * The per-frame work which does not need a GL context: the moons are placed analytically on their orbits
+     * around the rendered planets, unless K switches to the integrated ones.
+     */
+    private final RenderScene scene;
+
+    /**
+     * The scaled positions, radii, screen positions and names of the rendered bodies, indexed like the models.
+     */
+    private final BodyRenderCache bodies;
+
+    /**
+     * The model of each rendered body.
+     */
+    private final ModelInstance[] models;
+
+    /**
+     * The displayed radius of each rendered body, which scales the shared unit spheres.
+     */
+    private final float[] boundingRadius;
+
+    /**
+     * The file of the texture of each rendered body, either converted by the {@link TextureCache} or the
+     * original one, or null if the body has no texture.
+     */
+    private final String[] textures;
+
+    private final SphereLod spheres;
+
+    /**
+     * The tessellation level currently used by each model.
+     */
+    private final int[] levels;
+
+    /**
+     * The color of each rendered body when it is too small to be drawn as a sphere.
+     */
+    private final Color[] pointColors;
+
+    private final int[] points;
+
+    // scratch objects reused at every frame, so that rendering does not allocate
+    private final StringBuilder text = new StringBuilder(64);
+    private final Vector3 movement = new Vector3();
+    private final Vector3 leftSide = new Vector3();
+    private final Vector3 rightSide = new Vector3();
+    private float minimapXPosition;
+    private float minimapYPosition;
+    private float minimapSize;
+
+    private final FrameStats frameStats = new FrameStats();
+    private final GLProfiler profiler = new GLProfiler(Gdx.graphics);
+    private boolean showFrameStats = false;
+    private boolean firstFrameRendered = false;
+    private long loadingStart;
+    private int framesSinceLoading = 0;
 
-    public MainScreen() {
+    /**
+     * Creates the main screen.
+     *
+     * @param resume
+     *      The checkpoint to resume from, or null to start from the initial conditions.
+     *      It is also the file where F5 saves and F9 restores.
+     * @param replayFile
+     *      The recording or the ephemeris to play back instead of running the simulation, or null.
+     */
+    public MainScreen(final Path resume, final Path replayFile) {
         super("MainScreen");
+        this.checkpoint = resume == null ? DEFAULT_CHECKPOINT : resume;
+        if (replayFile != null) {
+            try {
+                this.replay = Playback.open(replayFile);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            toBeDisposed((Disposable) () -> {
+                try {
+                    replay.close();
+                } catch (final IOException e) {
+                    logger.error(e);
+                }
+            });
+            replayTime = replay.startTime();
+            logger.info(
+                    "Replaying '%s', %,.1f days long", replayFile, (replay.endTime() - replay.startTime()) / 86_400.0);
+        } else {
+            this.replay = null;
+        }
+
+        // the simulation works on its own copy of the initial conditions
+        simulation = new SimulationThread(
+                new Simulation(
+                        SolarSystem.store().copy(),
+                        new DirectSumSolver(),
+                        new HierarchicalIntegrator(
+                                SolarSystem.hierarchy(), HierarchicalIntegrator.DEFAULT_STEPS_PER_ORBIT)),
+                SIMULATION_DT);
+        simulation.setTimeScale(SIMULATION_TIME_SCALE);
+        // queued before closing the simulation thread, which runs it after stopping
+        toBeDisposed((Disposable) () -> {
+            if (recording) {
+                toggleRecording();
+            }
+        });
+        toBeDisposed((Disposable) simulation::close);
+        // the writer thread of the recording is a daemon, so the file is completed before exiting
+        toBeDisposed((Disposable) () -> {
+            final TrajectoryRecorder recorder = finishedRecorder;
+            if (recorder != null && !recorder.awaitWritten(RECORDING_WRITE_TIMEOUT)) {
+                logger.warning("The recording '%s' was not completed in time", RECORDING);
+            }
+        });
+        if (resume != null) {
+            restoreCheckpoint();
+        }
+        scene = new RenderScene(
+                SolarSystem.planets().toArray(new Body[0]),
+                SolarSystem.moons().stream().mapToInt(Body::id).toArray(),
+                SolarSystem.moonOrbits());
+        bodies = scene.bodies();
+        boundingRadius = scene.boundingRadius();
+        final int n = bodies.size();
+        if (replay != null) {
+            for (int k = 0; k < n; k++) {
+                if (bodies.body(k).id() >= replay.bodies()) {
+                    throw new IllegalArgumentException(String.format(
+                            "'%s' has %d bodies, which do not include %s",
+                            replayFile, replay.bodies(), bodies.body(k).name().orElseThrow()));
+                }
+            }
+        }
+        models = new ModelInstance[n];
+        textures = new String[n];
+        levels = new int[n];
+        pointColors = new Color[n];
+        points = new int[n];
+
         environment = new Environment();
         environment.set(new ColorAttribute(ColorAttribute.AmbientLight, 0.4f, 0.4f, 0.4f, 1f));
         environment.add(new DirectionalLight().set(0.8f, 0.8f, 0.8f, -1f, -0.8f, -0.2f));
@@ -95,52 +317,126 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
 
         Gdx.input.setInputProcessor(this);
 
-        // creating and adding the models
-        for (final Body b : SolarSystem.planets()) {
-            Material material;
+        // the converted textures are mapped from the local file system, the others are decoded as usual
+        assetManager.setLoader(
+                Texture.class, TextureCache.EXTENSION, new MappedKtxTextureLoader(new AbsoluteFileHandleResolver()));
+        // the textures converted at build time are shipped, the missing ones are converted in the cache of the user
+        final TextureCache textureCache = toBeDisposed(new TextureCache(
+                Paths.get(Constants.RESOURCES_DIR, Constants.MODELS_FOLDER, "ktx"),
+                Paths.get(Constants.CACHE_DIR, "textures")));
+        final TextureParameter fallbackParameter = new TextureParameter();
+        fallbackParameter.genMipMaps = true;
+        fallbackParameter.minFilter = TextureFilter.MipMapLinearLinear;
+        fallbackParameter.magFilter = TextureFilter.Linear;
+
+        // creating the instances of the shared spheres
+        spheres = toBeDisposed(new SphereLod());
+        for (int k = 0; k < n; k++) {
+            final Body b = bodies.body(k);
+            models[k] = spheres.newInstance();
+            models[k].transform.setToTranslationAndScaling(
+                    bodies.x()[k],
+                    bodies.y()[k],
+                    bodies.z()[k],
+                    boundingRadius[k],
+                    boundingRadius[k],
+                    boundingRadius[k]);
             if (b.hasTexture()) {
                 logger.debug(
                         "adding texture of %s (%s) to be loaded",
                         b.name().orElseThrow(), b.texture().orElseThrow());
-                assetManager.load(b.texture().orElseThrow(), Texture.class);
-                material = new Material();
+                final Path source =
+                        Paths.get(Constants.RESOURCES_DIR, b.texture().orElseThrow());
+                final Optional<Path> converted = textureCache.lookup(source);
+                if (converted.isPresent()) {
+                    textures[k] = converted.orElseThrow().toAbsolutePath().toString();
+                    assetManager.load(textures[k], Texture.class);
+                } else {
+                    // decoded as it is this time, converted for the next start
+                    textures[k] = b.texture().orElseThrow();
+                    assetManager.load(textures[k], Texture.class, fallbackParameter);
+                    if (Files.isRegularFile(source)) {
+                        textureCache.convertInBackground(source);
+                    }
+                }
             } else {
                 logger.debug("%s has no texture, using its color", b.name().orElseThrow());
-                material = new Material(
-                        new ColorAttribute(ColorAttribute.Diffuse, b.color().orElseThrow()));
+                models[k]
+                        .materials
+                        .first()
+                        .set(ColorAttribute.createDiffuse(b.color().orElseThrow()));
             }
-            final Model model = toBeDisposed(new ModelBuilder()
-                    .createSphere(
-                            b.scaledRadius(),
-                            b.scaledRadius(),
-                            b.scaledRadius(),
-                            20,
-                            20,
-                            material,
-                            Usage.Position | Usage.Normal | Usage.TextureCoordinates));
-
-            final ModelInstance instance = new ModelInstance(model, b.scaledPosition());
-            bodiesToModels.put(b, instance);
+            pointColors[k] = b.color().orElse(Color.WHITE);
         }
 
         logger.debug("adding skybox to be loaded");
         assetManager.load(skyBoxFileName, Model.class);
         loading = true;
+        loadingStart = System.nanoTime();
+
+        // a replay only reads the recording
+        if (replay == null) {
+            simulation.start();
+        }
+    }
+
+    /**
+     * Reads the latest snapshot of the simulation, without blocking, or advances the replay,
+     * and moves every model to the position of its body interpolated at the current time.
+     *
+     * @param delta
+     *      The time since the last frame (in s).
+     */
+    private void updatePositions(final float delta) {
+        final boolean moved;
+        if (replay == null) {
+            final Snapshot snapshot = simulation.latest();
+            moved = scene.update(snapshot, snapshot.alpha(System.nanoTime()));
+        } else {
+            moved = scene.update(advanceReplay(delta));
+        }
+        if (!moved) {
+            return;
+        }
+        final float[] x = bodies.x();
+        final float[] y = bodies.y();
+        final float[] z = bodies.z();
+        for (int k = 0; k < models.length; k++) {
+            models[k].transform.setToTranslationAndScaling(
+                    x[k], y[k], z[k], boundingRadius[k], boundingRadius[k], boundingRadius[k]);
+        }
+    }
+
+    /**
+     * Moves the replay forward (or backward) by the given real time, stopping at both ends of the recording.
+     */
+    private Playback advanceReplay(final float delta) {
+        if (!replayPaused) {
+            replayTime += delta * replaySpeed;
+        }
+        replayTime = Math.max(replay.startTime(), Math.min(replay.endTime(), replayTime));
+        try {
+            replay.seek(replayTime);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return replay;
     }
 
     private void doneLoading() {
         skyBox = new ModelInstance(assetManager.get(skyBoxFileName, Model.class));
 
-        SolarSystem.planets().stream().filter(Body::hasTexture).forEach(b -> {
-            bodiesToModels
-                    .get(b)
-                    .materials
-                    .first()
-                    .set(new TextureAttribute(
-                            TextureAttribute.Diffuse,
-                            assetManager.get(b.texture().orElseThrow(), Texture.class)));
-        });
+        for (int k = 0; k < models.length; k++) {
+            if (textures[k] != null) {
+                models[k]
+                        .materials
+                        .first()
+                        .set(new TextureAttribute(
+                                TextureAttribute.Diffuse, assetManager.get(textures[k], Texture.class)));
+            }
+        }
         loading = false;
+        logger.info("Loaded assets in %d ms", (System.nanoTime() - loadingStart) / 1_000_000L);
     }
 
     @Override
@@ -154,206 +450,262 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
         mouseX = (float) Gdx.input.getX();
         mouseY = (float) (viewport.getScreenHeight() - Gdx.input.getY());
         isTouched = Gdx.input.isTouched();
+        final int spriteRenderCallsBefore = spriteBatch.totalRenderCalls;
+        final int modelFlushesBefore = modelBatch.flushes();
+        int shapeFlushes = 0;
+
+        updatePositions(delta);
 
         Gdx.gl.glClear(GL30.GL_COLOR_BUFFER_BIT | GL30.GL_DEPTH_BUFFER_BIT);
         viewport.apply(false);
 
-        if (loading) {
-            if (assetManager.update(Constants.ONE_OVER_SIXTY)) {
-                doneLoading();
-            } else {
-                spriteBatch.begin();
-                font.setColor(Color.WHITE);
-                font.draw(
-                        spriteBatch,
-                        String.format("Loading assets: %3.1f %%", assetManager.getProgress() * 100.0f),
-                        0.0f,
-                        viewport.getScreenHeight() - 20.0f);
-                spriteBatch.end();
-            }
+        if (loading && assetManager.update(Constants.ONE_OVER_SIXTY)) {
+            doneLoading();
         }
 
-        // rendering skybox
+        final int visibleCount = scene.cull(camera.frustum);
+        final int[] visible = scene.visible();
+        final float pixelSize =
+                2.0f * (float) Math.tan(Math.toRadians(camera.fieldOfView / 2.0f)) / viewport.getScreenHeight();
+        final int hovered =
+                scene.pick(viewport.getPickRay(Gdx.input.getX(), Gdx.input.getY()), PICK_TOLERANCE_PIXELS * pixelSize);
+
+        // rendering skybox and planets in a single pass
+        int modelRenderCalls = 0;
+        modelBatch.begin(camera);
         if (skyBox != null) {
-            modelBatch.begin(camera);
             skyBox.transform.setToTranslation(camera.position);
             skyBox.transform.scl(1_000.0f);
             modelBatch.render(skyBox);
-            modelBatch.end();
+            modelRenderCalls++;
         }
-
-        spriteBatch.begin();
-        font.setColor(Color.GREEN);
-        font.draw(spriteBatch, String.format("FPS: %3.1f", 1 / delta), 0.0f, viewport.getScreenHeight());
-        spriteBatch.end();
-
-        final Map<Body, Vector2> bodyToLabelPosition = new HashMap<>();
-
-        modelBatch.begin(camera);
-        // rendering planets
-        for (final Entry<Body, ModelInstance> entry : bodiesToModels.entrySet()) {
-            final Body b = entry.getKey();
-            final ModelInstance instance = entry.getValue();
-            if (!isVisible(camera, instance)) {
+        int pointCount = 0;
+        for (int k = 0; k < visibleCount; k++) {
+            final int i = visible[k];
+            final float distance = camera.position.dst(bodies.x()[i], bodies.y()[i], bodies.z()[i]);
+            final int level = distance <= boundingRadius[i]
+                    ? SphereLod.levels() - 1
+                    : SphereLod.levelFor(boundingRadius[i] / (distance * pixelSize));
+            if (level < 0) {
+                points[pointCount++] = i;
                 continue;
             }
-            modelBatch.render(instance, environment);
-            final Vector3 labelPosition = viewport.project(new Vector3(
-                    b.scaledPosition().x + b.scaledRadius(), b.scaledPosition().y + b.scaledRadius(), 0.0f));
-            bodyToLabelPosition.put(b, new Vector2(labelPosition.x, labelPosition.y));
+            if (level != levels[i]) {
+                spheres.setLevel(models[i], level);
+                levels[i] = level;
+            }
+            modelBatch.render(models[i], environment);
+            modelRenderCalls++;
         }
         modelBatch.end();
 
-        for (final Entry<Body, Vector2> entry : bodyToLabelPosition.entrySet()) {
-            final Body b = entry.getKey();
-            final Vector2 labelPosition = entry.getValue();
-            final ModelInstance instance = bodiesToModels.get(b);
-            if (!isVisible(camera, instance)) {
-                continue;
-            }
-
-            // draw red label
-            spriteBatch.begin();
-            font.setColor(1.0f, 0.0f, 0.0f, 1.0f);
-            font.draw(spriteBatch, b.name().orElseThrow(), labelPosition.x + 10, labelPosition.y + 10);
-            spriteBatch.end();
-
-            final Vector3 tmp = viewport.project(new Vector3(b.scaledPosition().x, b.scaledPosition().y, 0.0f));
-            final Vector2 bodyPositionOnScreen = new Vector2(tmp.x, tmp.y);
-            final float circleRadius = b.scaledRadius() + 10.0f;
-
-            shapeRenderer.begin(ShapeType.Line);
-            shapeRenderer.setColor(Color.WHITE);
-            // draw white line from label to body
-            shapeRenderer.line(bodyPositionOnScreen, labelPosition);
-
-            // draw circle around body
-            shapeRenderer.circle(bodyPositionOnScreen.x, bodyPositionOnScreen.y, circleRadius);
-            shapeRenderer.end();
-
+        scene.project(
+                camera,
+                viewport.getScreenX(),
+                viewport.getScreenY(),
+                viewport.getScreenWidth(),
+                viewport.getScreenHeight());
+        final float[] screenX = bodies.screenX();
+        final float[] screenY = bodies.screenY();
+        final float[] labelX = bodies.labelX();
+        final float[] labelY = bodies.labelY();
+        final float[] radius = bodies.radius();
+
+        // all the overlays in a single shape pass, grouped by shape type, with blending enabled only once
+        Gdx.gl.glEnable(GL30.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
+        shapeRenderer.begin(ShapeType.Filled);
+        layoutMiniMap();
+        drawMiniMapBodies();
+        drawZoomSlider();
+        for (int k = 0; k < pointCount; k++) {
+            // bodies too small to be worth a mesh
+            final int i = points[k];
+            shapeRenderer.setColor(pointColors[i]);
+            shapeRenderer.circle(screenX[i], screenY[i], SphereLod.IMPOSTOR_PIXELS, 6);
+        }
+        for (int k = 0; k < visibleCount; k++) {
+            final int i = visible[k];
             // if the mouse is over a planet we highlight it
-            if (bodyPositionOnScreen.dst(mouseX, mouseY) < circleRadius) {
-                Gdx.gl.glEnable(GL30.GL_BLEND);
-                Gdx.gl.glBlendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
-                shapeRenderer.begin(ShapeType.Filled);
+            if (i == hovered) {
                 shapeRenderer.setColor(1.0f, 1.0f, 1.0f, 0.6f);
-                shapeRenderer.circle(bodyPositionOnScreen.x, bodyPositionOnScreen.y, circleRadius);
-                shapeRenderer.end();
-                Gdx.gl.glDisable(GL30.GL_BLEND);
+                shapeRenderer.circle(screenX[i], screenY[i], radius[i] + 10.0f);
 
                 // if we click on the planet we look at it
                 if (isTouched) {
-                    camera.lookAt(b.scaledPosition());
+                    camera.lookAt(bodies.x()[i], bodies.y()[i], bodies.z()[i]);
                 }
             }
         }
+        shapeRenderer.end();
+        shapeFlushes++;
+        shapeRenderer.begin(ShapeType.Line);
+        shapeRenderer.setColor(Color.WHITE);
+        for (int k = 0; k < visibleCount; k++) {
+            final int i = visible[k];
+            // draw white line from label to body
+            shapeRenderer.line(screenX[i], screenY[i], labelX[i], labelY[i]);
+            // draw circle around body
+            shapeRenderer.circle(screenX[i], screenY[i], radius[i] + 10.0f);
+        }
+        drawMiniMapCamera();
+        shapeRenderer.end();
+        shapeFlushes++;
+        Gdx.gl.glDisable(GL30.GL_BLEND);
 
-        final Body closestBody = SolarSystem.planets().stream()
-                .min(Comparator.comparing(b -> b.scaledPosition().dst(camera.position)))
-                .orElseThrow();
+        final int closest = scene.closest(camera.position);
+        final long distance = (long) scene.distance(camera.position, closest);
+        final long distanceToSun = (long) scene.distance(camera.position, bodies.indexOf(SolarSystem.SUN));
+        final long distanceToEarth = (long) scene.distance(camera.position, bodies.indexOf(SolarSystem.EARTH));
 
-        final long distance = (long) (closestBody.scaledPosition().dst(camera.position) - closestBody.scaledRadius());
-        final long distanceToSun =
-                (long) (SolarSystem.SUN.scaledPosition().dst(camera.position) - SolarSystem.SUN.scaledRadius());
-        final long distanceToEarth =
-                (long) (SolarSystem.EARTH.scaledPosition().dst(camera.position) - SolarSystem.EARTH.scaledRadius());
+        // all the text in a single sprite pass: changing the color of the font does not flush the batch
         spriteBatch.begin();
+        font.setColor(1.0f, 0.0f, 0.0f, 1.0f);
+        for (int k = 0; k < visibleCount; k++) {
+            final int i = visible[k];
+            // draw red label
+            font.draw(spriteBatch, bodies.name(i), labelX[i] + 10, labelY[i] + 10);
+        }
+
+        font.setColor(Color.GREEN);
+        text.setLength(0);
+        FormatUtils.appendFixed(text.append("FPS: "), 1 / delta, 1);
+        font.draw(spriteBatch, text, 0.0f, viewport.getScreenHeight());
+        if (showFrameStats) {
+            text.setLength(0);
+            frameStats.appendTo(text);
+            font.draw(spriteBatch, text, 0.0f, viewport.getScreenHeight() - 20.0f);
+        }
+
         font.setColor(Color.WHITE);
-        font.draw(
-                spriteBatch,
-                String.format(
-                        "Closest body: %s (%s km)", closestBody.name().orElseThrow(), FormatUtils.thousands(distance)),
-                0.0f,
-                60.0f);
-        font.draw(
-                spriteBatch,
-                String.format("Distance to Sun: %s km", FormatUtils.thousands(distanceToSun)),
-                0.0f,
-                40.0f);
-        font.draw(
-                spriteBatch,
-                String.format("Distance to Earth: %s km", FormatUtils.thousands(distanceToEarth)),
-                0.0f,
-                20.0f);
+        if (loading) {
+            text.setLength(0);
+            text.append("Loading assets: ");
+            FormatUtils.appendFixed(text, assetManager.getProgress() * 100.0f, 1)
+                    .append(" %");
+            font.draw(spriteBatch, text, 0.0f, viewport.getScreenHeight() - 40.0f);
+        }
+        if (replay != null) {
+            text.setLength(0);
+            text.append(replayPaused ? "Replay (paused): day " : "Replay: day ");
+            FormatUtils.appendFixed(text, (replay.time() - replay.startTime()) / 86_400.0, 1)
+                    .append(" of ");
+            FormatUtils.appendFixed(text, (replay.endTime() - replay.startTime()) / 86_400.0, 1);
+            font.draw(spriteBatch, text, 0.0f, 80.0f);
+        }
+        text.setLength(0);
+        text.append("Closest body: ").append(bodies.name(closest)).append(" (");
+        FormatUtils.appendThousands(text, distance).append(" km)");
+        font.draw(spriteBatch, text, 0.0f, 60.0f);
+        text.setLength(0);
+        FormatUtils.appendThousands(text.append("Distance to Sun: "), distanceToSun)
+                .append(" km");
+        font.draw(spriteBatch, text, 0.0f, 40.0f);
+        text.setLength(0);
+        FormatUtils.appendThousands(text.append("Distance to Earth: "), distanceToEarth)
+                .append(" km");
+        font.draw(spriteBatch, text, 0.0f, 20.0f);
         spriteBatch.end();
 
-        drawMiniMap();
+        frameStats.setBatches(
+                spriteBatch.totalRenderCalls - spriteRenderCallsBefore,
+                shapeFlushes,
+                modelRenderCalls,
+                modelBatch.flushes() - modelFlushesBefore);
+        if (profiler.isEnabled()) {
+            frameStats.setProfiler(
+                    profiler.getDrawCalls(), profiler.getShaderSwitches(), profiler.getTextureBindings());
+            profiler.reset();
+        } else {
+            frameStats.setProfiler(-1, -1, -1);
+        }
 
-        drawZoomSlider();
+        if (!firstFrameRendered) {
+            firstFrameRendered = true;
+            StartupTimer.mark("first frame");
+            StartupTimer.report();
+        }
+        if (EXIT_AFTER_FRAMES >= 0 && !loading && ++framesSinceLoading >= EXIT_AFTER_FRAMES) {
+            Gdx.app.exit();
+        }
 
         handleInputs();
+    }
 
-        bodyToLabelPosition.clear();
+    /**
+     * @return
+     *      The rendering counters of the last frame.
+     */
+    public FrameStats frameStats() {
+        return frameStats;
     }
 
-    private void drawMiniMap() {
-        final float minimapWidth = Math.min(viewport.getScreenWidth() * 0.2f, viewport.getScreenHeight() * 0.2f);
-        final float minimapHeight = minimapWidth;
-        final float minimapXPosition = viewport.getScreenWidth() - minimapWidth;
-        final float minimapYPosition = viewport.getScreenHeight() - minimapHeight;
-        final float minimapXCenter = (2 * minimapXPosition + minimapWidth) / 2.0f;
-        final float minimapYCenter = (2 * minimapYPosition + minimapHeight) / 2.0f;
+    private void layoutMiniMap() {
+        minimapSize = Math.min(viewport.getScreenWidth() * 0.2f, viewport.getScreenHeight() * 0.2f);
+        minimapXPosition = viewport.getScreenWidth() - minimapSize;
+        minimapYPosition = viewport.getScreenHeight() - minimapSize;
+    }
 
-        final Function<Float, Float> fromWorldToMinimapX = f -> MathUtils.map(
-                -solarsystemWidth, solarsystemWidth, minimapXPosition, minimapXPosition + minimapWidth, f);
-        final Function<Float, Float> fromWorldToMinimapY = f -> MathUtils.map(
-                -solarsystemWidth, solarsystemWidth, minimapYPosition, minimapYPosition + minimapHeight, f);
+    /**
+     * Draws the background of the minimap and its bodies. Must be called during a filled shape pass.
+     */
+    private void drawMiniMapBodies() {
+        final float minimapXCenter = (2 * minimapXPosition + minimapSize) / 2.0f;
+        final float minimapYCenter = (2 * minimapYPosition + minimapSize) / 2.0f;
 
-        Gdx.gl.glEnable(GL30.GL_BLEND);
-        Gdx.gl.glBlendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
-        shapeRenderer.begin(ShapeType.Filled);
         shapeRenderer.setColor(0.0f, 0.0f, 0.0f, 0.3f);
-        shapeRenderer.rect(minimapXPosition, minimapYPosition, minimapWidth, minimapHeight);
+        shapeRenderer.rect(minimapXPosition, minimapYPosition, minimapSize, minimapSize);
         // drawing the sun
         shapeRenderer.setColor(Color.YELLOW);
         shapeRenderer.circle(minimapXCenter, minimapYCenter, 6.0f);
         // drawing all the planets
-        for (Body b : List.of(
-                SolarSystem.MERCURY,
-                SolarSystem.VENUS,
-                SolarSystem.EARTH,
-                SolarSystem.MARS,
-                SolarSystem.JUPITER,
-                SolarSystem.SATURN,
-                SolarSystem.URANUS,
-                SolarSystem.NEPTUNE,
-                SolarSystem.PLUTO)) {
+        for (final Body b : MINIMAP_BODIES) {
             shapeRenderer.setColor(b.color().orElseThrow());
+            final int k = bodies.indexOf(b);
             shapeRenderer.circle(
-                    fromWorldToMinimapX.apply(b.scaledPosition().x),
-                    fromWorldToMinimapY.apply(b.scaledPosition().y),
+                    toMinimap(bodies.x()[k], minimapXPosition, minimapSize),
+                    toMinimap(bodies.y()[k], minimapYPosition, minimapSize),
                     3.0f);
         }
-        shapeRenderer.end();
+    }
 
-        // drawing camera
+    /**
+     * Draws the field of view of the camera on the minimap. Must be called during a line shape pass.
+     */
+    private void drawMiniMapCamera() {
         final float fieldOfViewX =
                 (float) viewport.getScreenWidth() / (float) viewport.getScreenHeight() * camera.fieldOfView;
-        final Vector3 leftSide = camera.direction
-                .cpy()
+        leftSide.set(camera.direction)
                 .rotate(camera.up, -fieldOfViewX / 2)
                 .setLength(10_000.0f)
                 .sub(camera.position);
-        final Vector3 rightSide = camera.direction
-                .cpy()
+        rightSide
+                .set(camera.direction)
                 .rotate(camera.up, fieldOfViewX / 2)
                 .setLength(10_000.0f)
                 .sub(camera.position);
+        final float cameraX = toMinimap(camera.position.x, minimapXPosition, minimapSize);
+        final float cameraY = toMinimap(camera.position.y, minimapYPosition, minimapSize);
 
-        shapeRenderer.begin(ShapeType.Line);
         shapeRenderer.setColor(Color.WHITE);
         shapeRenderer.line(
-                fromWorldToMinimapX.apply(camera.position.x),
-                fromWorldToMinimapY.apply(camera.position.y),
-                fromWorldToMinimapX.apply(leftSide.x),
-                fromWorldToMinimapY.apply(leftSide.y));
+                cameraX,
+                cameraY,
+                toMinimap(leftSide.x, minimapXPosition, minimapSize),
+                toMinimap(leftSide.y, minimapYPosition, minimapSize));
         shapeRenderer.line(
-                fromWorldToMinimapX.apply(camera.position.x),
-                fromWorldToMinimapY.apply(camera.position.y),
-                fromWorldToMinimapX.apply(rightSide.x),
-                fromWorldToMinimapY.apply(rightSide.y));
-        shapeRenderer.end();
-        Gdx.gl.glDisable(GL30.GL_BLEND);
+                cameraX,
+                cameraY,
+                toMinimap(rightSide.x, minimapXPosition, minimapSize),
+                toMinimap(rightSide.y, minimapYPosition, minimapSize));
+    }
+
+    /**
+     * Maps a world coordinate to the given side of the minimap.
+     */
+    private float toMinimap(final float value, final float minimapPosition, final float minimapSize) {
+        return MathUtils.map(
+                -solarsystemWidth, solarsystemWidth, minimapPosition, minimapPosition + minimapSize, value);
     }
 
     private void setCameraFOV(final float newFOV) {
@@ -361,6 +713,9 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
         camera.update();
     }
 
+    /**
+     * Draws the zoom slider and handles its clicks. Must be called during a filled shape pass.
+     */
     private void drawZoomSlider() {
         final float zoomSliderXPosition = viewport.getScreenWidth() * 0.98f;
         final float zoomSliderYPosition = viewport.getScreenHeight() - (viewport.getScreenHeight() * 0.98f);
@@ -392,9 +747,6 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
             zoomSliderKnobTransparency = 0.8f;
         }
 
-        Gdx.gl.glEnable(GL30.GL_BLEND);
-        Gdx.gl.glBlendFunc(GL30.GL_SRC_ALPHA, GL30.GL_ONE_MINUS_SRC_ALPHA);
-        shapeRenderer.begin(ShapeType.Filled);
         shapeRenderer.setColor(1.0f, 1.0f, 1.0f, zoomSliderTransparency);
         shapeRenderer.arc(
                 zoomSliderXCenter, zoomSliderYPosition + zoomSliderHeight, zoomSliderWidth / 2, 0.0f, 180.0f, 10);
@@ -402,61 +754,148 @@ public final class MainScreen extends AbstractScreen implements InputProcessor {
         shapeRenderer.arc(zoomSliderXCenter, zoomSliderYPosition, zoomSliderWidth / 2, 180.0f, 180.0f, 10);
         shapeRenderer.setColor(1.0f, 1.0f, 1.0f, zoomSliderKnobTransparency);
         shapeRenderer.circle(zoomSliderXCenter, zoomSliderKnobYPosition, zoomSliderKnobRadius, 10);
-        shapeRenderer.end();
-        Gdx.gl.glDisable(GL30.GL_BLEND);
     }
 
     private void handleInputs() {
         // forward
         if (Gdx.input.isKeyPressed(Keys.W) || Gdx.input.isKeyPressed(Keys.UP)) {
-            camera.position.add(camera.direction.cpy().scl(cameraSpeed));
+            camera.position.add(movement.set(camera.direction).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
         // backward
         if (Gdx.input.isKeyPressed(Keys.S) || Gdx.input.isKeyPressed(Keys.DOWN)) {
-            camera.position.sub(camera.direction.cpy().scl(cameraSpeed));
+            camera.position.sub(movement.set(camera.direction).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
         // left
         if (Gdx.input.isKeyPressed(Keys.A) || Gdx.input.isKeyPressed(Keys.LEFT)) {
-            camera.position.add(camera.direction.cpy().rotate(camera.up, -90.0f).scl(cameraSpeed));
+            camera.position.add(
+                    movement.set(camera.direction).rotate(camera.up, -90.0f).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
         // right
         if (Gdx.input.isKeyPressed(Keys.D) || Gdx.input.isKeyPressed(Keys.RIGHT)) {
-            camera.position.add(camera.direction.cpy().rotate(camera.up, 90.0f).scl(cameraSpeed));
+            camera.position.add(
+                    movement.set(camera.direction).rotate(camera.up, 90.0f).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
         // up
         if (Gdx.input.isKeyPressed(Keys.SPACE)) {
-            camera.position.add(camera.up.cpy().scl(cameraSpeed));
+            camera.position.add(movement.set(camera.up).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
         // down
         if (Gdx.input.isKeyPressed(Keys.CONTROL_LEFT) || Gdx.input.isKeyPressed(Keys.CONTROL_RIGHT)) {
-            camera.position.sub(camera.up.cpy().scl(cameraSpeed));
+            camera.position.sub(movement.set(camera.up).scl(cameraSpeed));
             cameraSpeed += initialCameraSpeed;
         }
     }
 
-    /**
-     * Returns true if the given model is visible by the given camera.
-     * False otherwise.
-     */
-    private boolean isVisible(final Camera cam, final ModelInstance instance) {
-        instance.transform.getTranslation(Vector3.Zero);
-        return cam.frustum.pointInFrustum(Vector3.Zero);
-    }
-
     public void resize(final int width, final int height) {
         viewport.update(width, height, false);
     }
 
     @Override
     public boolean keyDown(int keycode) {
+        if (replay != null) {
+            replayKeyDown(keycode);
+        } else {
+            simulationKeyDown(keycode);
+        }
+        if (keycode == Keys.F3) {
+            showFrameStats = !showFrameStats;
+            if (showFrameStats) {
+                profiler.enable();
+            } else {
+                profiler.disable();
+            }
+        }
         return true;
     }
 
+    private void simulationKeyDown(final int keycode) {
+        // a replay always shows the recorded moons
+        if (keycode == Keys.K) {
+            scene.setKeplerianSatellites(!scene.keplerianSatellites());
+            logger.info(scene.keplerianSatellites() ? "Moons on Keplerian orbits" : "Moons integrated");
+        }
+        if (keycode == Keys.P) {
+            simulation.setPaused(!simulation.isPaused());
+        }
+        if (keycode == Keys.F5) {
+            saveCheckpoint();
+        }
+        if (keycode == Keys.F9) {
+            restoreCheckpoint();
+        }
+        if (keycode == Keys.F6) {
+            toggleRecording();
+        }
+    }
+
+    private void replayKeyDown(final int keycode) {
+        if (keycode == Keys.P) {
+            replayPaused = !replayPaused;
+        }
+        if (keycode == Keys.R) {
+            replaySpeed = -replaySpeed;
+        }
+        // seeking only moves the clock, the replay decodes the new chunk at the next frame
+        if (keycode == Keys.LEFT_BRACKET) {
+            replayTime -= REPLAY_JUMP;
+        }
+        if (keycode == Keys.RIGHT_BRACKET) {
+            replayTime += REPLAY_JUMP;
+        }
+        if (keycode == Keys.HOME) {
+            replayTime = replay.startTime();
+        }
+        if (keycode == Keys.END) {
+            replayTime = replay.endTime();
+        }
+    }
+
+    private void saveCheckpoint() {
+        simulation.execute(sim -> {
+            try {
+                Checkpoint.write(sim, checkpoint);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            logger.info("Saved checkpoint '%s' at step %,d", checkpoint, sim.steps());
+        });
+    }
+
+    private void restoreCheckpoint() {
+        simulation.execute(sim -> {
+            try {
+                Checkpoint.read(checkpoint).restore(sim);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            logger.info("Restored checkpoint '%s' at step %,d", checkpoint, sim.steps());
+        });
+    }
+
+    private void toggleRecording() {
+        recording = !recording;
+        if (recording) {
+            simulation.execute(sim -> {
+                sim.setRecorder(new TrajectoryRecorder(RECORDING, sim, 1));
+                logger.info("Recording trajectories into '%s'", RECORDING);
+            });
+        } else {
+            simulation.execute(sim -> {
+                if (sim.recorder() != null) {
+                    // the file is completed in the background
+                    sim.recorder().finish();
+                    finishedRecorder = sim.recorder();
+                    sim.setRecorder(null);
+                }
+            });
+        }
+    }
+
     @Override
     public boolean keyUp(int keycode) {
         cameraSpeed = initialCameraSpeed;
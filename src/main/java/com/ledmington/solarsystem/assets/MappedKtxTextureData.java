@@ -0,0 +1,217 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.assets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.TextureData;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/**
+ * The data of a texture written by {@link TextureCache}: a KTX file with the whole chain of mipmaps
+ * as uncompressed RGBA. The file is memory-mapped and each level is uploaded to the GPU straight from
+ * the mapping, without copying it into the Java heap nor decoding it.
+ */
+public final class MappedKtxTextureData implements TextureData {
+
+    private final Path file;
+    private MappedByteBuffer mapping;
+    private int width;
+    private int height;
+    private int[] levelOffsets;
+    private int[] levelSizes;
+
+    /**
+     * Creates the data of the given KTX file, without reading it.
+     *
+     * @param file
+     *      The KTX file.
+     */
+    public MappedKtxTextureData(final Path file) {
+        this.file = Objects.requireNonNull(file);
+    }
+
+    @Override
+    public TextureDataType getType() {
+        return TextureDataType.Custom;
+    }
+
+    @Override
+    public boolean isPrepared() {
+        return mapping != null;
+    }
+
+    /**
+     * Maps the file and checks its header. Does not need a GL context.
+     */
+    @Override
+    public void prepare() {
+        if (mapping != null) {
+            throw new GdxRuntimeException("Already prepared");
+        }
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } catch (final IOException e) {
+            throw new GdxRuntimeException("Could not map " + file, e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        parse(buffer);
+        mapping = buffer;
+    }
+
+    private void parse(final ByteBuffer buffer) {
+        if (buffer.capacity() < TextureCache.HEADER_SIZE) {
+            throw new GdxRuntimeException(file + " is too short to be a KTX file");
+        }
+        for (int i = 0; i < TextureCache.IDENTIFIER.length; i++) {
+            if (buffer.get(i) != TextureCache.IDENTIFIER[i]) {
+                throw new GdxRuntimeException(file + " is not a KTX file");
+            }
+        }
+        if (buffer.getInt(12) != TextureCache.ENDIANNESS) {
+            throw new GdxRuntimeException(file + " has the wrong endianness");
+        }
+        if (buffer.getInt(16) != GL20.GL_UNSIGNED_BYTE
+                || buffer.getInt(24) != GL20.GL_RGBA
+                || buffer.getInt(28) != GL20.GL_RGBA
+                || buffer.getInt(52) != 1) {
+            throw new GdxRuntimeException(file + " is not a 2D RGBA texture");
+        }
+        final int w = buffer.getInt(36);
+        final int h = buffer.getInt(40);
+        final int levels = buffer.getInt(56);
+        if (w <= 0 || h <= 0 || levels != TextureCache.levels(w, h)) {
+            throw new GdxRuntimeException(
+                    String.format("%s has an invalid size of %dx%d with %d levels", file, w, h, levels));
+        }
+
+        final int[] offsets = new int[levels];
+        final int[] sizes = new int[levels];
+        long offset = TextureCache.HEADER_SIZE + (long) buffer.getInt(60);
+        int lw = w;
+        int lh = h;
+        for (int l = 0; l < levels; l++) {
+            if (offset + 4L > buffer.capacity()) {
+                throw new GdxRuntimeException(file + " is truncated");
+            }
+            final int size = buffer.getInt((int) offset);
+            if (size != lw * lh * 4 || offset + 4L + size > buffer.capacity()) {
+                throw new GdxRuntimeException(String.format("%s has an invalid level %d", file, l));
+            }
+            offsets[l] = (int) offset + 4;
+            sizes[l] = size;
+            offset += 4L + size;
+            lw = Math.max(1, lw / 2);
+            lh = Math.max(1, lh / 2);
+        }
+
+        this.width = w;
+        this.height = h;
+        this.levelOffsets = offsets;
+        this.levelSizes = sizes;
+    }
+
+    /**
+     * @return
+     *      The number of mipmap levels, after {@link #prepare()}.
+     */
+    public int levels() {
+        return levelOffsets.length;
+    }
+
+    /**
+     * Returns a view of the pixels of the given level, without copying them.
+     *
+     * @param level
+     *      The mipmap level, 0 being the full image.
+     * @return
+     *      A read-only buffer with the RGBA pixels of the given level.
+     */
+    public ByteBuffer level(final int level) {
+        if (mapping == null) {
+            throw new IllegalStateException("Not prepared");
+        }
+        return mapping.slice(levelOffsets[level], levelSizes[level]);
+    }
+
+    /**
+     * Uploads every level to the currently bound texture and releases the mapping.
+     */
+    @Override
+    public void consumeCustomData(final int target) {
+        if (mapping == null) {
+            throw new GdxRuntimeException("Call prepare() before calling consumeCustomData()");
+        }
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 4);
+        int w = width;
+        int h = height;
+        for (int l = 0; l < levels(); l++) {
+            Gdx.gl.glTexImage2D(target, l, GL20.GL_RGBA, w, h, 0, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, level(l));
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        // the file is mapped again if the context is lost
+        mapping = null;
+    }
+
+    @Override
+    public Pixmap consumePixmap() {
+        throw new GdxRuntimeException("This TextureData implementation does not return a Pixmap");
+    }
+
+    @Override
+    public boolean disposePixmap() {
+        throw new GdxRuntimeException("This TextureData implementation does not return a Pixmap");
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Pixmap.Format getFormat() {
+        return Pixmap.Format.RGBA8888;
+    }
+
+    @Override
+    public boolean useMipMaps() {
+        return true;
+    }
+
+    @Override
+    public boolean isManaged() {
+        return true;
+    }
+}
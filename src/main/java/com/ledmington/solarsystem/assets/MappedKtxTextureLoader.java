@@ -0,0 +1,82 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.assets;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.assets.loaders.TextureLoader.TextureParameter;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Loads the KTX textures written by {@link TextureCache} with an {@link AssetManager}: the file is mapped
+ * and checked on the loading thread, while the upload of its mipmaps happens on the rendering thread.
+ * The textures are filtered trilinearly, unless the parameters say otherwise.
+ */
+public final class MappedKtxTextureLoader extends AsynchronousAssetLoader<Texture, TextureParameter> {
+
+    private MappedKtxTextureData data;
+
+    /**
+     * Creates a loader resolving the file names with the given resolver.
+     *
+     * @param resolver
+     *      The resolver of the file names, which must refer to files on the local file system.
+     */
+    public MappedKtxTextureLoader(final FileHandleResolver resolver) {
+        super(resolver);
+    }
+
+    @Override
+    public void loadAsync(
+            final AssetManager manager,
+            final String fileName,
+            final FileHandle file,
+            final TextureParameter parameter) {
+        data = new MappedKtxTextureData(file.file().toPath());
+        data.prepare();
+    }
+
+    @Override
+    public Texture loadSync(
+            final AssetManager manager,
+            final String fileName,
+            final FileHandle file,
+            final TextureParameter parameter) {
+        final Texture texture = new Texture(data);
+        data = null;
+        if (parameter != null) {
+            texture.setFilter(parameter.minFilter, parameter.magFilter);
+            texture.setWrap(parameter.wrapU, parameter.wrapV);
+        } else {
+            texture.setFilter(TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
+        }
+        return texture;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Array<AssetDescriptor> getDependencies(
+            final String fileName, final FileHandle file, final TextureParameter parameter) {
+        return null;
+    }
+}
@@ -0,0 +1,516 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.assets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Converts textures into KTX files holding their whole chain of mipmaps as uncompressed RGBA,
+ * which can be uploaded to the GPU straight from a memory-mapped file with {@link MappedKtxTextureData}.
+ * <p>
+ * Each converted file is named after its source and the hash of the content of the source, so a changed
+ * texture is converted again instead of using a stale cache. Each directory of converted files also has a
+ * manifest recording the size and the modification time of the source of each file, so that
+ * {@link #lookup(Path)} finds the converted file of an unchanged texture without reading the texture.
+ * <p>
+ * The conversion is normally performed at build time by running this class (the {@code preprocessTextures}
+ * Gradle task), whose output is shipped with the distributions. A texture missing from there is converted
+ * by {@link #convertInBackground(Path)} on a thread of its own into a writable directory, like the cache
+ * directory of the user, to be used from the next start.
+ */
+public final class TextureCache implements Disposable {
+
+    /**
+     * The extension of the converted files.
+     */
+    public static final String EXTENSION = ".ktx";
+
+    /**
+     * Changes whenever the conversion changes, to invalidate the files converted before.
+     */
+    private static final String FORMAT_VERSION = "rgba-box-v1";
+
+    static final byte[] IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'};
+    static final int ENDIANNESS = 0x04030201;
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * The name of the manifest in each directory of converted files.
+     */
+    static final String MANIFEST = "textures.manifest";
+
+    private static final MiniLogger logger = MiniLogger.getLogger("TextureCache");
+
+    private final Path shipped;
+    private final Path directory;
+    private Properties shippedManifest;
+    private Properties manifest;
+    private ExecutorService converter;
+    private final Set<Path> submitted = new HashSet<>();
+
+    /**
+     * Creates a TextureCache storing its files in the given directory.
+     *
+     * @param directory
+     *      The directory of the converted files, created when needed.
+     */
+    public TextureCache(final Path directory) {
+        this(directory, directory);
+    }
+
+    /**
+     * Creates a TextureCache which looks for the converted files in two directories, but writes only
+     * in the second one.
+     *
+     * @param shipped
+     *      The directory of the files converted at build time, which may be read-only.
+     * @param directory
+     *      The directory of the files converted at runtime, created when needed.
+     */
+    public TextureCache(final Path shipped, final Path directory) {
+        this.shipped = Objects.requireNonNull(shipped);
+        this.directory = Objects.requireNonNull(directory);
+    }
+
+    /**
+     * Returns the converted version of the given texture, if one of the manifests records it with the
+     * current size and modification time of the texture. The texture itself is not read.
+     *
+     * @param source
+     *      The texture file.
+     * @return
+     *      The converted file, or nothing if the texture was never converted or changed since then.
+     */
+    public Optional<Path> lookup(final Path source) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+        return lookup(
+                source.getFileName().toString(),
+                attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Returns the converted version of the texture with the given name, size and modification time.
+     */
+    synchronized Optional<Path> lookup(final String name, final long size, final long lastModified) {
+        if (shippedManifest == null) {
+            shippedManifest = readManifest(shipped);
+        }
+        if (manifest == null) {
+            manifest = shipped.equals(directory) ? shippedManifest : readManifest(directory);
+        }
+        final Optional<Path> found = lookup(shipped, shippedManifest, name, size, lastModified);
+        return found.isPresent() ? found : lookup(directory, manifest, name, size, lastModified);
+    }
+
+    private static Optional<Path> lookup(
+            final Path dir, final Properties entries, final String name, final long size, final long lastModified) {
+        final String entry = entries.getProperty(name);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        // size, modification time and converted file
+        final String[] fields = entry.split(",", 3);
+        if (fields.length != 3
+                || !fields[0].equals(Long.toString(size))
+                || !fields[1].equals(Long.toString(lastModified))) {
+            return Optional.empty();
+        }
+        final Path file = dir.resolve(fields[2]);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    private static Properties readManifest(final Path dir) {
+        final Properties entries = new Properties();
+        final Path file = dir.resolve(MANIFEST);
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                entries.load(in);
+            } catch (final IOException | IllegalArgumentException e) {
+                logger.warning("Ignoring the unreadable manifest '%s': %s", file, e.getMessage());
+                entries.clear();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Converts the given texture, if needed, and records it in the manifest of the writable directory.
+     * Needs the libGDX natives to decode the texture.
+     *
+     * @param source
+     *      The texture file.
+     * @return
+     *      The converted file.
+     * @throws IOException
+     *      If the texture cannot be read or the converted file cannot be written.
+     */
+    public Path convert(final Path source) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        final String name = source.getFileName().toString();
+        final Path target = convert(name, Files.readAllBytes(source));
+        record(name, attributes.size(), attributes.lastModifiedTime().toMillis(), target);
+        return target;
+    }
+
+    /**
+     * Adds the given converted file to the manifest of the writable directory, which is replaced atomically.
+     */
+    private synchronized void record(final String name, final long size, final long lastModified, final Path target)
+            throws IOException {
+        if (manifest == null) {
+            manifest = readManifest(directory);
+            if (shipped.equals(directory)) {
+                shippedManifest = manifest;
+            }
+        }
+        manifest.setProperty(name, size + "," + lastModified + "," + target.getFileName());
+        Files.createDirectories(directory);
+        final Path tmp = Files.createTempFile(directory, "manifest", ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            manifest.store(out, "size, modification time and converted file of each texture");
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(
+                tmp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Converts the given texture on a background thread, so that the next start can use the converted file.
+     * The texture must be loaded as it is in the meantime. Failures are only logged.
+     *
+     * @param source
+     *      The texture file, converted only once even if it is given more than once.
+     */
+    public synchronized void convertInBackground(final Path source) {
+        if (!submitted.add(source)) {
+            return;
+        }
+        if (converter == null) {
+            converter = Executors.newSingleThreadExecutor(r -> {
+                final Thread t = new Thread(r, "texture-converter");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        }
+        converter.execute(() -> {
+            try {
+                convert(source);
+            } catch (final IOException | RuntimeException e) {
+                logger.warning("Could not convert texture '%s': %s", source, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits a few seconds for the conversion in progress, if any, and discards the others.
+     */
+    @Override
+    public void dispose() {
+        final ExecutorService c;
+        synchronized (this) {
+            c = converter;
+            converter = null;
+        }
+        if (c == null) {
+            return;
+        }
+        c.shutdownNow();
+        try {
+            if (!c.awaitTermination(5L, TimeUnit.SECONDS)) {
+                logger.warning("A texture is still being converted");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the path of the converted version of the given texture, converting it only if it does not
+     * already exist.
+     *
+     * @param name
+     *      The file name of the texture.
+     * @param content
+     *      The content of the texture file.
+     * @return
+     *      The path of the converted file.
+     * @throws IOException
+     *      If the converted file cannot be written.
+     */
+    public Path convert(final String name, final byte[] content) throws IOException {
+        final Path target = cachedFile(name, content);
+        if (Files.exists(target)) {
+            return target;
+        }
+
+        final long start = System.nanoTime();
+        final Pixmap decoded = new Pixmap(content, 0, content.length);
+        final Pixmap rgba = new Pixmap(decoded.getWidth(), decoded.getHeight(), Pixmap.Format.RGBA8888);
+        try {
+            rgba.setBlending(Pixmap.Blending.None);
+            rgba.drawPixmap(decoded, 0, 0);
+            final ByteBuffer pixels = rgba.getPixels();
+            final byte[] bytes = new byte[rgba.getWidth() * rgba.getHeight() * 4];
+            pixels.position(0);
+            pixels.get(bytes);
+            pixels.position(0);
+            write(target, rgba.getWidth(), rgba.getHeight(), bytes);
+        } finally {
+            rgba.dispose();
+            decoded.dispose();
+        }
+        removeStale(name, target);
+        logger.info(
+                "Converted texture '%s' into '%s' in %d ms", name, target, (System.nanoTime() - start) / 1_000_000L);
+        return target;
+    }
+
+    /**
+     * Returns the path of the converted version of the given texture, without converting it.
+     *
+     * @param name
+     *      The file name of the texture.
+     * @param content
+     *      The content of the texture file.
+     * @return
+     *      The path where the converted file is, or would be.
+     */
+    public Path cachedFile(final String name, final byte[] content) {
+        final int dot = name.lastIndexOf('.');
+        final String base = dot < 0 ? name : name.substring(0, dot);
+        return directory.resolve(base + "-" + hash(content) + EXTENSION);
+    }
+
+    /**
+     * Deletes the files converted from previous versions of the given texture.
+     */
+    private void removeStale(final String name, final Path current) throws IOException {
+        final String prefix = current.getFileName().toString();
+        final String base = prefix.substring(0, prefix.lastIndexOf('-') + 1);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, base + "*" + EXTENSION)) {
+            for (final Path p : stream) {
+                final String fileName = p.getFileName().toString();
+                // only the same base name followed by a hash
+                if (!p.equals(current)
+                        && fileName.length() == prefix.length()
+                        && fileName.indexOf('-', base.length()) < 0) {
+                    logger.debug("Removing stale texture '%s' of '%s'", p, name);
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first 16 hexadecimal digits of the SHA-256 hash of the given content and of the format version.
+     */
+    static String hash(final byte[] content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(FORMAT_VERSION.getBytes(StandardCharsets.US_ASCII));
+        final byte[] hash = digest.digest(content);
+        final StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of mipmap levels of an image of the given size, down to 1x1.
+     */
+    static int levels(final int width, final int height) {
+        int levels = 1;
+        int size = Math.max(width, height);
+        while (size > 1) {
+            size /= 2;
+            levels++;
+        }
+        return levels;
+    }
+
+    /**
+     * Halves an RGBA image, averaging each block of 2x2 pixels. The odd last row or column is averaged
+     * with itself.
+     *
+     * @param src
+     *      The pixels of the image, 4 bytes each.
+     * @param width
+     *      The width of the image.
+     * @param height
+     *      The height of the image.
+     * @return
+     *      The pixels of the image of size max(1, width / 2) x max(1, height / 2).
+     */
+    static byte[] downsample(final byte[] src, final int width, final int height) {
+        final int w = Math.max(1, width / 2);
+        final int h = Math.max(1, height / 2);
+        final byte[] dst = new byte[w * h * 4];
+        for (int y = 0; y < h; y++) {
+            final int y0 = Math.min(2 * y, height - 1);
+            final int y1 = Math.min(2 * y + 1, height - 1);
+            for (int x = 0; x < w; x++) {
+                final int x0 = Math.min(2 * x, width - 1);
+                final int x1 = Math.min(2 * x + 1, width - 1);
+                for (int c = 0; c < 4; c++) {
+                    final int sum = (src[(y0 * width + x0) * 4 + c] & 0xFF)
+                            + (src[(y0 * width + x1) * 4 + c] & 0xFF)
+                            + (src[(y1 * width + x0) * 4 + c] & 0xFF)
+                            + (src[(y1 * width + x1) * 4 + c] & 0xFF);
+                    dst[(y * w + x) * 4 + c] = (byte) ((sum + 2) / 4);
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Writes a KTX file with the given RGBA image and all its mipmaps. The file is written to a temporary
+     * file first and then moved, so that a reader never sees it half written.
+     *
+     * @param target
+     *      The file to write.
+     * @param width
+     *      The width of the image.
+     * @param height
+     *      The height of the image.
+     * @param pixels
+     *      The pixels of the image, 4 bytes each.
+     * @throws IOException
+     *      If the file cannot be written.
+     */
+    static void write(final Path target, final int width, final int height, final byte[] pixels) throws IOException {
+        if (width <= 0 || height <= 0 || pixels.length != width * height * 4) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid image of %dx%d with %d bytes", width, height, pixels.length));
+        }
+        final int levels = levels(width, height);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(IDENTIFIER)
+                .putInt(ENDIANNESS)
+                .putInt(GL20.GL_UNSIGNED_BYTE) // glType
+                .putInt(1) // glTypeSize
+                .putInt(GL20.GL_RGBA) // glFormat
+                .putInt(GL20.GL_RGBA) // glInternalFormat
+                .putInt(GL20.GL_RGBA) // glBaseInternalFormat
+                .putInt(width)
+                .putInt(height)
+                .putInt(0) // pixelDepth
+                .putInt(0) // numberOfArrayElements
+                .putInt(1) // numberOfFaces
+                .putInt(levels)
+                .putInt(0) // bytesOfKeyValueData
+                .flip();
+
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        final Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), "texture", ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            final ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] level = pixels;
+            int w = width;
+            int h = height;
+            for (int l = 0; l < levels; l++) {
+                // RGBA rows are always a multiple of 4 bytes, so no padding is needed
+                size.clear();
+                size.putInt(level.length).flip();
+                writeFully(channel, size);
+                writeFully(channel, ByteBuffer.wrap(level));
+                if (l + 1 < levels) {
+                    level = downsample(level, w, h);
+                    w = Math.max(1, w / 2);
+                    h = Math.max(1, h / 2);
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Converts all the JPEG and PNG textures of a directory.
+     *
+     * @param args
+     *      The directory of the textures and the directory of the converted files.
+     * @throws IOException
+     *      If a texture cannot be read or converted.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: TextureCache <textures directory> <output directory>");
+        }
+        GdxNativesLoader.load();
+        final TextureCache cache = new TextureCache(Paths.get(args[1]));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(args[0]), "*.{jpg,jpeg,png}")) {
+            for (final Path p : stream) {
+                cache.convert(p);
+            }
+        }
+    }
+}
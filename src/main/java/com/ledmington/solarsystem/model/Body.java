@@ -17,6 +17,7 @@
 */
 package com.ledmington.solarsystem.model;
 
+import java.util.Objects;
 import java.util.Optional;
 
 import com.badlogic.gdx.graphics.Color;
@@ -24,23 +25,67 @@ import com.badlogic.gdx.math.Vector3;
 import com.ledmington.solarsystem.Constants;
 import com.ledmington.solarsystem.utils.language.Dictionary;
 
-public final record Body(
-        Optional<String> name,
-        double radius,
-        double mass,
-        Vector3 position,
-        Vector3 speed,
-        Optional<Color> color,
-        Optional<String> texture) {
+/**
+ * A thin view over a single body of a {@link BodyStore}.
+ * <p>
+ * The physical state (position, speed, mass and radius) is not copied here:
+ * every accessor reads the current value from the underlying store, so the
+ * view always reflects the latest state written by whoever owns the store.
+ * Only the immutable descriptive attributes (name, color and texture) live in this object.
+ */
+public final class Body {
+
+    private final BodyStore store;
+    private final int id;
+    private final Optional<String> name;
+    private final Optional<Color> color;
+    private final Optional<String> texture;
+
+    Body(
+            final BodyStore store,
+            final int id,
+            final Optional<String> name,
+            final Optional<Color> color,
+            final Optional<String> texture) {
+        this.store = Objects.requireNonNull(store);
+        this.id = id;
+        this.name = Objects.requireNonNull(name);
+        this.color = Objects.requireNonNull(color);
+        this.texture = Objects.requireNonNull(texture);
+    }
 
     public static BodyBuilder builder() {
         return new BodyBuilder();
     }
 
+    /**
+     * @return
+     *      The {@link BodyStore} holding the state of this Body.
+     */
+    public BodyStore store() {
+        return store;
+    }
+
+    /**
+     * @return
+     *      The index of this Body inside its {@link BodyStore}.
+     */
+    public int id() {
+        return id;
+    }
+
     public Optional<String> name() {
         return this.name.isPresent() ? Optional.of(Dictionary.getInstance().get(this.name.get())) : Optional.empty();
     }
 
+    public Optional<Color> color() {
+        return color;
+    }
+
+    public Optional<String> texture() {
+        return texture;
+    }
+
     public boolean hasColor() {
         return this.color.isPresent();
     }
@@ -49,11 +94,58 @@ public final record Body(
         return this.texture.isPresent();
     }
 
+    public double radius() {
+        return store.radius()[id];
+    }
+
+    public double mass() {
+        return store.mass()[id];
+    }
+
+    public double x() {
+        return store.x()[id];
+    }
+
+    public double y() {
+        return store.y()[id];
+    }
+
+    public double z() {
+        return store.z()[id];
+    }
+
+    /**
+     * Returns a new single-precision copy of the current position of this Body.
+     */
+    public Vector3 position() {
+        return new Vector3((float) x(), (float) y(), (float) z());
+    }
+
+    /**
+     * Returns a new single-precision copy of the current speed of this Body.
+     */
+    public Vector3 speed() {
+        return new Vector3((float) store.vx()[id], (float) store.vy()[id], (float) store.vz()[id]);
+    }
+
     public Vector3 scaledPosition() {
-        return position.cpy().scl((float) Constants.SCALE);
+        return scaledPosition(new Vector3());
+    }
+
+    /**
+     * Writes the scaled position of this Body into the given vector, without allocating.
+     *
+     * @param out
+     *      The vector to be overwritten.
+     * @return
+     *      The given vector, for chaining.
+     */
+    public Vector3 scaledPosition(final Vector3 out) {
+        return out.set(
+                (float) (x() * Constants.SCALE), (float) (y() * Constants.SCALE), (float) (z() * Constants.SCALE));
     }
 
     public float scaledRadius() {
-        return (float) (radius * Constants.SCALE);
+        return (float) (radius() * Constants.SCALE);
     }
 }
@@ -105,20 +105,38 @@ public final class BodyBuilder {
         return this;
     }
 
+    /**
+     * Builds a standalone Body, backed by its own single-element {@link BodyStore}.
+     */
     public Body build() {
+        return build(new BodyStore(1));
+    }
+
+    /**
+     * Builds a Body and appends its state to the given {@link BodyStore}.
+     *
+     * @param store
+     *      The store which will hold the physical state of the new Body.
+     * @return
+     *      A view over the newly added Body.
+     */
+    public Body build(final BodyStore store) {
         if (this.massInKilograms < 0) {
             throw new IllegalStateException("Cannot build a Body without mass");
         }
         if (this.radiusInMeters < 0) {
             throw new IllegalStateException("Cannot build a Body without radius");
         }
-        return new Body(
-                Optional.of(this.name),
-                this.radiusInMeters,
+        final Optional<String> name = Optional.of(this.name);
+        final int id = store.add(
                 this.massInKilograms,
-                this.position,
-                this.speed,
-                this.color,
-                this.texture);
+                this.radiusInMeters,
+                this.position.x,
+                this.position.y,
+                this.position.z,
+                this.speed.x,
+                this.speed.y,
+                this.speed.z);
+        return new Body(store, id, name, this.color, this.texture);
     }
 }
@@ -0,0 +1,225 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import com.ledmington.solarsystem.Constants;
+
+/**
+ * The parent of each body of a {@link BodyStore}: satellites, like moons, have the id of the body they orbit,
+ * while the other bodies have no parent and orbit the barycenter of the whole system.
+ * <p>
+ * The hierarchy has a single level: a parent cannot be a satellite itself. A parent and its satellites form
+ * a subsystem, which an integrator can advance in coordinates relative to the parent (see
+ * {@code HierarchicalIntegrator}).
+ */
+public final class BodyHierarchy {
+
+    /**
+     * The parent of the bodies which are not satellites.
+     */
+    public static final int NO_PARENT = -1;
+
+    private final int[] parent;
+    private final int satellites;
+
+    private BodyHierarchy(final int[] parent) {
+        this.parent = parent;
+        int count = 0;
+        for (int i = 0; i < parent.length; i++) {
+            if (parent[i] == NO_PARENT) {
+                continue;
+            }
+            if (parent[i] < 0 || parent[i] >= parent.length || parent[i] == i) {
+                throw new IllegalArgumentException(String.format("Invalid parent %d of body %d", parent[i], i));
+            }
+            if (parent[parent[i]] != NO_PARENT) {
+                throw new IllegalArgumentException(String.format(
+                        "Body %d orbits body %d, which is a satellite of body %d", i, parent[i], parent[parent[i]]));
+            }
+            count++;
+        }
+        this.satellites = count;
+    }
+
+    /**
+     * Creates a hierarchy from the parent of each body.
+     *
+     * @param parents
+     *      The id of the parent of each body, or {@link #NO_PARENT}.
+     * @return
+     *      The hierarchy.
+     */
+    public static BodyHierarchy of(final int... parents) {
+        return new BodyHierarchy(Objects.requireNonNull(parents).clone());
+    }
+
+    /**
+     * Creates a hierarchy without satellites.
+     *
+     * @param n
+     *      The number of bodies.
+     * @return
+     *      The hierarchy.
+     */
+    public static BodyHierarchy flat(final int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException(String.format("Invalid number of bodies %d", n));
+        }
+        final int[] parents = new int[n];
+        Arrays.fill(parents, NO_PARENT);
+        return new BodyHierarchy(parents);
+    }
+
+    /**
+     * Finds the satellites among the given bodies. A body is a satellite of another one, more massive than it,
+     * if it lies within the Hill sphere of the other one with respect to the most massive body of the store,
+     * on a bound orbit. The most massive candidate is chosen, and the bodies which are parents of a satellite
+     * cannot be satellites themselves.
+     * <p>
+     * It takes O(n log n) time, unless many bodies are as close along x to a body as its Hill radius.
+     *
+     * @param store
+     *      The bodies.
+     * @return
+     *      The hierarchy of the bodies.
+     */
+    public static BodyHierarchy detect(final BodyStore store) {
+        final int n = store.size();
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        final double[] m = store.mass();
+        final int[] parents = new int[n];
+        Arrays.fill(parents, NO_PARENT);
+        if (n < 3) {
+            return new BodyHierarchy(parents);
+        }
+
+        int central = 0;
+        for (int i = 1; i < n; i++) {
+            if (m[i] > m[central]) {
+                central = i;
+            }
+        }
+        final double[] hillRadius = new double[n];
+        for (int j = 0; j < n; j++) {
+            if (j != central) {
+                final double dx = x[j] - x[central];
+                final double dy = y[j] - y[central];
+                final double dz = z[j] - z[central];
+                hillRadius[j] = Math.sqrt(dx * dx + dy * dy + dz * dz) * Math.cbrt(m[j] / (3.0 * m[central]));
+            }
+        }
+
+        // Only the bodies within the Hill radius of a candidate parent along x need to be checked, so the bodies
+        // are sorted by x: a whole belt of small bodies, with tiny Hill spheres, takes O(n log n) instead of O(n^2).
+        // The candidates are visited in the same order as the bodies, so that ties go to the first one.
+        final int[] order = IntStream.range(0, n)
+                .boxed()
+                .sorted(Comparator.comparingDouble(k -> x[k]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final double[] sortedX = new double[n];
+        for (int k = 0; k < n; k++) {
+            sortedX[k] = x[order[k]];
+        }
+        for (int j = 0; j < n; j++) {
+            if (j == central || !(hillRadius[j] > 0.0)) {
+                continue;
+            }
+            final double maxX = x[j] + hillRadius[j];
+            for (int k = firstNotBelow(sortedX, x[j] - hillRadius[j]); k < n && sortedX[k] <= maxX; k++) {
+                final int i = order[k];
+                if (i == j || i == central || !(m[j] > m[i]) || (parents[i] != NO_PARENT && m[j] <= m[parents[i]])) {
+                    continue;
+                }
+                final double dx = x[i] - x[j];
+                final double dy = y[i] - y[j];
+                final double dz = z[i] - z[j];
+                final double r = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                final double dvx = vx[i] - vx[j];
+                final double dvy = vy[i] - vy[j];
+                final double dvz = vz[i] - vz[j];
+                final double energy = 0.5 * (dvx * dvx + dvy * dvy + dvz * dvz)
+                        - Constants.GRAVITATIONAL_CONSTANT * (m[i] + m[j]) / r;
+                if (r < hillRadius[j] && energy < 0.0) {
+                    parents[i] = j;
+                }
+            }
+        }
+
+        // a single level: the satellites of a satellite belong to the subsystem of its parent
+        for (int i = 0; i < n; i++) {
+            while (parents[i] != NO_PARENT && parents[parents[i]] != NO_PARENT) {
+                parents[i] = parents[parents[i]];
+            }
+        }
+        return new BodyHierarchy(parents);
+    }
+
+    /**
+     * Returns the index of the first element of the given sorted array which is not below the given value.
+     */
+    private static int firstNotBelow(final double[] sorted, final double value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return
+     *      The number of bodies.
+     */
+    public int size() {
+        return parent.length;
+    }
+
+    /**
+     * @return
+     *      The number of satellites.
+     */
+    public int satellites() {
+        return satellites;
+    }
+
+    /**
+     * @param id
+     *      The id of a body.
+     * @return
+     *      The id of its parent, or {@link #NO_PARENT} if it is not a satellite.
+     */
+    public int parent(final int id) {
+        return parent[id];
+    }
+}
@@ -0,0 +1,236 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the physical state of many bodies.
+ * <p>
+ * Each quantity lives in its own contiguous double[] column, indexed by
+ * the body id returned by {@link #add}. Hot loops should fetch the columns
+ * once (through {@link #x()}, {@link #vx()}, ...) and iterate up to {@link #size()}.
+ * <p>
+ * The returned arrays are the live backing columns: their length may be
+ * greater than {@link #size()} and they are replaced when the store grows,
+ * so they must be fetched again after calling {@link #add}.
+ * <p>
+ * All the values are in SI units (meters, meters per second, kilograms).
+ */
+public final class BodyStore {
+
+    private static final int DEFAULT_CAPACITY = 32;
+
+    private int size = 0;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double[] vx;
+    private double[] vy;
+    private double[] vz;
+    private double[] mass;
+    private double[] radius;
+
+    /**
+     * Creates an empty store with a default initial capacity.
+     */
+    public BodyStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store able to hold the given number of bodies without growing.
+     *
+     * @param initialCapacity
+     *      The number of bodies to preallocate space for.
+     */
+    public BodyStore(final int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Cannot create a BodyStore with negative capacity");
+        }
+        x = new double[initialCapacity];
+        y = new double[initialCapacity];
+        z = new double[initialCapacity];
+        vx = new double[initialCapacity];
+        vy = new double[initialCapacity];
+        vz = new double[initialCapacity];
+        mass = new double[initialCapacity];
+        radius = new double[initialCapacity];
+    }
+
+    /**
+     * Adds a new body to the store.
+     *
+     * @return
+     *      The id of the new body.
+     */
+    public int add(
+            final double mass,
+            final double radius,
+            final double x,
+            final double y,
+            final double z,
+            final double vx,
+            final double vy,
+            final double vz) {
+        ensureCapacity(size + 1);
+        final int id = size;
+        this.mass[id] = mass;
+        this.radius[id] = radius;
+        this.x[id] = x;
+        this.y[id] = y;
+        this.z[id] = z;
+        this.vx[id] = vx;
+        this.vy[id] = vy;
+        this.vz[id] = vz;
+        size++;
+        return id;
+    }
+
+    /**
+     * Makes sure that the store can hold at least the given number of bodies without
+     * reallocating its columns.
+     *
+     * @param minCapacity
+     *      The minimum number of bodies.
+     */
+    public void ensureCapacity(final int minCapacity) {
+        if (minCapacity <= x.length) {
+            return;
+        }
+        final int newCapacity = Math.max(minCapacity, Math.max(DEFAULT_CAPACITY, x.length + (x.length >> 1)));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        z = Arrays.copyOf(z, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        vz = Arrays.copyOf(vz, newCapacity);
+        mass = Arrays.copyOf(mass, newCapacity);
+        radius = Arrays.copyOf(radius, newCapacity);
+    }
+
+    /**
+     * Changes the number of bodies, growing the store if needed. The new bodies have all their values
+     * set to zero, so that the columns can be filled in place.
+     *
+     * @param newSize
+     *      The new number of bodies.
+     */
+    public void resize(final int newSize) {
+        if (newSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid size %d", newSize));
+        }
+        ensureCapacity(newSize);
+        if (newSize > size) {
+            Arrays.fill(x, size, newSize, 0.0);
+            Arrays.fill(y, size, newSize, 0.0);
+            Arrays.fill(z, size, newSize, 0.0);
+            Arrays.fill(vx, size, newSize, 0.0);
+            Arrays.fill(vy, size, newSize, 0.0);
+            Arrays.fill(vz, size, newSize, 0.0);
+            Arrays.fill(mass, size, newSize, 0.0);
+            Arrays.fill(radius, size, newSize, 0.0);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Copies the whole state of the given store into this one, growing it if needed.
+     * No allocation happens when this store is already big enough.
+     *
+     * @param other
+     *      The store to copy from.
+     */
+    public void copyFrom(final BodyStore other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.x, 0, x, 0, other.size);
+        System.arraycopy(other.y, 0, y, 0, other.size);
+        System.arraycopy(other.z, 0, z, 0, other.size);
+        System.arraycopy(other.vx, 0, vx, 0, other.size);
+        System.arraycopy(other.vy, 0, vy, 0, other.size);
+        System.arraycopy(other.vz, 0, vz, 0, other.size);
+        System.arraycopy(other.mass, 0, mass, 0, other.size);
+        System.arraycopy(other.radius, 0, radius, 0, other.size);
+        size = other.size;
+    }
+
+    /**
+     * Returns a deep copy of this store.
+     */
+    public BodyStore copy() {
+        final BodyStore result = new BodyStore(size);
+        result.copyFrom(this);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setPosition(final int id, final double x, final double y, final double z) {
+        checkId(id);
+        this.x[id] = x;
+        this.y[id] = y;
+        this.z[id] = z;
+    }
+
+    public void setVelocity(final int id, final double vx, final double vy, final double vz) {
+        checkId(id);
+        this.vx[id] = vx;
+        this.vy[id] = vy;
+        this.vz[id] = vz;
+    }
+
+    public double[] x() {
+        return x;
+    }
+
+    public double[] y() {
+        return y;
+    }
+
+    public double[] z() {
+        return z;
+    }
+
+    public double[] vx() {
+        return vx;
+    }
+
+    public double[] vy() {
+        return vy;
+    }
+
+    public double[] vz() {
+        return vz;
+    }
+
+    public double[] mass() {
+        return mass;
+    }
+
+    public double[] radius() {
+        return radius;
+    }
+
+    private void checkId(final int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException(String.format("Invalid body id %d for a store of %d bodies", id, size));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.utils.MappedTextReader;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Loads initial conditions from catalog files straight into a {@link BodyStore} or a {@link ParticleStore},
+ * reading them through a {@link MappedTextReader} so that no String is created per line, and catalogs
+ * of hundreds of thousands of objects load in a fraction of a second.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>CSV catalogs, with a header naming the columns (lines starting with {@code #} are comments).
+ * They can hold either state vectors, with the columns {@code x, y, z, vx, vy, vz} (in m and m/s),
+ * or orbital elements, with the columns {@code a, e, i, node, peri, M} (in m and rad) relative to the body
+ * with id {@code central} (the column is optional, the default is 0). If there is a {@code mass} column
+ * (in kg) the rows are added as massive bodies, with the optional {@code radius} (in m), otherwise as test
+ * particles. Other columns are ignored, so the final state written by a headless run is a valid catalog.</li>
+ * <li>Vector tables exported by JPL Horizons with {@code CSV_FORMAT=YES}: the first record between
+ * {@code $$SOE} and {@code $$EOE} is read, in the units declared by the {@code Output units} line.</li>
+ * </ul>
+ */
+public final class CatalogLoader {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("CatalogLoader");
+
+    private static final double SECONDS_PER_DAY = 86_400.0;
+
+    /**
+     * The exact length of the astronomical unit used by JPL Horizons (in m).
+     */
+    private static final double HORIZONS_AU = 149_597_870_700.0;
+
+    private static final String[] STATE_COLUMNS = {"x", "y", "z", "vx", "vy", "vz"};
+    private static final String[] ELEMENT_COLUMNS = {"a", "e", "i", "node", "peri", "M"};
+
+    private CatalogLoader() {}
+
+    /**
+     * Loads all the objects of a CSV catalog.
+     *
+     * @param file
+     *      The catalog file.
+     * @param bodies
+     *      The store receiving the massive bodies. When loading orbital elements,
+     *      it must already contain the central bodies.
+     * @param particles
+     *      The store receiving the test particles.
+     * @return
+     *      The number of loaded objects.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a valid catalog.
+     */
+    public static int load(final Path file, final BodyStore bodies, final ParticleStore particles) throws IOException {
+        Objects.requireNonNull(bodies);
+        Objects.requireNonNull(particles);
+        final long start = System.nanoTime();
+        final MappedTextReader reader = new MappedTextReader(file);
+
+        // the header
+        boolean found = false;
+        while (reader.nextLine()) {
+            if (!reader.isBlank() && !reader.startsWith("#")) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException(String.format("Catalog '%s' has no header", file));
+        }
+        final int columns = reader.split(',');
+        final int[] state = columns(reader, STATE_COLUMNS);
+        final int[] elements = columns(reader, ELEMENT_COLUMNS);
+        final boolean hasState = Arrays.stream(state).allMatch(c -> c >= 0);
+        final boolean hasElements = Arrays.stream(elements).allMatch(c -> c >= 0);
+        if (hasState == hasElements) {
+            throw new IllegalArgumentException(String.format(
+                    "Catalog '%s' must have either the columns %s or the columns %s",
+                    file, String.join(",", STATE_COLUMNS), String.join(",", ELEMENT_COLUMNS)));
+        }
+        final int massColumn = column(reader, "mass");
+        final int radiusColumn = column(reader, "radius");
+        final int centralColumn = column(reader, "central");
+
+        final double[] values = new double[6];
+        int count = 0;
+        while (reader.nextLine()) {
+            if (reader.isBlank() || reader.startsWith("#")) {
+                continue;
+            }
+            if (reader.split(',') < columns) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d of '%s' has %d fields instead of %d",
+                        reader.lineNumber(), file, reader.fields(), columns));
+            }
+            if (hasState) {
+                for (int k = 0; k < 6; k++) {
+                    values[k] = reader.parseDouble(state[k]);
+                }
+            } else {
+                final int central = centralColumn < 0 ? 0 : (int) reader.parseLong(centralColumn);
+                if (central < 0 || central >= bodies.size()) {
+                    throw new IllegalArgumentException(String.format(
+                            "Line %d of '%s' refers to the central body %d, which does not exist",
+                            reader.lineNumber(), file, central));
+                }
+                toCartesian(file, reader, elements, bodies, central, values);
+            }
+
+            if (massColumn >= 0) {
+                final double mass = reader.parseDouble(massColumn);
+                if (!(mass >= 0.0)) {
+                    throw new IllegalArgumentException(
+                            String.format("Line %d of '%s' has invalid mass %e", reader.lineNumber(), file, mass));
+                }
+                bodies.add(
+                        mass,
+                        radiusColumn < 0 ? 0.0 : reader.parseDouble(radiusColumn),
+                        values[0],
+                        values[1],
+                        values[2],
+                        values[3],
+                        values[4],
+                        values[5]);
+            } else {
+                particles.add(values[0], values[1], values[2], values[3], values[4], values[5]);
+            }
+            count++;
+        }
+
+        logger.info(
+                "Loaded %,d %s from '%s' in %d ms",
+                count, massColumn >= 0 ? "bodies" : "test particles", file, (System.nanoTime() - start) / 1_000_000L);
+        return count;
+    }
+
+    private static void toCartesian(
+            final Path file,
+            final MappedTextReader reader,
+            final int[] elements,
+            final BodyStore bodies,
+            final int central,
+            final double[] out) {
+        for (int k = 0; k < 6; k++) {
+            out[k] = reader.parseDouble(elements[k]);
+        }
+        final OrbitalElements orbit;
+        try {
+            orbit = new OrbitalElements(out[0], out[1], out[2], out[3], out[4], out[5]);
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                    String.format("Line %d of '%s': %s", reader.lineNumber(), file, e.getMessage()), e);
+        }
+        orbit.toCartesian(Constants.GRAVITATIONAL_CONSTANT * bodies.mass()[central], out);
+        out[0] += bodies.x()[central];
+        out[1] += bodies.y()[central];
+        out[2] += bodies.z()[central];
+        out[3] += bodies.vx()[central];
+        out[4] += bodies.vy()[central];
+        out[5] += bodies.vz()[central];
+    }
+
+    private static int[] columns(final MappedTextReader reader, final String[] names) {
+        final int[] result = new int[names.length];
+        for (int k = 0; k < names.length; k++) {
+            result[k] = column(reader, names[k]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the column of the header with the given name, ignoring the case, or -1 if there is none.
+     */
+    private static int column(final MappedTextReader reader, final String name) {
+        for (int c = 0; c < reader.fields(); c++) {
+            if (reader.fieldEquals(c, name)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Loads the first state vector of a vector table exported by JPL Horizons as a massive body.
+     * The table must have been exported with {@code CSV_FORMAT=YES}, so that each record is a line
+     * starting with the Julian date and the calendar date, followed by the position and the velocity.
+     *
+     * @param file
+     *      The exported file.
+     * @param bodies
+     *      The store receiving the body.
+     * @param mass
+     *      The mass of the body (in kg).
+     * @param radius
+     *      The radius of the body (in m).
+     * @return
+     *      The id of the new body.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a valid vector table.
+     */
+    public static int loadHorizons(final Path file, final BodyStore bodies, final double mass, final double radius)
+            throws IOException {
+        final MappedTextReader reader = new MappedTextReader(file);
+        double lengthUnit = 1_000.0;
+        double timeUnit = 1.0;
+        boolean inTable = false;
+        while (reader.nextLine()) {
+            if (!inTable) {
+                if (reader.startsWith("Output units")) {
+                    reader.split(':');
+                    if (reader.fields() < 2) {
+                        continue;
+                    }
+                    if (reader.fieldStartsWith(1, "AU-D")) {
+                        lengthUnit = HORIZONS_AU;
+                        timeUnit = SECONDS_PER_DAY;
+                    } else if (reader.fieldStartsWith(1, "KM-D")) {
+                        timeUnit = SECONDS_PER_DAY;
+                    } else if (!reader.fieldStartsWith(1, "KM-S")) {
+                        throw new IllegalArgumentException(String.format(
+                                "Unknown units '%s' at line %d of '%s'", reader.field(1), reader.lineNumber(), file));
+                    }
+                } else if (reader.startsWith("$$SOE")) {
+                    inTable = true;
+                }
+                continue;
+            }
+            if (reader.startsWith("$$EOE")) {
+                break;
+            }
+            // JDTDB, calendar date, X, Y, Z, VX, VY, VZ, possibly followed by other columns
+            if (reader.split(',') < 8) {
+                throw new IllegalArgumentException(
+                        String.format("Line %d of '%s' is not a CSV vector table record", reader.lineNumber(), file));
+            }
+            final double velocityUnit = lengthUnit / timeUnit;
+            return bodies.add(
+                    mass,
+                    radius,
+                    reader.parseDouble(2) * lengthUnit,
+                    reader.parseDouble(3) * lengthUnit,
+                    reader.parseDouble(4) * lengthUnit,
+                    reader.parseDouble(5) * velocityUnit,
+                    reader.parseDouble(6) * velocityUnit,
+                    reader.parseDouble(7) * velocityUnit);
+        }
+        throw new IllegalArgumentException(String.format("'%s' has no records between $$SOE and $$EOE", file));
+    }
+}
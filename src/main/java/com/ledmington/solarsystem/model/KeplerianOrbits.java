@@ -0,0 +1,213 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for bodies moving on fixed Keplerian orbits around a parent body,
+ * like moons and small bodies whose positions are computed analytically instead of being integrated.
+ * <p>
+ * Each orbit is stored in the form that its propagation needs: the mean anomaly at time zero and the mean
+ * motion, the shape of the ellipse and the unit vectors P, towards the periapsis, and Q, 90 degrees ahead
+ * of it. The position relative to the parent at time t is then a(cos(E) - e) P + b sin(E) Q, where E solves
+ * Kepler's equation for the mean anomaly at t. As with the {@link ParticleStore}, the columns may be longer
+ * than {@link #size()} and they are replaced when the store grows.
+ * <p>
+ * All the values are in SI units (meters, seconds, radians).
+ */
+public final class KeplerianOrbits {
+
+    private static final int DEFAULT_CAPACITY = 1_024;
+
+    private int size = 0;
+    private int[] parent;
+    private double[] meanAnomaly;
+    private double[] meanMotion;
+    private double[] eccentricity;
+    private double[] semiMajorAxis;
+    private double[] semiMinorAxis;
+    private double[] px;
+    private double[] py;
+    private double[] pz;
+    private double[] qx;
+    private double[] qy;
+    private double[] qz;
+    private final double[] orientation = new double[6];
+
+    /**
+     * Creates an empty store with a default initial capacity.
+     */
+    public KeplerianOrbits() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store able to hold the given number of orbits without growing.
+     *
+     * @param initialCapacity
+     *      The number of orbits to preallocate space for.
+     */
+    public KeplerianOrbits(final int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Cannot create a KeplerianOrbits with negative capacity");
+        }
+        parent = new int[initialCapacity];
+        meanAnomaly = new double[initialCapacity];
+        meanMotion = new double[initialCapacity];
+        eccentricity = new double[initialCapacity];
+        semiMajorAxis = new double[initialCapacity];
+        semiMinorAxis = new double[initialCapacity];
+        px = new double[initialCapacity];
+        py = new double[initialCapacity];
+        pz = new double[initialCapacity];
+        qx = new double[initialCapacity];
+        qy = new double[initialCapacity];
+        qz = new double[initialCapacity];
+    }
+
+    /**
+     * Adds a new orbit to the store.
+     *
+     * @param parent
+     *      The id of the body at the focus of the orbit.
+     * @param mu
+     *      The gravitational parameter of the two bodies (in m^3/s^2).
+     * @param elements
+     *      The orbital elements, with the mean anomaly at time zero.
+     * @return
+     *      The id of the new orbit.
+     */
+    public int add(final int parent, final double mu, final OrbitalElements elements) {
+        if (parent < 0) {
+            throw new IllegalArgumentException(String.format("Invalid parent %d", parent));
+        }
+        if (!(mu > 0.0) || !Double.isFinite(mu)) {
+            throw new IllegalArgumentException(String.format("Invalid gravitational parameter %e", mu));
+        }
+        ensureCapacity(size + 1);
+        final int id = size;
+        final double a = elements.semiMajorAxis();
+        final double e = elements.eccentricity();
+        this.parent[id] = parent;
+        this.meanAnomaly[id] = Math.IEEEremainder(elements.meanAnomaly(), 2.0 * Math.PI);
+        this.meanMotion[id] = Math.sqrt(mu / (a * a * a));
+        this.eccentricity[id] = e;
+        this.semiMajorAxis[id] = a;
+        this.semiMinorAxis[id] = a * Math.sqrt(1.0 - e * e);
+        elements.orientation(orientation);
+        this.px[id] = orientation[0];
+        this.py[id] = orientation[1];
+        this.pz[id] = orientation[2];
+        this.qx[id] = orientation[3];
+        this.qy[id] = orientation[4];
+        this.qz[id] = orientation[5];
+        size++;
+        return id;
+    }
+
+    /**
+     * Makes sure that the store can hold at least the given number of orbits without
+     * reallocating its columns.
+     *
+     * @param minCapacity
+     *      The minimum number of orbits.
+     */
+    public void ensureCapacity(final int minCapacity) {
+        if (minCapacity <= parent.length) {
+            return;
+        }
+        final int newCapacity = Math.max(minCapacity, Math.max(DEFAULT_CAPACITY, parent.length + (parent.length >> 1)));
+        parent = Arrays.copyOf(parent, newCapacity);
+        meanAnomaly = Arrays.copyOf(meanAnomaly, newCapacity);
+        meanMotion = Arrays.copyOf(meanMotion, newCapacity);
+        eccentricity = Arrays.copyOf(eccentricity, newCapacity);
+        semiMajorAxis = Arrays.copyOf(semiMajorAxis, newCapacity);
+        semiMinorAxis = Arrays.copyOf(semiMinorAxis, newCapacity);
+        px = Arrays.copyOf(px, newCapacity);
+        py = Arrays.copyOf(py, newCapacity);
+        pz = Arrays.copyOf(pz, newCapacity);
+        qx = Arrays.copyOf(qx, newCapacity);
+        qy = Arrays.copyOf(qy, newCapacity);
+        qz = Arrays.copyOf(qz, newCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return
+     *      The ids of the bodies at the focus of the orbits.
+     */
+    public int[] parent() {
+        return parent;
+    }
+
+    /**
+     * @return
+     *      The mean anomalies at time zero, between -pi and pi (in rad).
+     */
+    public double[] meanAnomaly() {
+        return meanAnomaly;
+    }
+
+    /**
+     * @return
+     *      The mean motions (in rad/s).
+     */
+    public double[] meanMotion() {
+        return meanMotion;
+    }
+
+    public double[] eccentricity() {
+        return eccentricity;
+    }
+
+    public double[] semiMajorAxis() {
+        return semiMajorAxis;
+    }
+
+    public double[] semiMinorAxis() {
+        return semiMinorAxis;
+    }
+
+    public double[] px() {
+        return px;
+    }
+
+    public double[] py() {
+        return py;
+    }
+
+    public double[] pz() {
+        return pz;
+    }
+
+    public double[] qx() {
+        return qx;
+    }
+
+    public double[] qy() {
+        return qy;
+    }
+
+    public double[] qz() {
+        return qz;
+    }
+}
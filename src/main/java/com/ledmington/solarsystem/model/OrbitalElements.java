@@ -0,0 +1,183 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+/**
+ * The classical Keplerian elements of a bound orbit around a central body.
+ * Angles are in radians and distances in meters.
+ */
+public final class OrbitalElements {
+
+    private static final int MAX_ITERATIONS = 30;
+
+    private final double semiMajorAxis;
+    private final double eccentricity;
+    private final double inclination;
+    private final double longitudeOfAscendingNode;
+    private final double argumentOfPeriapsis;
+    private final double meanAnomaly;
+
+    /**
+     * Creates a new set of orbital elements.
+     *
+     * @param semiMajorAxis
+     *      The semi-major axis (in m).
+     * @param eccentricity
+     *      The eccentricity, in [0; 1).
+     * @param inclination
+     *      The inclination over the reference plane (in rad).
+     * @param longitudeOfAscendingNode
+     *      The longitude of the ascending node (in rad).
+     * @param argumentOfPeriapsis
+     *      The argument of periapsis (in rad).
+     * @param meanAnomaly
+     *      The mean anomaly (in rad).
+     */
+    public OrbitalElements(
+            final double semiMajorAxis,
+            final double eccentricity,
+            final double inclination,
+            final double longitudeOfAscendingNode,
+            final double argumentOfPeriapsis,
+            final double meanAnomaly) {
+        if (!(semiMajorAxis > 0.0) || !Double.isFinite(semiMajorAxis)) {
+            throw new IllegalArgumentException(String.format("Invalid semi-major axis %e", semiMajorAxis));
+        }
+        if (!(eccentricity >= 0.0 && eccentricity < 1.0)) {
+            throw new IllegalArgumentException(String.format("Invalid eccentricity %f", eccentricity));
+        }
+        this.semiMajorAxis = semiMajorAxis;
+        this.eccentricity = eccentricity;
+        this.inclination = inclination;
+        this.longitudeOfAscendingNode = longitudeOfAscendingNode;
+        this.argumentOfPeriapsis = argumentOfPeriapsis;
+        this.meanAnomaly = meanAnomaly;
+    }
+
+    public double semiMajorAxis() {
+        return semiMajorAxis;
+    }
+
+    public double eccentricity() {
+        return eccentricity;
+    }
+
+    public double inclination() {
+        return inclination;
+    }
+
+    public double longitudeOfAscendingNode() {
+        return longitudeOfAscendingNode;
+    }
+
+    public double argumentOfPeriapsis() {
+        return argumentOfPeriapsis;
+    }
+
+    public double meanAnomaly() {
+        return meanAnomaly;
+    }
+
+    /**
+     * Solves Kepler's equation M = E - e sin(E) for the eccentric anomaly with Newton's method.
+     *
+     * @param meanAnomaly
+     *      The mean anomaly M (in rad).
+     * @param eccentricity
+     *      The eccentricity e, in [0; 1).
+     * @return
+     *      The eccentric anomaly E (in rad).
+     */
+    public static double eccentricAnomaly(final double meanAnomaly, final double eccentricity) {
+        final double m = Math.IEEEremainder(meanAnomaly, 2.0 * Math.PI);
+        // starting from pi converges for every eccentricity
+        double e = eccentricity > 0.8 ? Math.PI * Math.signum(m) : m;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            final double delta = (e - eccentricity * Math.sin(e) - m) / (1.0 - eccentricity * Math.cos(e));
+            e -= delta;
+            if (Math.abs(delta) < 1e-15) {
+                break;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Computes the position and the velocity relative to the central body.
+     *
+     * @param mu
+     *      The gravitational parameter of the central body (in m^3/s^2).
+     * @param out
+     *      The array receiving the relative position (elements 0 to 2, in m)
+     *      and velocity (elements 3 to 5, in m/s).
+     */
+    public void toCartesian(final double mu, final double[] out) {
+        final double a = semiMajorAxis;
+        final double e = eccentricity;
+        final double anomaly = eccentricAnomaly(meanAnomaly, e);
+        final double cosE = Math.cos(anomaly);
+        final double sinE = Math.sin(anomaly);
+        final double b = a * Math.sqrt(1.0 - e * e);
+
+        // in the orbital plane, with the periapsis along the x axis
+        final double px = a * (cosE - e);
+        final double py = b * sinE;
+        final double meanMotion = Math.sqrt(mu / (a * a * a));
+        final double eDot = meanMotion / (1.0 - e * cosE);
+        final double pvx = -a * sinE * eDot;
+        final double pvy = b * cosE * eDot;
+
+        // rotate by the argument of periapsis, the inclination and the longitude of the node
+        orientation(out);
+        final double xx = out[0];
+        final double yx = out[1];
+        final double zx = out[2];
+        final double xy = out[3];
+        final double yy = out[4];
+        final double zy = out[5];
+
+        out[0] = xx * px + xy * py;
+        out[1] = yx * px + yy * py;
+        out[2] = zx * px + zy * py;
+        out[3] = xx * pvx + xy * pvy;
+        out[4] = yx * pvx + yy * pvy;
+        out[5] = zx * pvx + zy * pvy;
+    }
+
+    /**
+     * Computes the orientation of the orbit in the reference frame: the unit vector P towards the periapsis
+     * and the unit vector Q, 90 degrees ahead of it in the direction of motion.
+     *
+     * @param out
+     *      The array receiving P (elements 0 to 2) and Q (elements 3 to 5).
+     */
+    void orientation(final double[] out) {
+        final double cosW = Math.cos(argumentOfPeriapsis);
+        final double sinW = Math.sin(argumentOfPeriapsis);
+        final double cosI = Math.cos(inclination);
+        final double sinI = Math.sin(inclination);
+        final double cosO = Math.cos(longitudeOfAscendingNode);
+        final double sinO = Math.sin(longitudeOfAscendingNode);
+        out[0] = cosO * cosW - sinO * sinW * cosI;
+        out[1] = sinO * cosW + cosO * sinW * cosI;
+        out[2] = sinW * sinI;
+        out[3] = -cosO * sinW - sinO * cosW * cosI;
+        out[4] = -sinO * sinW + cosO * cosW * cosI;
+        out[5] = cosW * sinI;
+    }
+}
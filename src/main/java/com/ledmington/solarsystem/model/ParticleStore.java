@@ -0,0 +1,185 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for massless test particles, like asteroids and Kuiper belt objects.
+ * <p>
+ * Test particles feel the gravity of the massive bodies of a {@link BodyStore} but do not attract
+ * anything, so they have no mass and no radius: only their positions and velocities are stored,
+ * in one primitive column per coordinate. As with the {@link BodyStore}, the columns may be longer
+ * than {@link #size()} and they are replaced when the store grows.
+ * <p>
+ * All the values are in SI units (meters, meters per second).
+ */
+public final class ParticleStore {
+
+    private static final int DEFAULT_CAPACITY = 1_024;
+
+    private int size = 0;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double[] vx;
+    private double[] vy;
+    private double[] vz;
+
+    /**
+     * Creates an empty store with a default initial capacity.
+     */
+    public ParticleStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store able to hold the given number of particles without growing.
+     *
+     * @param initialCapacity
+     *      The number of particles to preallocate space for.
+     */
+    public ParticleStore(final int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Cannot create a ParticleStore with negative capacity");
+        }
+        x = new double[initialCapacity];
+        y = new double[initialCapacity];
+        z = new double[initialCapacity];
+        vx = new double[initialCapacity];
+        vy = new double[initialCapacity];
+        vz = new double[initialCapacity];
+    }
+
+    /**
+     * Adds a new particle to the store.
+     *
+     * @return
+     *      The id of the new particle.
+     */
+    public int add(final double x, final double y, final double z, final double vx, final double vy, final double vz) {
+        ensureCapacity(size + 1);
+        final int id = size;
+        this.x[id] = x;
+        this.y[id] = y;
+        this.z[id] = z;
+        this.vx[id] = vx;
+        this.vy[id] = vy;
+        this.vz[id] = vz;
+        size++;
+        return id;
+    }
+
+    /**
+     * Makes sure that the store can hold at least the given number of particles without
+     * reallocating its columns.
+     *
+     * @param minCapacity
+     *      The minimum number of particles.
+     */
+    public void ensureCapacity(final int minCapacity) {
+        if (minCapacity <= x.length) {
+            return;
+        }
+        final int newCapacity = Math.max(minCapacity, Math.max(DEFAULT_CAPACITY, x.length + (x.length >> 1)));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        z = Arrays.copyOf(z, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+        vz = Arrays.copyOf(vz, newCapacity);
+    }
+
+    /**
+     * Changes the number of particles, growing the store if needed. The new particles have all their values
+     * set to zero, so that the columns can be filled in place.
+     *
+     * @param newSize
+     *      The new number of particles.
+     */
+    public void resize(final int newSize) {
+        if (newSize < 0) {
+            throw new IllegalArgumentException(String.format("Invalid size %d", newSize));
+        }
+        ensureCapacity(newSize);
+        if (newSize > size) {
+            Arrays.fill(x, size, newSize, 0.0);
+            Arrays.fill(y, size, newSize, 0.0);
+            Arrays.fill(z, size, newSize, 0.0);
+            Arrays.fill(vx, size, newSize, 0.0);
+            Arrays.fill(vy, size, newSize, 0.0);
+            Arrays.fill(vz, size, newSize, 0.0);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Copies the whole state of the given store into this one, growing it if needed.
+     * No allocation happens when this store is already big enough.
+     *
+     * @param other
+     *      The store to copy from.
+     */
+    public void copyFrom(final ParticleStore other) {
+        ensureCapacity(other.size);
+        System.arraycopy(other.x, 0, x, 0, other.size);
+        System.arraycopy(other.y, 0, y, 0, other.size);
+        System.arraycopy(other.z, 0, z, 0, other.size);
+        System.arraycopy(other.vx, 0, vx, 0, other.size);
+        System.arraycopy(other.vy, 0, vy, 0, other.size);
+        System.arraycopy(other.vz, 0, vz, 0, other.size);
+        size = other.size;
+    }
+
+    /**
+     * Returns a deep copy of this store.
+     */
+    public ParticleStore copy() {
+        final ParticleStore result = new ParticleStore(size);
+        result.copyFrom(this);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] x() {
+        return x;
+    }
+
+    public double[] y() {
+        return y;
+    }
+
+    public double[] z() {
+        return z;
+    }
+
+    public double[] vx() {
+        return vx;
+    }
+
+    public double[] vy() {
+        return vy;
+    }
+
+    public double[] vz() {
+        return vz;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Each value of this enumeration corresponds to a set of initial conditions that a simulation can start from.
+ */
+public enum Scenario {
+    SOLAR_SYSTEM("solar-system", () -> SolarSystem.store().copy()),
+    PLANETS(
+            "planets",
+            () -> subset(List.of(
+                    SolarSystem.SUN,
+                    SolarSystem.MERCURY,
+                    SolarSystem.VENUS,
+                    SolarSystem.EARTH,
+                    SolarSystem.MARS,
+                    SolarSystem.JUPITER,
+                    SolarSystem.SATURN,
+                    SolarSystem.URANUS,
+                    SolarSystem.NEPTUNE,
+                    SolarSystem.PLUTO)));
+
+    private final String name;
+    private final Supplier<BodyStore> constructor;
+
+    Scenario(final String name, final Supplier<BodyStore> constructor) {
+        this.name = name;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Copies the initial conditions of the given bodies, in order, into a new store.
+     */
+    private static BodyStore subset(final List<Body> bodies) {
+        final BodyStore store = new BodyStore(bodies.size());
+        for (final Body b : bodies) {
+            store.add(
+                    b.mass(),
+                    b.radius(),
+                    b.x(),
+                    b.y(),
+                    b.z(),
+                    b.store().vx()[b.id()],
+                    b.store().vy()[b.id()],
+                    b.store().vz()[b.id()]);
+        }
+        return store;
+    }
+
+    /**
+     * @return
+     *      The lowercase name of the Scenario.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return
+     *      A new store holding the initial conditions of this Scenario.
+     */
+    public BodyStore create() {
+        return constructor.get();
+    }
+
+    /**
+     * Looks for the Scenario with the given name.
+     *
+     * @param name
+     *      The lowercase name of the wanted Scenario.
+     * @return
+     *      The corresponding Scenario.
+     */
+    public static Scenario fromName(final String name) {
+        for (final Scenario s : values()) {
+            if (s.name.equals(name)) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown scenario '%s'", name));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import java.util.Objects;
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+
+/**
+ * Each value of this enumeration is a population of small bodies which can be seeded as test particles
+ * (see {@link ParticleStore}), sampling their orbital elements from simplified distributions.
+ * <p>
+ * The first body of the massive store is taken as the central one (the Sun): all the orbits are
+ * heliocentric and lie close to its reference plane.
+ */
+public enum SmallBodyPopulation {
+    /**
+     * The main asteroid belt between Mars and Jupiter, from 2.1 to 3.3 AU, without the Kirkwood gaps.
+     */
+    MAIN_BELT("main-belt", SmallBodyPopulation::mainBelt),
+
+    /**
+     * The Trojans of the most massive planet, around its L4 and L5 Lagrangian points.
+     */
+    TROJANS("trojans", SmallBodyPopulation::trojans),
+
+    /**
+     * The Kuiper belt: the classical objects between 42 and 48 AU and the plutinos,
+     * in 3:2 resonance with Neptune at 39.4 AU.
+     */
+    KUIPER_BELT("kuiper-belt", SmallBodyPopulation::kuiperBelt);
+
+    private interface Sampler {
+        OrbitalElements sample(BodyStore massive, Random rng);
+    }
+
+    private static final double AU = Constants.oneAstronomicalUnit;
+
+    /**
+     * The semi-major axes (in AU) of the main resonances with Jupiter, which are almost empty.
+     */
+    private static final double[] KIRKWOOD_GAPS = {2.502, 2.825, 2.958, 3.279};
+
+    private static final double KIRKWOOD_GAP_WIDTH = 0.015;
+
+    private final String name;
+    private final Sampler sampler;
+
+    SmallBodyPopulation(final String name, final Sampler sampler) {
+        this.name = name;
+        this.sampler = sampler;
+    }
+
+    /**
+     * @return
+     *      The lowercase name of the population.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Appends the given number of particles of this population to a ParticleStore.
+     *
+     * @param massive
+     *      The massive bodies, the first one being the central body.
+     * @param out
+     *      The store which receives the new particles.
+     * @param count
+     *      The number of particles to generate.
+     * @param rng
+     *      The source of randomness, so that populations are reproducible.
+     */
+    public void generate(final BodyStore massive, final ParticleStore out, final int count, final Random rng) {
+        Objects.requireNonNull(massive);
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(rng);
+        if (massive.size() == 0) {
+            throw new IllegalArgumentException("Cannot generate particles without a central body");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException(String.format("Invalid number of particles %d", count));
+        }
+        out.ensureCapacity(out.size() + count);
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * massive.mass()[0];
+        final double[] state = new double[6];
+        for (int i = 0; i < count; i++) {
+            sampler.sample(massive, rng).toCartesian(mu, state);
+            out.add(
+                    massive.x()[0] + state[0],
+                    massive.y()[0] + state[1],
+                    massive.z()[0] + state[2],
+                    massive.vx()[0] + state[3],
+                    massive.vy()[0] + state[4],
+                    massive.vz()[0] + state[5]);
+        }
+    }
+
+    /**
+     * Appends the given number of orbits of this population around the central body to a KeplerianOrbits,
+     * so that their bodies are placed analytically instead of being integrated as test particles.
+     *
+     * @param massive
+     *      The massive bodies, the first one being the central body.
+     * @param out
+     *      The store which receives the new orbits.
+     * @param count
+     *      The number of orbits to generate.
+     * @param rng
+     *      The source of randomness, so that populations are reproducible.
+     */
+    public void generate(final BodyStore massive, final KeplerianOrbits out, final int count, final Random rng) {
+        Objects.requireNonNull(massive);
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(rng);
+        if (massive.size() == 0) {
+            throw new IllegalArgumentException("Cannot generate orbits without a central body");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException(String.format("Invalid number of orbits %d", count));
+        }
+        out.ensureCapacity(out.size() + count);
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * massive.mass()[0];
+        for (int i = 0; i < count; i++) {
+            out.add(0, mu, sampler.sample(massive, rng));
+        }
+    }
+
+    /**
+     * Looks for the SmallBodyPopulation with the given name.
+     *
+     * @param name
+     *      The lowercase name of the wanted SmallBodyPopulation.
+     * @return
+     *      The corresponding SmallBodyPopulation.
+     */
+    public static SmallBodyPopulation fromName(final String name) {
+        for (final SmallBodyPopulation p : values()) {
+            if (p.name.equals(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown population '%s'", name));
+    }
+
+    private static OrbitalElements mainBelt(final BodyStore massive, final Random rng) {
+        double a;
+        do {
+            a = 2.1 + 1.2 * rng.nextDouble();
+        } while (isInKirkwoodGap(a));
+        double e;
+        do {
+            e = Math.abs(0.12 + 0.07 * rng.nextGaussian());
+        } while (e > 0.35);
+        return new OrbitalElements(a * AU, e, rayleigh(rng, 0.1), angle(rng), angle(rng), angle(rng));
+    }
+
+    private static boolean isInKirkwoodGap(final double a) {
+        for (final double gap : KIRKWOOD_GAPS) {
+            if (Math.abs(a - gap) < KIRKWOOD_GAP_WIDTH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static OrbitalElements trojans(final BodyStore massive, final Random rng) {
+        final int planet = mostMassivePlanet(massive);
+        final double dx = massive.x()[planet] - massive.x()[0];
+        final double dy = massive.y()[planet] - massive.y()[0];
+        final double dz = massive.z()[planet] - massive.z()[0];
+        final double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        final double planetLongitude = Math.atan2(dy, dx);
+
+        // leading (L4) or trailing (L5), spread along the tadpole orbits
+        final double offset = (rng.nextBoolean() ? 1.0 : -1.0) * Math.PI / 3.0;
+        final double longitude = planetLongitude + offset + Math.toRadians(10.0) * rng.nextGaussian();
+        final double a = distance * (1.0 + 0.01 * rng.nextGaussian());
+        final double node = angle(rng);
+        final double periapsis = angle(rng);
+        return new OrbitalElements(
+                a, 0.1 * rng.nextDouble(), rayleigh(rng, 0.15), node, periapsis, longitude - node - periapsis);
+    }
+
+    /**
+     * Returns the index of the most massive body besides the central one.
+     */
+    private static int mostMassivePlanet(final BodyStore massive) {
+        if (massive.size() < 2) {
+            throw new IllegalArgumentException("Cannot generate Trojans without a planet");
+        }
+        int result = 1;
+        for (int i = 2; i < massive.size(); i++) {
+            if (massive.mass()[i] > massive.mass()[result]) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    private static OrbitalElements kuiperBelt(final BodyStore massive, final Random rng) {
+        if (rng.nextInt(3) == 0) {
+            // plutino
+            return new OrbitalElements(
+                    (39.4 + 0.2 * rng.nextGaussian()) * AU,
+                    0.1 + 0.2 * rng.nextDouble(),
+                    rayleigh(rng, 0.15),
+                    angle(rng),
+                    angle(rng),
+                    angle(rng));
+        }
+        return new OrbitalElements(
+                (42.0 + 6.0 * rng.nextDouble()) * AU,
+                0.1 * rng.nextDouble(),
+                rayleigh(rng, 0.06),
+                angle(rng),
+                angle(rng),
+                angle(rng));
+    }
+
+    private static double angle(final Random rng) {
+        return 2.0 * Math.PI * rng.nextDouble();
+    }
+
+    /**
+     * Samples a Rayleigh distribution, typical of the inclinations of a dynamically cold population.
+     */
+    private static double rayleigh(final Random rng, final double sigma) {
+        return sigma * Math.sqrt(-2.0 * Math.log(1.0 - rng.nextDouble()));
+    }
+}
@@ -17,8 +17,8 @@
 */
 package com.ledmington.solarsystem.model;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Vector3;
@@ -28,6 +28,20 @@ import com.ledmington.solarsystem.Constants;
 public final class SolarSystem {
     private SolarSystem() {}
 
+    /**
+     * The store holding the initial conditions of all the bodies declared here.
+     * It must be declared before any Body, since they are appended to it during class initialization.
+     */
+    private static final BodyStore STORE = new BodyStore();
+
+    /**
+     * The orbits of the moons around their planets, in the same order as {@link #moons()}.
+     * Like the store, it must be declared before any Body.
+     */
+    private static final KeplerianOrbits MOON_ORBITS = new KeplerianOrbits(16);
+
+    private static final ImmutableList.Builder<Body> MOON_BUILDER = ImmutableList.builder();
+
     public static final Body SUN = Body.builder()
             .name("sun")
             .radius(696_340_000)
@@ -35,7 +49,7 @@ public final class SolarSystem {
             .position(Vector3.Zero.cpy())
             .speed(Vector3.Zero.cpy())
             .color(Color.GOLD)
-            .build();
+            .build(STORE);
     public static final Body MERCURY = Body.builder()
             .name("mercury")
             .radius(2_439_700)
@@ -44,7 +58,7 @@ public final class SolarSystem {
             .speed(new Vector3(0, 47_360, 0))
             .texture("mercury.jpg")
             .color(Color.RED)
-            .build();
+            .build(STORE);
     public static final Body VENUS = Body.builder()
             .name("venus")
             .radius(6_051_800)
@@ -53,7 +67,7 @@ public final class SolarSystem {
             .speed(new Vector3(0, 35_020, 0))
             .texture("venus.jpg")
             .color(Color.CYAN)
-            .build();
+            .build(STORE);
     public static final Body EARTH = Body.builder()
             .name("earth")
             .radius(6_371_000)
@@ -62,15 +76,11 @@ public final class SolarSystem {
             .speed(new Vector3(0, 29_782.7f, 0))
             .texture("earth.jpg")
             .color(Color.BLUE)
-            .build();
-    public static final Body MOON = Body.builder()
-            .name("moon")
-            .radius(1_737.5)
-            .mass(7.346e22)
-            .position(new Vector3(EARTH.position().x + 384_400_000.0f, 0, 0))
-            .speed(new Vector3(0, 29_782.7f, 0))
-            .texture("moon.jpg")
-            .build();
+            .build(STORE);
+    public static final Body MOON = orbiting(
+            EARTH,
+            new OrbitalElements(384_400_000.0, 0.0549, Math.toRadians(5.145), 0.0, 0.0, 0.0),
+            Body.builder().name("moon").radius(1_737.5).mass(7.346e22).texture("moon.jpg"));
     public static final Body MARS = Body.builder()
             .name("mars")
             .radius(3_389_500)
@@ -79,21 +89,15 @@ public final class SolarSystem {
             .speed(new Vector3(0, 24_070.0f, 0))
             .texture("mars.jpg")
             .color(Color.RED)
-            .build();
-    public static final Body PHOBOS = Body.builder()
-            .name("phobos")
-            .radius(11_010)
-            .mass(1.0659e16)
-            .position(new Vector3(MARS.position().x + 6_000_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
-    public static final Body DEIMOS = Body.builder()
-            .name("deimos")
-            .radius(6_200)
-            .mass(1.476e15)
-            .position(new Vector3(MARS.position().x + 23_460_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
+            .build(STORE);
+    public static final Body PHOBOS = orbiting(
+            MARS,
+            new OrbitalElements(9_376_000.0, 0.0151, Math.toRadians(1.093), 0.0, 0.0, 0.0),
+            Body.builder().name("phobos").radius(11_010).mass(1.0659e16));
+    public static final Body DEIMOS = orbiting(
+            MARS,
+            new OrbitalElements(23_463_200.0, 0.00033, Math.toRadians(0.93), 0.0, 0.0, 0.0),
+            Body.builder().name("deimos").radius(6_200).mass(1.476e15));
     public static final Body JUPITER = Body.builder()
             .name("jupiter")
             .radius(69_911_000)
@@ -102,35 +106,23 @@ public final class SolarSystem {
             .speed(new Vector3(0, 13_070.0f, 0))
             .texture("jupiter.jpg")
             .color(Color.RED)
-            .build();
-    public static final Body IO = Body.builder()
-            .name("io")
-            .radius(1_821_600)
-            .mass(8.932e22)
-            .position(new Vector3(JUPITER.position().x + 421_700_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
-    public static final Body EUROPA = Body.builder()
-            .name("europa")
-            .radius(1_560_800)
-            .mass(4.8e22)
-            .position(new Vector3(JUPITER.position().x + 670_900_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
-    public static final Body GANYMEDE = Body.builder()
-            .name("ganymede")
-            .radius(2_634_100)
-            .mass(1.482e23)
-            .position(new Vector3(JUPITER.position().x + 1_070_400_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
-    public static final Body CALLISTO = Body.builder()
-            .name("callisto")
-            .radius(2_410_300)
-            .mass(1.076e23)
-            .position(new Vector3(JUPITER.position().x + 1_883_000_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
+            .build(STORE);
+    public static final Body IO = orbiting(
+            JUPITER,
+            new OrbitalElements(421_700_000.0, 0.0041, Math.toRadians(0.05), 0.0, 0.0, 0.0),
+            Body.builder().name("io").radius(1_821_600).mass(8.932e22));
+    public static final Body EUROPA = orbiting(
+            JUPITER,
+            new OrbitalElements(670_900_000.0, 0.009, Math.toRadians(0.47), 0.0, 0.0, 0.0),
+            Body.builder().name("europa").radius(1_560_800).mass(4.8e22));
+    public static final Body GANYMEDE = orbiting(
+            JUPITER,
+            new OrbitalElements(1_070_400_000.0, 0.0013, Math.toRadians(0.2), 0.0, 0.0, 0.0),
+            Body.builder().name("ganymede").radius(2_634_100).mass(1.482e23));
+    public static final Body CALLISTO = orbiting(
+            JUPITER,
+            new OrbitalElements(1_882_700_000.0, 0.0074, Math.toRadians(0.192), 0.0, 0.0, 0.0),
+            Body.builder().name("callisto").radius(2_410_300).mass(1.076e23));
     public static final Body SATURN = Body.builder()
             .name("saturn")
             .radius(58_232_000)
@@ -139,21 +131,15 @@ public final class SolarSystem {
             .speed(new Vector3(0, 9_680, 0))
             .texture("saturn.jpg")
             .color(Color.CYAN)
-            .build();
-    public static final Body ENCELADUS = Body.builder()
-            .name("enceladus")
-            .radius(252_100)
-            .mass(1.08e20)
-            .position(new Vector3(SATURN.position().x + 238_000_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
-    public static final Body TITAN = Body.builder()
-            .name("titan")
-            .radius(2_574_730)
-            .mass(1.345e23)
-            .position(new Vector3(SATURN.position().x + 1_221_870_000.0f, 0, 0))
-            .speed(Vector3.Zero.cpy())
-            .build();
+            .build(STORE);
+    public static final Body ENCELADUS = orbiting(
+            SATURN,
+            new OrbitalElements(237_948_000.0, 0.0047, Math.toRadians(0.009), 0.0, 0.0, 0.0),
+            Body.builder().name("enceladus").radius(252_100).mass(1.08e20));
+    public static final Body TITAN = orbiting(
+            SATURN,
+            new OrbitalElements(1_221_870_000.0, 0.0288, Math.toRadians(0.34854), 0.0, 0.0, 0.0),
+            Body.builder().name("titan").radius(2_574_730).mass(1.345e23));
     public static final Body URANUS = Body.builder()
             .name("uranus")
             .radius(25_362_000)
@@ -162,7 +148,7 @@ public final class SolarSystem {
             .speed(new Vector3(0, 6_800, 0))
             .texture("uranus.jpg")
             .color(Color.WHITE)
-            .build();
+            .build(STORE);
     public static final Body NEPTUNE = Body.builder()
             .name("neptune")
             .radius(24_622_000)
@@ -171,7 +157,7 @@ public final class SolarSystem {
             .speed(new Vector3(0, 5_430, 0))
             .texture("neptune.jpg")
             .color(Color.WHITE)
-            .build();
+            .build(STORE);
     public static final Body PLUTO = Body.builder()
             .name("pluto")
             .radius(1_188_300)
@@ -179,35 +165,98 @@ public final class SolarSystem {
             .position(new Vector3((float) (39.5 * Constants.oneAstronomicalUnit), 0, 0))
             .speed(new Vector3(0, 4_743, 0))
             .color(Color.WHITE)
-            .build();
+            .build(STORE);
 
+    private static final List<Body> PLANETS = ImmutableList.of(
+            SUN,
+            MERCURY,
+            VENUS,
+            EARTH,
+            MOON,
+            MARS,
+            PHOBOS,
+            DEIMOS,
+            JUPITER,
+            IO,
+            EUROPA,
+            GANYMEDE,
+            CALLISTO,
+            SATURN,
+            ENCELADUS,
+            TITAN,
+            // TODO add Uranus moons
+            URANUS,
+            // TODO add Neptune moons
+            NEPTUNE,
+            // TODO add Pluto moons
+            PLUTO);
+
+    private static final List<Body> MOONS = MOON_BUILDER.build();
+
+    /**
+     * Builds a moon on the given orbit around its planet at time zero, where its state is appended to the store,
+     * and records the orbit for the analytic propagation.
+     */
+    private static Body orbiting(final Body parent, final OrbitalElements elements, final BodyBuilder builder) {
+        final Body moon = builder.build(STORE);
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * (parent.mass() + moon.mass());
+        final double[] state = new double[6];
+        elements.toCartesian(mu, state);
+        final int p = parent.id();
+        final int id = moon.id();
+        STORE.x()[id] = STORE.x()[p] + state[0];
+        STORE.y()[id] = STORE.y()[p] + state[1];
+        STORE.z()[id] = STORE.z()[p] + state[2];
+        STORE.vx()[id] = STORE.vx()[p] + state[3];
+        STORE.vy()[id] = STORE.vy()[p] + state[4];
+        STORE.vz()[id] = STORE.vz()[p] + state[5];
+        MOON_ORBITS.add(p, mu, elements);
+        MOON_BUILDER.add(moon);
+        return moon;
+    }
+
+    /**
+     * Returns all the bodies of the solar system, ordered by their id.
+     * The returned list is immutable and always the same instance.
+     */
     public static final List<Body> planets() {
-        return ImmutableList.<Body>builder()
-                .addAll(
-                        // making sure that we are not making duplicates
-                        Set.of(
-                                SUN,
-                                MERCURY,
-                                VENUS,
-                                EARTH,
-                                MOON,
-                                MARS,
-                                PHOBOS,
-                                DEIMOS,
-                                JUPITER,
-                                IO,
-                                EUROPA,
-                                GANYMEDE,
-                                CALLISTO,
-                                SATURN,
-                                ENCELADUS,
-                                TITAN,
-                                // TODO add Uranus moons
-                                URANUS,
-                                // TODO add Neptune moons
-                                NEPTUNE,
-                                // TODO add Pluto moons
-                                PLUTO))
-                .build();
+        return PLANETS;
+    }
+
+    /**
+     * Returns the moons, ordered by their id.
+     * The returned list is immutable and always the same instance.
+     */
+    public static List<Body> moons() {
+        return MOONS;
+    }
+
+    /**
+     * Returns the orbits of the moons around their planets, in the same order as {@link #moons()}: the parents
+     * are ids of bodies of the {@link #store()}. They must not be modified.
+     */
+    public static KeplerianOrbits moonOrbits() {
+        return MOON_ORBITS;
+    }
+
+    /**
+     * Returns the parent of each body of the {@link #store()}: the moons orbit their planets,
+     * the other bodies have no parent.
+     */
+    public static BodyHierarchy hierarchy() {
+        final int[] parents = new int[STORE.size()];
+        Arrays.fill(parents, BodyHierarchy.NO_PARENT);
+        for (int i = 0; i < MOONS.size(); i++) {
+            parents[MOONS.get(i).id()] = MOON_ORBITS.parent()[i];
+        }
+        return BodyHierarchy.of(parents);
+    }
+
+    /**
+     * Returns the store holding the initial conditions of all the bodies.
+     * Simulations should work on a {@link BodyStore#copy()} of it.
+     */
+    public static BodyStore store() {
+        return STORE;
     }
 }
@@ -0,0 +1,512 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Arrays;
+
+import com.ledmington.solarsystem.Constants;
+
+/**
+ * Approximates the gravitational accelerations in O(N log N) with a Barnes-Hut octree.
+ * <p>
+ * A group of bodies is replaced by its center of mass when it is seen under an angle
+ * smaller than the opening angle theta: theta = 0 gives the same result as the
+ * direct summation, bigger values are faster but less accurate (0.5 is the usual choice).
+ * <p>
+ * The nodes of the tree are kept in a structure-of-arrays pool which is reused
+ * across calls and only grows when needed, so no garbage is created once warmed up.
+ * The tree can be fully rebuilt on every call or only every few calls: in the latter
+ * case the structure of the tree is kept and only the masses, centers of mass and
+ * bounding boxes of the nodes are refitted to the new positions, which is much cheaper
+ * and remains correct (only the quality of the approximation degrades as the bodies move).
+ */
+public final class BarnesHutSolver implements ForceSolver {
+
+    /**
+     * Nodes deeper than this hold all their bodies in a single leaf,
+     * to avoid infinite subdivisions with coincident bodies.
+     */
+    private static final int MAX_DEPTH = 48;
+
+    private static final int NO_NODE = -1;
+    private static final int EMPTY = -1;
+    private static final int INTERNAL = -2;
+
+    private final double thetaSquared;
+    private final double softeningSquared;
+    private final int rebuildInterval;
+    private int callsSinceRebuild = 0;
+    private int bodiesInTree = -1;
+
+    // node pool
+    private int nodeCount = 0;
+    private double[] centerX = new double[0];
+    private double[] centerY = new double[0];
+    private double[] centerZ = new double[0];
+    private double[] halfSize = new double[0];
+    private int[] depth = new int[0];
+    private int[] parent = new int[0];
+    private int[] children = new int[0];
+    private int[] firstBody = new int[0];
+    private double[] nodeMass = new double[0];
+    private double[] comX = new double[0];
+    private double[] comY = new double[0];
+    private double[] comZ = new double[0];
+    private double[] minX = new double[0];
+    private double[] minY = new double[0];
+    private double[] minZ = new double[0];
+    private double[] maxX = new double[0];
+    private double[] maxY = new double[0];
+    private double[] maxZ = new double[0];
+    private double[] sizeSquared = new double[0];
+
+    // per-body linked lists of the bodies inside each leaf
+    private int[] nextBody = new int[0];
+
+    private final int[] stack = new int[8 * (MAX_DEPTH + 2)];
+
+    /**
+     * Creates a BarnesHutSolver with the given opening angle, which rebuilds the tree at every call.
+     *
+     * @param theta
+     *      The opening angle.
+     */
+    public BarnesHutSolver(final double theta) {
+        this(theta, 0.0, 1);
+    }
+
+    /**
+     * Creates a BarnesHutSolver.
+     *
+     * @param theta
+     *      The opening angle.
+     * @param softening
+     *      The Plummer softening length (in m).
+     * @param rebuildInterval
+     *      The tree is rebuilt once every this many calls and refitted in the others.
+     */
+    public BarnesHutSolver(final double theta, final double softening, final int rebuildInterval) {
+        if (theta < 0.0) {
+            throw new IllegalArgumentException("Cannot set a negative opening angle");
+        }
+        if (softening < 0.0) {
+            throw new IllegalArgumentException("Cannot set a negative softening length");
+        }
+        if (rebuildInterval < 1) {
+            throw new IllegalArgumentException("The rebuild interval must be at least 1");
+        }
+        this.thetaSquared = theta * theta;
+        this.softeningSquared = softening * softening;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    public double theta() {
+        return Math.sqrt(thetaSquared);
+    }
+
+    /**
+     * @return
+     *      The number of nodes of the current tree.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        prepare(n, x, y, z, mass);
+        computeAccelerations(0, n, x, y, z, mass, ax, ay, az);
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        prepare(n, x, y, z, mass);
+        computeAccelerations(targets, 0, count, x, y, z, mass, ax, ay, az, stack);
+    }
+
+    /**
+     * Builds or refits the tree over the given bodies.
+     * Must be called before {@link #computeAccelerations(int, int, double[], double[], double[], double[],
+     * double[], double[], double[])}.
+     */
+    void prepare(final int n, final double[] x, final double[] y, final double[] z, final double[] mass) {
+        if (n != bodiesInTree || ++callsSinceRebuild >= rebuildInterval) {
+            build(n, x, y, z);
+            callsSinceRebuild = 0;
+            bodiesInTree = n;
+        }
+        summarize(x, y, z, mass);
+    }
+
+    /**
+     * Computes the accelerations of the targets in [from; to) by walking the tree built by the last call
+     * to {@link #prepare}. Does not modify the tree, so it can be called concurrently on disjoint ranges,
+     * each with its own traversal stack.
+     */
+    void computeAccelerations(
+            final int from,
+            final int to,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        computeAccelerations(from, to, x, y, z, mass, ax, ay, az, stack);
+    }
+
+    void computeAccelerations(
+            final int from,
+            final int to,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final int[] stack) {
+        for (int i = from; i < to; i++) {
+            accelerationOf(i, x, y, z, mass, ax, ay, az, stack);
+        }
+    }
+
+    /**
+     * Computes the accelerations of the targets in targets[from; to) by walking the tree built
+     * by the last call to {@link #prepare}, like {@link #computeAccelerations(int, int, double[], double[],
+     * double[], double[], double[], double[], double[], int[])}.
+     */
+    void computeAccelerations(
+            final int[] targets,
+            final int from,
+            final int to,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final int[] stack) {
+        for (int k = from; k < to; k++) {
+            accelerationOf(targets[k], x, y, z, mass, ax, ay, az, stack);
+        }
+    }
+
+    private void accelerationOf(
+            final int i,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final int[] stack) {
+        final double g = Constants.GRAVITATIONAL_CONSTANT;
+        final double xi = x[i];
+        final double yi = y[i];
+        final double zi = z[i];
+        double sx = 0.0;
+        double sy = 0.0;
+        double sz = 0.0;
+
+        int top = 0;
+        if (nodeCount > 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            final int node = stack[--top];
+            if (nodeMass[node] == 0.0) {
+                continue;
+            }
+            if (firstBody[node] != INTERNAL) {
+                // leaf: direct summation over its bodies
+                for (int j = firstBody[node]; j != EMPTY; j = nextBody[j]) {
+                    if (j == i) {
+                        continue;
+                    }
+                    final double dx = x[j] - xi;
+                    final double dy = y[j] - yi;
+                    final double dz = z[j] - zi;
+                    final double invR = 1.0 / Math.sqrt(dx * dx + dy * dy + dz * dz + softeningSquared);
+                    final double f = mass[j] * invR * invR * invR;
+                    sx += f * dx;
+                    sy += f * dy;
+                    sz += f * dz;
+                }
+                continue;
+            }
+
+            final double dx = comX[node] - xi;
+            final double dy = comY[node] - yi;
+            final double dz = comZ[node] - zi;
+            final double d2 = dx * dx + dy * dy + dz * dz;
+            final boolean inside = xi >= minX[node]
+                    && xi <= maxX[node]
+                    && yi >= minY[node]
+                    && yi <= maxY[node]
+                    && zi >= minZ[node]
+                    && zi <= maxZ[node];
+            if (!inside && sizeSquared[node] < thetaSquared * d2) {
+                // far enough: use the center of mass
+                final double invR = 1.0 / Math.sqrt(d2 + softeningSquared);
+                final double f = nodeMass[node] * invR * invR * invR;
+                sx += f * dx;
+                sy += f * dy;
+                sz += f * dz;
+            } else {
+                final int base = 8 * node;
+                for (int k = 0; k < 8; k++) {
+                    if (children[base + k] != NO_NODE) {
+                        stack[top++] = children[base + k];
+                    }
+                }
+            }
+        }
+
+        ax[i] = g * sx;
+        ay[i] = g * sy;
+        az[i] = g * sz;
+    }
+
+    /**
+     * @return
+     *      A new stack big enough for a concurrent traversal of the tree.
+     */
+    static int[] newTraversalStack() {
+        return new int[8 * (MAX_DEPTH + 2)];
+    }
+
+    private void build(final int n, final double[] x, final double[] y, final double[] z) {
+        nodeCount = 0;
+        if (nextBody.length < n) {
+            nextBody = new int[n];
+        }
+        ensureNodeCapacity(2 * n + 1);
+        if (n == 0) {
+            return;
+        }
+
+        double lowX = Double.POSITIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY;
+        double lowZ = Double.POSITIVE_INFINITY;
+        double highX = Double.NEGATIVE_INFINITY;
+        double highY = Double.NEGATIVE_INFINITY;
+        double highZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            lowX = Math.min(lowX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            lowZ = Math.min(lowZ, z[i]);
+            highX = Math.max(highX, x[i]);
+            highY = Math.max(highY, y[i]);
+            highZ = Math.max(highZ, z[i]);
+        }
+        final double half = 0.5 * Math.max(highX - lowX, Math.max(highY - lowY, highZ - lowZ)) * (1.0 + 1e-9) + 1.0;
+        newNode(NO_NODE, 0.5 * (lowX + highX), 0.5 * (lowY + highY), 0.5 * (lowZ + highZ), half);
+
+        for (int i = 0; i < n; i++) {
+            insert(i, x, y, z);
+        }
+    }
+
+    private void insert(final int body, final double[] x, final double[] y, final double[] z) {
+        int node = 0;
+        while (true) {
+            if (firstBody[node] == INTERNAL) {
+                final int octant = octant(node, x[body], y[body], z[body]);
+                final int child = children[8 * node + octant];
+                if (child == NO_NODE) {
+                    final int newChild = newChildNode(node, octant);
+                    firstBody[newChild] = body;
+                    nextBody[body] = EMPTY;
+                    return;
+                }
+                node = child;
+                continue;
+            }
+
+            if (firstBody[node] == EMPTY) {
+                firstBody[node] = body;
+                nextBody[body] = EMPTY;
+                return;
+            }
+
+            if (depth[node] >= MAX_DEPTH) {
+                nextBody[body] = firstBody[node];
+                firstBody[node] = body;
+                return;
+            }
+
+            // split the leaf, moving its only body one level down
+            final int existing = firstBody[node];
+            firstBody[node] = INTERNAL;
+            final int newChild = newChildNode(node, octant(node, x[existing], y[existing], z[existing]));
+            firstBody[newChild] = existing;
+            nextBody[existing] = EMPTY;
+        }
+    }
+
+    private int octant(final int node, final double px, final double py, final double pz) {
+        return (px >= centerX[node] ? 1 : 0) | (py >= centerY[node] ? 2 : 0) | (pz >= centerZ[node] ? 4 : 0);
+    }
+
+    private int newChildNode(final int parentNode, final int octant) {
+        final double h = 0.5 * halfSize[parentNode];
+        final int child = newNode(
+                parentNode,
+                centerX[parentNode] + ((octant & 1) != 0 ? h : -h),
+                centerY[parentNode] + ((octant & 2) != 0 ? h : -h),
+                centerZ[parentNode] + ((octant & 4) != 0 ? h : -h),
+                h);
+        // the pool may have grown, so the children array is read again here
+        children[8 * parentNode + octant] = child;
+        return child;
+    }
+
+    private int newNode(final int parentNode, final double cx, final double cy, final double cz, final double h) {
+        ensureNodeCapacity(nodeCount + 1);
+        final int node = nodeCount++;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        centerZ[node] = cz;
+        halfSize[node] = h;
+        parent[node] = parentNode;
+        depth[node] = parentNode == NO_NODE ? 0 : depth[parentNode] + 1;
+        firstBody[node] = EMPTY;
+        Arrays.fill(children, 8 * node, 8 * node + 8, NO_NODE);
+        return node;
+    }
+
+    /**
+     * Recomputes mass, center of mass and bounding box of each node, bottom-up.
+     * Children are always created after their parent, so visiting the nodes
+     * in reverse order guarantees that all the children of a node have been
+     * completed before the node itself.
+     */
+    private void summarize(final double[] x, final double[] y, final double[] z, final double[] mass) {
+        for (int node = 0; node < nodeCount; node++) {
+            nodeMass[node] = 0.0;
+            comX[node] = 0.0;
+            comY[node] = 0.0;
+            comZ[node] = 0.0;
+            minX[node] = Double.POSITIVE_INFINITY;
+            minY[node] = Double.POSITIVE_INFINITY;
+            minZ[node] = Double.POSITIVE_INFINITY;
+            maxX[node] = Double.NEGATIVE_INFINITY;
+            maxY[node] = Double.NEGATIVE_INFINITY;
+            maxZ[node] = Double.NEGATIVE_INFINITY;
+        }
+
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (firstBody[node] != INTERNAL) {
+                for (int j = firstBody[node]; j != EMPTY; j = nextBody[j]) {
+                    nodeMass[node] += mass[j];
+                    comX[node] += mass[j] * x[j];
+                    comY[node] += mass[j] * y[j];
+                    comZ[node] += mass[j] * z[j];
+                    minX[node] = Math.min(minX[node], x[j]);
+                    minY[node] = Math.min(minY[node], y[j]);
+                    minZ[node] = Math.min(minZ[node], z[j]);
+                    maxX[node] = Math.max(maxX[node], x[j]);
+                    maxY[node] = Math.max(maxY[node], y[j]);
+                    maxZ[node] = Math.max(maxZ[node], z[j]);
+                }
+            }
+
+            // here the sums of this node are complete
+            final double m = nodeMass[node];
+            final double weightedX = comX[node];
+            final double weightedY = comY[node];
+            final double weightedZ = comZ[node];
+            if (m > 0.0) {
+                comX[node] = weightedX / m;
+                comY[node] = weightedY / m;
+                comZ[node] = weightedZ / m;
+            } else {
+                comX[node] = 0.5 * (minX[node] + maxX[node]);
+                comY[node] = 0.5 * (minY[node] + maxY[node]);
+                comZ[node] = 0.5 * (minZ[node] + maxZ[node]);
+            }
+            final double sx = maxX[node] - minX[node];
+            final double sy = maxY[node] - minY[node];
+            final double sz = maxZ[node] - minZ[node];
+            final double s = Math.max(sx, Math.max(sy, sz));
+            sizeSquared[node] = s * s;
+
+            final int p = parent[node];
+            if (p != NO_NODE) {
+                nodeMass[p] += m;
+                comX[p] += weightedX;
+                comY[p] += weightedY;
+                comZ[p] += weightedZ;
+                minX[p] = Math.min(minX[p], minX[node]);
+                minY[p] = Math.min(minY[p], minY[node]);
+                minZ[p] = Math.min(minZ[p], minZ[node]);
+                maxX[p] = Math.max(maxX[p], maxX[node]);
+                maxY[p] = Math.max(maxY[p], maxY[node]);
+                maxZ[p] = Math.max(maxZ[p], maxZ[node]);
+            }
+        }
+    }
+
+    private void ensureNodeCapacity(final int minCapacity) {
+        if (minCapacity <= centerX.length) {
+            return;
+        }
+        final int capacity = Math.max(minCapacity, centerX.length + (centerX.length >> 1));
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        centerZ = Arrays.copyOf(centerZ, capacity);
+        halfSize = Arrays.copyOf(halfSize, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        children = Arrays.copyOf(children, 8 * capacity);
+        firstBody = Arrays.copyOf(firstBody, capacity);
+        nodeMass = Arrays.copyOf(nodeMass, capacity);
+        comX = Arrays.copyOf(comX, capacity);
+        comY = Arrays.copyOf(comY, capacity);
+        comZ = Arrays.copyOf(comZ, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        minZ = Arrays.copyOf(minZ, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        maxZ = Arrays.copyOf(maxZ, capacity);
+        sizeSquared = Arrays.copyOf(sizeSquared, capacity);
+    }
+}
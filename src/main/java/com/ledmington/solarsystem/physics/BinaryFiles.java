@@ -0,0 +1,107 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utilities for the binary files of the simulation, made of a header and of columns of little-endian doubles.
+ */
+final class BinaryFiles {
+
+    /**
+     * The size of the direct buffer through which the columns are written.
+     */
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private BinaryFiles() {}
+
+    /**
+     * Writes the given header followed by the first elements of each column. The file is written to a
+     * temporary file in the same directory first and then moved over the given one, so that an interrupted
+     * write leaves the previous file as it was.
+     *
+     * @param file
+     *      The file to write.
+     * @param header
+     *      The header, ready to be read.
+     * @param lengths
+     *      The number of elements to write of each column.
+     * @param columns
+     *      The columns, written one after the other.
+     * @throws IOException
+     *      If the file cannot be written.
+     */
+    static void writeDoublesAtomically(
+            final Path file, final ByteBuffer header, final int[] lengths, final double[]... columns)
+            throws IOException {
+        if (lengths.length != columns.length) {
+            throw new IllegalArgumentException(
+                    String.format("%d lengths were given, but %d columns", lengths.length, columns.length));
+        }
+        int longest = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (lengths[i] < 0 || lengths[i] > columns[i].length) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid length %d of a column of %d elements", lengths[i], columns[i].length));
+            }
+            longest = Math.max(longest, lengths[i]);
+        }
+
+        final Path target = file.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        final Path tmp =
+                Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            final ByteBuffer chunk = ByteBuffer.allocateDirect(
+                            Math.min(CHUNK_BYTES, longest * Double.BYTES + Double.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            final DoubleBuffer doubles = chunk.asDoubleBuffer();
+            final int perChunk = doubles.capacity();
+            for (int i = 0; i < columns.length; i++) {
+                for (int start = 0; start < lengths[i]; start += perChunk) {
+                    final int count = Math.min(perChunk, lengths[i] - start);
+                    doubles.clear();
+                    doubles.put(columns[i], start, count);
+                    chunk.clear().limit(count * Double.BYTES);
+                    writeFully(channel, chunk);
+                }
+            }
+            channel.force(false);
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
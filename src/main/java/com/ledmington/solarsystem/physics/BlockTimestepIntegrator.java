@@ -0,0 +1,242 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Arrays;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * Second-order integrator with individual timesteps, organized in power-of-two block levels.
+ * <p>
+ * The timestep passed to {@link #step} is the one of level 0, each level L uses dt / 2^L.
+ * Every body has its own level and is advanced with a kick-drift-kick leapfrog step of its own length.
+ * Whenever some bodies end their step, all the other ones are predicted at that time with a second-order
+ * Taylor expansion (which at the end of their own step coincides with the leapfrog drift), then only
+ * the accelerations of the bodies ending their step are recomputed and they receive their closing kick.
+ * Since the steps of the coarser levels are multiples of the ones of the finer levels,
+ * the kicks of all the levels are synchronized, and all the bodies are synchronized again
+ * at the end of each call.
+ * <p>
+ * The step of each body is chosen as {@code eta * |a| / |da/dt|}, where the time derivative of the
+ * acceleration is estimated from the last two kicks: a moon whose acceleration turns around in a few
+ * hours gets a fine level, a distant planet a coarse one, so the cost scales with the dynamics of each
+ * body instead of with the fastest one. Bodies may move to a finer level at the end of any of their steps,
+ * but to a coarser one only one level at a time and when the two levels are synchronized.
+ * At the beginning (and after {@link #reset()}) all the bodies start from the finest level.
+ */
+public final class BlockTimestepIntegrator implements Integrator {
+
+    /**
+     * The maximum number of levels, so that the number of substeps fits in an int.
+     */
+    public static final int MAX_LEVELS = 30;
+
+    private final int maxLevel;
+    private final double eta;
+    private final int[] bodiesPerLevel;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+    private double[] startX;
+    private double[] startY;
+    private double[] startZ;
+    private double[] oldAx;
+    private double[] oldAy;
+    private double[] oldAz;
+    private int[] level;
+    private int[] active;
+    private boolean accelerationsAreValid = false;
+    private long evaluations = 0L;
+
+    /**
+     * Creates a BlockTimestepIntegrator.
+     *
+     * @param maxLevel
+     *      The finest level: the smallest step of a body is dt / 2^maxLevel.
+     * @param eta
+     *      The accuracy parameter: smaller values mean smaller steps.
+     */
+    public BlockTimestepIntegrator(final int maxLevel, final double eta) {
+        if (maxLevel < 0 || maxLevel > MAX_LEVELS) {
+            throw new IllegalArgumentException(
+                    String.format("The maximum level must be between 0 and %d, was %d", MAX_LEVELS, maxLevel));
+        }
+        if (!(eta > 0.0) || !Double.isFinite(eta)) {
+            throw new IllegalArgumentException(String.format("Invalid accuracy parameter %f", eta));
+        }
+        this.maxLevel = maxLevel;
+        this.eta = eta;
+        this.bodiesPerLevel = new int[maxLevel + 1];
+    }
+
+    /**
+     * @param id
+     *      The index of a body.
+     * @return
+     *      The current level of the given body.
+     */
+    public int level(final int id) {
+        return level[id];
+    }
+
+    /**
+     * @return
+     *      The total number of single-body force evaluations performed so far.
+     */
+    public long evaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        final int n = store.size();
+        if (ax == null || ax.length < n) {
+            accelerationsAreValid = false;
+        }
+        ax = Buffers.ensure(ax, n);
+        ay = Buffers.ensure(ay, n);
+        az = Buffers.ensure(az, n);
+        oldAx = Buffers.ensure(oldAx, n);
+        oldAy = Buffers.ensure(oldAy, n);
+        oldAz = Buffers.ensure(oldAz, n);
+        startX = Buffers.ensure(startX, n);
+        startY = Buffers.ensure(startY, n);
+        startZ = Buffers.ensure(startZ, n);
+        level = Buffers.ensure(level, n);
+        active = Buffers.ensure(active, n);
+
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        final double[] mass = store.mass();
+
+        if (!accelerationsAreValid) {
+            solver.computeAccelerations(n, x, y, z, mass, ax, ay, az);
+            evaluations += n;
+            Arrays.fill(level, 0, n, maxLevel);
+            Arrays.fill(bodiesPerLevel, 0);
+            bodiesPerLevel[maxLevel] = n;
+            accelerationsAreValid = true;
+        }
+
+        // all the bodies are synchronized here: each of them begins a step
+        System.arraycopy(x, 0, startX, 0, n);
+        System.arraycopy(y, 0, startY, 0, n);
+        System.arraycopy(z, 0, startZ, 0, n);
+
+        final int ticks = 1 << maxLevel;
+        final double h = dt / ticks;
+        int t = 0;
+        while (t < ticks) {
+            t += span(finestOccupiedLevel());
+
+            // predict everybody at the current time and find the bodies ending their step now
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                final int span = span(level[i]);
+                final int elapsed = t % span == 0 ? span : t % span;
+                final double tau = elapsed * h;
+                x[i] = startX[i] + (vx[i] + 0.5 * ax[i] * tau) * tau;
+                y[i] = startY[i] + (vy[i] + 0.5 * ay[i] * tau) * tau;
+                z[i] = startZ[i] + (vz[i] + 0.5 * az[i] * tau) * tau;
+                if (elapsed == span) {
+                    oldAx[count] = ax[i];
+                    oldAy[count] = ay[i];
+                    oldAz[count] = az[i];
+                    active[count++] = i;
+                }
+            }
+
+            solver.computeAccelerations(n, x, y, z, mass, active, count, ax, ay, az);
+            evaluations += count;
+
+            for (int k = 0; k < count; k++) {
+                final int i = active[k];
+                final double stepLength = span(level[i]) * h;
+                final double halfStep = 0.5 * stepLength;
+                vx[i] += (oldAx[k] + ax[i]) * halfStep;
+                vy[i] += (oldAy[k] + ay[i]) * halfStep;
+                vz[i] += (oldAz[k] + az[i]) * halfStep;
+                startX[i] = x[i];
+                startY[i] = y[i];
+                startZ[i] = z[i];
+
+                final double dax = ax[i] - oldAx[k];
+                final double day = ay[i] - oldAy[k];
+                final double daz = az[i] - oldAz[k];
+                final double jerk = Math.sqrt(dax * dax + day * day + daz * daz) / stepLength;
+                final double acceleration = Math.sqrt(ax[i] * ax[i] + ay[i] * ay[i] + az[i] * az[i]);
+                final double wanted = jerk > 0.0 ? eta * acceleration / jerk : dt;
+                changeLevel(i, levelFor(wanted, dt), t);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of substeps of the given level.
+     */
+    private int span(final int l) {
+        return 1 << (maxLevel - l);
+    }
+
+    private int finestOccupiedLevel() {
+        for (int l = maxLevel; l > 0; l--) {
+            if (bodiesPerLevel[l] > 0) {
+                return l;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the coarsest level whose step is not longer than the wanted one.
+     */
+    private int levelFor(final double wanted, final double dt) {
+        int l = 0;
+        double stepLength = dt;
+        while (l < maxLevel && stepLength > wanted) {
+            stepLength *= 0.5;
+            l++;
+        }
+        return l;
+    }
+
+    private void changeLevel(final int i, final int wanted, final int t) {
+        final int current = level[i];
+        int next = current;
+        if (wanted > current) {
+            next = wanted;
+        } else if (wanted < current && t % span(current - 1) == 0) {
+            next = current - 1;
+        }
+        if (next != current) {
+            bodiesPerLevel[current]--;
+            bodiesPerLevel[next]++;
+            level[i] = next;
+        }
+    }
+
+    @Override
+    public void reset() {
+        accelerationsAreValid = false;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * Utilities for the scratch buffers of the integrators and solvers.
+ */
+final class Buffers {
+
+    private Buffers() {}
+
+    /**
+     * Returns the given buffer if it can hold at least n elements, otherwise a new bigger one.
+     * The content of the buffer is not preserved when it grows.
+     */
+    static double[] ensure(final double[] buffer, final int n) {
+        if (buffer != null && buffer.length >= n) {
+            return buffer;
+        }
+        return new double[Math.max(n, buffer == null ? 0 : buffer.length + (buffer.length >> 1))];
+    }
+
+    /**
+     * Returns the given buffer if it can hold at least n elements, otherwise a new bigger one.
+     * The content of the buffer is not preserved when it grows.
+     */
+    static int[] ensure(final int[] buffer, final int n) {
+        if (buffer != null && buffer.length >= n) {
+            return buffer;
+        }
+        return new int[Math.max(n, buffer == null ? 0 : buffer.length + (buffer.length >> 1))];
+    }
+}
@@ -0,0 +1,277 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.ParticleStore;
+
+/**
+ * The state of a {@link Simulation} saved to a binary file, from which a run can be resumed.
+ * <p>
+ * The file is little-endian and starts with a header of {@value #HEADER_SIZE} bytes:
+ * <pre>
+ * offset  size  content
+ *      0     4  the magic number "SSCK"
+ *      4     4  the version of the format, currently {@value #VERSION}
+ *      8     4  the number of bodies N
+ *     12     4  the number of test particles P
+ *     16     8  the simulated time (in s)
+ *     24     8  the number of steps
+ *     32    32  reserved, zero
+ * </pre>
+ * followed by one block of doubles per column: x, y, z, vx, vy, vz, mass and radius of the bodies
+ * (N doubles each), then x, y, z, vx, vy and vz of the test particles (P doubles each). Since the columns
+ * have the same layout of the stores, saving and restoring are bulk copies: the file is written through a
+ * direct buffer and read back through a memory mapping.
+ * <p>
+ * The state cached by the integrators (like the predictors of Gauss-Radau) is not saved: it is rebuilt at
+ * the first step after resuming.
+ */
+public final class Checkpoint {
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 'S' | 'S' << 8 | 'C' << 16 | 'K' << 24;
+    private static final int BODY_COLUMNS = 8;
+    private static final int PARTICLE_COLUMNS = 6;
+
+    private final BodyStore bodies;
+    private final ParticleStore particles;
+    private final double time;
+    private final long steps;
+
+    private Checkpoint(final BodyStore bodies, final ParticleStore particles, final double time, final long steps) {
+        this.bodies = bodies;
+        this.particles = particles;
+        this.time = time;
+        this.steps = steps;
+    }
+
+    /**
+     * @return
+     *      The saved bodies.
+     */
+    public BodyStore bodies() {
+        return bodies;
+    }
+
+    /**
+     * @return
+     *      The saved test particles, or null if there were none.
+     */
+    public ParticleStore particles() {
+        return particles;
+    }
+
+    /**
+     * @return
+     *      The simulated time when the checkpoint was saved (in s).
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * @return
+     *      The number of steps performed when the checkpoint was saved.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * Saves the state of the given simulation. The file is written to a temporary file first and then moved,
+     * so that an interrupted save never corrupts the previous checkpoint.
+     *
+     * @param simulation
+     *      The simulation to save, which must not be stepped meanwhile.
+     * @param file
+     *      The file to write.
+     * @throws IOException
+     *      If the file cannot be written.
+     */
+    public static void write(final Simulation simulation, final Path file) throws IOException {
+        final BodyStore store = simulation.store();
+        final ParticleStore ps = simulation.particles();
+        final int n = store.size();
+        final int p = ps == null ? 0 : ps.size();
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(n)
+                .putInt(p)
+                .putDouble(simulation.time())
+                .putLong(simulation.steps())
+                .position(HEADER_SIZE)
+                .flip();
+
+        if (ps == null) {
+            BinaryFiles.writeDoublesAtomically(
+                    file,
+                    header,
+                    new int[] {n, n, n, n, n, n, n, n},
+                    store.x(),
+                    store.y(),
+                    store.z(),
+                    store.vx(),
+                    store.vy(),
+                    store.vz(),
+                    store.mass(),
+                    store.radius());
+        } else {
+            BinaryFiles.writeDoublesAtomically(
+                    file,
+                    header,
+                    new int[] {n, n, n, n, n, n, n, n, p, p, p, p, p, p},
+                    store.x(),
+                    store.y(),
+                    store.z(),
+                    store.vx(),
+                    store.vy(),
+                    store.vz(),
+                    store.mass(),
+                    store.radius(),
+                    ps.x(),
+                    ps.y(),
+                    ps.z(),
+                    ps.vx(),
+                    ps.vy(),
+                    ps.vz());
+        }
+    }
+
+    /**
+     * Reads a checkpoint.
+     *
+     * @param file
+     *      The file to read.
+     * @return
+     *      The saved state.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a valid checkpoint.
+     */
+    public static Checkpoint read(final Path file) throws IOException {
+        final MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        String.format("'%s' is too large (%,d bytes)", file, channel.size()));
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapping.capacity() < HEADER_SIZE || mapping.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(String.format("'%s' is not a checkpoint", file));
+        }
+        final int version = mapping.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    String.format("'%s' has version %d, only version %d is supported", file, version, VERSION));
+        }
+        final int n = mapping.getInt(8);
+        final int p = mapping.getInt(12);
+        final double time = mapping.getDouble(16);
+        final long steps = mapping.getLong(24);
+        final long expectedSize = HEADER_SIZE + ((long) BODY_COLUMNS * n + (long) PARTICLE_COLUMNS * p) * Double.BYTES;
+        if (n < 0 || p < 0 || mapping.capacity() != expectedSize) {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' has %,d bytes, but %d bodies and %d test particles need %,d",
+                    file, mapping.capacity(), n, p, expectedSize));
+        }
+        if (!Double.isFinite(time) || steps < 0L) {
+            throw new IllegalArgumentException(
+                    String.format("'%s' has invalid time %f and steps %d", file, time, steps));
+        }
+
+        int offset = HEADER_SIZE;
+        final BodyStore bodies = new BodyStore(n);
+        bodies.resize(n);
+        final double[][] bodyColumns = {
+            bodies.x(), bodies.y(), bodies.z(), bodies.vx(), bodies.vy(), bodies.vz(), bodies.mass(), bodies.radius()
+        };
+        for (final double[] column : bodyColumns) {
+            readColumn(mapping, offset, column, n);
+            offset += n * Double.BYTES;
+        }
+
+        ParticleStore particles = null;
+        if (p > 0) {
+            particles = new ParticleStore(p);
+            particles.resize(p);
+            final double[][] particleColumns = {
+                particles.x(), particles.y(), particles.z(), particles.vx(), particles.vy(), particles.vz()
+            };
+            for (final double[] column : particleColumns) {
+                readColumn(mapping, offset, column, p);
+                offset += p * Double.BYTES;
+            }
+        }
+        return new Checkpoint(bodies, particles, time, steps);
+    }
+
+    private static void readColumn(
+            final MappedByteBuffer mapping, final int offset, final double[] column, final int count) {
+        mapping.slice(offset, count * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer()
+                .get(column, 0, count);
+    }
+
+    /**
+     * Copies the saved state into the given simulation, which must have the same number of bodies
+     * and, if there are test particles, a store for them.
+     *
+     * @param simulation
+     *      The simulation to restore, which must not be stepped meanwhile.
+     * @throws IllegalArgumentException
+     *      If the simulation cannot hold the saved state.
+     */
+    public void restore(final Simulation simulation) {
+        Objects.requireNonNull(simulation);
+        if (simulation.store().size() != bodies.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot restore %d bodies into a simulation of %d",
+                    bodies.size(), simulation.store().size()));
+        }
+        if (particles != null && simulation.particles() == null) {
+            throw new IllegalArgumentException(
+                    String.format("Cannot restore %d test particles into a simulation without them", particles.size()));
+        }
+        simulation.store().copyFrom(bodies);
+        if (particles != null) {
+            simulation.particles().copyFrom(particles);
+        }
+        simulation.resumeAt(time, steps);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.Constants;
+
+/**
+ * Computes the exact pairwise gravitational accelerations in O(N^2).
+ * <p>
+ * A Plummer softening length can be set to avoid singularities when two
+ * bodies get too close.
+ */
+public final class DirectSumSolver implements ForceSolver {
+
+    private final double softeningSquared;
+
+    /**
+     * Creates a DirectSumSolver without softening.
+     */
+    public DirectSumSolver() {
+        this(0.0);
+    }
+
+    /**
+     * Creates a DirectSumSolver with the given softening length.
+     *
+     * @param softening
+     *      The softening length (in m).
+     */
+    public DirectSumSolver(final double softening) {
+        if (softening < 0.0) {
+            throw new IllegalArgumentException("Cannot set a negative softening length");
+        }
+        this.softeningSquared = softening * softening;
+    }
+
+    /**
+     * @return
+     *      The square of the softening length (in m^2).
+     */
+    public double softeningSquared() {
+        return softeningSquared;
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        computeAccelerations(0, n, n, x, y, z, mass, ax, ay, az, softeningSquared);
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        for (int k = 0; k < count; k++) {
+            accelerationOf(targets[k], n, x, y, z, mass, ax, ay, az, softeningSquared);
+        }
+    }
+
+    /**
+     * Computes the accelerations of the targets in [from; to) due to all the n sources.
+     * Each target accumulates its sources in the same order, so splitting
+     * the targets in blocks always gives the same results.
+     */
+    static void computeAccelerations(
+            final int from,
+            final int to,
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final double softeningSquared) {
+        for (int i = from; i < to; i++) {
+            accelerationOf(i, n, x, y, z, mass, ax, ay, az, softeningSquared);
+        }
+    }
+
+    /**
+     * Computes the acceleration of the i-th body due to all the n sources.
+     */
+    static void accelerationOf(
+            final int i,
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az,
+            final double softeningSquared) {
+        final double xi = x[i];
+        final double yi = y[i];
+        final double zi = z[i];
+        double sx = 0.0;
+        double sy = 0.0;
+        double sz = 0.0;
+        for (int j = 0; j < n; j++) {
+            if (j == i) {
+                continue;
+            }
+            final double dx = x[j] - xi;
+            final double dy = y[j] - yi;
+            final double dz = z[j] - zi;
+            final double r2 = dx * dx + dy * dy + dz * dz + softeningSquared;
+            final double invR = 1.0 / Math.sqrt(r2);
+            final double f = mass[j] * invR * invR * invR;
+            sx += f * dx;
+            sy += f * dy;
+            sz += f * dz;
+        }
+        final double g = Constants.GRAVITATIONAL_CONSTANT;
+        ax[i] = g * sx;
+        ay[i] = g * sy;
+        az[i] = g * sz;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The trajectories of the bodies of a run as piecewise Chebyshev polynomials, in the style of the JPL DE files,
+ * built by an {@link EphemerisBuilder}.
+ * <p>
+ * The run is split in granules of the same length, and each coordinate of each body is a Chebyshev series
+ * in each granule. Finding the granule of a time is a division, and evaluating a coordinate is a recurrence
+ * of a few multiply-adds per coefficient: the position and the velocity of any body at any time cost the same,
+ * without integrating anything. The evaluation methods only read the coefficients, so they can be called from
+ * any number of threads.
+ * <p>
+ * The file is little-endian and starts with a header of {@value #HEADER_SIZE} bytes:
+ * <pre>
+ * offset  size  content
+ *      0     4  the magic number "SSEP"
+ *      4     4  the version of the format, currently {@value #VERSION}
+ *      8     4  the number of bodies N
+ *     12     4  the degree D of the series
+ *     16     4  the number of granules G
+ *     20     4  reserved, zero
+ *     24     8  the simulated time of the start of the first granule (in s)
+ *     32     8  the length of each granule (in s)
+ *     40     8  the last simulated time covered (in s)
+ *     48    16  reserved, zero
+ * </pre>
+ * followed by the D+1 coefficients of x, y and z of each body in each granule: G*N*3*(D+1) doubles,
+ * with the coefficients of the same granule next to each other.
+ */
+public final class Ephemeris {
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int MAGIC = 'S' | 'S' << 8 | 'E' << 16 | 'P' << 24;
+
+    /**
+     * Below this number of bodies, a playback evaluates them on the calling thread.
+     */
+    private static final int SERIAL_THRESHOLD = 256;
+
+    private static final int BLOCKS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private final int bodies;
+    private final int degree;
+    private final int granules;
+    private final double startTime;
+    private final double granuleLength;
+    private final double endTime;
+    private final double[] coefficients;
+
+    Ephemeris(
+            final int bodies,
+            final int degree,
+            final int granules,
+            final double startTime,
+            final double granuleLength,
+            final double endTime,
+            final double[] coefficients) {
+        this.bodies = bodies;
+        this.degree = degree;
+        this.granules = granules;
+        this.startTime = startTime;
+        this.granuleLength = granuleLength;
+        this.endTime = endTime;
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * @return
+     *      The number of bodies.
+     */
+    public int bodies() {
+        return bodies;
+    }
+
+    /**
+     * @return
+     *      The degree of the Chebyshev series.
+     */
+    public int degree() {
+        return degree;
+    }
+
+    /**
+     * @return
+     *      The number of granules.
+     */
+    public int granules() {
+        return granules;
+    }
+
+    /**
+     * @return
+     *      The length of each granule (in s).
+     */
+    public double granuleLength() {
+        return granuleLength;
+    }
+
+    /**
+     * @return
+     *      The first simulated time covered (in s).
+     */
+    public double startTime() {
+        return startTime;
+    }
+
+    /**
+     * @return
+     *      The last simulated time covered (in s).
+     */
+    public double endTime() {
+        return endTime;
+    }
+
+    /**
+     * Evaluates the position and the velocity of a body.
+     *
+     * @param body
+     *      The index of the body.
+     * @param t
+     *      The simulated time (in s), clamped between {@link #startTime()} and {@link #endTime()}.
+     * @param out
+     *      The array where x, y, z (in m), vx, vy and vz (in m/s) are written.
+     */
+    public void state(final int body, final double t, final double[] out) {
+        Objects.checkIndex(body, bodies);
+        final double time = Math.max(startTime, Math.min(endTime, t));
+        final int g = granule(time);
+        final double tau = 2.0 * (time - startTime - g * granuleLength) / granuleLength - 1.0;
+        final double velocityScale = 2.0 / granuleLength;
+        final int n = degree + 1;
+        for (int c = 0; c < 3; c++) {
+            final int offset = ((g * bodies + body) * 3 + c) * n;
+            // T(k) and its derivative by their recurrences, accumulated at once
+            double t0 = 1.0;
+            double t1 = tau;
+            double d0 = 0.0;
+            double d1 = 1.0;
+            double p = coefficients[offset];
+            double v = 0.0;
+            for (int k = 1; k < n; k++) {
+                p += coefficients[offset + k] * t1;
+                v += coefficients[offset + k] * d1;
+                final double t2 = 2.0 * tau * t1 - t0;
+                final double d2 = 2.0 * t1 + 2.0 * tau * d1 - d0;
+                t0 = t1;
+                t1 = t2;
+                d0 = d1;
+                d1 = d2;
+            }
+            out[c] = p;
+            out[3 + c] = v * velocityScale;
+        }
+    }
+
+    /**
+     * Evaluates the positions of a range of bodies with the Clenshaw recurrence.
+     *
+     * @param t
+     *      The simulated time (in s), clamped between {@link #startTime()} and {@link #endTime()}.
+     * @param from
+     *      The first body, included.
+     * @param to
+     *      The last body, excluded.
+     * @param x
+     *      The array where the x coordinates (in m) are written, indexed by body.
+     * @param y
+     *      The array where the y coordinates (in m) are written, indexed by body.
+     * @param z
+     *      The array where the z coordinates (in m) are written, indexed by body.
+     */
+    public void positions(
+            final double t, final int from, final int to, final double[] x, final double[] y, final double[] z) {
+        Objects.checkFromToIndex(from, to, bodies);
+        final double time = Math.max(startTime, Math.min(endTime, t));
+        final int g = granule(time);
+        final double tau = 2.0 * (time - startTime - g * granuleLength) / granuleLength - 1.0;
+        final int n = degree + 1;
+        for (int b = from; b < to; b++) {
+            final int offset = (g * bodies + b) * 3 * n;
+            x[b] = clenshaw(offset, n, tau);
+            y[b] = clenshaw(offset + n, n, tau);
+            z[b] = clenshaw(offset + 2 * n, n, tau);
+        }
+    }
+
+    private double clenshaw(final int offset, final int n, final double tau) {
+        double b1 = 0.0;
+        double b2 = 0.0;
+        for (int k = n - 1; k >= 1; k--) {
+            final double b0 = coefficients[offset + k] + 2.0 * tau * b1 - b2;
+            b2 = b1;
+            b1 = b0;
+        }
+        return coefficients[offset] + tau * b1 - b2;
+    }
+
+    private int granule(final double time) {
+        return Math.max(0, Math.min(granules - 1, (int) ((time - startTime) / granuleLength)));
+    }
+
+    /**
+     * @return
+     *      A new playback of all the bodies, which evaluates them in parallel when they are many.
+     */
+    public Playback playback() {
+        return new EphemerisPlayback(this);
+    }
+
+    private static final class EphemerisPlayback implements Playback {
+
+        private final Ephemeris ephemeris;
+        private final double[] x;
+        private final double[] y;
+        private final double[] z;
+        private final ForkJoinTask<?>[] blocks;
+        private final ForkJoinTask<?> root;
+        private double time = Double.NaN;
+
+        // the time evaluated by the blocks
+        private double target;
+
+        EphemerisPlayback(final Ephemeris ephemeris) {
+            this.ephemeris = ephemeris;
+            final int n = ephemeris.bodies;
+            this.x = new double[n];
+            this.y = new double[n];
+            this.z = new double[n];
+            this.blocks = new ForkJoinTask<?>[n < SERIAL_THRESHOLD ? 0 : BLOCKS];
+            for (int b = 0; b < blocks.length; b++) {
+                final int from = (int) ((long) n * b / blocks.length);
+                final int to = (int) ((long) n * (b + 1) / blocks.length);
+                blocks[b] = ForkJoinTask.adapt(() -> ephemeris.positions(target, from, to, x, y, z));
+            }
+            this.root = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(blocks));
+        }
+
+        @Override
+        public int bodies() {
+            return ephemeris.bodies;
+        }
+
+        @Override
+        public double startTime() {
+            return ephemeris.startTime;
+        }
+
+        @Override
+        public double endTime() {
+            return ephemeris.endTime;
+        }
+
+        @Override
+        public double time() {
+            return time;
+        }
+
+        @Override
+        public void seek(final double t) {
+            final double clamped = Math.max(ephemeris.startTime, Math.min(ephemeris.endTime, t));
+            if (clamped == time) {
+                return;
+            }
+            if (blocks.length == 0) {
+                ephemeris.positions(clamped, 0, ephemeris.bodies, x, y, z);
+            } else {
+                target = clamped;
+                for (final ForkJoinTask<?> block : blocks) {
+                    block.reinitialize();
+                }
+                root.reinitialize();
+                ForkJoinPool.commonPool().invoke(root);
+            }
+            time = clamped;
+        }
+
+        @Override
+        public double x(final int id) {
+            return x[id];
+        }
+
+        @Override
+        public double y(final int id) {
+            return y[id];
+        }
+
+        @Override
+        public double z(final int id) {
+            return z[id];
+        }
+
+        @Override
+        public void close() {
+            // nothing to release: the coefficients are on the heap
+        }
+    }
+
+    /**
+     * Writes this ephemeris, replacing the given file only once it is complete.
+     *
+     * @param file
+     *      The file to write.
+     * @throws IOException
+     *      If the file cannot be written.
+     */
+    public void write(final Path file) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(bodies)
+                .putInt(degree)
+                .putInt(granules)
+                .putInt(0)
+                .putDouble(startTime)
+                .putDouble(granuleLength)
+                .putDouble(endTime)
+                .position(HEADER_SIZE)
+                .flip();
+
+        BinaryFiles.writeDoublesAtomically(file, header, new int[] {coefficients.length}, coefficients);
+    }
+
+    /**
+     * Checks whether the given file starts like an ephemeris.
+     *
+     * @param file
+     *      The file to check.
+     * @return
+     *      True if the file starts with the magic number of an ephemeris, false otherwise.
+     * @throws IOException
+     *      If the file cannot be read.
+     */
+    public static boolean isEphemeris(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // keep reading
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads an ephemeris.
+     *
+     * @param file
+     *      The file to read.
+     * @return
+     *      The ephemeris.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a valid ephemeris.
+     */
+    public static Ephemeris read(final Path file) throws IOException {
+        final MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        String.format("'%s' is too large (%,d bytes)", file, channel.size()));
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        mapping.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapping.capacity() < HEADER_SIZE || mapping.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(String.format("'%s' is not an ephemeris", file));
+        }
+        final int version = mapping.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    String.format("'%s' has version %d, only version %d is supported", file, version, VERSION));
+        }
+        final int bodies = mapping.getInt(8);
+        final int degree = mapping.getInt(12);
+        final int granules = mapping.getInt(16);
+        final double startTime = mapping.getDouble(24);
+        final double granuleLength = mapping.getDouble(32);
+        final double endTime = mapping.getDouble(40);
+        final long count = (long) granules * bodies * 3L * (degree + 1L);
+        if (bodies < 0 || degree < 0 || granules < 1 || mapping.capacity() != HEADER_SIZE + count * Double.BYTES) {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' has %,d bytes, but %d granules of %d bodies of degree %d need %,d",
+                    file, mapping.capacity(), granules, bodies, degree, HEADER_SIZE + count * Double.BYTES));
+        }
+        if (!Double.isFinite(startTime)
+                || !(granuleLength > 0.0)
+                || !Double.isFinite(granuleLength)
+                || !(endTime >= startTime)
+                || endTime - startTime > (granules + 1e-6) * granuleLength) {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' has invalid times: granules of %f s from %f s to %f s",
+                    file, granuleLength, startTime, endTime));
+        }
+        final double[] coefficients = new double[(int) count];
+        mapping.slice(HEADER_SIZE, (int) count * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer()
+                .get(coefficients);
+        return new Ephemeris(bodies, degree, granules, startTime, granuleLength, endTime, coefficients);
+    }
+}
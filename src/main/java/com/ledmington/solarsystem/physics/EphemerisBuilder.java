@@ -0,0 +1,284 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Arrays;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * Builds an {@link Ephemeris} from the states of the bodies sampled during an integration run.
+ * <p>
+ * The samples are collected granule by granule. When a granule is complete, each coordinate of each body is
+ * fitted with a Chebyshev series by least squares on the sampled positions, and the velocities are the
+ * derivatives of the series. The sampled velocities are not fitted, unlike the JPL DE files: a second order
+ * integrator like the leapfrog gives velocities which differ from the slope of its positions by a term of
+ * the order of the square of the timestep, and fitting both would spoil the positions. The samples of a granule
+ * all share the same basis, so the least squares problem is factored once per granule and reused for every
+ * coordinate.
+ * <p>
+ * The granule length should be a multiple of the timestep, so that the sample at the end of a granule is also
+ * the first of the next one and the series join continuously. Only the samples of the current granule are kept.
+ */
+public final class EphemerisBuilder {
+
+    /**
+     * The default degree of the series.
+     */
+    public static final int DEFAULT_DEGREE = 14;
+
+    /**
+     * The default length of the granules: eight days (in s).
+     */
+    public static final double DEFAULT_GRANULE_LENGTH = 8.0 * 86_400.0;
+
+    private final double granuleLength;
+    private final int degree;
+    private int bodies = -1;
+    private double startTime;
+    private double lastTime;
+
+    // the samples of the current granule: the time, then x, y and z of each body
+    private int granule = 0;
+    private int samples = 0;
+    private double[] times = new double[16];
+    private double[] states = new double[0];
+
+    private double[] coefficients = new double[0];
+    private int granules = 0;
+
+    /**
+     * Creates a builder with the default granule length and degree.
+     */
+    public EphemerisBuilder() {
+        this(DEFAULT_GRANULE_LENGTH, DEFAULT_DEGREE);
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param granuleLength
+     *      The length of each granule (in s).
+     * @param degree
+     *      The degree of the series.
+     */
+    public EphemerisBuilder(final double granuleLength, final int degree) {
+        if (!(granuleLength > 0.0) || !Double.isFinite(granuleLength)) {
+            throw new IllegalArgumentException(String.format("Invalid granule length %f", granuleLength));
+        }
+        if (degree < 1) {
+            throw new IllegalArgumentException(String.format("Invalid degree %d", degree));
+        }
+        this.granuleLength = granuleLength;
+        this.degree = degree;
+    }
+
+    /**
+     * Adds the current state of the bodies of the given simulation. The first call sets the start of the
+     * ephemeris and the number of bodies.
+     *
+     * @param simulation
+     *      The simulation to sample.
+     * @throws IllegalArgumentException
+     *      If the time of the simulation did not advance since the last sample,
+     *      or if it skipped a whole granule.
+     * @throws IllegalStateException
+     *      If the number of bodies changed since the first sample.
+     */
+    public void add(final Simulation simulation) {
+        final BodyStore store = simulation.store();
+        final double time = simulation.time();
+        if (bodies < 0) {
+            bodies = store.size();
+            startTime = time;
+        } else {
+            if (store.size() != bodies) {
+                throw new IllegalStateException(
+                        String.format("The number of bodies changed from %d to %d", bodies, store.size()));
+            }
+            if (!(time > lastTime)) {
+                throw new IllegalArgumentException(
+                        String.format("Time %f does not follow the last sample at %f", time, lastTime));
+            }
+        }
+        lastTime = time;
+
+        // the granule ends with the sample on its boundary, which also starts the next one
+        final boolean onBoundary = isOnBoundary(time, granule + 1);
+        if (onBoundary || time > granuleStart(granule + 1)) {
+            if (onBoundary) {
+                append(time, store);
+            }
+            fit();
+            granule++;
+            samples = 0;
+            if (!onBoundary && time > granuleStart(granule + 1)) {
+                throw new IllegalArgumentException(
+                        String.format("Granule %d has no samples: the timestep is longer than the granules", granule));
+            }
+        }
+        append(time, store);
+    }
+
+    private double granuleStart(final int g) {
+        return startTime + g * granuleLength;
+    }
+
+    private boolean isOnBoundary(final double time, final int g) {
+        return Math.abs(time - granuleStart(g)) <= 1e-9 * granuleLength;
+    }
+
+    private void append(final double time, final BodyStore store) {
+        if (samples == times.length) {
+            times = Arrays.copyOf(times, 2 * samples);
+        }
+        final int stride = 3 * bodies;
+        if (states.length < (samples + 1) * stride) {
+            states = Arrays.copyOf(states, Math.max((samples + 1) * stride, 2 * states.length));
+        }
+        times[samples] = time;
+        final int offset = samples * stride;
+        for (int i = 0; i < bodies; i++) {
+            states[offset + i] = store.x()[i];
+            states[offset + bodies + i] = store.y()[i];
+            states[offset + 2 * bodies + i] = store.z()[i];
+        }
+        samples++;
+    }
+
+    /**
+     * Fits the samples of the current granule and appends the coefficients. The degree is lowered when a granule
+     * has too few samples. The least squares problem is solved with a QR factorization instead of the normal
+     * equations, which would square its condition number: the last granule of a run may cover only a small part
+     * of its span.
+     */
+    private void fit() {
+        final int n = degree + 1;
+        final int size = Math.min(n, samples);
+        final int rows = samples;
+        final int perGranule = bodies * 3 * n;
+        if (coefficients.length < (granules + 1) * perGranule) {
+            coefficients = Arrays.copyOf(coefficients, Math.max((granules + 1) * perGranule, 2 * coefficients.length));
+        }
+
+        // the basis at each sample
+        final double start = granuleStart(granule);
+        final double halfLength = 0.5 * granuleLength;
+        final double[] a = new double[rows * size];
+        for (int j = 0; j < samples; j++) {
+            final double tau = (times[j] - start) / halfLength - 1.0;
+            double t0 = 1.0;
+            double t1 = tau;
+            a[j * size] = 1.0;
+            for (int k = 1; k < size; k++) {
+                a[j * size + k] = t1;
+                final double t2 = 2.0 * tau * t1 - t0;
+                t0 = t1;
+                t1 = t2;
+            }
+        }
+
+        // Householder QR, once for all the coordinates: the reflectors replace the lower part of the matrix
+        final double[] diagonal = new double[size];
+        final double[] beta = new double[size];
+        for (int c = 0; c < size; c++) {
+            double norm = 0.0;
+            for (int r = c; r < rows; r++) {
+                norm += a[r * size + c] * a[r * size + c];
+            }
+            norm = Math.sqrt(norm);
+            if (!(norm > 0.0)) {
+                throw new IllegalStateException("The samples of a granule do not determine its series");
+            }
+            diagonal[c] = a[c * size + c] > 0.0 ? -norm : norm;
+            a[c * size + c] -= diagonal[c];
+            double squared = 0.0;
+            for (int r = c; r < rows; r++) {
+                squared += a[r * size + c] * a[r * size + c];
+            }
+            beta[c] = 2.0 / squared;
+            for (int k = c + 1; k < size; k++) {
+                double dot = 0.0;
+                for (int r = c; r < rows; r++) {
+                    dot += a[r * size + c] * a[r * size + k];
+                }
+                dot *= beta[c];
+                for (int r = c; r < rows; r++) {
+                    a[r * size + k] -= dot * a[r * size + c];
+                }
+            }
+        }
+
+        final double[] b = new double[rows];
+        final int stride = 3 * bodies;
+        for (int i = 0; i < bodies; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                for (int j = 0; j < samples; j++) {
+                    b[j] = states[j * stride + axis * bodies + i];
+                }
+                for (int c = 0; c < size; c++) {
+                    double dot = 0.0;
+                    for (int r = c; r < rows; r++) {
+                        dot += a[r * size + c] * b[r];
+                    }
+                    dot *= beta[c];
+                    for (int r = c; r < rows; r++) {
+                        b[r] -= dot * a[r * size + c];
+                    }
+                }
+                final int offset = granules * perGranule + (i * 3 + axis) * n;
+                for (int c = size - 1; c >= 0; c--) {
+                    double sum = b[c];
+                    for (int k = c + 1; k < size; k++) {
+                        sum -= a[c * size + k] * coefficients[offset + k];
+                    }
+                    coefficients[offset + c] = sum / diagonal[c];
+                }
+                Arrays.fill(coefficients, offset + size, offset + n, 0.0);
+            }
+        }
+        granules++;
+    }
+
+    /**
+     * Fits the last granule and returns the ephemeris of all the samples added so far.
+     * The builder must not be used afterwards.
+     *
+     * @return
+     *      The ephemeris.
+     * @throws IllegalStateException
+     *      If less than two samples were added.
+     */
+    public Ephemeris build() {
+        if (bodies < 0 || lastTime == startTime) {
+            throw new IllegalStateException("An ephemeris needs at least two samples");
+        }
+        // a granule holding only the sample on its starting boundary adds nothing
+        if (samples > 1) {
+            fit();
+        }
+        return new Ephemeris(
+                bodies,
+                degree,
+                granules,
+                startTime,
+                granuleLength,
+                lastTime,
+                Arrays.copyOf(coefficients, granules * bodies * 3 * (degree + 1)));
+    }
+}
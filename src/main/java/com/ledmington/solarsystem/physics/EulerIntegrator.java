@@ -0,0 +1,59 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * First-order explicit Euler integrator.
+ * Cheap, but it does not conserve energy: useful only as a reference.
+ */
+public final class EulerIntegrator implements Integrator {
+
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+
+    public EulerIntegrator() {}
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        final int n = store.size();
+        ax = Buffers.ensure(ax, n);
+        ay = Buffers.ensure(ay, n);
+        az = Buffers.ensure(az, n);
+
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+
+        solver.computeAccelerations(n, x, y, z, store.mass(), ax, ay, az);
+
+        for (int i = 0; i < n; i++) {
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            z[i] += vz[i] * dt;
+            vx[i] += ax[i] * dt;
+            vy[i] += ay[i] * dt;
+            vz[i] += az[i] * dt;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * Computes the gravitational accelerations acting on a set of bodies.
+ * <p>
+ * Implementations work on raw structure-of-arrays columns instead of a
+ * {@link com.ledmington.solarsystem.model.BodyStore}, so that integrators can
+ * evaluate forces on intermediate positions held in their own scratch buffers.
+ * Implementations must not allocate memory in {@link #computeAccelerations} once
+ * they have been warmed up with a given number of bodies.
+ */
+public interface ForceSolver {
+
+    /**
+     * Computes the acceleration of each of the first n bodies due to all the others.
+     *
+     * @param n
+     *      The number of bodies.
+     * @param x
+     *      The x coordinates of the bodies (in m).
+     * @param y
+     *      The y coordinates of the bodies (in m).
+     * @param z
+     *      The z coordinates of the bodies (in m).
+     * @param mass
+     *      The masses of the bodies (in kg).
+     * @param ax
+     *      The output x components of the accelerations (in m/s^2).
+     * @param ay
+     *      The output y components of the accelerations (in m/s^2).
+     * @param az
+     *      The output z components of the accelerations (in m/s^2).
+     */
+    void computeAccelerations(
+            int n, double[] x, double[] y, double[] z, double[] mass, double[] ax, double[] ay, double[] az);
+
+    /**
+     * Computes the acceleration of the given targets only, due to all the first n bodies.
+     * The accelerations of the bodies which are not targets are left untouched.
+     * <p>
+     * The default implementation computes all the accelerations in temporary buffers,
+     * so solvers meant to be used with a {@link BlockTimestepIntegrator} should override it.
+     *
+     * @param n
+     *      The number of bodies.
+     * @param x
+     *      The x coordinates of the bodies (in m).
+     * @param y
+     *      The y coordinates of the bodies (in m).
+     * @param z
+     *      The z coordinates of the bodies (in m).
+     * @param mass
+     *      The masses of the bodies (in kg).
+     * @param targets
+     *      The indices of the bodies whose acceleration is needed.
+     * @param count
+     *      The number of valid entries in targets.
+     * @param ax
+     *      The output x components of the accelerations (in m/s^2).
+     * @param ay
+     *      The output y components of the accelerations (in m/s^2).
+     * @param az
+     *      The output z components of the accelerations (in m/s^2).
+     */
+    default void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        final double[] allX = new double[n];
+        final double[] allY = new double[n];
+        final double[] allZ = new double[n];
+        computeAccelerations(n, x, y, z, mass, allX, allY, allZ);
+        for (int k = 0; k < count; k++) {
+            final int i = targets[k];
+            ax[i] = allX[i];
+            ay[i] = allY[i];
+            az[i] = allZ[i];
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.function.Supplier;
+
+/**
+ * Each value of this enumeration corresponds to an available {@link ForceSolver},
+ * with its default parameters.
+ */
+public enum ForceSolverType {
+    DIRECT("direct", DirectSumSolver::new),
+    SIMD_DIRECT("simd-direct", () -> Vectorization.directSum(0.0)),
+    BARNES_HUT("barnes-hut", () -> new BarnesHutSolver(0.5)),
+    PARALLEL_DIRECT(
+            "parallel-direct",
+            () -> new ParallelForceSolver(Runtime.getRuntime().availableProcessors())),
+    PARALLEL_BARNES_HUT(
+            "parallel-barnes-hut",
+            () -> new ParallelForceSolver(Runtime.getRuntime().availableProcessors(), new BarnesHutSolver(0.5)));
+
+    private final String name;
+    private final Supplier<ForceSolver> constructor;
+
+    ForceSolverType(final String name, final Supplier<ForceSolver> constructor) {
+        this.name = name;
+        this.constructor = constructor;
+    }
+
+    /**
+     * @return
+     *      The lowercase name of the ForceSolver.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return
+     *      A new instance of the corresponding ForceSolver.
+     */
+    public ForceSolver create() {
+        return constructor.get();
+    }
+
+    /**
+     * Looks for the ForceSolverType with the given name.
+     *
+     * @param name
+     *      The lowercase name of the wanted ForceSolverType.
+     * @return
+     *      The corresponding ForceSolverType.
+     */
+    public static ForceSolverType fromName(final String name) {
+        for (final ForceSolverType t : values()) {
+            if (t.name.equals(name)) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown force solver '%s'", name));
+    }
+}
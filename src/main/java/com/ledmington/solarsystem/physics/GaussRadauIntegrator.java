@@ -0,0 +1,469 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Arrays;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * 15th-order implicit integrator with Gauss-Radau spacings and adaptive timestep, in the style of IAS15
+ * (Rein and Spiegel, 2015).
+ * <p>
+ * Within each internal step, the acceleration of every body is approximated by a polynomial of degree 7
+ * in time, sampled at the 8 Gauss-Radau nodes. The coefficients are found by a predictor-corrector
+ * iteration which stops when they no longer change, and the positions and velocities are obtained
+ * by integrating the polynomial analytically, with compensated summation.
+ * <p>
+ * The length of the internal steps is chosen so that the last coefficient, which estimates the
+ * truncation error, stays below the given tolerance relative to the accelerations. A call to
+ * {@link #step} advances by exactly the requested interval, taking as many internal steps as needed:
+ * the suggested internal step is kept between calls.
+ */
+public final class GaussRadauIntegrator implements Integrator {
+
+    /**
+     * The Gauss-Radau nodes in [0; 1].
+     */
+    private static final double[] H = {
+        0.0,
+        0.0562625605369221464656521910318,
+        0.180240691736892364987579942780,
+        0.352624717113169637373907769648,
+        0.547153626330555383001448554766,
+        0.734210177215410531523210605558,
+        0.885320946839095768090359771030,
+        0.977520613561287501891174488626
+    };
+
+    /**
+     * The number of coefficients of the acceleration polynomial (besides the constant one).
+     */
+    private static final int ORDER = 7;
+
+    /**
+     * NEWTON[k][j] is the coefficient of h^(j+1) in h (h - H[1]) ... (h - H[k]).
+     */
+    private static final double[][] NEWTON = newtonToPower();
+
+    /**
+     * BINOMIAL[m][j] is m choose j, used to shift the polynomial of a step to the next one.
+     */
+    private static final double[][] BINOMIAL = binomials();
+
+    /**
+     * INVERSE_DISTANCE[s][k] is 1 / (H[s] - H[k]), used by the divided differences.
+     */
+    private static final double[][] INVERSE_DISTANCE = inverseDistances();
+
+    /**
+     * The factors 1 / (k + 2) and 1 / ((k + 2) (k + 3)) obtained by integrating the term
+     * of degree k + 1 of the acceleration once and twice.
+     */
+    private static final double[] VELOCITY_WEIGHT = {1.0 / 2, 1.0 / 3, 1.0 / 4, 1.0 / 5, 1.0 / 6, 1.0 / 7, 1.0 / 8};
+
+    private static final double[] POSITION_WEIGHT = {
+        1.0 / 6, 1.0 / 12, 1.0 / 20, 1.0 / 30, 1.0 / 42, 1.0 / 56, 1.0 / 72
+    };
+
+    private static final double SAFETY_FACTOR = 0.25;
+    private static final int MAX_ITERATIONS = 12;
+
+    private final double epsilon;
+    private double suggestedDt = 0.0;
+    private boolean accelerationsAreValid = false;
+
+    // flattened as 3 * body + coordinate
+    private double[] x0;
+    private double[] v0;
+    private double[] a0;
+    private double[] a;
+    private double[] compensationX;
+    private double[] compensationV;
+    private double[][] b = new double[ORDER][];
+    private double[][] g = new double[ORDER][];
+    private double[][] previousB = new double[ORDER][];
+
+    // separate columns for the ForceSolver
+    private double[] masses;
+    private double[] px;
+    private double[] py;
+    private double[] pz;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+
+    private double lastDt = 0.0;
+    private long steps = 0L;
+    private long rejectedSteps = 0L;
+
+    /**
+     * Creates a GaussRadauIntegrator with the default tolerance of 1e-9.
+     */
+    public GaussRadauIntegrator() {
+        this(1e-9);
+    }
+
+    /**
+     * Creates a GaussRadauIntegrator.
+     *
+     * @param epsilon
+     *      The tolerance on the relative size of the last coefficient of the acceleration polynomial.
+     */
+    public GaussRadauIntegrator(final double epsilon) {
+        if (!(epsilon > 0.0) || !Double.isFinite(epsilon)) {
+            throw new IllegalArgumentException(String.format("Invalid tolerance %e", epsilon));
+        }
+        this.epsilon = epsilon;
+    }
+
+    private static double[][] newtonToPower() {
+        final double[][] result = new double[ORDER][ORDER];
+        // coefficients of the current product, starting from h
+        double[] poly = new double[ORDER + 2];
+        poly[1] = 1.0;
+        for (int k = 0; k < ORDER; k++) {
+            for (int j = 0; j < ORDER; j++) {
+                result[k][j] = poly[j + 1];
+            }
+            // multiply by (h - H[k + 1])
+            final double[] next = new double[ORDER + 2];
+            for (int j = 0; j < ORDER + 1; j++) {
+                next[j + 1] += poly[j];
+                next[j] -= H[k + 1] * poly[j];
+            }
+            poly = next;
+        }
+        return result;
+    }
+
+    private static double[][] inverseDistances() {
+        final double[][] result = new double[ORDER + 1][ORDER + 1];
+        for (int s = 1; s <= ORDER; s++) {
+            for (int k = 0; k < s; k++) {
+                result[s][k] = 1.0 / (H[s] - H[k]);
+            }
+        }
+        return result;
+    }
+
+    private static double[][] binomials() {
+        final double[][] result = new double[ORDER + 1][ORDER + 1];
+        for (int m = 0; m <= ORDER; m++) {
+            result[m][0] = 1.0;
+            for (int j = 1; j <= m; j++) {
+                result[m][j] = result[m - 1][j - 1] + (j < m ? result[m - 1][j] : 0.0);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return
+     *      The number of accepted internal steps performed so far.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * @return
+     *      The number of internal steps rejected so far because the error was too big.
+     */
+    public long rejectedSteps() {
+        return rejectedSteps;
+    }
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        final int n = store.size();
+        final int size = 3 * n;
+        if (x0 == null || x0.length < size) {
+            accelerationsAreValid = false;
+        }
+        ensureCapacity(n);
+
+        if (!accelerationsAreValid) {
+            Arrays.fill(compensationX, 0, size, 0.0);
+            Arrays.fill(compensationV, 0, size, 0.0);
+            for (int k = 0; k < ORDER; k++) {
+                Arrays.fill(b[k], 0, size, 0.0);
+                Arrays.fill(g[k], 0, size, 0.0);
+                Arrays.fill(previousB[k], 0, size, 0.0);
+            }
+            lastDt = 0.0;
+        }
+        load(store, n);
+        if (!accelerationsAreValid) {
+            evaluate(solver, n, x0);
+            System.arraycopy(a, 0, a0, 0, size);
+            accelerationsAreValid = true;
+        }
+
+        if (suggestedDt == 0.0 || suggestedDt > Math.abs(dt) || Math.signum(suggestedDt) != Math.signum(dt)) {
+            suggestedDt = dt;
+        }
+
+        double remaining = dt;
+        while (remaining != 0.0) {
+            final boolean last = Math.abs(suggestedDt) >= Math.abs(remaining);
+            final double h = last ? remaining : suggestedDt;
+            final double next = attempt(solver, n, h);
+            if (Double.isNaN(next)) {
+                continue;
+            }
+            remaining = last ? 0.0 : remaining - h;
+            // do not let the truncated last step shrink the following ones
+            if (!last || Math.abs(next) < Math.abs(suggestedDt)) {
+                suggestedDt = next;
+            }
+        }
+
+        store(store, n);
+    }
+
+    /**
+     * Tries to perform an internal step of length dt.
+     *
+     * @return
+     *      The suggested length of the next step, or NaN if the step was rejected
+     *      (in which case the suggested step has already been reduced).
+     */
+    private double attempt(final ForceSolver solver, final int n, final double dt) {
+        final int size = 3 * n;
+        predict(n, dt);
+
+        double previousError = Double.POSITIVE_INFINITY;
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double maxDelta = 0.0;
+            double maxAcceleration = 0.0;
+            for (int s = 1; s <= ORDER; s++) {
+                positionsAt(n, dt, H[s]);
+                evaluate(solver, n, null);
+                for (int c = 0; c < size; c++) {
+                    // divided differences over the nodes up to s
+                    double gk = (a[c] - a0[c]) * INVERSE_DISTANCE[s][0];
+                    for (int k = 0; k < s - 1; k++) {
+                        gk = (gk - g[k][c]) * INVERSE_DISTANCE[s][k + 1];
+                    }
+                    final double delta = gk - g[s - 1][c];
+                    g[s - 1][c] = gk;
+                    for (int j = 0; j < s; j++) {
+                        b[j][c] += NEWTON[s - 1][j] * delta;
+                    }
+                    if (s == ORDER) {
+                        maxDelta = Math.max(maxDelta, Math.abs(delta));
+                        maxAcceleration = Math.max(maxAcceleration, Math.abs(a[c]));
+                    }
+                }
+            }
+            final double error = maxAcceleration == 0.0 ? 0.0 : maxDelta / maxAcceleration;
+            if (error < 1e-16 || (iteration > 1 && error >= previousError)) {
+                break;
+            }
+            previousError = error;
+        }
+
+        // estimate the truncation error with the last coefficient
+        double maxB = 0.0;
+        double maxA = 0.0;
+        for (int c = 0; c < size; c++) {
+            maxB = Math.max(maxB, Math.abs(b[ORDER - 1][c]));
+            maxA = Math.max(maxA, Math.abs(a[c]));
+        }
+        final double relativeError = maxA == 0.0 ? 0.0 : maxB / maxA;
+        double next = relativeError == 0.0 ? dt / SAFETY_FACTOR : dt * Math.pow(epsilon / relativeError, 1.0 / ORDER);
+        if (Math.abs(next) < SAFETY_FACTOR * Math.abs(dt)) {
+            // reject: retry with the smaller step
+            rejectedSteps++;
+            suggestedDt = next;
+            return Double.NaN;
+        }
+        if (Math.abs(next) > Math.abs(dt) / SAFETY_FACTOR) {
+            next = dt / SAFETY_FACTOR;
+        }
+
+        // accept: integrate the polynomial over the whole step
+        for (int c = 0; c < size; c++) {
+            double dx = a0[c] / 2.0;
+            double dv = a0[c];
+            for (int k = 0; k < ORDER; k++) {
+                dx += b[k][c] * POSITION_WEIGHT[k];
+                dv += b[k][c] * VELOCITY_WEIGHT[k];
+            }
+            x0[c] = compensatedAdd(x0, compensationX, c, dt * (v0[c] + dt * dx));
+            v0[c] = compensatedAdd(v0, compensationV, c, dt * dv);
+        }
+        evaluate(solver, n, x0);
+        System.arraycopy(a, 0, a0, 0, size);
+
+        for (int k = 0; k < ORDER; k++) {
+            System.arraycopy(b[k], 0, previousB[k], 0, size);
+        }
+        lastDt = dt;
+        steps++;
+        return next;
+    }
+
+    /**
+     * Predicts the coefficients of the next step by shifting the polynomial of the previous one.
+     */
+    private void predict(final int n, final double dt) {
+        final int size = 3 * n;
+        if (lastDt == 0.0) {
+            for (int k = 0; k < ORDER; k++) {
+                Arrays.fill(b[k], 0, size, 0.0);
+                Arrays.fill(g[k], 0, size, 0.0);
+            }
+            return;
+        }
+        final double q = dt / lastDt;
+        for (int c = 0; c < size; c++) {
+            // the old polynomial is sum B_m s^m with B_0 = old a0 and B_(k+1) = previousB[k],
+            // evaluated at s = 1 + q s': only the terms from s'^1 up are needed
+            double qPower = q;
+            for (int j = 1; j <= ORDER; j++) {
+                double sum = 0.0;
+                for (int m = j; m <= ORDER; m++) {
+                    sum += previousB[m - 1][c] * BINOMIAL[m][j];
+                }
+                b[j - 1][c] = sum * qPower;
+                qPower *= q;
+            }
+            // back to the Newton form, from the highest coefficient
+            for (int k = ORDER - 1; k >= 0; k--) {
+                double gk = b[k][c];
+                for (int m = k + 1; m < ORDER; m++) {
+                    gk -= g[m][c] * NEWTON[m][k];
+                }
+                g[k][c] = gk;
+            }
+        }
+    }
+
+    /**
+     * Writes the positions at the fraction h of the current step into the solver columns.
+     */
+    private void positionsAt(final int n, final double dt, final double h) {
+        for (int i = 0; i < n; i++) {
+            px[i] = positionAt(3 * i, dt, h);
+            py[i] = positionAt(3 * i + 1, dt, h);
+            pz[i] = positionAt(3 * i + 2, dt, h);
+        }
+    }
+
+    private double positionAt(final int c, final double dt, final double h) {
+        double sum = 0.0;
+        for (int k = ORDER - 1; k >= 0; k--) {
+            sum = (sum + b[k][c] * POSITION_WEIGHT[k]) * h;
+        }
+        return x0[c] - compensationX[c] + dt * h * (v0[c] + dt * h * (a0[c] / 2.0 + sum));
+    }
+
+    /**
+     * Computes the accelerations at the given flattened positions, or at the current solver columns if null.
+     */
+    private void evaluate(final ForceSolver solver, final int n, final double[] positions) {
+        if (positions != null) {
+            for (int i = 0; i < n; i++) {
+                px[i] = positions[3 * i];
+                py[i] = positions[3 * i + 1];
+                pz[i] = positions[3 * i + 2];
+            }
+        }
+        solver.computeAccelerations(n, px, py, pz, masses, ax, ay, az);
+        for (int i = 0; i < n; i++) {
+            a[3 * i] = ax[i];
+            a[3 * i + 1] = ay[i];
+            a[3 * i + 2] = az[i];
+        }
+    }
+
+    /**
+     * Adds the given increment to values[c] with Kahan summation, keeping the (opposite of the)
+     * lost low-order bits in compensation[c].
+     */
+    private static double compensatedAdd(
+            final double[] values, final double[] compensation, final int c, final double increment) {
+        final double y = increment - compensation[c];
+        final double t = values[c] + y;
+        compensation[c] = (t - values[c]) - y;
+        return t;
+    }
+
+    private void load(final BodyStore store, final int n) {
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        for (int i = 0; i < n; i++) {
+            x0[3 * i] = x[i];
+            x0[3 * i + 1] = y[i];
+            x0[3 * i + 2] = z[i];
+            v0[3 * i] = vx[i];
+            v0[3 * i + 1] = vy[i];
+            v0[3 * i + 2] = vz[i];
+        }
+        masses = store.mass();
+    }
+
+    private void store(final BodyStore store, final int n) {
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        for (int i = 0; i < n; i++) {
+            x[i] = x0[3 * i];
+            y[i] = x0[3 * i + 1];
+            z[i] = x0[3 * i + 2];
+            vx[i] = v0[3 * i];
+            vy[i] = v0[3 * i + 1];
+            vz[i] = v0[3 * i + 2];
+        }
+    }
+
+    private void ensureCapacity(final int n) {
+        final int size = 3 * n;
+        x0 = Buffers.ensure(x0, size);
+        v0 = Buffers.ensure(v0, size);
+        a0 = Buffers.ensure(a0, size);
+        a = Buffers.ensure(a, size);
+        compensationX = Buffers.ensure(compensationX, size);
+        compensationV = Buffers.ensure(compensationV, size);
+        for (int k = 0; k < ORDER; k++) {
+            b[k] = Buffers.ensure(b[k], size);
+            g[k] = Buffers.ensure(g[k], size);
+            previousB[k] = Buffers.ensure(previousB[k], size);
+        }
+        px = Buffers.ensure(px, n);
+        py = Buffers.ensure(py, n);
+        pz = Buffers.ensure(pz, n);
+        ax = Buffers.ensure(ax, n);
+        ay = Buffers.ensure(ay, n);
+        az = Buffers.ensure(az, n);
+    }
+
+    @Override
+    public void reset() {
+        accelerationsAreValid = false;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * Solves Kepler's equation with Halley's method, which converges cubically, starting from
+ * E = M + 0.85 e sign(M) as suggested by Danby: this guess converges for every eccentricity below one,
+ * without the special cases of the usual starting points.
+ * <p>
+ * The orbits are processed in tiles small enough to stay in the L1 cache. Each iteration is applied to
+ * the whole tile with a loop without branches, which the JIT can unroll and vectorize, and the tile
+ * is iterated again until the largest correction is negligible. The sine and the cosine returned are
+ * the ones of the last iteration, which differ from the ones of the solution by less than the tolerance.
+ */
+public final class HalleyKeplerSolver implements KeplerSolver {
+
+    /**
+     * The number of orbits iterated together.
+     */
+    static final int TILE = 256;
+
+    /**
+     * The largest correction (in rad) at which a tile is considered solved.
+     */
+    static final double TOLERANCE = 1e-14;
+
+    /**
+     * The maximum number of iterations of a tile.
+     */
+    static final int MAX_ITERATIONS = 16;
+
+    /**
+     * Creates a HalleyKeplerSolver.
+     */
+    public HalleyKeplerSolver() {}
+
+    @Override
+    public void solve(
+            final int from,
+            final int to,
+            final double[] meanAnomaly,
+            final double[] eccentricity,
+            final double[] eccentricAnomaly,
+            final double[] cos,
+            final double[] sin) {
+        for (int start = from; start < to; start += TILE) {
+            final int end = Math.min(to, start + TILE);
+            for (int i = start; i < end; i++) {
+                eccentricAnomaly[i] = meanAnomaly[i] + Math.copySign(0.85 * eccentricity[i], meanAnomaly[i]);
+            }
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                double largest = 0.0;
+                for (int i = start; i < end; i++) {
+                    final double anomaly = eccentricAnomaly[i];
+                    final double s = Math.sin(anomaly);
+                    final double c = Math.cos(anomaly);
+                    sin[i] = s;
+                    cos[i] = c;
+                    final double es = eccentricity[i] * s;
+                    final double f = anomaly - es - meanAnomaly[i];
+                    final double fPrime = 1.0 - eccentricity[i] * c;
+                    final double delta = f * fPrime / (fPrime * fPrime - 0.5 * f * es);
+                    eccentricAnomaly[i] = anomaly - delta;
+                    largest = Math.max(largest, Math.abs(delta));
+                }
+                if (largest <= TOLERANCE) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyHierarchy;
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * Advances planet-moon subsystems in coordinates relative to the planet, each one at its own rate,
+ * while the rest of the system takes the large global steps of a kick-drift-kick leapfrog.
+ * <p>
+ * The bodies without a parent in the {@link BodyHierarchy} are the points of the global integration:
+ * the parents stand for their whole subsystem, with its total mass, at its barycenter. The satellites are
+ * kept as positions and velocities relative to their parent, which are small numbers known to full
+ * precision even at the distance of Neptune, and are advanced with a leapfrog of their own, taking as
+ * many substeps per global step as needed to resolve the shortest orbit of the subsystem. The perturbation
+ * of the other points on a subsystem only enters through the tidal accelerations on its satellites,
+ * the difference between the ones on the satellite and the ones on the parent, applied as half kicks at
+ * both ends of each global step: the fastest moons no longer force a short step on the whole system.
+ * <p>
+ * This state is kept between the steps and composed with the barycenters of the subsystems into the
+ * positions and velocities of the store after each step, so the store is only an output: as with
+ * any other integrator, {@link #reset()} must be called after modifying it. The accelerations between
+ * the points are computed by the given {@link ForceSolver}, the others directly.
+ */
+public final class HierarchicalIntegrator implements Integrator {
+
+    /**
+     * The default number of substeps taken in the shortest orbit of a subsystem.
+     */
+    public static final int DEFAULT_STEPS_PER_ORBIT = 256;
+
+    private static final double G = Constants.GRAVITATIONAL_CONSTANT;
+
+    private final BodyHierarchy hierarchy;
+    private final int stepsPerOrbit;
+    private boolean stateIsValid = false;
+    private boolean accelerationsAreValid = false;
+
+    // the points: the bodies without parent, the parents standing for the barycenters of their subsystems
+    private int bodies = 0;
+    private int points = 0;
+    private int[] pointBody;
+    private int[] firstSatellite;
+    private double[] shortestPeriod;
+    private double[] px;
+    private double[] py;
+    private double[] pz;
+    private double[] pvx;
+    private double[] pvy;
+    private double[] pvz;
+    private double[] pmass;
+    private double[] pax;
+    private double[] pay;
+    private double[] paz;
+
+    // the satellites, grouped by point, relative to their parent
+    private int[] satelliteBody;
+    private double[] rx;
+    private double[] ry;
+    private double[] rz;
+    private double[] ux;
+    private double[] uy;
+    private double[] uz;
+    private double[] smass;
+    private double[] tax;
+    private double[] tay;
+    private double[] taz;
+    private double[] iax;
+    private double[] iay;
+    private double[] iaz;
+
+    /**
+     * Creates a HierarchicalIntegrator which finds the satellites with {@link BodyHierarchy#detect}
+     * whenever its state is rebuilt from the store.
+     */
+    public HierarchicalIntegrator() {
+        this(null, DEFAULT_STEPS_PER_ORBIT);
+    }
+
+    /**
+     * Creates a HierarchicalIntegrator.
+     *
+     * @param hierarchy
+     *      The parent of each body, or null to detect the satellites from the store.
+     * @param stepsPerOrbit
+     *      The minimum number of substeps in the shortest orbit of a subsystem.
+     */
+    public HierarchicalIntegrator(final BodyHierarchy hierarchy, final int stepsPerOrbit) {
+        if (stepsPerOrbit < 1) {
+            throw new IllegalArgumentException(String.format("Invalid number of steps per orbit %d", stepsPerOrbit));
+        }
+        this.hierarchy = hierarchy;
+        this.stepsPerOrbit = stepsPerOrbit;
+    }
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        if (!stateIsValid || store.size() != bodies) {
+            build(store);
+        }
+        if (!accelerationsAreValid) {
+            externalAccelerations(solver);
+        }
+
+        final double halfDt = 0.5 * dt;
+        kick(halfDt);
+        for (int p = 0; p < points; p++) {
+            px[p] += pvx[p] * dt;
+            py[p] += pvy[p] * dt;
+            pz[p] += pvz[p] * dt;
+            if (firstSatellite[p + 1] > firstSatellite[p]) {
+                advanceSubsystem(p, dt);
+            }
+        }
+        externalAccelerations(solver);
+        kick(halfDt);
+        accelerationsAreValid = true;
+
+        compose(store);
+    }
+
+    /**
+     * Rebuilds the points and the relative state of the satellites from the store.
+     */
+    private void build(final BodyStore store) {
+        final int n = store.size();
+        final BodyHierarchy h = hierarchy == null ? BodyHierarchy.detect(store) : hierarchy;
+        if (h.size() != n) {
+            throw new IllegalArgumentException(
+                    String.format("The hierarchy has %d bodies, but the store has %d", h.size(), n));
+        }
+        final int satellites = h.satellites();
+        bodies = n;
+        points = n - satellites;
+        pointBody = Buffers.ensure(pointBody, points);
+        firstSatellite = Buffers.ensure(firstSatellite, points + 1);
+        shortestPeriod = Buffers.ensure(shortestPeriod, points);
+        px = Buffers.ensure(px, points);
+        py = Buffers.ensure(py, points);
+        pz = Buffers.ensure(pz, points);
+        pvx = Buffers.ensure(pvx, points);
+        pvy = Buffers.ensure(pvy, points);
+        pvz = Buffers.ensure(pvz, points);
+        pmass = Buffers.ensure(pmass, points);
+        pax = Buffers.ensure(pax, points);
+        pay = Buffers.ensure(pay, points);
+        paz = Buffers.ensure(paz, points);
+        satelliteBody = Buffers.ensure(satelliteBody, satellites);
+        rx = Buffers.ensure(rx, satellites);
+        ry = Buffers.ensure(ry, satellites);
+        rz = Buffers.ensure(rz, satellites);
+        ux = Buffers.ensure(ux, satellites);
+        uy = Buffers.ensure(uy, satellites);
+        uz = Buffers.ensure(uz, satellites);
+        smass = Buffers.ensure(smass, satellites);
+        tax = Buffers.ensure(tax, satellites);
+        tay = Buffers.ensure(tay, satellites);
+        taz = Buffers.ensure(taz, satellites);
+        iax = Buffers.ensure(iax, satellites);
+        iay = Buffers.ensure(iay, satellites);
+        iaz = Buffers.ensure(iaz, satellites);
+
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        final double[] m = store.mass();
+        int s = 0;
+        int p = 0;
+        for (int b = 0; b < n; b++) {
+            if (h.parent(b) != BodyHierarchy.NO_PARENT) {
+                continue;
+            }
+            pointBody[p] = b;
+            firstSatellite[p] = s;
+            double mass = m[b];
+            double sx = 0.0;
+            double sy = 0.0;
+            double sz = 0.0;
+            double svx = 0.0;
+            double svy = 0.0;
+            double svz = 0.0;
+            double period = Double.POSITIVE_INFINITY;
+            // the satellites are few, a linear search for each parent is enough
+            for (int i = 0; i < n; i++) {
+                if (h.parent(i) != b) {
+                    continue;
+                }
+                satelliteBody[s] = i;
+                smass[s] = m[i];
+                rx[s] = x[i] - x[b];
+                ry[s] = y[i] - y[b];
+                rz[s] = z[i] - z[b];
+                ux[s] = vx[i] - vx[b];
+                uy[s] = vy[i] - vy[b];
+                uz[s] = vz[i] - vz[b];
+                mass += m[i];
+                sx += m[i] * rx[s];
+                sy += m[i] * ry[s];
+                sz += m[i] * rz[s];
+                svx += m[i] * ux[s];
+                svy += m[i] * uy[s];
+                svz += m[i] * uz[s];
+                period = Math.min(period, period(s, m[b]));
+                s++;
+            }
+            pmass[p] = mass;
+            px[p] = x[b] + sx / mass;
+            py[p] = y[b] + sy / mass;
+            pz[p] = z[b] + sz / mass;
+            pvx[p] = vx[b] + svx / mass;
+            pvy[p] = vy[b] + svy / mass;
+            pvz[p] = vz[b] + svz / mass;
+            shortestPeriod[p] = period;
+            p++;
+        }
+        firstSatellite[points] = s;
+        stateIsValid = true;
+        accelerationsAreValid = false;
+    }
+
+    /**
+     * Returns the period of the osculating orbit of the given satellite around its parent or,
+     * if it is not bound, the time it takes to cover its distance from the parent.
+     */
+    private double period(final int s, final double parentMass) {
+        final double mu = G * (parentMass + smass[s]);
+        final double r = Math.sqrt(rx[s] * rx[s] + ry[s] * ry[s] + rz[s] * rz[s]);
+        final double v2 = ux[s] * ux[s] + uy[s] * uy[s] + uz[s] * uz[s];
+        final double inverseA = 2.0 / r - v2 / mu;
+        if (inverseA > 0.0) {
+            final double a = 1.0 / inverseA;
+            return 2.0 * Math.PI * Math.sqrt(a * a * a / mu);
+        }
+        return 2.0 * Math.PI * r / Math.sqrt(v2);
+    }
+
+    /**
+     * Computes the accelerations between the points and the tidal accelerations that they give to the satellites.
+     */
+    private void externalAccelerations(final ForceSolver solver) {
+        solver.computeAccelerations(points, px, py, pz, pmass, pax, pay, paz);
+        for (int p = 0; p < points; p++) {
+            final int from = firstSatellite[p];
+            final int to = firstSatellite[p + 1];
+            if (from == to) {
+                continue;
+            }
+            // the absolute position of the parent
+            double sx = 0.0;
+            double sy = 0.0;
+            double sz = 0.0;
+            for (int s = from; s < to; s++) {
+                sx += smass[s] * rx[s];
+                sy += smass[s] * ry[s];
+                sz += smass[s] * rz[s];
+            }
+            final double parentX = px[p] - sx / pmass[p];
+            final double parentY = py[p] - sy / pmass[p];
+            final double parentZ = pz[p] - sz / pmass[p];
+            for (int s = from; s < to; s++) {
+                double ax = 0.0;
+                double ay = 0.0;
+                double az = 0.0;
+                for (int q = 0; q < points; q++) {
+                    if (q == p) {
+                        continue;
+                    }
+                    // on the satellite
+                    final double dx = px[q] - parentX - rx[s];
+                    final double dy = py[q] - parentY - ry[s];
+                    final double dz = pz[q] - parentZ - rz[s];
+                    final double d2 = dx * dx + dy * dy + dz * dz;
+                    final double f = pmass[q] / (d2 * Math.sqrt(d2));
+                    // on the parent
+                    final double ex = px[q] - parentX;
+                    final double ey = py[q] - parentY;
+                    final double ez = pz[q] - parentZ;
+                    final double e2 = ex * ex + ey * ey + ez * ez;
+                    final double g = pmass[q] / (e2 * Math.sqrt(e2));
+                    ax += dx * f - ex * g;
+                    ay += dy * f - ey * g;
+                    az += dz * f - ez * g;
+                }
+                tax[s] = G * ax;
+                tay[s] = G * ay;
+                taz[s] = G * az;
+            }
+        }
+    }
+
+    private void kick(final double dt) {
+        for (int p = 0; p < points; p++) {
+            pvx[p] += pax[p] * dt;
+            pvy[p] += pay[p] * dt;
+            pvz[p] += paz[p] * dt;
+        }
+        final int satellites = firstSatellite[points];
+        for (int s = 0; s < satellites; s++) {
+            ux[s] += tax[s] * dt;
+            uy[s] += tay[s] * dt;
+            uz[s] += taz[s] * dt;
+        }
+    }
+
+    /**
+     * Advances the relative state of the satellites of the given point with a kick-drift-kick leapfrog,
+     * in as many substeps as needed to resolve the shortest orbit.
+     */
+    private void advanceSubsystem(final int p, final double dt) {
+        final int from = firstSatellite[p];
+        final int to = firstSatellite[p + 1];
+        final double parentMass = pmass[p] - sumOfMasses(from, to);
+        final int substeps = (int) Math.min(Integer.MAX_VALUE, Math.ceil(stepsPerOrbit * dt / shortestPeriod[p]));
+        final double h = dt / Math.max(1, substeps);
+        final double halfH = 0.5 * h;
+        internalAccelerations(from, to, parentMass);
+        for (int k = 0; k < Math.max(1, substeps); k++) {
+            for (int s = from; s < to; s++) {
+                ux[s] += iax[s] * halfH;
+                uy[s] += iay[s] * halfH;
+                uz[s] += iaz[s] * halfH;
+                rx[s] += ux[s] * h;
+                ry[s] += uy[s] * h;
+                rz[s] += uz[s] * h;
+            }
+            internalAccelerations(from, to, parentMass);
+            for (int s = from; s < to; s++) {
+                ux[s] += iax[s] * halfH;
+                uy[s] += iay[s] * halfH;
+                uz[s] += iaz[s] * halfH;
+            }
+        }
+    }
+
+    private double sumOfMasses(final int from, final int to) {
+        double sum = 0.0;
+        for (int s = from; s < to; s++) {
+            sum += smass[s];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the accelerations of the satellites relative to their parent, due to the parent
+     * and to each other: the parent accelerates towards every satellite, which gives the indirect terms.
+     */
+    private void internalAccelerations(final int from, final int to, final double parentMass) {
+        for (int s = from; s < to; s++) {
+            final double r2 = rx[s] * rx[s] + ry[s] * ry[s] + rz[s] * rz[s];
+            final double f = -(parentMass + smass[s]) / (r2 * Math.sqrt(r2));
+            double ax = rx[s] * f;
+            double ay = ry[s] * f;
+            double az = rz[s] * f;
+            for (int j = from; j < to; j++) {
+                if (j == s) {
+                    continue;
+                }
+                final double dx = rx[j] - rx[s];
+                final double dy = ry[j] - ry[s];
+                final double dz = rz[j] - rz[s];
+                final double d2 = dx * dx + dy * dy + dz * dz;
+                final double direct = smass[j] / (d2 * Math.sqrt(d2));
+                final double j2 = rx[j] * rx[j] + ry[j] * ry[j] + rz[j] * rz[j];
+                final double indirect = smass[j] / (j2 * Math.sqrt(j2));
+                ax += dx * direct - rx[j] * indirect;
+                ay += dy * direct - ry[j] * indirect;
+                az += dz * direct - rz[j] * indirect;
+            }
+            iax[s] = G * ax;
+            iay[s] = G * ay;
+            iaz[s] = G * az;
+        }
+    }
+
+    /**
+     * Writes the absolute positions and velocities of all the bodies into the store.
+     */
+    private void compose(final BodyStore store) {
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        for (int p = 0; p < points; p++) {
+            final int from = firstSatellite[p];
+            final int to = firstSatellite[p + 1];
+            double sx = 0.0;
+            double sy = 0.0;
+            double sz = 0.0;
+            double svx = 0.0;
+            double svy = 0.0;
+            double svz = 0.0;
+            for (int s = from; s < to; s++) {
+                sx += smass[s] * rx[s];
+                sy += smass[s] * ry[s];
+                sz += smass[s] * rz[s];
+                svx += smass[s] * ux[s];
+                svy += smass[s] * uy[s];
+                svz += smass[s] * uz[s];
+            }
+            final int b = pointBody[p];
+            x[b] = px[p] - sx / pmass[p];
+            y[b] = py[p] - sy / pmass[p];
+            z[b] = pz[p] - sz / pmass[p];
+            vx[b] = pvx[p] - svx / pmass[p];
+            vy[b] = pvy[p] - svy / pmass[p];
+            vz[b] = pvz[p] - svz / pmass[p];
+            for (int s = from; s < to; s++) {
+                final int i = satelliteBody[s];
+                x[i] = x[b] + rx[s];
+                y[i] = y[b] + ry[s];
+                z[i] = z[b] + rz[s];
+                vx[i] = vx[b] + ux[s];
+                vy[i] = vy[b] + uy[s];
+                vz[i] = vz[b] + uz[s];
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        stateIsValid = false;
+        accelerationsAreValid = false;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * A numerical scheme which advances the state of a {@link BodyStore} in time.
+ * <p>
+ * Implementations keep their scratch buffers between calls and grow them only
+ * when the number of bodies increases, so that {@link #step} does not allocate
+ * once it has been called at least once.
+ */
+public interface Integrator {
+
+    /**
+     * Advances positions and velocities of all the bodies in the store by the given timestep.
+     *
+     * @param store
+     *      The bodies to be advanced.
+     * @param solver
+     *      The ForceSolver used to compute the accelerations.
+     * @param dt
+     *      The timestep (in s).
+     */
+    void step(BodyStore store, ForceSolver solver, double dt);
+
+    /**
+     * Discards any state cached from previous steps (like the last computed accelerations).
+     * Must be called whenever the store is modified outside of {@link #step}.
+     */
+    default void reset() {}
+}
@@ -0,0 +1,74 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.function.Supplier;
+
+/**
+ * Each value of this enumeration corresponds to an available {@link Integrator}.
+ */
+public enum IntegratorType {
+    EULER("euler", EulerIntegrator::new),
+    LEAPFROG("leapfrog", LeapfrogIntegrator::new),
+    RK4("rk4", RungeKutta4Integrator::new),
+    BLOCK("block", () -> new BlockTimestepIntegrator(16, 0.01)),
+    WISDOM_HOLMAN("wisdom-holman", WisdomHolmanIntegrator::new),
+    GAUSS_RADAU("gauss-radau", GaussRadauIntegrator::new),
+    HIERARCHICAL("hierarchical", HierarchicalIntegrator::new);
+
+    private final String name;
+    private final Supplier<Integrator> constructor;
+
+    IntegratorType(final String name, final Supplier<Integrator> constructor) {
+        this.name = name;
+        this.constructor = constructor;
+    }
+
+    /**
+     * @return
+     *      The lowercase name of the Integrator.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return
+     *      A new instance of the corresponding Integrator.
+     */
+    public Integrator create() {
+        return constructor.get();
+    }
+
+    /**
+     * Looks for the IntegratorType with the given name.
+     *
+     * @param name
+     *      The lowercase name of the wanted IntegratorType.
+     * @return
+     *      The corresponding IntegratorType.
+     */
+    public static IntegratorType fromName(final String name) {
+        for (final IntegratorType t : values()) {
+            if (t.name.equals(name)) {
+                return t;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown integrator '%s'", name));
+    }
+}
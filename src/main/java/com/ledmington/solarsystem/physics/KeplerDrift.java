@@ -0,0 +1,127 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * Solves the two-body problem with the universal variable formulation, which works for elliptic,
+ * parabolic and hyperbolic orbits alike, advancing a relative position and velocity through
+ * the f and g functions.
+ */
+final class KeplerDrift {
+
+    private static final int MAX_ITERATIONS = 50;
+
+    /**
+     * Below this absolute value of the argument, the Stumpff functions are evaluated with their series
+     * to avoid catastrophic cancellation.
+     */
+    private static final double SERIES_THRESHOLD = 1e-2;
+
+    private KeplerDrift() {}
+
+    /**
+     * Advances the relative state of a body orbiting a fixed center, in place.
+     *
+     * @param state
+     *      The relative position (elements 0 to 2, in m) and velocity (elements 3 to 5, in m/s).
+     * @param mu
+     *      The gravitational parameter of the center (in m^3/s^2).
+     * @param dt
+     *      The time interval (in s).
+     */
+    static void drift(final double[] state, final double mu, final double dt) {
+        final double x = state[0];
+        final double y = state[1];
+        final double z = state[2];
+        final double vx = state[3];
+        final double vy = state[4];
+        final double vz = state[5];
+
+        final double r0 = Math.sqrt(x * x + y * y + z * z);
+        final double v2 = vx * vx + vy * vy + vz * vz;
+        final double sqrtMu = Math.sqrt(mu);
+        final double rv = (x * vx + y * vy + z * vz) / sqrtMu;
+        final double alpha = 2.0 / r0 - v2 / mu;
+
+        // Newton's method on the universal Kepler equation
+        double chi = alpha > 0.0 ? sqrtMu * alpha * dt : sqrtMu * dt / r0;
+        double c = 0.5;
+        double s = 1.0 / 6.0;
+        double r = r0;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            final double chi2 = chi * chi;
+            final double psi = alpha * chi2;
+            c = stumpffC(psi);
+            s = stumpffS(psi);
+            final double f = rv * chi2 * c + (1.0 - alpha * r0) * chi2 * chi * s + r0 * chi - sqrtMu * dt;
+            r = rv * chi * (1.0 - psi * s) + (1.0 - alpha * r0) * chi2 * c + r0;
+            final double delta = f / r;
+            chi -= delta;
+            if (Math.abs(delta) <= 1e-15 * Math.abs(chi)) {
+                break;
+            }
+        }
+
+        final double chi2 = chi * chi;
+        final double psi = alpha * chi2;
+        c = stumpffC(psi);
+        s = stumpffS(psi);
+        r = rv * chi * (1.0 - psi * s) + (1.0 - alpha * r0) * chi2 * c + r0;
+
+        final double f = 1.0 - chi2 / r0 * c;
+        final double g = dt - chi2 * chi * s / sqrtMu;
+        final double fDot = sqrtMu / (r * r0) * chi * (psi * s - 1.0);
+        final double gDot = 1.0 - chi2 / r * c;
+
+        state[0] = f * x + g * vx;
+        state[1] = f * y + g * vy;
+        state[2] = f * z + g * vz;
+        state[3] = fDot * x + gDot * vx;
+        state[4] = fDot * y + gDot * vy;
+        state[5] = fDot * z + gDot * vz;
+    }
+
+    /**
+     * The Stumpff function C(psi) = (1 - cos(sqrt(psi))) / psi.
+     */
+    static double stumpffC(final double psi) {
+        if (Math.abs(psi) < SERIES_THRESHOLD) {
+            return 1.0 / 2.0 - psi * (1.0 / 24.0 - psi * (1.0 / 720.0 - psi * (1.0 / 40_320.0 - psi / 3_628_800.0)));
+        }
+        if (psi > 0.0) {
+            return (1.0 - Math.cos(Math.sqrt(psi))) / psi;
+        }
+        return (Math.cosh(Math.sqrt(-psi)) - 1.0) / -psi;
+    }
+
+    /**
+     * The Stumpff function S(psi) = (sqrt(psi) - sin(sqrt(psi))) / sqrt(psi)^3.
+     */
+    static double stumpffS(final double psi) {
+        if (Math.abs(psi) < SERIES_THRESHOLD) {
+            return 1.0 / 6.0
+                    - psi * (1.0 / 120.0 - psi * (1.0 / 5_040.0 - psi * (1.0 / 362_880.0 - psi / 39_916_800.0)));
+        }
+        if (psi > 0.0) {
+            final double sq = Math.sqrt(psi);
+            return (sq - Math.sin(sq)) / (sq * sq * sq);
+        }
+        final double sq = Math.sqrt(-psi);
+        return (Math.sinh(sq) - sq) / (sq * sq * sq);
+    }
+}
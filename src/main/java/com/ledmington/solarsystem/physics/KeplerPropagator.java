@@ -0,0 +1,166 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.ledmington.solarsystem.model.KeplerianOrbits;
+
+/**
+ * Places the bodies of a {@link KeplerianOrbits} at any time analytically, as in the two-body problem,
+ * without computing any force: each orbit costs the solution of Kepler's equation and a few multiply-adds,
+ * whatever the time elapsed, so that moons and small bodies can be positioned every frame.
+ * <p>
+ * The orbits are split in contiguous blocks, propagated in parallel on the common {@link ForkJoinPool}:
+ * each block computes the mean anomalies of its orbits, solves Kepler's equation for them with a
+ * {@link KeplerSolver} and writes the positions, only in its own slice of the columns. All the tasks
+ * and the scratch buffers are preallocated, so a propagation does not create garbage once warmed up.
+ */
+public final class KeplerPropagator {
+
+    /**
+     * Below this number of orbits the propagation is performed on the calling thread.
+     */
+    private static final int SERIAL_THRESHOLD = 4_096;
+
+    private static final int BLOCKS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    private final KeplerSolver solver;
+    private final ForkJoinTask<?>[] blocks = new ForkJoinTask<?>[BLOCKS];
+    private final ForkJoinTask<?> root;
+    private double[] meanAnomaly;
+    private double[] eccentricAnomaly;
+    private double[] cos;
+    private double[] sin;
+
+    // arguments of the current call, read by the tasks
+    private KeplerianOrbits orbits;
+    private double time;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+
+    /**
+     * Creates a KeplerPropagator using the SIMD kernel, if available.
+     */
+    public KeplerPropagator() {
+        this(Vectorization.keplerSolver());
+    }
+
+    /**
+     * Creates a KeplerPropagator.
+     *
+     * @param solver
+     *      The KeplerSolver used to compute the eccentric anomalies.
+     */
+    public KeplerPropagator(final KeplerSolver solver) {
+        this.solver = Objects.requireNonNull(solver);
+        for (int b = 0; b < BLOCKS; b++) {
+            final int block = b;
+            blocks[b] = ForkJoinTask.adapt(() -> {
+                final int n = orbits.size();
+                compute((int) ((long) n * block / BLOCKS), (int) ((long) n * (block + 1) / BLOCKS));
+            });
+        }
+        this.root = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(blocks));
+    }
+
+    /**
+     * Computes the position of each orbiting body relative to its parent at the given time.
+     *
+     * @param orbits
+     *      The orbits.
+     * @param t
+     *      The time (in s).
+     * @param x
+     *      The output x coordinates relative to the parents (in m).
+     * @param y
+     *      The output y coordinates relative to the parents (in m).
+     * @param z
+     *      The output z coordinates relative to the parents (in m).
+     */
+    public void propagate(
+            final KeplerianOrbits orbits, final double t, final double[] x, final double[] y, final double[] z) {
+        final int n = orbits.size();
+        if (x.length < n || y.length < n || z.length < n) {
+            throw new IllegalArgumentException(
+                    String.format("The output arrays cannot hold the positions of %,d orbits", n));
+        }
+        if (!Double.isFinite(t)) {
+            throw new IllegalArgumentException(String.format("Invalid time %f", t));
+        }
+        meanAnomaly = Buffers.ensure(meanAnomaly, n);
+        eccentricAnomaly = Buffers.ensure(eccentricAnomaly, n);
+        cos = Buffers.ensure(cos, n);
+        sin = Buffers.ensure(sin, n);
+        this.orbits = orbits;
+        this.time = t;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+
+        if (n < SERIAL_THRESHOLD) {
+            compute(0, n);
+        } else {
+            for (final ForkJoinTask<?> block : blocks) {
+                block.reinitialize();
+            }
+            root.reinitialize();
+            ForkJoinPool.commonPool().invoke(root);
+        }
+
+        // do not keep the arrays of the caller alive
+        this.orbits = null;
+        this.x = null;
+        this.y = null;
+        this.z = null;
+    }
+
+    private void compute(final int from, final int to) {
+        final double[] m0 = orbits.meanAnomaly();
+        final double[] n = orbits.meanMotion();
+        for (int i = from; i < to; i++) {
+            final double m = m0[i] + n[i] * time;
+            meanAnomaly[i] = m - TWO_PI * Math.rint(m / TWO_PI);
+        }
+
+        final double[] e = orbits.eccentricity();
+        solver.solve(from, to, meanAnomaly, e, eccentricAnomaly, cos, sin);
+
+        final double[] a = orbits.semiMajorAxis();
+        final double[] b = orbits.semiMinorAxis();
+        final double[] px = orbits.px();
+        final double[] py = orbits.py();
+        final double[] pz = orbits.pz();
+        final double[] qx = orbits.qx();
+        final double[] qy = orbits.qy();
+        final double[] qz = orbits.qz();
+        for (int i = from; i < to; i++) {
+            // in the orbital plane, with the periapsis along P
+            final double u = a[i] * (cos[i] - e[i]);
+            final double v = b[i] * sin[i];
+            x[i] = px[i] * u + qx[i] * v;
+            y[i] = py[i] * u + qy[i] * v;
+            z[i] = pz[i] * u + qz[i] * v;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * Solves Kepler's equation M = E - e sin(E) for the eccentric anomaly E of many elliptic orbits at once.
+ * <p>
+ * Implementations work on raw structure-of-arrays columns, so that the same iteration is applied to
+ * consecutive orbits and can be vectorized. They must not allocate memory in {@link #solve}.
+ */
+public interface KeplerSolver {
+
+    /**
+     * Solves Kepler's equation for the orbits between the given indices. The sine and the cosine
+     * of the solution are returned as well, since they are all that is needed to place a body on its orbit.
+     *
+     * @param from
+     *      The index of the first orbit.
+     * @param to
+     *      The index after the last orbit.
+     * @param meanAnomaly
+     *      The mean anomalies, between -pi and pi (in rad).
+     * @param eccentricity
+     *      The eccentricities, in [0; 1).
+     * @param eccentricAnomaly
+     *      The output eccentric anomalies (in rad).
+     * @param cos
+     *      The output cosines of the eccentric anomalies.
+     * @param sin
+     *      The output sines of the eccentric anomalies.
+     */
+    void solve(
+            int from,
+            int to,
+            double[] meanAnomaly,
+            double[] eccentricity,
+            double[] eccentricAnomaly,
+            double[] cos,
+            double[] sin);
+}
@@ -0,0 +1,262 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Evaluates the accelerations in parallel over a dedicated {@link ForkJoinPool}.
+ * <p>
+ * The targets are split in contiguous blocks and each block is handled by a single task,
+ * which accumulates the contributions of all the sources in its own registers and writes
+ * only to its own slice of the output arrays: tasks never share a memory location,
+ * so there is no contention and no synchronization beyond joining the tasks.
+ * Since each target sums its sources in exactly the same order as the serial kernel,
+ * the results are bit-for-bit identical to the ones of the wrapped solver, for any N
+ * and any level of parallelism.
+ * <p>
+ * There are more blocks than threads, so that work-stealing can balance uneven blocks
+ * (like the ones of a Barnes-Hut tree walk). All tasks are preallocated and reused,
+ * so a call does not create garbage once warmed up.
+ */
+public final class ParallelForceSolver implements ForceSolver, AutoCloseable {
+
+    /**
+     * Below this number of targets the accelerations are computed on the calling thread.
+     */
+    private static final int SERIAL_THRESHOLD = 256;
+
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    /**
+     * The serial kernel which is run on each block.
+     */
+    private interface BlockKernel {
+        void prepare(int n, double[] x, double[] y, double[] z, double[] mass);
+
+        /**
+         * Computes the targets in [from; to), or in targets[from; to) when computing only some targets.
+         */
+        void compute(int block, int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final BlockKernel kernel;
+    private final ForkJoinTask<?>[] blocks;
+    private final ForkJoinTask<?> root;
+
+    // arguments of the current call, read by the tasks
+    private int n;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double[] mass;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+    private int[] targets;
+    private int count;
+
+    /**
+     * Creates a ParallelForceSolver which runs the exact direct summation.
+     *
+     * @param parallelism
+     *      The number of worker threads.
+     */
+    public ParallelForceSolver(final int parallelism) {
+        this(parallelism, new DirectSumSolver());
+    }
+
+    /**
+     * Creates a ParallelForceSolver which runs the exact direct summation.
+     *
+     * @param parallelism
+     *      The number of worker threads.
+     * @param solver
+     *      The serial solver whose parameters are used.
+     */
+    public ParallelForceSolver(final int parallelism, final DirectSumSolver solver) {
+        this(parallelism, Objects.requireNonNull(solver), null);
+    }
+
+    /**
+     * Creates a ParallelForceSolver which walks a Barnes-Hut tree. The tree is built
+     * on the calling thread, then the walks of the targets are split among the workers.
+     *
+     * @param parallelism
+     *      The number of worker threads.
+     * @param solver
+     *      The serial solver which builds the tree.
+     */
+    public ParallelForceSolver(final int parallelism, final BarnesHutSolver solver) {
+        this(parallelism, null, Objects.requireNonNull(solver));
+    }
+
+    private ParallelForceSolver(final int parallelism, final DirectSumSolver direct, final BarnesHutSolver tree) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism level must be at least 1");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.blocks = new ForkJoinTask<?>[parallelism * BLOCKS_PER_THREAD];
+        this.kernel = tree == null ? directKernel(direct.softeningSquared()) : treeKernel(tree, blocks.length);
+        for (int b = 0; b < blocks.length; b++) {
+            final int block = b;
+            blocks[b] = ForkJoinTask.adapt(() -> {
+                final int m = targets == null ? n : count;
+                final int from = (int) ((long) m * block / blocks.length);
+                final int to = (int) ((long) m * (block + 1) / blocks.length);
+                if (from < to) {
+                    kernel.compute(block, from, to);
+                }
+            });
+        }
+        this.root = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(blocks));
+    }
+
+    private BlockKernel directKernel(final double softeningSquared) {
+        return new BlockKernel() {
+            @Override
+            public void prepare(
+                    final int n, final double[] x, final double[] y, final double[] z, final double[] mass) {}
+
+            @Override
+            public void compute(final int block, final int from, final int to) {
+                if (targets == null) {
+                    DirectSumSolver.computeAccelerations(from, to, n, x, y, z, mass, ax, ay, az, softeningSquared);
+                    return;
+                }
+                for (int k = from; k < to; k++) {
+                    DirectSumSolver.accelerationOf(targets[k], n, x, y, z, mass, ax, ay, az, softeningSquared);
+                }
+            }
+        };
+    }
+
+    private BlockKernel treeKernel(final BarnesHutSolver tree, final int blockCount) {
+        final int[][] stacks = new int[blockCount][];
+        for (int b = 0; b < blockCount; b++) {
+            stacks[b] = BarnesHutSolver.newTraversalStack();
+        }
+        return new BlockKernel() {
+            @Override
+            public void prepare(
+                    final int n, final double[] x, final double[] y, final double[] z, final double[] mass) {
+                tree.prepare(n, x, y, z, mass);
+            }
+
+            @Override
+            public void compute(final int block, final int from, final int to) {
+                if (targets == null) {
+                    tree.computeAccelerations(from, to, x, y, z, mass, ax, ay, az, stacks[block]);
+                } else {
+                    tree.computeAccelerations(targets, from, to, x, y, z, mass, ax, ay, az, stacks[block]);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return
+     *      The number of worker threads.
+     */
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        run(n, x, y, z, mass, null, n, ax, ay, az);
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        run(n, x, y, z, mass, Objects.requireNonNull(targets), count, ax, ay, az);
+    }
+
+    private void run(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        this.n = n;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.mass = mass;
+        this.ax = ax;
+        this.ay = ay;
+        this.az = az;
+        this.targets = targets;
+        this.count = count;
+
+        kernel.prepare(n, x, y, z, mass);
+        if (count < SERIAL_THRESHOLD) {
+            kernel.compute(0, 0, count);
+        } else {
+            for (final ForkJoinTask<?> block : blocks) {
+                block.reinitialize();
+            }
+            root.reinitialize();
+            pool.invoke(root);
+        }
+
+        // do not keep the arrays of the caller alive
+        this.x = null;
+        this.y = null;
+        this.z = null;
+        this.mass = null;
+        this.ax = null;
+        this.ay = null;
+        this.az = null;
+        this.targets = null;
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.ParticleStore;
+
+/**
+ * Advances massless test particles under the gravity of the massive bodies only, so that a step
+ * costs O(N * M) for N particles and M massive bodies instead of O((N + M)^2).
+ * <p>
+ * Each step is a kick-drift-kick leapfrog split in two halves around the step of the massive bodies:
+ * {@link #beginStep} applies the opening kick, with the accelerations of the end of the previous step,
+ * and the drift, then {@link #endStep} computes the accelerations at the new positions of the massive
+ * bodies and applies the closing kick. The particles are split in contiguous blocks, advanced in parallel
+ * on a dedicated {@link ForkJoinPool}: each block writes only to its own slice of the columns,
+ * and all tasks are preallocated, so a step does not create garbage.
+ */
+public final class ParticleIntegrator implements AutoCloseable {
+
+    /**
+     * Below this number of particles the step is performed on the calling thread.
+     */
+    private static final int SERIAL_THRESHOLD = 1_024;
+
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final ForkJoinTask<?>[] blocks;
+    private final ForkJoinTask<?> root;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+    private boolean accelerationsAreValid = false;
+
+    // arguments of the current call, read by the tasks
+    private ParticleStore particles;
+    private BodyStore massive;
+    private double dt;
+    private boolean opening;
+
+    /**
+     * Creates a ParticleIntegrator.
+     *
+     * @param parallelism
+     *      The number of worker threads.
+     */
+    public ParticleIntegrator(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism level must be at least 1");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.blocks = new ForkJoinTask<?>[parallelism * BLOCKS_PER_THREAD];
+        for (int b = 0; b < blocks.length; b++) {
+            final int block = b;
+            blocks[b] = ForkJoinTask.adapt(() -> {
+                final int n = particles.size();
+                final int from = (int) ((long) n * block / blocks.length);
+                final int to = (int) ((long) n * (block + 1) / blocks.length);
+                compute(from, to);
+            });
+        }
+        this.root = ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(blocks));
+    }
+
+    /**
+     * Applies the opening half kick and the drift. Must be called before advancing the massive bodies.
+     *
+     * @param particles
+     *      The test particles.
+     * @param massive
+     *      The massive bodies, at the beginning of the step.
+     * @param dt
+     *      The timestep (in s).
+     */
+    public void beginStep(final ParticleStore particles, final BodyStore massive, final double dt) {
+        final int n = particles.size();
+        if (ax == null || ax.length < n) {
+            accelerationsAreValid = false;
+        }
+        ax = Buffers.ensure(ax, n);
+        ay = Buffers.ensure(ay, n);
+        az = Buffers.ensure(az, n);
+        if (!accelerationsAreValid) {
+            final double[] x = particles.x();
+            final double[] y = particles.y();
+            final double[] z = particles.z();
+            for (int i = 0; i < n; i++) {
+                accelerationOf(i, x[i], y[i], z[i], massive);
+            }
+            accelerationsAreValid = true;
+        }
+        run(particles, massive, dt, true);
+    }
+
+    /**
+     * Computes the new accelerations and applies the closing half kick.
+     * Must be called after advancing the massive bodies.
+     *
+     * @param particles
+     *      The test particles.
+     * @param massive
+     *      The massive bodies, at the end of the step.
+     * @param dt
+     *      The timestep (in s).
+     */
+    public void endStep(final ParticleStore particles, final BodyStore massive, final double dt) {
+        run(particles, massive, dt, false);
+    }
+
+    private void run(final ParticleStore particles, final BodyStore massive, final double dt, final boolean opening) {
+        this.particles = particles;
+        this.massive = massive;
+        this.dt = dt;
+        this.opening = opening;
+
+        if (particles.size() < SERIAL_THRESHOLD) {
+            compute(0, particles.size());
+        } else {
+            for (final ForkJoinTask<?> block : blocks) {
+                block.reinitialize();
+            }
+            root.reinitialize();
+            pool.invoke(root);
+        }
+
+        // do not keep the stores of the caller alive
+        this.particles = null;
+        this.massive = null;
+    }
+
+    private void compute(final int from, final int to) {
+        final double[] x = particles.x();
+        final double[] y = particles.y();
+        final double[] z = particles.z();
+        final double[] vx = particles.vx();
+        final double[] vy = particles.vy();
+        final double[] vz = particles.vz();
+        final double halfDt = 0.5 * dt;
+        if (opening) {
+            for (int i = from; i < to; i++) {
+                vx[i] += ax[i] * halfDt;
+                vy[i] += ay[i] * halfDt;
+                vz[i] += az[i] * halfDt;
+                x[i] += vx[i] * dt;
+                y[i] += vy[i] * dt;
+                z[i] += vz[i] * dt;
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                accelerationOf(i, x[i], y[i], z[i], massive);
+                vx[i] += ax[i] * halfDt;
+                vy[i] += ay[i] * halfDt;
+                vz[i] += az[i] * halfDt;
+            }
+        }
+    }
+
+    private void accelerationOf(
+            final int i, final double px, final double py, final double pz, final BodyStore massive) {
+        final int m = massive.size();
+        final double[] x = massive.x();
+        final double[] y = massive.y();
+        final double[] z = massive.z();
+        final double[] mass = massive.mass();
+        double sx = 0.0;
+        double sy = 0.0;
+        double sz = 0.0;
+        for (int j = 0; j < m; j++) {
+            final double dx = x[j] - px;
+            final double dy = y[j] - py;
+            final double dz = z[j] - pz;
+            final double r2 = dx * dx + dy * dy + dz * dz;
+            final double s = mass[j] / (r2 * Math.sqrt(r2));
+            sx += dx * s;
+            sy += dy * s;
+            sz += dz * s;
+        }
+        ax[i] = Constants.GRAVITATIONAL_CONSTANT * sx;
+        ay[i] = Constants.GRAVITATIONAL_CONSTANT * sy;
+        az[i] = Constants.GRAVITATIONAL_CONSTANT * sz;
+    }
+
+    /**
+     * Discards the accelerations cached from the previous step. Must be called when the particles
+     * or the massive bodies are modified outside of the simulation.
+     */
+    public void reset() {
+        accelerationsAreValid = false;
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Positions of the bodies read back at any simulated time, instead of being integrated.
+ * Implementations are not thread-safe: a playback is driven by a single thread, like the renderer.
+ */
+public interface Playback extends AutoCloseable {
+
+    /**
+     * Opens a file written either by a {@link TrajectoryRecorder} or by {@link Ephemeris#write}.
+     *
+     * @param file
+     *      The file to play back.
+     * @return
+     *      The playback of the file.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is neither a valid recording nor a valid ephemeris.
+     */
+    static Playback open(final Path file) throws IOException {
+        return Ephemeris.isEphemeris(file) ? Ephemeris.read(file).playback() : new TrajectoryReplay(file);
+    }
+
+    /**
+     * @return
+     *      The number of bodies.
+     */
+    int bodies();
+
+    /**
+     * @return
+     *      The first simulated time which can be shown (in s).
+     */
+    double startTime();
+
+    /**
+     * @return
+     *      The last simulated time which can be shown (in s).
+     */
+    double endTime();
+
+    /**
+     * @return
+     *      The simulated time of the current positions (in s), or NaN before the first seek.
+     */
+    double time();
+
+    /**
+     * Moves every body to its position at the given time, unless it is already there.
+     *
+     * @param t
+     *      The simulated time (in s), clamped between {@link #startTime()} and {@link #endTime()}.
+     * @throws IOException
+     *      If the underlying file cannot be read.
+     */
+    void seek(double t) throws IOException;
+
+    /**
+     * @param id
+     *      The index of a body.
+     * @return
+     *      The x coordinate of the body at the current time (in m).
+     */
+    double x(int id);
+
+    /**
+     * @param id
+     *      The index of a body.
+     * @return
+     *      The y coordinate of the body at the current time (in m).
+     */
+    double y(int id);
+
+    /**
+     * @param id
+     *      The index of a body.
+     * @return
+     *      The z coordinate of the body at the current time (in m).
+     */
+    double z(int id);
+
+    @Override
+    void close() throws IOException;
+}
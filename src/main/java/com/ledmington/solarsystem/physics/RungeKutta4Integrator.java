@@ -0,0 +1,140 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * Classic fourth-order Runge-Kutta integrator.
+ * Very accurate over short times, but not symplectic: the energy error slowly drifts.
+ * Each step costs four force evaluations.
+ */
+public final class RungeKutta4Integrator implements Integrator {
+
+    // intermediate positions and velocities
+    private double[] tx;
+    private double[] ty;
+    private double[] tz;
+    private double[] tvx;
+    private double[] tvy;
+    private double[] tvz;
+
+    // accelerations of the current stage
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+
+    // weighted sums of the velocities and accelerations of all the stages
+    private double[] sumVx;
+    private double[] sumVy;
+    private double[] sumVz;
+    private double[] sumAx;
+    private double[] sumAy;
+    private double[] sumAz;
+
+    public RungeKutta4Integrator() {}
+
+    private void ensureCapacity(final int n) {
+        tx = Buffers.ensure(tx, n);
+        ty = Buffers.ensure(ty, n);
+        tz = Buffers.ensure(tz, n);
+        tvx = Buffers.ensure(tvx, n);
+        tvy = Buffers.ensure(tvy, n);
+        tvz = Buffers.ensure(tvz, n);
+        ax = Buffers.ensure(ax, n);
+        ay = Buffers.ensure(ay, n);
+        az = Buffers.ensure(az, n);
+        sumVx = Buffers.ensure(sumVx, n);
+        sumVy = Buffers.ensure(sumVy, n);
+        sumVz = Buffers.ensure(sumVz, n);
+        sumAx = Buffers.ensure(sumAx, n);
+        sumAy = Buffers.ensure(sumAy, n);
+        sumAz = Buffers.ensure(sumAz, n);
+    }
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        final int n = store.size();
+        ensureCapacity(n);
+
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        final double[] mass = store.mass();
+
+        // stage 1: derivatives at the initial state
+        solver.computeAccelerations(n, x, y, z, mass, ax, ay, az);
+        for (int i = 0; i < n; i++) {
+            sumVx[i] = vx[i];
+            sumVy[i] = vy[i];
+            sumVz[i] = vz[i];
+            sumAx[i] = ax[i];
+            sumAy[i] = ay[i];
+            sumAz[i] = az[i];
+            tvx[i] = vx[i];
+            tvy[i] = vy[i];
+            tvz[i] = vz[i];
+        }
+
+        // stages 2 and 3: derivatives at the midpoint, using the previous stage
+        final double halfDt = 0.5 * dt;
+        for (int stage = 0; stage < 2; stage++) {
+            for (int i = 0; i < n; i++) {
+                tx[i] = x[i] + tvx[i] * halfDt;
+                ty[i] = y[i] + tvy[i] * halfDt;
+                tz[i] = z[i] + tvz[i] * halfDt;
+                tvx[i] = vx[i] + ax[i] * halfDt;
+                tvy[i] = vy[i] + ay[i] * halfDt;
+                tvz[i] = vz[i] + az[i] * halfDt;
+            }
+            solver.computeAccelerations(n, tx, ty, tz, mass, ax, ay, az);
+            for (int i = 0; i < n; i++) {
+                sumVx[i] += 2.0 * tvx[i];
+                sumVy[i] += 2.0 * tvy[i];
+                sumVz[i] += 2.0 * tvz[i];
+                sumAx[i] += 2.0 * ax[i];
+                sumAy[i] += 2.0 * ay[i];
+                sumAz[i] += 2.0 * az[i];
+            }
+        }
+
+        // stage 4: derivatives at the end of the step
+        for (int i = 0; i < n; i++) {
+            tx[i] = x[i] + tvx[i] * dt;
+            ty[i] = y[i] + tvy[i] * dt;
+            tz[i] = z[i] + tvz[i] * dt;
+            tvx[i] = vx[i] + ax[i] * dt;
+            tvy[i] = vy[i] + ay[i] * dt;
+            tvz[i] = vz[i] + az[i] * dt;
+        }
+        solver.computeAccelerations(n, tx, ty, tz, mass, ax, ay, az);
+
+        final double sixthDt = dt / 6.0;
+        for (int i = 0; i < n; i++) {
+            x[i] += (sumVx[i] + tvx[i]) * sixthDt;
+            y[i] += (sumVy[i] + tvy[i]) * sixthDt;
+            z[i] += (sumVz[i] + tvz[i]) * sixthDt;
+            vx[i] += (sumAx[i] + ax[i]) * sixthDt;
+            vy[i] += (sumAy[i] + ay[i]) * sixthDt;
+            vz[i] += (sumAz[i] + az[i]) * sixthDt;
+        }
+    }
+}
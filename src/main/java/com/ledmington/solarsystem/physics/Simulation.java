@@ -0,0 +1,252 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Objects;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.ParticleStore;
+
+/**
+ * The N-body gravity engine: advances a {@link BodyStore} in time
+ * using a pluggable {@link ForceSolver} and {@link Integrator}.
+ * Optionally, it also advances a {@link ParticleStore} of test particles,
+ * which feel the massive bodies without perturbing them.
+ * <p>
+ * Stepping does not allocate memory, so it is possible to run thousands
+ * of steps per rendered frame.
+ */
+public final class Simulation {
+
+    private final BodyStore store;
+    private ForceSolver solver;
+    private Integrator integrator;
+    private ParticleStore particles = null;
+    private ParticleIntegrator particleIntegrator = null;
+    private TrajectoryRecorder recorder = null;
+    private double time = 0.0;
+    private long steps = 0L;
+
+    /**
+     * Creates a new Simulation working directly on the given store.
+     *
+     * @param store
+     *      The bodies to be simulated. They are modified in place.
+     * @param solver
+     *      The ForceSolver used to compute accelerations.
+     * @param integrator
+     *      The Integrator used to advance the bodies.
+     */
+    public Simulation(final BodyStore store, final ForceSolver solver, final Integrator integrator) {
+        this.store = Objects.requireNonNull(store);
+        this.solver = Objects.requireNonNull(solver);
+        this.integrator = Objects.requireNonNull(integrator);
+    }
+
+    /**
+     * Advances the simulation by one step.
+     *
+     * @param dt
+     *      The timestep (in s).
+     */
+    public void step(final double dt) {
+        if (particles != null) {
+            particleIntegrator.beginStep(particles, store, dt);
+        }
+        integrator.step(store, solver, dt);
+        if (particles != null) {
+            particleIntegrator.endStep(particles, store, dt);
+        }
+        time += dt;
+        steps++;
+        if (recorder != null) {
+            recorder.sample(this);
+        }
+    }
+
+    /**
+     * Advances the simulation by the given number of steps.
+     *
+     * @param dt
+     *      The timestep (in s).
+     * @param count
+     *      The number of steps.
+     */
+    public void step(final double dt, final int count) {
+        for (int i = 0; i < count; i++) {
+            step(dt);
+        }
+    }
+
+    public BodyStore store() {
+        return store;
+    }
+
+    /**
+     * @return
+     *      The simulated time elapsed since the beginning (in s).
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * @return
+     *      The number of steps performed since the beginning.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * Sets the test particles advanced together with the massive bodies.
+     *
+     * @param particles
+     *      The test particles. They are modified in place.
+     * @param particleIntegrator
+     *      The ParticleIntegrator used to advance them.
+     */
+    public void setParticles(final ParticleStore particles, final ParticleIntegrator particleIntegrator) {
+        this.particles = Objects.requireNonNull(particles);
+        this.particleIntegrator = Objects.requireNonNull(particleIntegrator);
+        this.particleIntegrator.reset();
+    }
+
+    /**
+     * @return
+     *      The test particles, or null if there are none.
+     */
+    public ParticleStore particles() {
+        return particles;
+    }
+
+    /**
+     * Sets the recorder which samples the trajectories after each step, starting from the current state.
+     * The previous recorder is not finished when it is replaced: that is up to the caller.
+     *
+     * @param recorder
+     *      The recorder, or null to stop recording.
+     */
+    public void setRecorder(final TrajectoryRecorder recorder) {
+        this.recorder = recorder;
+        if (recorder != null) {
+            recorder.sample(this);
+        }
+    }
+
+    /**
+     * @return
+     *      The recorder of the trajectories, or null if there is none.
+     */
+    public TrajectoryRecorder recorder() {
+        return recorder;
+    }
+
+    public ForceSolver solver() {
+        return solver;
+    }
+
+    public Integrator integrator() {
+        return integrator;
+    }
+
+    public void setForceSolver(final ForceSolver solver) {
+        this.solver = Objects.requireNonNull(solver);
+        this.integrator.reset();
+    }
+
+    public void setIntegrator(final Integrator integrator) {
+        this.integrator = Objects.requireNonNull(integrator);
+    }
+
+    /**
+     * Sets the simulated time and the number of steps performed, when resuming a run which was
+     * interrupted. The store must already hold the state at that time.
+     *
+     * @param time
+     *      The simulated time elapsed since the beginning (in s).
+     * @param steps
+     *      The number of steps performed since the beginning.
+     */
+    public void resumeAt(final double time, final long steps) {
+        if (!Double.isFinite(time)) {
+            throw new IllegalArgumentException(String.format("Invalid time %f", time));
+        }
+        if (steps < 0L) {
+            throw new IllegalArgumentException(String.format("Invalid number of steps %d", steps));
+        }
+        this.time = time;
+        this.steps = steps;
+        storeChanged();
+    }
+
+    /**
+     * Must be called after modifying the store outside of the simulation,
+     * in order to discard any state cached by the Integrator.
+     */
+    public void storeChanged() {
+        integrator.reset();
+        if (particleIntegrator != null) {
+            particleIntegrator.reset();
+        }
+    }
+
+    /**
+     * Computes the total (kinetic + potential) energy of the system in O(N^2).
+     * Useful to measure the accuracy of an Integrator.
+     *
+     * @return
+     *      The total energy (in J).
+     */
+    public double totalEnergy() {
+        return totalEnergy(store);
+    }
+
+    /**
+     * Computes the total (kinetic + potential) energy of the given bodies in O(N^2).
+     *
+     * @param store
+     *      The bodies.
+     * @return
+     *      The total energy (in J).
+     */
+    public static double totalEnergy(final BodyStore store) {
+        final int n = store.size();
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] vx = store.vx();
+        final double[] vy = store.vy();
+        final double[] vz = store.vz();
+        final double[] mass = store.mass();
+
+        double kinetic = 0.0;
+        double potential = 0.0;
+        for (int i = 0; i < n; i++) {
+            kinetic += 0.5 * mass[i] * (vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i]);
+            for (int j = i + 1; j < n; j++) {
+                final double dx = x[j] - x[i];
+                final double dy = y[j] - y[i];
+                final double dz = z[j] - z[i];
+                potential -= mass[i] * mass[j] / Math.sqrt(dx * dx + dy * dy + dz * dz);
+            }
+        }
+        return kinetic + Constants.GRAVITATIONAL_CONSTANT * potential;
+    }
+}
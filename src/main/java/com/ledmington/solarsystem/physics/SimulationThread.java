@@ -0,0 +1,287 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Runs a {@link Simulation} on its own thread with a fixed timestep,
+ * independently of the frame rate of the renderer.
+ * <p>
+ * The wall-clock time elapsed, multiplied by the time scale, is accumulated and consumed
+ * in steps of exactly dt, so the trajectory does not depend on how fast the machine is.
+ * After each batch of steps the positions are published through a {@link SnapshotBuffer},
+ * which the renderer can read at any time without blocking. If the physics cannot keep up,
+ * the backlog is dropped (the simulation slows down) instead of piling up forever.
+ * <p>
+ * The {@link Simulation} (and its {@link BodyStore}) must not be touched by any other thread
+ * while this one is running: use {@link #execute(Consumer)} instead.
+ */
+public final class SimulationThread implements AutoCloseable {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("SimulationThread");
+
+    /**
+     * The maximum wall-clock time spent stepping before publishing a snapshot (in ns).
+     */
+    private static final long MAX_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(16L);
+
+    /**
+     * The maximum time to sleep when there is nothing to do, so that changes to the time scale
+     * are noticed quickly (in ns).
+     */
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5L);
+
+    private final Simulation simulation;
+    private final double dt;
+    private final SnapshotBuffer snapshots;
+    private final Thread thread;
+    private volatile double timeScale = 1.0;
+    private volatile boolean paused = false;
+    private volatile boolean running = false;
+    private final Queue<Consumer<Simulation>> tasks = new ConcurrentLinkedQueue<>();
+
+    // only accessed by the simulation thread
+    private double[] lastX;
+    private double[] lastY;
+    private double[] lastZ;
+    private double lastTime;
+    private long lastPublishNanos;
+
+    /**
+     * Creates a new SimulationThread. The thread is not started.
+     *
+     * @param simulation
+     *      The simulation to be run, owned by this thread from now on.
+     * @param dt
+     *      The fixed timestep (in s).
+     */
+    public SimulationThread(final Simulation simulation, final double dt) {
+        this.simulation = Objects.requireNonNull(simulation);
+        if (!(dt > 0.0) || !Double.isFinite(dt)) {
+            throw new IllegalArgumentException(String.format("Invalid timestep %f", dt));
+        }
+        this.dt = dt;
+
+        final BodyStore store = simulation.store();
+        final int n = store.size();
+        this.snapshots = new SnapshotBuffer(n, store.x(), store.y(), store.z());
+        this.lastX = new double[n];
+        this.lastY = new double[n];
+        this.lastZ = new double[n];
+        System.arraycopy(store.x(), 0, lastX, 0, n);
+        System.arraycopy(store.y(), 0, lastY, 0, n);
+        System.arraycopy(store.z(), 0, lastZ, 0, n);
+        this.lastTime = simulation.time();
+
+        this.thread = new Thread(this::loop, "simulation");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the simulation thread.
+     */
+    public void start() {
+        if (running) {
+            throw new IllegalStateException("The simulation thread is already running");
+        }
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * @return
+     *      The fixed timestep (in s).
+     */
+    public double dt() {
+        return dt;
+    }
+
+    /**
+     * @return
+     *      The simulated seconds per wall-clock second.
+     */
+    public double timeScale() {
+        return timeScale;
+    }
+
+    /**
+     * Changes how fast the simulation runs. The timestep is not changed.
+     *
+     * @param timeScale
+     *      The simulated seconds per wall-clock second.
+     */
+    public void setTimeScale(final double timeScale) {
+        if (!(timeScale >= 0.0) || !Double.isFinite(timeScale)) {
+            throw new IllegalArgumentException(String.format("Invalid time scale %f", timeScale));
+        }
+        this.timeScale = timeScale;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(final boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Returns the latest published positions. Must be called always by the same (reader) thread.
+     *
+     * @return
+     *      The latest Snapshot, valid until the next call.
+     */
+    public Snapshot latest() {
+        return snapshots.latest();
+    }
+
+    /**
+     * Runs the given task on the simulation thread, between two steps, so that it can read or modify
+     * the simulation safely. If the task moves the bodies, the next snapshot starts from their new positions
+     * instead of interpolating from the old ones.
+     *
+     * @param task
+     *      The task, which receives the simulation.
+     */
+    public void execute(final Consumer<Simulation> task) {
+        tasks.add(Objects.requireNonNull(task));
+        LockSupport.unpark(thread);
+    }
+
+    private void runTasks() {
+        Consumer<Simulation> task = tasks.poll();
+        if (task == null) {
+            return;
+        }
+        while (task != null) {
+            try {
+                task.accept(simulation);
+            } catch (final RuntimeException e) {
+                logger.error(e);
+            }
+            task = tasks.poll();
+        }
+        final BodyStore store = simulation.store();
+        final int n = store.size();
+        lastX = Buffers.ensure(lastX, n);
+        lastY = Buffers.ensure(lastY, n);
+        lastZ = Buffers.ensure(lastZ, n);
+        System.arraycopy(store.x(), 0, lastX, 0, n);
+        System.arraycopy(store.y(), 0, lastY, 0, n);
+        System.arraycopy(store.z(), 0, lastZ, 0, n);
+        lastTime = simulation.time();
+        publish();
+    }
+
+    private void loop() {
+        try {
+            lastPublishNanos = System.nanoTime();
+            long last = lastPublishNanos;
+            double accumulator = 0.0;
+            while (running) {
+                runTasks();
+                final long now = System.nanoTime();
+                if (!paused) {
+                    accumulator += (now - last) * 1e-9 * timeScale;
+                }
+                last = now;
+
+                boolean stepped = false;
+                while (accumulator >= dt && System.nanoTime() - now < MAX_BATCH_NANOS) {
+                    simulation.step(dt);
+                    accumulator -= dt;
+                    stepped = true;
+                }
+                if (accumulator >= dt) {
+                    // we cannot keep up: slow down instead of spiraling
+                    accumulator = 0.0;
+                }
+
+                if (stepped) {
+                    publish();
+                } else {
+                    final double scale = timeScale;
+                    final long idle = paused || scale == 0.0
+                            ? MAX_IDLE_NANOS
+                            : Math.min(MAX_IDLE_NANOS, (long) ((dt - accumulator) / scale * 1e9));
+                    LockSupport.parkNanos(idle);
+                }
+            }
+        } catch (final Throwable t) {
+            logger.error(t);
+            running = false;
+        }
+    }
+
+    private void publish() {
+        final BodyStore store = simulation.store();
+        final int n = store.size();
+        final long now = System.nanoTime();
+        snapshots
+                .writable()
+                .set(
+                        n,
+                        lastX,
+                        lastY,
+                        lastZ,
+                        store.x(),
+                        store.y(),
+                        store.z(),
+                        lastTime,
+                        simulation.time(),
+                        simulation.steps(),
+                        now,
+                        now - lastPublishNanos);
+        snapshots.publish();
+
+        lastX = Buffers.ensure(lastX, n);
+        lastY = Buffers.ensure(lastY, n);
+        lastZ = Buffers.ensure(lastZ, n);
+        System.arraycopy(store.x(), 0, lastX, 0, n);
+        System.arraycopy(store.y(), 0, lastY, 0, n);
+        System.arraycopy(store.z(), 0, lastZ, 0, n);
+        lastTime = simulation.time();
+        lastPublishNanos = now;
+    }
+
+    /**
+     * Stops the simulation thread and waits for it to terminate, then runs the tasks which were still pending.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // the thread is gone, so the tasks submitted meanwhile can run here
+        runTasks();
+    }
+}
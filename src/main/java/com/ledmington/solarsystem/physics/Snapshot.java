@@ -0,0 +1,170 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * The positions of all the bodies at two consecutive publications of a {@link SimulationThread},
+ * so that a reader can interpolate between them.
+ * <p>
+ * Instances are owned by a {@link SnapshotBuffer} and recycled: a reader must not keep
+ * a reference to a Snapshot after asking the buffer for a newer one.
+ */
+public final class Snapshot {
+
+    private int size;
+    private double[] previousX;
+    private double[] previousY;
+    private double[] previousZ;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private double previousTime;
+    private double time;
+    private long steps;
+    private long publishedNanos;
+    private long intervalNanos;
+
+    Snapshot(final int capacity) {
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        previousZ = new double[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+    }
+
+    /**
+     * Overwrites this Snapshot.
+     *
+     * @param size
+     *      The number of bodies.
+     * @param previousX
+     *      The x coordinates at the previous publication.
+     * @param previousY
+     *      The y coordinates at the previous publication.
+     * @param previousZ
+     *      The z coordinates at the previous publication.
+     * @param x
+     *      The current x coordinates.
+     * @param y
+     *      The current y coordinates.
+     * @param z
+     *      The current z coordinates.
+     * @param previousTime
+     *      The simulated time of the previous positions (in s).
+     * @param time
+     *      The simulated time of the current positions (in s).
+     * @param steps
+     *      The number of steps performed to reach the current positions.
+     * @param publishedNanos
+     *      The value of {@link System#nanoTime()} at this publication.
+     * @param intervalNanos
+     *      The nanoseconds elapsed since the previous publication.
+     */
+    void set(
+            final int size,
+            final double[] previousX,
+            final double[] previousY,
+            final double[] previousZ,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double previousTime,
+            final double time,
+            final long steps,
+            final long publishedNanos,
+            final long intervalNanos) {
+        this.previousX = Buffers.ensure(this.previousX, size);
+        this.previousY = Buffers.ensure(this.previousY, size);
+        this.previousZ = Buffers.ensure(this.previousZ, size);
+        this.x = Buffers.ensure(this.x, size);
+        this.y = Buffers.ensure(this.y, size);
+        this.z = Buffers.ensure(this.z, size);
+        System.arraycopy(previousX, 0, this.previousX, 0, size);
+        System.arraycopy(previousY, 0, this.previousY, 0, size);
+        System.arraycopy(previousZ, 0, this.previousZ, 0, size);
+        System.arraycopy(x, 0, this.x, 0, size);
+        System.arraycopy(y, 0, this.y, 0, size);
+        System.arraycopy(z, 0, this.z, 0, size);
+        this.size = size;
+        this.previousTime = previousTime;
+        this.time = time;
+        this.steps = steps;
+        this.publishedNanos = publishedNanos;
+        this.intervalNanos = intervalNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return
+     *      The simulated time of the current positions (in s).
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * @param alpha
+     *      The interpolation factor between the previous and the current positions.
+     * @return
+     *      The simulated time of the interpolated positions (in s).
+     */
+    public double time(final double alpha) {
+        return previousTime + (time - previousTime) * alpha;
+    }
+
+    /**
+     * @return
+     *      The number of steps performed to reach the current positions.
+     */
+    public long steps() {
+        return steps;
+    }
+
+    /**
+     * Computes how far the renderer should be between the previous and the current positions.
+     * Since the next publication is expected after the same interval as the last one,
+     * the renderer shows the motion with a delay of one publication, but smoothly.
+     *
+     * @param nowNanos
+     *      The current value of {@link System#nanoTime()}.
+     * @return
+     *      The interpolation factor, between 0 (previous positions) and 1 (current positions).
+     */
+    public double alpha(final long nowNanos) {
+        if (intervalNanos <= 0L) {
+            return 1.0;
+        }
+        return Math.max(0.0, Math.min(1.0, (double) (nowNanos - publishedNanos) / (double) intervalNanos));
+    }
+
+    public double x(final int id, final double alpha) {
+        return previousX[id] + (x[id] - previousX[id]) * alpha;
+    }
+
+    public double y(final int id, final double alpha) {
+        return previousY[id] + (y[id] - previousY[id]) * alpha;
+    }
+
+    public double z(final int id, final double alpha) {
+        return previousZ[id] + (z[id] - previousZ[id]) * alpha;
+    }
+}
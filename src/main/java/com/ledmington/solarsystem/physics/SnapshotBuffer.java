@@ -0,0 +1,95 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of {@link Snapshot}s between exactly one writer and exactly one reader.
+ * <p>
+ * The writer always fills its private buffer and then swaps it with the middle one,
+ * the reader swaps its private buffer with the middle one only when a new snapshot
+ * has been published. Neither side ever waits for the other: the writer may publish
+ * many times between two reads (older snapshots are simply overwritten) and the reader
+ * may read many times between two publications (it keeps getting the latest one).
+ */
+public final class SnapshotBuffer {
+
+    private static final int INDEX_MASK = 0b011;
+    private static final int FRESH = 0b100;
+
+    private final Snapshot[] buffers = new Snapshot[3];
+
+    /**
+     * The index of the middle buffer, plus the FRESH bit when it holds a snapshot not read yet.
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // only accessed by the writer
+    private int writeIndex = 0;
+
+    // only accessed by the reader
+    private int readIndex = 2;
+
+    /**
+     * Creates a new SnapshotBuffer with the given bodies as the first snapshot.
+     *
+     * @param size
+     *      The number of bodies.
+     * @param x
+     *      The initial x coordinates.
+     * @param y
+     *      The initial y coordinates.
+     * @param z
+     *      The initial z coordinates.
+     */
+    public SnapshotBuffer(final int size, final double[] x, final double[] y, final double[] z) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new Snapshot(size);
+            buffers[i].set(size, x, y, z, x, y, z, 0.0, 0.0, 0L, System.nanoTime(), 0L);
+        }
+    }
+
+    /**
+     * Returns the Snapshot to be filled by the writer before calling {@link #publish()}.
+     */
+    Snapshot writable() {
+        return buffers[writeIndex];
+    }
+
+    /**
+     * Makes the last writable Snapshot visible to the reader. Must be called only by the writer.
+     */
+    void publish() {
+        writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the most recently published Snapshot. Must be called only by the reader.
+     * The returned object stays valid until the next call.
+     *
+     * @return
+     *      The latest Snapshot.
+     */
+    public Snapshot latest() {
+        if ((middle.get() & FRESH) != 0) {
+            readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+        }
+        return buffers[readIndex];
+    }
+}
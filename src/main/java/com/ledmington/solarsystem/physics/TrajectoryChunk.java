@@ -0,0 +1,95 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+/**
+ * A sequence of consecutive samples of a recorded trajectory, as filled by a {@link TrajectoryRecorder}
+ * or decoded by a {@link TrajectoryReader}. Each sample holds the simulated time and the position and velocity
+ * of every recorded object: first the bodies, then the test particles.
+ */
+public final class TrajectoryChunk {
+
+    final int objects;
+    final double[] times;
+
+    /**
+     * The columns x, y, z, vx, vy and vz, with the values of all the objects of a sample next to each other,
+     * so that recording a sample is a bulk copy of each column.
+     */
+    final double[][] columns = new double[TrajectoryRecorder.COLUMNS][];
+
+    int samples = 0;
+
+    TrajectoryChunk(final int capacity, final int objects) {
+        this.objects = objects;
+        this.times = new double[capacity];
+        for (int c = 0; c < columns.length; c++) {
+            this.columns[c] = new double[capacity * objects];
+        }
+    }
+
+    /**
+     * @return
+     *      The number of samples.
+     */
+    public int samples() {
+        return samples;
+    }
+
+    /**
+     * @return
+     *      The number of objects of each sample.
+     */
+    public int objects() {
+        return objects;
+    }
+
+    /**
+     * @param sample
+     *      The index of the sample.
+     * @return
+     *      The simulated time of the given sample (in s).
+     */
+    public double time(final int sample) {
+        return times[sample];
+    }
+
+    public double x(final int sample, final int object) {
+        return columns[0][sample * objects + object];
+    }
+
+    public double y(final int sample, final int object) {
+        return columns[1][sample * objects + object];
+    }
+
+    public double z(final int sample, final int object) {
+        return columns[2][sample * objects + object];
+    }
+
+    public double vx(final int sample, final int object) {
+        return columns[3][sample * objects + object];
+    }
+
+    public double vy(final int sample, final int object) {
+        return columns[4][sample * objects + object];
+    }
+
+    public double vz(final int sample, final int object) {
+        return columns[5][sample * objects + object];
+    }
+}
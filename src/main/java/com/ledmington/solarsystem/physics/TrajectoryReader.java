@@ -0,0 +1,380 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by a {@link TrajectoryRecorder}. Only the header and the index are read when opening
+ * the file: each chunk is mapped and decoded on request, so any part of a large recording can be reached
+ * without reading what comes before it.
+ */
+public final class TrajectoryReader implements AutoCloseable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int bodies;
+    private final int particles;
+    private final int objects;
+    private final int interval;
+    private final double positionResolution;
+    private final double velocityResolution;
+    private final double[] masses;
+    private final double[] radii;
+
+    // the index
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] samples;
+    private final double[] firstTimes;
+    private final double[] lastTimes;
+
+    private final Inflater inflater = new Inflater();
+    private byte[] raw = new byte[0];
+
+    /**
+     * Opens a recorded trajectory.
+     *
+     * @param file
+     *      The file to read.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a complete recording.
+     */
+    public TrajectoryReader(final Path file) throws IOException {
+        this.file = Objects.requireNonNull(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            final ByteBuffer header = read(0L, TrajectoryRecorder.HEADER_SIZE, size);
+            if (header.getInt(0) != TrajectoryRecorder.MAGIC) {
+                throw new IllegalArgumentException(String.format("'%s' is not a recorded trajectory", file));
+            }
+            final int version = header.getInt(4);
+            if (version != TrajectoryRecorder.VERSION) {
+                throw new IllegalArgumentException(String.format(
+                        "'%s' has version %d, only version %d is supported",
+                        file, version, TrajectoryRecorder.VERSION));
+            }
+            this.bodies = header.getInt(8);
+            this.particles = header.getInt(12);
+            this.interval = header.getInt(20);
+            this.positionResolution = header.getDouble(24);
+            this.velocityResolution = header.getDouble(32);
+            if (bodies < 0 || particles < 0 || (long) bodies + particles > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format(
+                        "'%s' has an invalid number of bodies %d or test particles %d", file, bodies, particles));
+            }
+            this.objects = bodies + particles;
+
+            final ByteBuffer properties = read(TrajectoryRecorder.HEADER_SIZE, 2 * bodies * Double.BYTES, size);
+            this.masses = new double[bodies];
+            this.radii = new double[bodies];
+            properties.asDoubleBuffer().get(masses).get(radii);
+
+            final ByteBuffer footer = read(size - TrajectoryRecorder.FOOTER_SIZE, TrajectoryRecorder.FOOTER_SIZE, size);
+            if (footer.getInt(12) != TrajectoryRecorder.INDEX_MAGIC) {
+                throw new IllegalArgumentException(
+                        String.format("'%s' has no index: the recording was not completed", file));
+            }
+            final long indexOffset = footer.getLong(0);
+            final int chunks = footer.getInt(8);
+            if (chunks < 0
+                    || indexOffset < TrajectoryRecorder.HEADER_SIZE
+                    || indexOffset + (long) chunks * TrajectoryRecorder.INDEX_ENTRY_SIZE
+                            != size - TrajectoryRecorder.FOOTER_SIZE) {
+                throw new IllegalArgumentException(String.format("'%s' has an invalid index", file));
+            }
+            final ByteBuffer index = read(indexOffset, chunks * TrajectoryRecorder.INDEX_ENTRY_SIZE, size);
+            this.offsets = new long[chunks];
+            this.lengths = new int[chunks];
+            this.samples = new int[chunks];
+            this.firstTimes = new double[chunks];
+            this.lastTimes = new double[chunks];
+            for (int c = 0; c < chunks; c++) {
+                final int base = c * TrajectoryRecorder.INDEX_ENTRY_SIZE;
+                offsets[c] = index.getLong(base);
+                lengths[c] = index.getInt(base + 8);
+                samples[c] = index.getInt(base + 12);
+                firstTimes[c] = index.getDouble(base + 24);
+                lastTimes[c] = index.getDouble(base + 32);
+                if (offsets[c] < TrajectoryRecorder.HEADER_SIZE
+                        || samples[c] < 1
+                        || lengths[c] < chunkHeaderSize(samples[c])
+                        || offsets[c] + lengths[c] > indexOffset) {
+                    throw new IllegalArgumentException(
+                            String.format("'%s' has an invalid index entry for chunk %d", file, c));
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(final long position, final int length, final long size) throws IOException {
+        if (position < 0L || length < 0 || position + length > size) {
+            throw new IllegalArgumentException(String.format("'%s' is truncated", file));
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalArgumentException(String.format("'%s' is truncated", file));
+            }
+        }
+        return buffer.flip();
+    }
+
+    public int bodies() {
+        return bodies;
+    }
+
+    public int particles() {
+        return particles;
+    }
+
+    /**
+     * @return
+     *      The number of recorded objects: the bodies, then the test particles.
+     */
+    public int objects() {
+        return objects;
+    }
+
+    /**
+     * @return
+     *      The number of steps between two samples.
+     */
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * @return
+     *      A copy of the masses of the bodies (in kg).
+     */
+    public double[] masses() {
+        return masses.clone();
+    }
+
+    /**
+     * @return
+     *      A copy of the radii of the bodies (in m).
+     */
+    public double[] radii() {
+        return radii.clone();
+    }
+
+    /**
+     * @return
+     *      The number of chunks.
+     */
+    public int chunks() {
+        return offsets.length;
+    }
+
+    /**
+     * @param chunk
+     *      The index of the chunk.
+     * @return
+     *      The number of samples of the given chunk.
+     */
+    public int samples(final int chunk) {
+        return samples[chunk];
+    }
+
+    /**
+     * @param chunk
+     *      The index of the chunk.
+     * @return
+     *      The time of the first sample of the given chunk (in s).
+     */
+    public double firstTime(final int chunk) {
+        return firstTimes[chunk];
+    }
+
+    /**
+     * @param chunk
+     *      The index of the chunk.
+     * @return
+     *      The time of the last sample of the given chunk (in s).
+     */
+    public double lastTime(final int chunk) {
+        return lastTimes[chunk];
+    }
+
+    /**
+     * Finds the chunk holding the given time, with a binary search on the index.
+     *
+     * @param time
+     *      The simulated time (in s).
+     * @return
+     *      The index of the last chunk starting at or before the given time,
+     *      or 0 if the time precedes the recording.
+     */
+    public int findChunk(final double time) {
+        final int i = Arrays.binarySearch(firstTimes, time);
+        return i >= 0 ? i : Math.max(0, -i - 2);
+    }
+
+    private static int chunkHeaderSize(final int samples) {
+        return samples * Double.BYTES + 2 * TrajectoryRecorder.COLUMNS * Integer.BYTES;
+    }
+
+    /**
+     * Decodes a chunk. The positions and velocities are the recorded ones up to the resolutions
+     * of the recording.
+     *
+     * @param chunk
+     *      The index of the chunk.
+     * @param reuse
+     *      A chunk returned by a previous call, whose memory can be reused, or null.
+     * @return
+     *      The decoded chunk, which is the given one if it is large enough.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the chunk is corrupted.
+     */
+    public TrajectoryChunk readChunk(final int chunk, final TrajectoryChunk reuse) throws IOException {
+        return readChunk(chunk, objects, reuse);
+    }
+
+    /**
+     * Decodes only the first objects of a chunk, inflating each column only up to them: decoding the bodies
+     * of a recording costs the same, however many test particles follow them.
+     *
+     * @param chunk
+     *      The index of the chunk.
+     * @param count
+     *      The number of objects to decode.
+     * @param reuse
+     *      A chunk returned by a previous call, whose memory can be reused, or null.
+     * @return
+     *      The decoded chunk, with the given number of objects, which is the given one if it is large enough.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the chunk is corrupted.
+     */
+    public TrajectoryChunk readChunk(final int chunk, final int count, final TrajectoryChunk reuse) throws IOException {
+        Objects.checkIndex(chunk, offsets.length);
+        if (count < 0 || count > objects) {
+            throw new IllegalArgumentException(String.format("Cannot decode %d objects out of %d", count, objects));
+        }
+        final int s = samples[chunk];
+        final TrajectoryChunk out = reuse != null && reuse.objects == count && reuse.times.length >= s
+                ? reuse
+                : new TrajectoryChunk(s, count);
+
+        final ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, offsets[chunk], lengths[chunk])
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < s; k++) {
+            out.times[k] = mapping.getDouble(k * Double.BYTES);
+        }
+        int position = chunkHeaderSize(s);
+        for (int c = 0; c < TrajectoryRecorder.COLUMNS; c++) {
+            final int lengthsOffset = s * Double.BYTES + 2 * c * Integer.BYTES;
+            final int compressedLength = mapping.getInt(lengthsOffset);
+            final int rawLength = mapping.getInt(lengthsOffset + Integer.BYTES);
+            if (compressedLength < 0 || rawLength < 0 || compressedLength > lengths[chunk] - position) {
+                throw corrupted(chunk, null);
+            }
+            // no varint is longer than 10 bytes, so there is no need to inflate beyond this
+            final int needed = (int) Math.min(rawLength, 10L * count * s);
+            inflate(chunk, mapping.slice(position, compressedLength), needed);
+            try {
+                decode(out, c, count, s);
+            } catch (final ArrayIndexOutOfBoundsException e) {
+                throw corrupted(chunk, e);
+            }
+            position += compressedLength;
+        }
+        out.samples = s;
+        return out;
+    }
+
+    private void inflate(final int chunk, final ByteBuffer input, final int length) {
+        if (raw.length < length) {
+            raw = new byte[length];
+        }
+        inflater.reset();
+        inflater.setInput(input);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                final int n = inflater.inflate(raw, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw corrupted(chunk, null);
+                }
+                inflated += n;
+            }
+            if (inflated != length) {
+                throw corrupted(chunk, null);
+            }
+        } catch (final DataFormatException e) {
+            throw corrupted(chunk, e);
+        }
+    }
+
+    private void decode(final TrajectoryChunk out, final int c, final int count, final int s) {
+        final double resolution = c < 3 ? positionResolution : velocityResolution;
+        final double[] column = out.columns[c];
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long previous = 0L;
+            long previousDelta = 0L;
+            for (int k = 0; k < s; k++) {
+                // an inlined varint, since this loop decodes every value of the recording
+                long zigZag = 0L;
+                int shift = 0;
+                byte b;
+                do {
+                    b = raw[pos++];
+                    zigZag |= (b & 0x7FL) << shift;
+                    shift += 7;
+                } while (b < 0);
+                final long delta = ((zigZag >>> 1) ^ -(zigZag & 1L)) + previousDelta;
+                final long q = previous + delta;
+                column[k * count + i] = q * resolution;
+                previousDelta = k == 0 ? 0L : delta;
+                previous = q;
+            }
+        }
+    }
+
+    private IllegalArgumentException corrupted(final int chunk, final Exception cause) {
+        return new IllegalArgumentException(String.format("Chunk %d of '%s' is corrupted", chunk, file), cause);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
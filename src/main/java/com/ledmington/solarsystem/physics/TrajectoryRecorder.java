@@ -0,0 +1,590 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.ParticleStore;
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Records the trajectories of all the bodies and test particles of a {@link Simulation}, sampling their
+ * positions and velocities every few steps, into a file which can be read back with a {@link TrajectoryReader}.
+ * <p>
+ * Sampling only copies the columns of the stores into a ring of preallocated chunks, so it never allocates
+ * and never waits for the disk: a background thread encodes and writes the full chunks. When it falls behind,
+ * it stores the encoded columns without entropy coding, which is most of its work, and if all the chunks
+ * are full anyway, the samples are dropped (and counted) instead of blocking the simulation.
+ * <p>
+ * The file is little-endian and starts with a header of {@value #HEADER_SIZE} bytes:
+ * <pre>
+ * offset  size  content
+ *      0     4  the magic number "SSTR"
+ *      4     4  the version of the format, currently {@value #VERSION}
+ *      8     4  the number of bodies N
+ *     12     4  the number of test particles P
+ *     16     4  the maximum number of samples per chunk
+ *     20     4  the number of steps between two samples
+ *     24     8  the resolution of the positions (in m)
+ *     32     8  the resolution of the velocities (in m/s)
+ *     40    24  reserved, zero
+ * </pre>
+ * followed by the masses and the radii of the bodies (N doubles each), then by the chunks. A chunk of S samples
+ * holds the S simulated times as doubles, the compressed and uncompressed lengths of its 6 columns as ints,
+ * then the columns x, y, z, vx, vy and vz, each compressed on its own with {@link Deflater}. In each column,
+ * the S values of every object (first the bodies, then the test particles) are rounded to a multiple of the
+ * resolution and stored as the zig-zag varints of their second differences, which are small along a smooth
+ * trajectory. Since the bodies come first, they can be decoded without inflating the test particles.
+ * <p>
+ * The file ends with the index of the chunks, each entry being {@value #INDEX_ENTRY_SIZE} bytes
+ * (offset, length, number of samples, 8 reserved bytes, first and last time), and a footer
+ * of {@value #FOOTER_SIZE} bytes: the offset of the index, the number of chunks and the magic number "SSTI".
+ */
+public final class TrajectoryRecorder implements AutoCloseable {
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The default resolution of the recorded positions (in m).
+     */
+    public static final double DEFAULT_POSITION_RESOLUTION = 1.0;
+
+    /**
+     * The default resolution of the recorded velocities (in m/s).
+     */
+    public static final double DEFAULT_VELOCITY_RESOLUTION = 1e-6;
+
+    static final int HEADER_SIZE = 64;
+    static final int INDEX_ENTRY_SIZE = 40;
+    static final int FOOTER_SIZE = 16;
+    static final int MAGIC = 'S' | 'S' << 8 | 'T' << 16 | 'R' << 24;
+    static final int INDEX_MAGIC = 'S' | 'S' << 8 | 'T' << 16 | 'I' << 24;
+    static final int COLUMNS = 6;
+
+    private static final MiniLogger logger = MiniLogger.getLogger("TrajectoryRecorder");
+
+    /**
+     * The size of the samples held by a chunk, when the number of samples per chunk is not given.
+     */
+    private static final long TARGET_CHUNK_BYTES = 16L << 20;
+
+    private static final int MIN_SAMPLES_PER_CHUNK = 4;
+    private static final int MAX_SAMPLES_PER_CHUNK = 4_096;
+    private static final int DEFAULT_RING_SIZE = 4;
+
+    /**
+     * The longest encoding of a long as a varint.
+     */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    /**
+     * Tells the writer thread that there are no more chunks.
+     */
+    private static final TrajectoryChunk END = new TrajectoryChunk(0, 0);
+
+    private final Path file;
+    private final int bodies;
+    private final int particles;
+    private final int objects;
+    private final int samplesPerChunk;
+    private final int interval;
+    private final double positionResolution;
+    private final double velocityResolution;
+    private final double[] masses;
+    private final double[] radii;
+    private final BlockingQueue<TrajectoryChunk> free;
+    private final BlockingQueue<TrajectoryChunk> full;
+    private final Thread writer;
+
+    // only accessed by the thread which steps the simulation
+    private TrajectoryChunk current = null;
+    private boolean finished = false;
+
+    private volatile long recorded = 0L;
+    private volatile long dropped = 0L;
+    private volatile long bytesWritten = 0L;
+    private volatile IOException error = null;
+
+    // only accessed by the writer thread
+    private final List<long[]> index = new ArrayList<>();
+    private byte[] raw = new byte[0];
+    private byte[] compressed = new byte[0];
+    private long droppedBefore = 0L;
+
+    /**
+     * Creates a recorder with the default chunk sizes and resolutions.
+     *
+     * @param file
+     *      The file to write, which is created when the recorder is closed.
+     * @param simulation
+     *      The simulation to record, which must not change its number of bodies or test particles.
+     * @param interval
+     *      The number of steps between two samples.
+     */
+    public TrajectoryRecorder(final Path file, final Simulation simulation, final int interval) {
+        this(
+                file,
+                simulation,
+                interval,
+                defaultSamplesPerChunk(objects(simulation)),
+                DEFAULT_RING_SIZE,
+                DEFAULT_POSITION_RESOLUTION,
+                DEFAULT_VELOCITY_RESOLUTION);
+    }
+
+    /**
+     * Creates a recorder. Nothing is written to the disk by this thread: the file is written in the background
+     * and moved into place when the recorder is closed.
+     *
+     * @param file
+     *      The file to write.
+     * @param simulation
+     *      The simulation to record, which must not change its number of bodies or test particles.
+     * @param interval
+     *      The number of steps between two samples.
+     * @param samplesPerChunk
+     *      The number of samples encoded together.
+     * @param ringSize
+     *      The number of preallocated chunks, which bounds how far the writer can fall behind.
+     * @param positionResolution
+     *      The resolution of the recorded positions (in m).
+     * @param velocityResolution
+     *      The resolution of the recorded velocities (in m/s).
+     */
+    public TrajectoryRecorder(
+            final Path file,
+            final Simulation simulation,
+            final int interval,
+            final int samplesPerChunk,
+            final int ringSize,
+            final double positionResolution,
+            final double velocityResolution) {
+        this.file = Objects.requireNonNull(file).toAbsolutePath();
+        if (interval < 1) {
+            throw new IllegalArgumentException(String.format("Invalid sampling interval %d", interval));
+        }
+        if (samplesPerChunk < 2) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid number of samples per chunk %d", samplesPerChunk));
+        }
+        if (ringSize < 2) {
+            throw new IllegalArgumentException(String.format("Invalid number of chunks %d", ringSize));
+        }
+        if (!(positionResolution > 0.0) || !(velocityResolution > 0.0)) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid resolutions %e m and %e m/s", positionResolution, velocityResolution));
+        }
+        final BodyStore store = simulation.store();
+        this.bodies = store.size();
+        this.particles =
+                simulation.particles() == null ? 0 : simulation.particles().size();
+        this.objects = bodies + particles;
+        if ((long) samplesPerChunk * objects > Integer.MAX_VALUE / MAX_VARINT_BYTES) {
+            throw new IllegalArgumentException(
+                    String.format("%d samples of %d objects do not fit in a chunk", samplesPerChunk, objects));
+        }
+        this.samplesPerChunk = samplesPerChunk;
+        this.interval = interval;
+        this.positionResolution = positionResolution;
+        this.velocityResolution = velocityResolution;
+        this.masses = Arrays.copyOf(store.mass(), bodies);
+        this.radii = Arrays.copyOf(store.radius(), bodies);
+
+        this.free = new ArrayBlockingQueue<>(ringSize);
+        // one more slot for END
+        this.full = new ArrayBlockingQueue<>(ringSize + 1);
+        for (int i = 0; i < ringSize; i++) {
+            free.add(new TrajectoryChunk(samplesPerChunk, objects));
+        }
+
+        // a daemon, so that a recording which is never finished cannot keep the JVM alive: an application
+        // exiting while recording completes the file with close(), or finish() and awaitWritten()
+        this.writer = new Thread(this::write, "trajectory-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static int objects(final Simulation simulation) {
+        return simulation.store().size()
+                + (simulation.particles() == null ? 0 : simulation.particles().size());
+    }
+
+    private static int defaultSamplesPerChunk(final int objects) {
+        final long bytesPerSample = (long) COLUMNS * Double.BYTES * Math.max(1, objects);
+        return (int)
+                Math.max(MIN_SAMPLES_PER_CHUNK, Math.min(MAX_SAMPLES_PER_CHUNK, TARGET_CHUNK_BYTES / bytesPerSample));
+    }
+
+    /**
+     * Records the current state of the given simulation, if it is time for a sample. It is called
+     * by {@link Simulation#step(double)} after each step, on the thread which steps the simulation.
+     *
+     * @param simulation
+     *      The simulation being recorded.
+     * @throws IllegalStateException
+     *      If the number of bodies or test particles has changed.
+     */
+    void sample(final Simulation simulation) {
+        if (finished || simulation.steps() % interval != 0) {
+            return;
+        }
+        final BodyStore store = simulation.store();
+        final ParticleStore ps = simulation.particles();
+        if (store.size() != bodies || (ps == null ? 0 : ps.size()) != particles) {
+            throw new IllegalStateException(String.format(
+                    "Recording %d bodies and %d test particles, but the simulation has %d and %d",
+                    bodies, particles, store.size(), ps == null ? 0 : ps.size()));
+        }
+        if (current == null) {
+            current = free.poll();
+            if (current == null) {
+                // the writer is behind: better a hole in the recording than a stuck simulation
+                dropped++;
+                return;
+            }
+        }
+
+        final int k = current.samples;
+        current.times[k] = simulation.time();
+        copy(current.columns[0], k, store.x(), ps == null ? null : ps.x());
+        copy(current.columns[1], k, store.y(), ps == null ? null : ps.y());
+        copy(current.columns[2], k, store.z(), ps == null ? null : ps.z());
+        copy(current.columns[3], k, store.vx(), ps == null ? null : ps.vx());
+        copy(current.columns[4], k, store.vy(), ps == null ? null : ps.vy());
+        copy(current.columns[5], k, store.vz(), ps == null ? null : ps.vz());
+        current.samples++;
+        recorded++;
+        if (current.samples == samplesPerChunk) {
+            full.add(current);
+            current = null;
+        }
+    }
+
+    private void copy(
+            final double[] column, final int sample, final double[] bodyColumn, final double[] particleColumn) {
+        final int base = sample * objects;
+        System.arraycopy(bodyColumn, 0, column, base, bodies);
+        if (particles > 0) {
+            System.arraycopy(particleColumn, 0, column, base + bodies, particles);
+        }
+    }
+
+    /**
+     * @return
+     *      The number of samples recorded so far.
+     */
+    public long recorded() {
+        return recorded;
+    }
+
+    /**
+     * @return
+     *      The number of samples dropped because the writer could not keep up.
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return
+     *      The number of bytes written to the disk so far.
+     */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Stops recording, without waiting for the file to be written: the last samples are handed
+     * to the writer thread, which completes the file in the background. It must be called on the thread
+     * which steps the simulation.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (current != null && current.samples > 0) {
+            full.add(current);
+        }
+        current = null;
+        full.add(END);
+    }
+
+    /**
+     * Waits until the writer thread completes the file, after {@link #finish()}, but no longer than
+     * the given time. It can be called on any thread.
+     *
+     * @param timeout
+     *      The longest time to wait (in ms).
+     * @return
+     *      True if the writer thread has ended, false if it is still writing.
+     */
+    public boolean awaitWritten(final long timeout) {
+        if (timeout < 0L) {
+            throw new IllegalArgumentException(String.format("Invalid timeout %d ms", timeout));
+        }
+        try {
+            writer.join(timeout);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !writer.isAlive();
+    }
+
+    /**
+     * Stops recording and waits until the file is complete.
+     *
+     * @throws IOException
+     *      If the file could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + file, e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void write() {
+        Path tmp = null;
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+            writeHeader(channel);
+        } catch (final IOException e) {
+            error = e;
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        // the varints of the differences have almost no repeated strings: searching for them would
+        // more than halve the throughput for a gain of less than 1%
+        deflater.setStrategy(Deflater.HUFFMAN_ONLY);
+        try {
+            while (true) {
+                final TrajectoryChunk chunk = take();
+                if (chunk == END) {
+                    break;
+                }
+                if (error == null) {
+                    try {
+                        writeChunk(channel, deflater, chunk);
+                    } catch (final IOException | RuntimeException e) {
+                        error = e instanceof IOException io ? io : new IOException(e);
+                    }
+                }
+                // keep draining even after an error, so that the simulation never waits
+                chunk.samples = 0;
+                free.add(chunk);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        try {
+            if (channel != null) {
+                try (FileChannel c = channel) {
+                    if (error == null) {
+                        writeIndex(c);
+                        c.force(false);
+                    }
+                }
+            }
+            if (error == null) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.info(
+                        "Recorded %,d samples (%,d dropped) of %,d objects into '%s' (%,d bytes)",
+                        recorded, dropped, objects, file, bytesWritten);
+            } else if (tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (final IOException e) {
+            error = e;
+        }
+        if (error != null) {
+            logger.error("Could not write '%s': %s", file, error.getMessage());
+        }
+    }
+
+    private TrajectoryChunk take() {
+        while (true) {
+            try {
+                return full.take();
+            } catch (final InterruptedException e) {
+                // only finish() ends the recording
+            }
+        }
+    }
+
+    private void writeHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header =
+                ByteBuffer.allocate(HEADER_SIZE + 2 * bodies * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(bodies)
+                .putInt(particles)
+                .putInt(samplesPerChunk)
+                .putInt(interval)
+                .putDouble(positionResolution)
+                .putDouble(velocityResolution)
+                .position(HEADER_SIZE);
+        for (final double m : masses) {
+            header.putDouble(m);
+        }
+        for (final double r : radii) {
+            header.putDouble(r);
+        }
+        writeFully(channel, header.flip());
+    }
+
+    private void writeChunk(final FileChannel channel, final Deflater deflater, final TrajectoryChunk chunk)
+            throws IOException {
+        final int s = chunk.samples;
+        // when the writer is behind, entropy coding is the first thing to give up, before samples are dropped
+        final long droppedNow = dropped;
+        final boolean behind = !full.isEmpty() || droppedNow != droppedBefore;
+        droppedBefore = droppedNow;
+        deflater.setLevel(behind ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+        final ByteBuffer header = ByteBuffer.allocate(s * Double.BYTES + 2 * COLUMNS * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int k = 0; k < s; k++) {
+            header.putDouble(chunk.times[k]);
+        }
+        int compressedLength = 0;
+        for (int c = 0; c < COLUMNS; c++) {
+            final int length = encode(chunk, c);
+            deflater.reset();
+            deflater.setInput(raw, 0, length);
+            deflater.finish();
+            final int start = compressedLength;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, Math.max(1 << 16, 2 * compressed.length));
+                }
+                compressedLength +=
+                        deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            header.putInt(compressedLength - start).putInt(length);
+        }
+
+        final long offset = channel.position();
+        writeFully(channel, header.flip());
+        writeFully(channel, ByteBuffer.wrap(compressed, 0, compressedLength));
+        bytesWritten = channel.position();
+        index.add(new long[] {
+            offset,
+            channel.position() - offset,
+            s,
+            Double.doubleToRawLongBits(chunk.times[0]),
+            Double.doubleToRawLongBits(chunk.times[s - 1])
+        });
+    }
+
+    /**
+     * Encodes the given column of the given chunk into {@link #raw}.
+     *
+     * @return
+     *      The number of bytes.
+     */
+    private int encode(final TrajectoryChunk chunk, final int c) {
+        final int s = chunk.samples;
+        final int maxLength = s * objects * MAX_VARINT_BYTES;
+        if (raw.length < maxLength) {
+            raw = new byte[maxLength];
+        }
+        final double scale = 1.0 / (c < 3 ? positionResolution : velocityResolution);
+        final double[] column = chunk.columns[c];
+        int pos = 0;
+        for (int i = 0; i < objects; i++) {
+            long previous = 0L;
+            long previousDelta = 0L;
+            for (int k = 0; k < s; k++) {
+                final long q = Math.round(column[k * objects + i] * scale);
+                final long delta = q - previous;
+                pos = putVarLong(raw, pos, zigZag(delta - previousDelta));
+                // the first value is absolute, so the second one has no previous delta
+                previousDelta = k == 0 ? 0L : delta;
+                previous = q;
+            }
+        }
+        return pos;
+    }
+
+    private void writeIndex(final FileChannel channel) throws IOException {
+        final long indexOffset = channel.position();
+        final ByteBuffer buffer = ByteBuffer.allocate(index.size() * INDEX_ENTRY_SIZE + FOOTER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (final long[] entry : index) {
+            buffer.putLong(entry[0])
+                    .putInt((int) entry[1])
+                    .putInt((int) entry[2])
+                    .putLong(0L)
+                    .putLong(entry[3])
+                    .putLong(entry[4]);
+        }
+        buffer.putLong(indexOffset).putInt(index.size()).putInt(INDEX_MAGIC);
+        writeFully(channel, buffer.flip());
+        bytesWritten = channel.position();
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int putVarLong(final byte[] buffer, final int pos, final long value) {
+        int p = pos;
+        long v = value;
+        while ((v & ~0x7FL) != 0L) {
+            buffer[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buffer[p++] = (byte) v;
+        return p;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Plays back the bodies of a recording written by a {@link TrajectoryRecorder} at any simulated time.
+ * <p>
+ * Seeking finds the chunk holding the requested time through the index of the file, then decodes only
+ * that chunk, and the next one when the time falls between the last sample of a chunk and the first
+ * of the next. Only the bodies are decoded, so the cost of a seek does not depend on the length of the
+ * recording nor on the number of test particles. The last decoded chunks are kept, so that playing
+ * forwards or backwards decodes each chunk once.
+ * <p>
+ * Between two samples, the positions are interpolated with a cubic Hermite spline built on the recorded
+ * positions and velocities: its error grows with the fourth power of the sampling interval, instead of
+ * the second power of a linear interpolation, so sparse recordings still show smooth orbits.
+ */
+public final class TrajectoryReplay implements Playback {
+
+    private static final int CACHE_SIZE = 4;
+
+    private final TrajectoryReader reader;
+    private final int bodies;
+    private final double startTime;
+    private final double endTime;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+
+    // the decoded chunks, with the index in the recording and the last use of each one
+    private final TrajectoryChunk[] cache = new TrajectoryChunk[CACHE_SIZE];
+    private final int[] cached = new int[CACHE_SIZE];
+    private final long[] lastUse = new long[CACHE_SIZE];
+    private long uses = 0L;
+    private long decoded = 0L;
+    private double time = Double.NaN;
+
+    /**
+     * Opens a recording.
+     *
+     * @param file
+     *      The recording to play back.
+     * @throws IOException
+     *      If the file cannot be read.
+     * @throws IllegalArgumentException
+     *      If the file is not a valid recording, or it holds no samples.
+     */
+    public TrajectoryReplay(final Path file) throws IOException {
+        this.reader = new TrajectoryReader(file);
+        if (reader.chunks() == 0) {
+            reader.close();
+            throw new IllegalArgumentException(String.format("'%s' holds no samples", file));
+        }
+        this.bodies = reader.bodies();
+        this.startTime = reader.firstTime(0);
+        this.endTime = reader.lastTime(reader.chunks() - 1);
+        this.x = new double[bodies];
+        this.y = new double[bodies];
+        this.z = new double[bodies];
+        Arrays.fill(cached, -1);
+    }
+
+    @Override
+    public int bodies() {
+        return bodies;
+    }
+
+    @Override
+    public double startTime() {
+        return startTime;
+    }
+
+    @Override
+    public double endTime() {
+        return endTime;
+    }
+
+    @Override
+    public double time() {
+        return time;
+    }
+
+    /**
+     * @return
+     *      The number of chunks decoded since the recording was opened.
+     */
+    long decodedChunks() {
+        return decoded;
+    }
+
+    /**
+     * Decodes the chunks around the given time, unless they are cached, and interpolates the positions.
+     *
+     * @throws IllegalArgumentException
+     *      If a chunk is corrupted.
+     */
+    @Override
+    public void seek(final double t) throws IOException {
+        final double target = Math.max(startTime, Math.min(endTime, t));
+        if (target == time) {
+            return;
+        }
+        final int c = reader.findChunk(target);
+        final TrajectoryChunk first = chunk(c);
+        // the last sample at or before the target
+        int k = Arrays.binarySearch(first.times, 0, first.samples(), target);
+        k = k >= 0 ? k : Math.max(0, -k - 2);
+
+        if (k + 1 < first.samples()) {
+            interpolate(first, k, first, k + 1, target);
+        } else if (c + 1 < reader.chunks()) {
+            interpolate(first, k, chunk(c + 1), 0, target);
+        } else {
+            interpolate(first, k, first, k, target);
+        }
+        time = target;
+    }
+
+    private void interpolate(
+            final TrajectoryChunk a, final int ka, final TrajectoryChunk b, final int kb, final double t) {
+        final double t0 = a.time(ka);
+        final double h = b.time(kb) - t0;
+        if (h <= 0.0) {
+            for (int i = 0; i < bodies; i++) {
+                x[i] = a.x(ka, i);
+                y[i] = a.y(ka, i);
+                z[i] = a.z(ka, i);
+            }
+            return;
+        }
+        // the cubic Hermite basis
+        final double s = (t - t0) / h;
+        final double r = 1.0 - s;
+        final double h00 = (1.0 + 2.0 * s) * r * r;
+        final double h10 = s * r * r * h;
+        final double h01 = s * s * (3.0 - 2.0 * s);
+        final double h11 = -s * s * r * h;
+        for (int i = 0; i < bodies; i++) {
+            x[i] = h00 * a.x(ka, i) + h10 * a.vx(ka, i) + h01 * b.x(kb, i) + h11 * b.vx(kb, i);
+            y[i] = h00 * a.y(ka, i) + h10 * a.vy(ka, i) + h01 * b.y(kb, i) + h11 * b.vy(kb, i);
+            z[i] = h00 * a.z(ka, i) + h10 * a.vz(ka, i) + h01 * b.z(kb, i) + h11 * b.vz(kb, i);
+        }
+    }
+
+    /**
+     * Returns the bodies of the given chunk, decoding them into the least recently used slot
+     * if they are not cached.
+     */
+    private TrajectoryChunk chunk(final int c) throws IOException {
+        int slot = 0;
+        for (int j = 0; j < CACHE_SIZE; j++) {
+            if (cached[j] == c) {
+                lastUse[j] = ++uses;
+                return cache[j];
+            }
+            if (lastUse[j] < lastUse[slot]) {
+                slot = j;
+            }
+        }
+        // invalidated first, so that a corrupted chunk is not reused as a valid one
+        cached[slot] = -1;
+        cache[slot] = reader.readChunk(c, bodies, cache[slot]);
+        cached[slot] = c;
+        lastUse[slot] = ++uses;
+        decoded++;
+        return cache[slot];
+    }
+
+    @Override
+    public double x(final int id) {
+        return x[id];
+    }
+
+    @Override
+    public double y(final int id) {
+        return y[id];
+    }
+
+    @Override
+    public double z(final int id) {
+        return z[id];
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
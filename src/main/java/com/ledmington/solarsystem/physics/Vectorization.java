@@ -0,0 +1,127 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import com.ledmington.solarsystem.utils.MiniLogger;
+
+/**
+ * Gives access to the SIMD kernels, which need the incubating {@code jdk.incubator.vector} module.
+ * <p>
+ * The kernels are compiled in a separate source set and loaded reflectively, only if the module
+ * has been added to the JVM (with {@code --add-modules jdk.incubator.vector}).
+ * Otherwise, the equivalent scalar kernels are used.
+ */
+public final class Vectorization {
+
+    private static final MiniLogger logger = MiniLogger.getLogger("Vectorization");
+    private static final String MODULE_NAME = "jdk.incubator.vector";
+    private static final String DIRECT_SUM_CLASS = "com.ledmington.solarsystem.physics.VectorDirectSumSolver";
+    private static final String KEPLER_CLASS = "com.ledmington.solarsystem.physics.VectorKeplerSolver";
+    private static final boolean MODULE_FOUND = findModule();
+
+    /**
+     * The constructor of the SIMD direct summation, null if it is not available.
+     */
+    private static final Constructor<? extends ForceSolver> DIRECT_SUM =
+            findKernel(DIRECT_SUM_CLASS, ForceSolver.class, double.class);
+
+    /**
+     * The constructor of the SIMD Kepler solver, null if it is not available.
+     */
+    private static final Constructor<? extends KeplerSolver> KEPLER = findKernel(KEPLER_CLASS, KeplerSolver.class);
+
+    private Vectorization() {}
+
+    private static boolean findModule() {
+        if (ModuleLayer.boot().findModule(MODULE_NAME).isEmpty()) {
+            logger.debug("module %s not found, using scalar kernels", MODULE_NAME);
+            return false;
+        }
+        return true;
+    }
+
+    private static <T> Constructor<? extends T> findKernel(
+            final String className, final Class<T> type, final Class<?>... parameters) {
+        if (!MODULE_FOUND) {
+            return null;
+        }
+        try {
+            final Constructor<? extends T> constructor =
+                    Class.forName(className).asSubclass(type).getConstructor(parameters);
+            logger.debug("using SIMD kernel %s", className);
+            return constructor;
+        } catch (final ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            logger.warning(
+                    "module %s found but SIMD kernel %s not available, using scalar kernel", MODULE_NAME, className);
+            return null;
+        }
+    }
+
+    /**
+     * @return
+     *      True if the SIMD kernels are available, false otherwise.
+     */
+    public static boolean isAvailable() {
+        return DIRECT_SUM != null;
+    }
+
+    /**
+     * Creates a direct summation ForceSolver, using the SIMD kernel if available
+     * and a {@link DirectSumSolver} otherwise.
+     *
+     * @param softening
+     *      The softening length (in m).
+     * @return
+     *      A new direct summation ForceSolver.
+     */
+    public static ForceSolver directSum(final double softening) {
+        if (DIRECT_SUM == null) {
+            return new DirectSumSolver(softening);
+        }
+        return newInstance(DIRECT_SUM, softening);
+    }
+
+    /**
+     * Creates a KeplerSolver, using the SIMD kernel if available and a {@link HalleyKeplerSolver} otherwise.
+     *
+     * @return
+     *      A new KeplerSolver.
+     */
+    public static KeplerSolver keplerSolver() {
+        if (KEPLER == null) {
+            return new HalleyKeplerSolver();
+        }
+        return newInstance(KEPLER);
+    }
+
+    private static <T> T newInstance(final Constructor<? extends T> constructor, final Object... arguments) {
+        try {
+            return constructor.newInstance(arguments);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (final InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
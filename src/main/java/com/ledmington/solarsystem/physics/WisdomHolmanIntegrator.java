@@ -0,0 +1,223 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+
+/**
+ * Wisdom-Holman symplectic mapping in democratic heliocentric coordinates.
+ * <p>
+ * The first body of the store is the central one (the Sun): the positions of the other bodies are taken
+ * relative to it and their velocities relative to the barycenter. The Hamiltonian is split in a Keplerian
+ * part, solved exactly for each body around the central one, an interaction part between the non-central
+ * bodies and a "jump" part due to the motion of the central body. Each step applies half an interaction kick,
+ * half a jump, a full Kepler drift, half a jump and half an interaction kick, while the barycenter moves
+ * uniformly.
+ * <p>
+ * Since the dominant Keplerian motion is integrated exactly, the energy error is proportional to the ratio
+ * between the masses of the planets and the one of the Sun: steps of several days keep the energy bounded
+ * for millions of years, without secular drift. The interactions are computed by the given
+ * {@link ForceSolver} over the non-central bodies only, and the ones at the end of a step are reused
+ * at the beginning of the next one.
+ */
+public final class WisdomHolmanIntegrator implements Integrator {
+
+    private double[] qx;
+    private double[] qy;
+    private double[] qz;
+    private double[] vx;
+    private double[] vy;
+    private double[] vz;
+    private double[] mass;
+    private double[] ax;
+    private double[] ay;
+    private double[] az;
+    private final double[] state = new double[6];
+    private boolean accelerationsAreValid = false;
+
+    public WisdomHolmanIntegrator() {}
+
+    @Override
+    public void step(final BodyStore store, final ForceSolver solver, final double dt) {
+        final int n = store.size();
+        final double[] x = store.x();
+        final double[] y = store.y();
+        final double[] z = store.z();
+        final double[] bvx = store.vx();
+        final double[] bvy = store.vy();
+        final double[] bvz = store.vz();
+        final double[] m = store.mass();
+
+        if (n < 2) {
+            for (int i = 0; i < n; i++) {
+                x[i] += bvx[i] * dt;
+                y[i] += bvy[i] * dt;
+                z[i] += bvz[i] * dt;
+            }
+            return;
+        }
+
+        final int k = n - 1;
+        if (qx == null || qx.length < k) {
+            accelerationsAreValid = false;
+        }
+        qx = Buffers.ensure(qx, k);
+        qy = Buffers.ensure(qy, k);
+        qz = Buffers.ensure(qz, k);
+        vx = Buffers.ensure(vx, k);
+        vy = Buffers.ensure(vy, k);
+        vz = Buffers.ensure(vz, k);
+        mass = Buffers.ensure(mass, k);
+        ax = Buffers.ensure(ax, k);
+        ay = Buffers.ensure(ay, k);
+        az = Buffers.ensure(az, k);
+
+        // barycenter
+        double totalMass = 0.0;
+        double cx = 0.0;
+        double cy = 0.0;
+        double cz = 0.0;
+        double cvx = 0.0;
+        double cvy = 0.0;
+        double cvz = 0.0;
+        for (int i = 0; i < n; i++) {
+            totalMass += m[i];
+            cx += m[i] * x[i];
+            cy += m[i] * y[i];
+            cz += m[i] * z[i];
+            cvx += m[i] * bvx[i];
+            cvy += m[i] * bvy[i];
+            cvz += m[i] * bvz[i];
+        }
+        cx /= totalMass;
+        cy /= totalMass;
+        cz /= totalMass;
+        cvx /= totalMass;
+        cvy /= totalMass;
+        cvz /= totalMass;
+
+        // to democratic heliocentric coordinates
+        for (int i = 1; i < n; i++) {
+            qx[i - 1] = x[i] - x[0];
+            qy[i - 1] = y[i] - y[0];
+            qz[i - 1] = z[i] - z[0];
+            vx[i - 1] = bvx[i] - cvx;
+            vy[i - 1] = bvy[i] - cvy;
+            vz[i - 1] = bvz[i] - cvz;
+            mass[i - 1] = m[i];
+        }
+
+        final double centralMass = m[0];
+        final double halfDt = 0.5 * dt;
+        if (!accelerationsAreValid) {
+            solver.computeAccelerations(k, qx, qy, qz, mass, ax, ay, az);
+        }
+        kick(k, halfDt);
+        jump(k, centralMass, halfDt);
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * centralMass;
+        for (int i = 0; i < k; i++) {
+            state[0] = qx[i];
+            state[1] = qy[i];
+            state[2] = qz[i];
+            state[3] = vx[i];
+            state[4] = vy[i];
+            state[5] = vz[i];
+            KeplerDrift.drift(state, mu, dt);
+            qx[i] = state[0];
+            qy[i] = state[1];
+            qz[i] = state[2];
+            vx[i] = state[3];
+            vy[i] = state[4];
+            vz[i] = state[5];
+        }
+        jump(k, centralMass, halfDt);
+        solver.computeAccelerations(k, qx, qy, qz, mass, ax, ay, az);
+        kick(k, halfDt);
+        accelerationsAreValid = true;
+
+        // back to barycentric coordinates
+        cx += cvx * dt;
+        cy += cvy * dt;
+        cz += cvz * dt;
+        double sx = 0.0;
+        double sy = 0.0;
+        double sz = 0.0;
+        double px = 0.0;
+        double py = 0.0;
+        double pz = 0.0;
+        for (int i = 0; i < k; i++) {
+            sx += mass[i] * qx[i];
+            sy += mass[i] * qy[i];
+            sz += mass[i] * qz[i];
+            px += mass[i] * vx[i];
+            py += mass[i] * vy[i];
+            pz += mass[i] * vz[i];
+        }
+        x[0] = cx - sx / totalMass;
+        y[0] = cy - sy / totalMass;
+        z[0] = cz - sz / totalMass;
+        bvx[0] = cvx - px / centralMass;
+        bvy[0] = cvy - py / centralMass;
+        bvz[0] = cvz - pz / centralMass;
+        for (int i = 1; i < n; i++) {
+            x[i] = x[0] + qx[i - 1];
+            y[i] = y[0] + qy[i - 1];
+            z[i] = z[0] + qz[i - 1];
+            bvx[i] = cvx + vx[i - 1];
+            bvy[i] = cvy + vy[i - 1];
+            bvz[i] = cvz + vz[i - 1];
+        }
+    }
+
+    /**
+     * Applies the interaction between the non-central bodies.
+     */
+    private void kick(final int k, final double dt) {
+        for (int i = 0; i < k; i++) {
+            vx[i] += ax[i] * dt;
+            vy[i] += ay[i] * dt;
+            vz[i] += az[i] * dt;
+        }
+    }
+
+    /**
+     * Applies the motion of the central body, which moves all the heliocentric positions.
+     */
+    private void jump(final int k, final double centralMass, final double dt) {
+        double px = 0.0;
+        double py = 0.0;
+        double pz = 0.0;
+        for (int i = 0; i < k; i++) {
+            px += mass[i] * vx[i];
+            py += mass[i] * vy[i];
+            pz += mass[i] * vz[i];
+        }
+        final double scale = dt / centralMass;
+        for (int i = 0; i < k; i++) {
+            qx[i] += px * scale;
+            qy[i] += py * scale;
+            qz[i] += pz * scale;
+        }
+    }
+
+    @Override
+    public void reset() {
+        accelerationsAreValid = false;
+    }
+}
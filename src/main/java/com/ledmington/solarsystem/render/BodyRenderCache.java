@@ -0,0 +1,367 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Vector3;
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.physics.Playback;
+import com.ledmington.solarsystem.physics.Snapshot;
+import com.ledmington.solarsystem.utils.language.Dictionary;
+
+/**
+ * The state of the rendered bodies derived from the simulation, stored in flat arrays indexed by the
+ * position of each body in the array given at construction.
+ * <p>
+ * Each group of values is recomputed only when what it depends on changes: the scaled positions when
+ * a new snapshot is published, the interpolation factor moves or a replay reaches another time, the screen
+ * positions when the positions or the camera change, and the display names when the {@link Dictionary} switches language. The scaled
+ * radii never change. The renderer reads everything from here instead of asking the bodies every frame.
+ */
+public final class BodyRenderCache {
+
+    private final Body[] bodies;
+    private final int[] indexById;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final float[] radius;
+    private final float[] screenX;
+    private final float[] screenY;
+    private final float[] labelX;
+    private final float[] labelY;
+    private final String[] names;
+    private final Vector3 tmp = new Vector3();
+
+    // the versions of the inputs used for the current values
+    private long positionsSteps = -1L;
+    private double positionsAlpha = Double.NaN;
+    private double positionsTime = Double.NaN;
+    private int positionsVersion = 0;
+    private int projectionVersion = -1;
+    private final float[] projectionMatrix = new float[16];
+    private final float[] projectionViewport = new float[4];
+    private int namesVersion = -1;
+
+    /**
+     * Creates a cache for the given bodies, with their initial positions.
+     *
+     * @param bodies
+     *      The bodies to be rendered.
+     */
+    public BodyRenderCache(final Body[] bodies) {
+        this.bodies = Objects.requireNonNull(bodies).clone();
+        final int n = bodies.length;
+        int maxId = -1;
+        for (final Body b : bodies) {
+            maxId = Math.max(maxId, b.id());
+        }
+        this.indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        this.x = new float[n];
+        this.y = new float[n];
+        this.z = new float[n];
+        this.radius = new float[n];
+        this.screenX = new float[n];
+        this.screenY = new float[n];
+        this.labelX = new float[n];
+        this.labelY = new float[n];
+        this.names = new String[n];
+        for (int k = 0; k < n; k++) {
+            indexById[bodies[k].id()] = k;
+            bodies[k].scaledPosition(tmp);
+            x[k] = tmp.x;
+            y[k] = tmp.y;
+            z[k] = tmp.z;
+            radius[k] = bodies[k].scaledRadius();
+        }
+        updateNames();
+    }
+
+    /**
+     * @return
+     *      The number of bodies.
+     */
+    public int size() {
+        return bodies.length;
+    }
+
+    /**
+     * @param k
+     *      The index of a body in this cache.
+     * @return
+     *      The body at the given index.
+     */
+    public Body body(final int k) {
+        return bodies[k];
+    }
+
+    /**
+     * @param b
+     *      A body.
+     * @return
+     *      The index of the given body in this cache, or -1 if it is not cached.
+     */
+    public int indexOf(final Body b) {
+        final int id = b.id();
+        return id < indexById.length ? indexById[id] : -1;
+    }
+
+    /**
+     * Moves every body to its scaled position interpolated in the given snapshot,
+     * unless it is already there.
+     *
+     * @param snapshot
+     *      The latest snapshot of the simulation.
+     * @param alpha
+     *      The interpolation factor between the previous and the current positions.
+     * @return
+     *      True if the positions changed, false otherwise.
+     */
+    public boolean update(final Snapshot snapshot, final double alpha) {
+        if (snapshot.steps() == positionsSteps && alpha == positionsAlpha) {
+            return false;
+        }
+        for (int k = 0; k < bodies.length; k++) {
+            final int id = bodies[k].id();
+            x[k] = (float) (snapshot.x(id, alpha) * Constants.SCALE);
+            y[k] = (float) (snapshot.y(id, alpha) * Constants.SCALE);
+            z[k] = (float) (snapshot.z(id, alpha) * Constants.SCALE);
+        }
+        positionsSteps = snapshot.steps();
+        positionsAlpha = alpha;
+        positionsTime = Double.NaN;
+        positionsVersion++;
+        return true;
+    }
+
+    /**
+     * Moves every body to its scaled position in the given playback, unless it is already there.
+     * The bodies are looked up in the playback by their id.
+     *
+     * @param replay
+     *      The playback, already moved to the shown time.
+     * @return
+     *      True if the positions changed, false otherwise.
+     */
+    public boolean update(final Playback replay) {
+        if (replay.time() == positionsTime) {
+            return false;
+        }
+        for (int k = 0; k < bodies.length; k++) {
+            final int id = bodies[k].id();
+            x[k] = (float) (replay.x(id) * Constants.SCALE);
+            y[k] = (float) (replay.y(id) * Constants.SCALE);
+            z[k] = (float) (replay.z(id) * Constants.SCALE);
+        }
+        positionsSteps = -1L;
+        positionsAlpha = Double.NaN;
+        positionsTime = replay.time();
+        positionsVersion++;
+        return true;
+    }
+
+    /**
+     * Moves the given satellites to the positions of their parents, which must have been updated already,
+     * plus the given offsets. The satellites which are not cached, or whose parent is not cached, are skipped.
+     *
+     * @param count
+     *      The number of satellites.
+     * @param satellites
+     *      The ids of the satellites.
+     * @param parents
+     *      The ids of their parents.
+     * @param dx
+     *      The x offsets from the parents (in m).
+     * @param dy
+     *      The y offsets from the parents (in m).
+     * @param dz
+     *      The z offsets from the parents (in m).
+     */
+    public void placeSatellites(
+            final int count,
+            final int[] satellites,
+            final int[] parents,
+            final double[] dx,
+            final double[] dy,
+            final double[] dz) {
+        for (int i = 0; i < count; i++) {
+            final int k = satellites[i] < indexById.length ? indexById[satellites[i]] : -1;
+            final int p = parents[i] < indexById.length ? indexById[parents[i]] : -1;
+            if (k < 0 || p < 0) {
+                continue;
+            }
+            x[k] = x[p] + (float) (dx[i] * Constants.SCALE);
+            y[k] = y[p] + (float) (dy[i] * Constants.SCALE);
+            z[k] = z[p] + (float) (dz[i] * Constants.SCALE);
+        }
+        positionsVersion++;
+    }
+
+    /**
+     * Forgets the inputs of the current positions, so that the next update recomputes them.
+     */
+    public void invalidate() {
+        positionsSteps = -1L;
+        positionsAlpha = Double.NaN;
+        positionsTime = Double.NaN;
+    }
+
+    /**
+     * Projects every body, and the anchor of its label, on the screen, unless neither the positions
+     * nor the camera and the viewport changed since the last call.
+     *
+     * @param camera
+     *      The camera, already updated.
+     * @param viewportX
+     *      The x coordinate of the lower left corner of the viewport (in pixels).
+     * @param viewportY
+     *      The y coordinate of the lower left corner of the viewport (in pixels).
+     * @param viewportWidth
+     *      The width of the viewport (in pixels).
+     * @param viewportHeight
+     *      The height of the viewport (in pixels).
+     */
+    public void project(
+            final Camera camera,
+            final float viewportX,
+            final float viewportY,
+            final float viewportWidth,
+            final float viewportHeight) {
+        if (projectionVersion == positionsVersion
+                && Arrays.equals(projectionMatrix, camera.combined.val)
+                && projectionViewport[0] == viewportX
+                && projectionViewport[1] == viewportY
+                && projectionViewport[2] == viewportWidth
+                && projectionViewport[3] == viewportHeight) {
+            return;
+        }
+        for (int k = 0; k < bodies.length; k++) {
+            camera.project(tmp.set(x[k], y[k], z[k]), viewportX, viewportY, viewportWidth, viewportHeight);
+            screenX[k] = tmp.x;
+            screenY[k] = tmp.y;
+            camera.project(
+                    tmp.set(x[k] + radius[k], y[k] + radius[k], z[k]),
+                    viewportX,
+                    viewportY,
+                    viewportWidth,
+                    viewportHeight);
+            labelX[k] = tmp.x;
+            labelY[k] = tmp.y;
+        }
+        System.arraycopy(camera.combined.val, 0, projectionMatrix, 0, projectionMatrix.length);
+        projectionViewport[0] = viewportX;
+        projectionViewport[1] = viewportY;
+        projectionViewport[2] = viewportWidth;
+        projectionViewport[3] = viewportHeight;
+        projectionVersion = positionsVersion;
+    }
+
+    /**
+     * Looks up the display names again if the language changed.
+     */
+    private void updateNames() {
+        final int version = Dictionary.getInstance().version();
+        if (version == namesVersion) {
+            return;
+        }
+        for (int k = 0; k < bodies.length; k++) {
+            names[k] = bodies[k].name().orElse("");
+        }
+        namesVersion = version;
+    }
+
+    /**
+     * @param k
+     *      The index of a body in this cache.
+     * @return
+     *      The display name of the body in the current language, or an empty String if it has no name.
+     */
+    public String name(final int k) {
+        updateNames();
+        return names[k];
+    }
+
+    /**
+     * @return
+     *      The scaled x coordinates.
+     */
+    public float[] x() {
+        return x;
+    }
+
+    /**
+     * @return
+     *      The scaled y coordinates.
+     */
+    public float[] y() {
+        return y;
+    }
+
+    /**
+     * @return
+     *      The scaled z coordinates.
+     */
+    public float[] z() {
+        return z;
+    }
+
+    /**
+     * @return
+     *      The scaled radii.
+     */
+    public float[] radius() {
+        return radius;
+    }
+
+    /**
+     * @return
+     *      The x coordinates on the screen, after {@link #project}.
+     */
+    public float[] screenX() {
+        return screenX;
+    }
+
+    /**
+     * @return
+     *      The y coordinates on the screen, after {@link #project}.
+     */
+    public float[] screenY() {
+        return screenY;
+    }
+
+    /**
+     * @return
+     *      The x coordinates on the screen of the label anchors, after {@link #project}.
+     */
+    public float[] labelX() {
+        return labelX;
+    }
+
+    /**
+     * @return
+     *      The y coordinates on the screen of the label anchors, after {@link #project}.
+     */
+    public float[] labelY() {
+        return labelY;
+    }
+}
@@ -0,0 +1,479 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+
+/**
+ * A bounding volume hierarchy of axis-aligned boxes over a set of spheres, used to find the visible bodies
+ * and the body under the mouse in logarithmic time instead of testing all of them.
+ * <p>
+ * The spheres are given as structure-of-arrays columns owned by the caller, who can move them and then call
+ * {@link #refit()} to update the boxes in O(N) without changing the tree. Since a refitted tree becomes
+ * looser as the spheres move apart from their original neighbours, it should be rebuilt with
+ * {@link #build} from time to time, which takes O(N log N).
+ * <p>
+ * The nodes are stored in flat arrays: the children of an internal node are always adjacent and
+ * come after their parent, and each node refers to a contiguous range of a permutation of the spheres,
+ * so that a node entirely inside the frustum is collected with a single copy.
+ * No memory is allocated by the queries.
+ */
+public final class BoundingVolumeHierarchy {
+
+    /**
+     * The maximum number of spheres in a leaf.
+     */
+    private static final int LEAF_SIZE = 4;
+
+    private static final int OUTSIDE = 0;
+    private static final int INTERSECTING = 1;
+    private static final int INSIDE = 2;
+
+    private int n = 0;
+    private float[] x;
+    private float[] y;
+    private float[] z;
+    private float[] radius;
+
+    private int[] order = new int[0];
+    private int nodeCount = 0;
+    private float[] minX = new float[0];
+    private float[] minY = new float[0];
+    private float[] minZ = new float[0];
+    private float[] maxX = new float[0];
+    private float[] maxY = new float[0];
+    private float[] maxZ = new float[0];
+
+    /**
+     * The range of {@link #order} holding the spheres below each node.
+     */
+    private int[] start = new int[0];
+
+    private int[] end = new int[0];
+
+    /**
+     * The index of the first child of each internal node, -1 for leaves.
+     */
+    private int[] child = new int[0];
+
+    private int[] stack = new int[64];
+
+    /**
+     * The number of nodes whose box was tested by the last {@link #pick}.
+     */
+    private int lastPickVisits = 0;
+
+    public BoundingVolumeHierarchy() {}
+
+    /**
+     * Builds the hierarchy from scratch over the given spheres.
+     *
+     * @param n
+     *      The number of spheres.
+     * @param x
+     *      The x coordinates of the centers.
+     * @param y
+     *      The y coordinates of the centers.
+     * @param z
+     *      The z coordinates of the centers.
+     * @param radius
+     *      The radii.
+     */
+    public void build(final int n, final float[] x, final float[] y, final float[] z, final float[] radius) {
+        if (n < 0 || x.length < n || y.length < n || z.length < n || radius.length < n) {
+            throw new IllegalArgumentException(String.format("Invalid number of spheres %d", n));
+        }
+        this.n = n;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.radius = radius;
+        if (order.length < n) {
+            order = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        final int maxNodes = Math.max(1, 2 * n);
+        if (child.length < maxNodes) {
+            minX = new float[maxNodes];
+            minY = new float[maxNodes];
+            minZ = new float[maxNodes];
+            maxX = new float[maxNodes];
+            maxY = new float[maxNodes];
+            maxZ = new float[maxNodes];
+            start = new int[maxNodes];
+            end = new int[maxNodes];
+            child = new int[maxNodes];
+        }
+
+        nodeCount = 1;
+        start[0] = 0;
+        end[0] = n;
+        child[0] = -1;
+        // the nodes are split in order of creation, so that children always come after their parent
+        for (int node = 0; node < nodeCount; node++) {
+            if (end[node] - start[node] > LEAF_SIZE) {
+                split(node);
+            }
+        }
+        refit();
+    }
+
+    /**
+     * Splits the spheres of the given leaf at the median of their centers along the longest axis.
+     */
+    private void split(final int node) {
+        final int from = start[node];
+        final int to = end[node];
+        float lowX = Float.POSITIVE_INFINITY;
+        float lowY = Float.POSITIVE_INFINITY;
+        float lowZ = Float.POSITIVE_INFINITY;
+        float highX = Float.NEGATIVE_INFINITY;
+        float highY = Float.NEGATIVE_INFINITY;
+        float highZ = Float.NEGATIVE_INFINITY;
+        for (int k = from; k < to; k++) {
+            final int i = order[k];
+            lowX = Math.min(lowX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            lowZ = Math.min(lowZ, z[i]);
+            highX = Math.max(highX, x[i]);
+            highY = Math.max(highY, y[i]);
+            highZ = Math.max(highZ, z[i]);
+        }
+        final float sizeX = highX - lowX;
+        final float sizeY = highY - lowY;
+        final float sizeZ = highZ - lowZ;
+        final float[] axis = sizeX >= sizeY && sizeX >= sizeZ ? x : (sizeY >= sizeZ ? y : z);
+        final int mid = (from + to) >>> 1;
+        select(axis, from, to - 1, mid);
+
+        final int left = nodeCount;
+        nodeCount += 2;
+        start[left] = from;
+        end[left] = mid;
+        child[left] = -1;
+        start[left + 1] = mid;
+        end[left + 1] = to;
+        child[left + 1] = -1;
+        child[node] = left;
+    }
+
+    /**
+     * Rearranges order[lo..hi] so that the element in position k is the one which would be there
+     * if the range was sorted by the given coordinate (quickselect).
+     */
+    private void select(final float[] key, int lo, int hi, final int k) {
+        while (hi > lo) {
+            final float pivot = key[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[order[i]] < pivot) {
+                    i++;
+                }
+                while (key[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the boxes of all the nodes after the spheres have moved, keeping the same tree.
+     */
+    public void refit() {
+        if (n == 0) {
+            nodeCount = 0;
+            return;
+        }
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (child[node] < 0) {
+                float lowX = Float.POSITIVE_INFINITY;
+                float lowY = Float.POSITIVE_INFINITY;
+                float lowZ = Float.POSITIVE_INFINITY;
+                float highX = Float.NEGATIVE_INFINITY;
+                float highY = Float.NEGATIVE_INFINITY;
+                float highZ = Float.NEGATIVE_INFINITY;
+                for (int k = start[node]; k < end[node]; k++) {
+                    final int i = order[k];
+                    final float r = radius[i];
+                    lowX = Math.min(lowX, x[i] - r);
+                    lowY = Math.min(lowY, y[i] - r);
+                    lowZ = Math.min(lowZ, z[i] - r);
+                    highX = Math.max(highX, x[i] + r);
+                    highY = Math.max(highY, y[i] + r);
+                    highZ = Math.max(highZ, z[i] + r);
+                }
+                minX[node] = lowX;
+                minY[node] = lowY;
+                minZ[node] = lowZ;
+                maxX[node] = highX;
+                maxY[node] = highY;
+                maxZ[node] = highZ;
+            } else {
+                final int l = child[node];
+                final int r = l + 1;
+                minX[node] = Math.min(minX[l], minX[r]);
+                minY[node] = Math.min(minY[l], minY[r]);
+                minZ[node] = Math.min(minZ[l], minZ[r]);
+                maxX[node] = Math.max(maxX[l], maxX[r]);
+                maxY[node] = Math.max(maxY[l], maxY[r]);
+                maxZ[node] = Math.max(maxZ[l], maxZ[r]);
+            }
+        }
+    }
+
+    /**
+     * @return
+     *      The number of spheres in the hierarchy.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Finds all the spheres which are at least partially inside the given frustum.
+     *
+     * @param frustum
+     *      The frustum of the camera.
+     * @param out
+     *      The array receiving the indices of the visible spheres, which must be able to hold all of them.
+     * @return
+     *      The number of visible spheres.
+     */
+    public int queryFrustum(final Frustum frustum, final int[] out) {
+        if (nodeCount == 0) {
+            return 0;
+        }
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            final int side = classify(frustum, node);
+            if (side == OUTSIDE) {
+                continue;
+            }
+            if (side == INSIDE) {
+                System.arraycopy(order, start[node], out, found, end[node] - start[node]);
+                found += end[node] - start[node];
+                continue;
+            }
+            if (child[node] < 0) {
+                for (int k = start[node]; k < end[node]; k++) {
+                    final int i = order[k];
+                    if (sphereInFrustum(frustum, x[i], y[i], z[i], radius[i])) {
+                        out[found++] = i;
+                    }
+                }
+            } else {
+                ensureStack(top + 2);
+                stack[top++] = child[node];
+                stack[top++] = child[node] + 1;
+            }
+        }
+        return found;
+    }
+
+    private int classify(final Frustum frustum, final int node) {
+        int result = INSIDE;
+        for (final Plane plane : frustum.planes) {
+            final Vector3 normal = plane.normal;
+            // the corners of the box farthest along and against the normal
+            final float farX = normal.x >= 0.0f ? maxX[node] : minX[node];
+            final float farY = normal.y >= 0.0f ? maxY[node] : minY[node];
+            final float farZ = normal.z >= 0.0f ? maxZ[node] : minZ[node];
+            if (normal.x * farX + normal.y * farY + normal.z * farZ + plane.d < 0.0f) {
+                return OUTSIDE;
+            }
+            final float nearX = normal.x >= 0.0f ? minX[node] : maxX[node];
+            final float nearY = normal.y >= 0.0f ? minY[node] : maxY[node];
+            final float nearZ = normal.z >= 0.0f ? minZ[node] : maxZ[node];
+            if (normal.x * nearX + normal.y * nearY + normal.z * nearZ + plane.d < 0.0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    private static boolean sphereInFrustum(
+            final Frustum frustum, final float cx, final float cy, final float cz, final float r) {
+        for (final Plane plane : frustum.planes) {
+            final Vector3 normal = plane.normal;
+            if (normal.x * cx + normal.y * cy + normal.z * cz + plane.d < -r) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the closest sphere hit by the given ray. To make small or distant spheres easier to pick,
+     * each sphere is enlarged so that it covers at least the given angle as seen from the origin of the ray.
+     *
+     * @param ray
+     *      The ray, with a normalized direction.
+     * @param tolerance
+     *      The tangent of the minimum angular radius of the spheres, or 0 to use their actual radii.
+     * @return
+     *      The index of the closest sphere hit, or -1 if none is hit.
+     */
+    public int pick(final Ray ray, final float tolerance) {
+        if (nodeCount == 0) {
+            return -1;
+        }
+        final float ox = ray.origin.x;
+        final float oy = ray.origin.y;
+        final float oz = ray.origin.z;
+        final float dx = ray.direction.x;
+        final float dy = ray.direction.y;
+        final float dz = ray.direction.z;
+        final float invX = 1.0f / dx;
+        final float invY = 1.0f / dy;
+        final float invZ = 1.0f / dz;
+
+        int best = -1;
+        float bestT = Float.POSITIVE_INFINITY;
+        int top = 0;
+        stack[top++] = 0;
+        lastPickVisits = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            lastPickVisits++;
+
+            // enlarge the box by the tolerance at the distance of its farthest point
+            float margin = 0.0f;
+            if (tolerance > 0.0f) {
+                final float cx = 0.5f * (minX[node] + maxX[node]) - ox;
+                final float cy = 0.5f * (minY[node] + maxY[node]) - oy;
+                final float cz = 0.5f * (minZ[node] + maxZ[node]) - oz;
+                final float hx = 0.5f * (maxX[node] - minX[node]);
+                final float hy = 0.5f * (maxY[node] - minY[node]);
+                final float hz = 0.5f * (maxZ[node] - minZ[node]);
+                margin = tolerance
+                        * ((float) Math.sqrt(cx * cx + cy * cy + cz * cz)
+                                + (float) Math.sqrt(hx * hx + hy * hy + hz * hz));
+            }
+            final float entry = entry(node, margin, ox, oy, oz, invX, invY, invZ);
+            // a missed box, or one entered after the closest hit so far, cannot hold a closer hit
+            if (entry == Float.POSITIVE_INFINITY || entry >= bestT) {
+                continue;
+            }
+
+            if (child[node] < 0) {
+                for (int k = start[node]; k < end[node]; k++) {
+                    final int i = order[k];
+                    final float cx = x[i] - ox;
+                    final float cy = y[i] - oy;
+                    final float cz = z[i] - oz;
+                    final float distanceSquared = cx * cx + cy * cy + cz * cz;
+                    final float r = Math.max(radius[i], tolerance * (float) Math.sqrt(distanceSquared));
+                    final float b = cx * dx + cy * dy + cz * dz;
+                    final float discriminant = b * b - distanceSquared + r * r;
+                    if (discriminant < 0.0f) {
+                        continue;
+                    }
+                    final float root = (float) Math.sqrt(discriminant);
+                    // when the origin is inside the sphere, the hit is where the ray leaves it
+                    final float t = b - root >= 0.0f ? b - root : b + root;
+                    if (t >= 0.0f && t < bestT) {
+                        bestT = t;
+                        best = i;
+                    }
+                }
+            } else {
+                final int l = child[node];
+                final int r = l + 1;
+                ensureStack(top + 2);
+                // visit the nearest child first, so that the farthest one is more likely to be pruned
+                final boolean leftFirst = squaredDistance(l, ox, oy, oz) <= squaredDistance(r, ox, oy, oz);
+                stack[top++] = leftFirst ? r : l;
+                stack[top++] = leftFirst ? l : r;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return
+     *      The number of nodes whose box was tested by the last {@link #pick}.
+     */
+    int lastPickVisits() {
+        return lastPickVisits;
+    }
+
+    /**
+     * Returns the distance along the ray where it enters the box of the given node enlarged by the margin,
+     * or positive infinity if it misses it.
+     */
+    private float entry(
+            final int node,
+            final float margin,
+            final float ox,
+            final float oy,
+            final float oz,
+            final float invX,
+            final float invY,
+            final float invZ) {
+        final float t1x = (minX[node] - margin - ox) * invX;
+        final float t2x = (maxX[node] + margin - ox) * invX;
+        final float t1y = (minY[node] - margin - oy) * invY;
+        final float t2y = (maxY[node] + margin - oy) * invY;
+        final float t1z = (minZ[node] - margin - oz) * invZ;
+        final float t2z = (maxZ[node] + margin - oz) * invZ;
+        final float near = Math.max(Math.max(Math.min(t1x, t2x), Math.min(t1y, t2y)), Math.min(t1z, t2z));
+        final float far = Math.min(Math.min(Math.max(t1x, t2x), Math.max(t1y, t2y)), Math.max(t1z, t2z));
+        if (far < 0.0f || near > far || Float.isNaN(near) || Float.isNaN(far)) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return Math.max(near, 0.0f);
+    }
+
+    private float squaredDistance(final int node, final float px, final float py, final float pz) {
+        final float cx = 0.5f * (minX[node] + maxX[node]) - px;
+        final float cy = 0.5f * (minY[node] + maxY[node]) - py;
+        final float cz = 0.5f * (minZ[node] + maxZ[node]) - pz;
+        return cx * cx + cy * cy + cz * cz;
+    }
+
+    private void ensureStack(final int size) {
+        if (stack.length < size) {
+            stack = Arrays.copyOf(stack, Math.max(size, 2 * stack.length));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import com.badlogic.gdx.graphics.g3d.ModelBatch;
+
+/**
+ * A {@link ModelBatch} which counts how many times it flushed its renderables, like
+ * {@link com.badlogic.gdx.graphics.g2d.SpriteBatch#totalRenderCalls} does for sprites.
+ */
+public final class CountingModelBatch extends ModelBatch {
+
+    private int flushes = 0;
+
+    /**
+     * Creates a CountingModelBatch with the default shaders.
+     */
+    public CountingModelBatch() {
+        super();
+    }
+
+    @Override
+    public void flush() {
+        flushes++;
+        super.flush();
+    }
+
+    /**
+     * @return
+     *      The number of flushes since this batch was created, including the ones at the end of each pass.
+     */
+    public int flushes() {
+        return flushes;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+/**
+ * The rendering counters of the last frame: the number of batch flushes and of the render calls
+ * submitted to each batch, and the GL draw calls actually issued, when they are being profiled.
+ * <p>
+ * With batching, the number of flushes should not depend on the number of bodies on the screen.
+ */
+public final class FrameStats {
+
+    private int spriteRenderCalls;
+    private int shapeFlushes;
+    private int modelRenderCalls;
+    private int modelFlushes;
+    private int drawCalls = -1;
+    private int shaderSwitches = -1;
+    private int textureBindings = -1;
+
+    public FrameStats() {}
+
+    /**
+     * Overwrites the counters of the batches.
+     *
+     * @param spriteRenderCalls
+     *      The number of times the SpriteBatch flushed its vertices.
+     * @param shapeFlushes
+     *      The number of ShapeRenderer passes, each of which flushes its vertices at least once.
+     * @param modelRenderCalls
+     *      The number of model instances submitted to the ModelBatch.
+     * @param modelFlushes
+     *      The number of times the ModelBatch flushed its renderables.
+     */
+    public void setBatches(
+            final int spriteRenderCalls, final int shapeFlushes, final int modelRenderCalls, final int modelFlushes) {
+        this.spriteRenderCalls = spriteRenderCalls;
+        this.shapeFlushes = shapeFlushes;
+        this.modelRenderCalls = modelRenderCalls;
+        this.modelFlushes = modelFlushes;
+    }
+
+    /**
+     * Overwrites the counters of the GL profiler, or clears them with -1 if it is not enabled.
+     *
+     * @param drawCalls
+     *      The number of GL draw calls.
+     * @param shaderSwitches
+     *      The number of shader program switches.
+     * @param textureBindings
+     *      The number of texture bindings.
+     */
+    public void setProfiler(final int drawCalls, final int shaderSwitches, final int textureBindings) {
+        this.drawCalls = drawCalls;
+        this.shaderSwitches = shaderSwitches;
+        this.textureBindings = textureBindings;
+    }
+
+    public int spriteRenderCalls() {
+        return spriteRenderCalls;
+    }
+
+    public int shapeFlushes() {
+        return shapeFlushes;
+    }
+
+    public int modelRenderCalls() {
+        return modelRenderCalls;
+    }
+
+    public int modelFlushes() {
+        return modelFlushes;
+    }
+
+    /**
+     * @return
+     *      The number of GL draw calls, or -1 if they are not being profiled.
+     */
+    public int drawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * @return
+     *      The number of shader program switches, or -1 if they are not being profiled.
+     */
+    public int shaderSwitches() {
+        return shaderSwitches;
+    }
+
+    /**
+     * @return
+     *      The number of texture bindings, or -1 if they are not being profiled.
+     */
+    public int textureBindings() {
+        return textureBindings;
+    }
+
+    /**
+     * Appends a one-line summary of these counters, without allocating.
+     *
+     * @param sb
+     *      The StringBuilder to append to.
+     * @return
+     *      The given StringBuilder.
+     */
+    public StringBuilder appendTo(final StringBuilder sb) {
+        sb.append("sprite flushes: ")
+                .append(spriteRenderCalls)
+                .append(", shape flushes: ")
+                .append(shapeFlushes)
+                .append(", models: ")
+                .append(modelRenderCalls)
+                .append(" in ")
+                .append(modelFlushes)
+                .append(" flushes");
+        if (drawCalls >= 0) {
+            sb.append(", draw calls: ")
+                    .append(drawCalls)
+                    .append(", shader switches: ")
+                    .append(shaderSwitches)
+                    .append(", texture bindings: ")
+                    .append(textureBindings);
+        }
+        return sb;
+    }
+}
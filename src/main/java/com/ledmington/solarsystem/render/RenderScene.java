@@ -0,0 +1,284 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import java.util.Objects;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.model.KeplerianOrbits;
+import com.ledmington.solarsystem.physics.KeplerPropagator;
+import com.ledmington.solarsystem.physics.Playback;
+import com.ledmington.solarsystem.physics.Snapshot;
+
+/**
+ * The per-frame work of the renderer which does not need a GL context: moving the bodies, placing
+ * the satellites on their Keplerian orbits, keeping the {@link BoundingVolumeHierarchy} up to date,
+ * culling, picking and projecting on the screen.
+ * <p>
+ * None of the methods called at every frame allocates, so this class is where the allocation-free frame
+ * path of the renderer can be tested without a window.
+ */
+public final class RenderScene {
+
+    /**
+     * The number of updates after which the bounding volume hierarchy is rebuilt from scratch
+     * instead of being refitted, since the bodies drift away from their initial grouping.
+     */
+    private static final int HIERARCHY_REBUILD_INTERVAL = 600;
+
+    private final BodyRenderCache bodies;
+    private final float[] boundingRadius;
+    private final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy();
+    private final int[] visible;
+    private int visibleCount = 0;
+    private int updatesSinceRebuild = 0;
+
+    private final int[] satellites;
+    private final KeplerianOrbits satelliteOrbits;
+    private final double[] satelliteX;
+    private final double[] satelliteY;
+    private final double[] satelliteZ;
+    private final KeplerPropagator propagator = new KeplerPropagator();
+    // the moons are integrated in their subsystems, so their analytic orbits are only a comparison
+    private boolean keplerianSatellites = false;
+
+    /**
+     * Creates a scene with the given bodies at their initial positions.
+     *
+     * @param bodies
+     *      The bodies to be rendered.
+     * @param satellites
+     *      The ids of the satellites which can be placed analytically.
+     * @param satelliteOrbits
+     *      The orbits of the satellites around their parents, in the same order as their ids.
+     */
+    public RenderScene(final Body[] bodies, final int[] satellites, final KeplerianOrbits satelliteOrbits) {
+        Objects.requireNonNull(satelliteOrbits);
+        if (satellites.length != satelliteOrbits.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "%d satellites were given, but %d orbits", satellites.length, satelliteOrbits.size()));
+        }
+        this.bodies = new BodyRenderCache(bodies);
+        final int n = this.bodies.size();
+        this.boundingRadius = new float[n];
+        for (int k = 0; k < n; k++) {
+            // the spheres are built with the scaled radius as their diameter
+            boundingRadius[k] = 0.5f * this.bodies.radius()[k];
+        }
+        this.visible = new int[n];
+        this.satellites = satellites.clone();
+        this.satelliteOrbits = satelliteOrbits;
+        this.satelliteX = new double[satellites.length];
+        this.satelliteY = new double[satellites.length];
+        this.satelliteZ = new double[satellites.length];
+        hierarchy.build(n, this.bodies.x(), this.bodies.y(), this.bodies.z(), boundingRadius);
+    }
+
+    /**
+     * Moves every body to its position interpolated in the given snapshot, then the satellites on their
+     * orbits, unless they are integrated.
+     *
+     * @param snapshot
+     *      The latest snapshot of the simulation.
+     * @param alpha
+     *      The interpolation factor between the previous and the current positions.
+     * @return
+     *      True if the positions changed, false otherwise.
+     */
+    public boolean update(final Snapshot snapshot, final double alpha) {
+        if (!bodies.update(snapshot, alpha)) {
+            return false;
+        }
+        if (keplerianSatellites) {
+            placeSatellites(snapshot.time(alpha));
+        }
+        updateHierarchy();
+        return true;
+    }
+
+    /**
+     * Moves every body to its position in the given playback. The satellites are shown where they were
+     * recorded, never on their Keplerian orbits, which would hide the recorded solution.
+     *
+     * @param replay
+     *      The playback, already moved to the shown time.
+     * @return
+     *      True if the positions changed, false otherwise.
+     */
+    public boolean update(final Playback replay) {
+        if (!bodies.update(replay)) {
+            return false;
+        }
+        updateHierarchy();
+        return true;
+    }
+
+    private void placeSatellites(final double time) {
+        propagator.propagate(satelliteOrbits, time, satelliteX, satelliteY, satelliteZ);
+        bodies.placeSatellites(
+                satellites.length, satellites, satelliteOrbits.parent(), satelliteX, satelliteY, satelliteZ);
+    }
+
+    private void updateHierarchy() {
+        if (++updatesSinceRebuild >= HIERARCHY_REBUILD_INTERVAL) {
+            hierarchy.build(bodies.size(), bodies.x(), bodies.y(), bodies.z(), boundingRadius);
+            updatesSinceRebuild = 0;
+        } else {
+            hierarchy.refit();
+        }
+    }
+
+    /**
+     * @return
+     *      True if the satellites are placed on their Keplerian orbits, false if they are integrated.
+     *      Only used with a running simulation.
+     */
+    public boolean keplerianSatellites() {
+        return keplerianSatellites;
+    }
+
+    /**
+     * Chooses whether the satellites are placed on their Keplerian orbits or integrated.
+     * The positions are recomputed at the next update.
+     *
+     * @param keplerian
+     *      True to place the satellites on their Keplerian orbits, false to show the integrated ones.
+     */
+    public void setKeplerianSatellites(final boolean keplerian) {
+        keplerianSatellites = keplerian;
+        // the other bodies have not moved, but the satellites must
+        bodies.invalidate();
+    }
+
+    /**
+     * Finds the bodies whose bounding sphere intersects the given frustum.
+     *
+     * @param frustum
+     *      The frustum of the camera.
+     * @return
+     *      The number of visible bodies, whose indices are the first ones of {@link #visible()}.
+     */
+    public int cull(final Frustum frustum) {
+        visibleCount = hierarchy.queryFrustum(frustum, visible);
+        return visibleCount;
+    }
+
+    /**
+     * @return
+     *      The indices of the bodies found visible by the last {@link #cull}.
+     */
+    public int[] visible() {
+        return visible;
+    }
+
+    /**
+     * @return
+     *      The number of bodies found visible by the last {@link #cull}.
+     */
+    public int visibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Finds the closest body hit by the given ray.
+     *
+     * @param ray
+     *      The ray, with a normalized direction.
+     * @param tolerance
+     *      The tangent of the minimum angular radius of the bodies, or 0 to use their actual radii.
+     * @return
+     *      The index of the closest body hit, or -1.
+     */
+    public int pick(final Ray ray, final float tolerance) {
+        return hierarchy.pick(ray, tolerance);
+    }
+
+    /**
+     * Projects every body and the anchor of its label on the screen, if something changed.
+     *
+     * @param camera
+     *      The camera, already updated.
+     * @param viewportX
+     *      The x coordinate of the lower left corner of the viewport (in pixels).
+     * @param viewportY
+     *      The y coordinate of the lower left corner of the viewport (in pixels).
+     * @param viewportWidth
+     *      The width of the viewport (in pixels).
+     * @param viewportHeight
+     *      The height of the viewport (in pixels).
+     */
+    public void project(
+            final Camera camera,
+            final float viewportX,
+            final float viewportY,
+            final float viewportWidth,
+            final float viewportHeight) {
+        bodies.project(camera, viewportX, viewportY, viewportWidth, viewportHeight);
+    }
+
+    /**
+     * @param position
+     *      A point of the scene.
+     * @param k
+     *      The index of a body.
+     * @return
+     *      The distance of the given point from the surface of the body.
+     */
+    public float distance(final Vector3 position, final int k) {
+        return position.dst(bodies.x()[k], bodies.y()[k], bodies.z()[k]) - bodies.radius()[k];
+    }
+
+    /**
+     * @param position
+     *      A point of the scene.
+     * @return
+     *      The index of the body whose surface is the closest to the given point.
+     */
+    public int closest(final Vector3 position) {
+        int closest = 0;
+        float closestDistance = distance(position, 0);
+        for (int k = 1; k < bodies.size(); k++) {
+            final float d = distance(position, k);
+            if (d < closestDistance) {
+                closest = k;
+                closestDistance = d;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @return
+     *      The positions, radii, screen positions and names of the bodies.
+     */
+    public BodyRenderCache bodies() {
+        return bodies;
+    }
+
+    /**
+     * @return
+     *      The radius of the bounding sphere of each body.
+     */
+    public float[] boundingRadius() {
+        return boundingRadius;
+    }
+}
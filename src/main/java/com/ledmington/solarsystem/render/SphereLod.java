@@ -0,0 +1,126 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.model.NodePart;
+import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * A few unit spheres at increasing tessellation levels, whose meshes are shared by the instances of
+ * all the bodies: each instance only owns its material and its transform, which scales the unit sphere
+ * to the radius of its body. The level of each body is chosen at every frame from its radius on the screen,
+ * and bodies smaller than {@link #IMPOSTOR_PIXELS} are not worth a mesh at all.
+ */
+public final class SphereLod implements Disposable {
+
+    /**
+     * Below this radius on the screen (in pixels), a body should be drawn as a point.
+     */
+    public static final float IMPOSTOR_PIXELS = 2.0f;
+
+    private static final int[] DIVISIONS_U = {8, 16, 32, 64};
+    private static final int[] DIVISIONS_V = {6, 12, 24, 48};
+
+    /**
+     * The largest radius on the screen (in pixels) of each level but the finest one.
+     */
+    private static final float[] MAX_PIXELS = {8.0f, 32.0f, 128.0f};
+
+    private final Model[] models = new Model[DIVISIONS_U.length];
+
+    /**
+     * Builds the meshes of all the levels. Needs a GL context.
+     */
+    public SphereLod() {
+        final ModelBuilder builder = new ModelBuilder();
+        for (int l = 0; l < models.length; l++) {
+            models[l] = builder.createSphere(
+                    2.0f,
+                    2.0f,
+                    2.0f,
+                    DIVISIONS_U[l],
+                    DIVISIONS_V[l],
+                    new Material(),
+                    Usage.Position | Usage.Normal | Usage.TextureCoordinates);
+        }
+    }
+
+    /**
+     * @return
+     *      The number of tessellation levels.
+     */
+    public static int levels() {
+        return DIVISIONS_U.length;
+    }
+
+    /**
+     * Chooses the tessellation level for a sphere of the given radius on the screen.
+     *
+     * @param screenRadius
+     *      The radius of the sphere on the screen (in pixels).
+     * @return
+     *      The level, from 0 (the coarsest) to {@link #levels()} - 1, or -1 if the sphere should be drawn
+     *      as a point.
+     */
+    public static int levelFor(final float screenRadius) {
+        if (!(screenRadius >= IMPOSTOR_PIXELS)) {
+            return -1;
+        }
+        for (int l = 0; l < MAX_PIXELS.length; l++) {
+            if (screenRadius < MAX_PIXELS[l]) {
+                return l;
+            }
+        }
+        return MAX_PIXELS.length;
+    }
+
+    /**
+     * Creates an instance of the unit sphere at the coarsest level, with its own copy of the material.
+     *
+     * @return
+     *      A new instance sharing the meshes of all the others.
+     */
+    public ModelInstance newInstance() {
+        return new ModelInstance(models[0]);
+    }
+
+    /**
+     * Makes the given instance use the mesh of the given level.
+     *
+     * @param instance
+     *      An instance created by {@link #newInstance()}.
+     * @param level
+     *      The tessellation level.
+     */
+    public void setLevel(final ModelInstance instance, final int level) {
+        final NodePart part = instance.nodes.first().parts.first();
+        part.meshPart.set(models[level].meshParts.first());
+    }
+
+    @Override
+    public void dispose() {
+        for (final Model m : models) {
+            m.dispose();
+        }
+    }
+}
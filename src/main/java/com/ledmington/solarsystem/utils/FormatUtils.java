@@ -44,4 +44,84 @@ public final class FormatUtils {
 
         return sb.toString();
     }
+
+    /**
+     * Appends the given value with a comma every three digits, without allocating.
+     *
+     * @param sb
+     *      The StringBuilder to append to.
+     * @param val
+     *      The value to append.
+     * @return
+     *      The given StringBuilder.
+     */
+    public static StringBuilder appendThousands(final StringBuilder sb, final long val) {
+        if (val < 0L) {
+            sb.append('-');
+        }
+        // the digits are appended backwards and then reversed
+        final int begin = sb.length();
+        long remaining = val;
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0) {
+                sb.append(',');
+            }
+            // the remainder is negative for negative values, which also covers Long.MIN_VALUE
+            sb.append((char) ('0' + Math.abs(remaining % 10L)));
+            remaining /= 10L;
+            digits++;
+        } while (remaining != 0L);
+        reverse(sb, begin, sb.length() - 1);
+        return sb;
+    }
+
+    /**
+     * Appends the given value with a fixed number of decimal digits, rounding halves away from zero, without allocating.
+     *
+     * @param sb
+     *      The StringBuilder to append to.
+     * @param val
+     *      The value to append.
+     * @param decimals
+     *      The number of decimal digits, between 0 and 9.
+     * @return
+     *      The given StringBuilder.
+     */
+    public static StringBuilder appendFixed(final StringBuilder sb, final double val, final int decimals) {
+        if (decimals < 0 || decimals > 9) {
+            throw new IllegalArgumentException(String.format("Invalid number of decimal digits %d", decimals));
+        }
+        long scale = 1L;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10L;
+        }
+        final double scaled = Math.abs(val) * scale;
+        if (!(scaled < 1e18)) {
+            // infinite, NaN or too large for a long
+            return sb.append(val);
+        }
+        final long rounded = Math.round(scaled);
+        if (val < 0.0 && rounded != 0L) {
+            sb.append('-');
+        }
+        sb.append(rounded / scale);
+        if (decimals > 0) {
+            sb.append('.');
+            final long fraction = rounded % scale;
+            for (long digit = scale / 10L; digit > fraction && digit > 1L; digit /= 10L) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb;
+    }
+
+    private static void reverse(final StringBuilder sb, final int from, final int to) {
+        for (int i = from, j = to; i < j; i++, j--) {
+            final char tmp = sb.charAt(i);
+            sb.setCharAt(i, sb.charAt(j));
+            sb.setCharAt(j, tmp);
+        }
+    }
 }
@@ -0,0 +1,422 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads an ASCII text file line by line through a memory mapping, splitting each line into fields
+ * without creating any String: the fields are only ranges of the mapped bytes, and numbers are
+ * parsed directly from them.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * final MappedTextReader r = new MappedTextReader(path);
+ * while (r.nextLine()) {
+ *     final int n = r.split(',');
+ *     final double value = r.parseDouble(0);
+ * }
+ * </pre>
+ */
+public final class MappedTextReader {
+
+    /**
+     * The largest integer below which every integer is exactly representable as a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * The powers of ten which are exactly representable as a double.
+     */
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22
+    };
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int limit;
+    private int position = 0;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int lineNumber = 0;
+    private int fields = 0;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+
+    /**
+     * Maps the given file.
+     *
+     * @param file
+     *      The file to read.
+     * @throws IOException
+     *      If the file cannot be mapped.
+     * @throws IllegalArgumentException
+     *      If the file is larger than 2 GB.
+     */
+    public MappedTextReader(final Path file) throws IOException {
+        this.file = Objects.requireNonNull(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("File '%s' is too large (%,d bytes)", file, size));
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            this.limit = (int) size;
+        }
+    }
+
+    /**
+     * Moves to the next line. The line separator, either "\n" or "\r\n", is not part of the line.
+     *
+     * @return
+     *      True if there was another line, false at the end of the file.
+     */
+    public boolean nextLine() {
+        if (position >= limit) {
+            return false;
+        }
+        lineStart = position;
+        int end = position;
+        while (end < limit && buffer.get(end) != '\n') {
+            end++;
+        }
+        position = end + 1;
+        if (end > lineStart && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        lineEnd = end;
+        lineNumber++;
+        fields = 0;
+        return true;
+    }
+
+    /**
+     * @return
+     *      The number of the current line, starting from 1.
+     */
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return
+     *      True if the current line has no characters other than spaces and tabs.
+     */
+    public boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (!isSpace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the current line, ignoring its leading spaces, starts with the given ASCII text.
+     *
+     * @param prefix
+     *      The text to look for.
+     * @return
+     *      True if the current line starts with the given prefix, false otherwise.
+     */
+    public boolean startsWith(final String prefix) {
+        int start = lineStart;
+        while (start < lineEnd && isSpace(buffer.get(start))) {
+            start++;
+        }
+        return regionEquals(start, lineEnd, prefix, true);
+    }
+
+    /**
+     * Splits the current line at the given separator. The spaces around each field are not part of it.
+     *
+     * @param separator
+     *      The ASCII character between two fields.
+     * @return
+     *      The number of fields, which is at least 1.
+     */
+    public int split(final char separator) {
+        fields = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer.get(i) == separator) {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    private void addField(final int start, final int end) {
+        if (fields == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, 2 * fields);
+            fieldEnd = Arrays.copyOf(fieldEnd, 2 * fields);
+        }
+        int s = start;
+        int e = end;
+        while (s < e && isSpace(buffer.get(s))) {
+            s++;
+        }
+        while (e > s && isSpace(buffer.get(e - 1))) {
+            e--;
+        }
+        fieldStart[fields] = s;
+        fieldEnd[fields] = e;
+        fields++;
+    }
+
+    /**
+     * @return
+     *      The number of fields of the current line, after {@link #split(char)}.
+     */
+    public int fields() {
+        return fields;
+    }
+
+    /**
+     * Checks whether the given field is the given ASCII text, ignoring the case.
+     *
+     * @param field
+     *      The index of the field.
+     * @param text
+     *      The expected text.
+     * @return
+     *      True if the field matches, false otherwise.
+     */
+    public boolean fieldEquals(final int field, final String text) {
+        checkField(field);
+        return fieldEnd[field] - fieldStart[field] == text.length()
+                && regionEquals(fieldStart[field], fieldEnd[field], text, false);
+    }
+
+    /**
+     * Checks whether the given field starts with the given ASCII text, ignoring the case.
+     *
+     * @param field
+     *      The index of the field.
+     * @param prefix
+     *      The expected beginning of the field.
+     * @return
+     *      True if the field starts with the given prefix, false otherwise.
+     */
+    public boolean fieldStartsWith(final int field, final String prefix) {
+        checkField(field);
+        return regionEquals(fieldStart[field], fieldEnd[field], prefix, false);
+    }
+
+    /**
+     * @param field
+     *      The index of the field.
+     * @return
+     *      True if the given field has no characters.
+     */
+    public boolean isEmpty(final int field) {
+        checkField(field);
+        return fieldStart[field] == fieldEnd[field];
+    }
+
+    /**
+     * Returns a copy of the given field. Allocates, so it should not be used for every line.
+     *
+     * @param field
+     *      The index of the field.
+     * @return
+     *      The text of the field.
+     */
+    public String field(final int field) {
+        checkField(field);
+        final byte[] bytes = new byte[fieldEnd[field] - fieldStart[field]];
+        buffer.get(fieldStart[field], bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Parses the given field as a decimal number, like {@link Double#parseDouble(String)} does with
+     * plain and scientific notations.
+     * <p>
+     * Numbers with up to 15 significant digits and small exponents are converted exactly without allocating,
+     * the others fall back to {@link Double#parseDouble(String)}.
+     *
+     * @param field
+     *      The index of the field.
+     * @return
+     *      The value of the field.
+     * @throws IllegalArgumentException
+     *      If the field is not a number.
+     */
+    public double parseDouble(final int field) {
+        checkField(field);
+        final int start = fieldStart[field];
+        final int end = fieldEnd[field];
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0L;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true;
+        while (i < end && isDigit(buffer.get(i))) {
+            if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (buffer.get(i) - '0');
+            } else {
+                exact = false;
+            }
+            digits++;
+            i++;
+        }
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            while (i < end && isDigit(buffer.get(i))) {
+                if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                    exponent--;
+                } else if (buffer.get(i) != '0') {
+                    exact = false;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) {
+            throw invalid(field, "a number");
+        }
+        if (i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            if (i >= end) {
+                throw invalid(field, "a number");
+            }
+            int e = 0;
+            while (i < end && isDigit(buffer.get(i))) {
+                // larger exponents overflow or underflow anyway
+                e = Math.min(e * 10 + (buffer.get(i) - '0'), 100_000);
+                i++;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) {
+            throw invalid(field, "a number");
+        }
+
+        if (exact && exponent >= -22 && exponent <= 22) {
+            // both the mantissa and the power of ten are exact, so there is only one rounding
+            final double value = exponent >= 0
+                    ? (double) mantissa * EXACT_POWERS_OF_TEN[exponent]
+                    : (double) mantissa / EXACT_POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(field(field));
+        } catch (final NumberFormatException e) {
+            throw invalid(field, "a number");
+        }
+    }
+
+    /**
+     * Parses the given field as a decimal integer.
+     *
+     * @param field
+     *      The index of the field.
+     * @return
+     *      The value of the field.
+     * @throws IllegalArgumentException
+     *      If the field is not an integer which fits in a long.
+     */
+    public long parseLong(final int field) {
+        checkField(field);
+        final int start = fieldStart[field];
+        final int end = fieldEnd[field];
+        int i = start;
+        final boolean negative = i < end && buffer.get(i) == '-';
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            i++;
+        }
+        if (i == end) {
+            throw invalid(field, "an integer");
+        }
+        long result = 0L;
+        for (; i < end; i++) {
+            final byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                throw invalid(field, "an integer");
+            }
+            // accumulate negatively, so that Long.MIN_VALUE fits
+            if (result < (Long.MIN_VALUE + (b - '0')) / 10) {
+                throw invalid(field, "an integer");
+            }
+            result = result * 10 - (b - '0');
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw invalid(field, "an integer");
+            }
+            result = -result;
+        }
+        return result;
+    }
+
+    private IllegalArgumentException invalid(final int field, final String expected) {
+        return new IllegalArgumentException(String.format(
+                "Invalid field %d at line %d of '%s': '%s' is not %s",
+                field + 1, lineNumber, file, field(field), expected));
+    }
+
+    private void checkField(final int field) {
+        if (field < 0 || field >= fields) {
+            throw new IllegalArgumentException(String.format(
+                    "Line %d of '%s' has %d fields, field %d does not exist", lineNumber, file, fields, field + 1));
+        }
+    }
+
+    private boolean regionEquals(final int start, final int end, final String text, final boolean caseSensitive) {
+        if (end - start < text.length()) {
+            return false;
+        }
+        for (int k = 0; k < text.length(); k++) {
+            final int a = buffer.get(start + k);
+            final int b = text.charAt(k);
+            if (a != b && (caseSensitive || Character.toLowerCase(a) != Character.toLowerCase(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isSpace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
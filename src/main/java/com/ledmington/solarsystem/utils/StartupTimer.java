@@ -0,0 +1,104 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Measures the phases of the startup of the application, from the start of the JVM to the first
+ * rendered frame, and logs them once at the end.
+ * <p>
+ * The start of the JVM is read from the operating system, so the first phase includes the time spent by
+ * the JVM before calling {@code main()}, which is what an AppCDS archive reduces.
+ */
+public final class StartupTimer {
+
+    private static final int MAX_PHASES = 16;
+    private static final MiniLogger logger = MiniLogger.getLogger("Startup");
+
+    private static final String[] names = new String[MAX_PHASES];
+    private static final long[] durations = new long[MAX_PHASES];
+    private static int count = 0;
+    private static long last = -1L;
+    private static boolean reported = false;
+
+    private StartupTimer() {}
+
+    /**
+     * Starts the measurements. To be called as the first thing in {@code main()}.
+     */
+    public static synchronized void start() {
+        final long now = System.nanoTime();
+        final Instant jvmStart = ProcessHandle.current().info().startInstant().orElse(null);
+        if (jvmStart != null) {
+            add("jvm", Duration.between(jvmStart, Instant.now()).toNanos());
+        }
+        last = now;
+    }
+
+    /**
+     * Ends the current phase, which began with the previous call to this method or to {@link #start()}.
+     * Does nothing if the measurements were not started or were already reported.
+     *
+     * @param phase
+     *      The name of the phase which just ended.
+     */
+    public static synchronized void mark(final String phase) {
+        Objects.requireNonNull(phase);
+        if (last < 0L || reported) {
+            return;
+        }
+        final long now = System.nanoTime();
+        add(phase, now - last);
+        last = now;
+    }
+
+    private static void add(final String phase, final long nanos) {
+        if (count < MAX_PHASES) {
+            names[count] = phase;
+            durations[count] = Math.max(0L, nanos);
+            count++;
+        }
+    }
+
+    /**
+     * Logs the duration of every phase and their total. Only the first call has an effect.
+     */
+    public static synchronized void report() {
+        if (last < 0L || reported) {
+            return;
+        }
+        reported = true;
+        final StringBuilder sb = new StringBuilder("Startup took ");
+        long total = 0L;
+        for (int i = 0; i < count; i++) {
+            total += durations[i];
+        }
+        sb.append(total / 1_000_000L).append(" ms (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append(": ").append(durations[i] / 1_000_000L).append(" ms");
+        }
+        sb.append(')');
+        logger.info("%s", sb.toString());
+    }
+}
@@ -57,6 +57,7 @@ public final class Dictionary {
     private final Map<String, Language> nameToLanguage = new HashMap<>();
     private final Map<Language, Map<String, String>> dict = new HashMap<>();
     private Language lang = Language.ENGLISH;
+    private int version = 0;
     private final MiniLogger logger = MiniLogger.getLogger("Dictionary");
 
     private Dictionary() {
@@ -109,7 +110,21 @@ public final class Dictionary {
      *      The new {@link Language} to be set.
      */
     public void setLanguage(final Language language) {
-        this.lang = language;
+        if (language != this.lang) {
+            this.lang = language;
+            version++;
+        }
+    }
+
+    /**
+     * Returns a counter which changes every time the current {@link Language} changes,
+     * so that translated strings can be cached until it does.
+     *
+     * @return
+     *      The current version of the translations.
+     */
+    public int version() {
+        return version;
     }
 
     /**
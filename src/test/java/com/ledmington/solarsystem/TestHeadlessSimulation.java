@@ -0,0 +1,116 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.ledmington.solarsystem.physics.EphemerisBuilder;
+import com.ledmington.solarsystem.physics.Simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestHeadlessSimulation {
+
+    @Test
+    public void onlyHeadlessArgumentSelectsTheMode() {
+        assertTrue(HeadlessSimulation.isRequested(new String[] {"--steps", "1", "--headless"}));
+        assertFalse(HeadlessSimulation.isRequested(new String[] {}));
+        assertFalse(HeadlessSimulation.isRequested(new String[] {"--steps", "1"}));
+    }
+
+    @Test
+    public void durationIsSplitInSteps() {
+        final HeadlessSimulation hs =
+                HeadlessSimulation.fromArgs(new String[] {"--headless", "--dt", "10", "--duration", "35"});
+        assertEquals(4L, hs.steps());
+        assertEquals(35.0, hs.duration());
+    }
+
+    @Test
+    public void granuleOnlyLimitsTheTimestepOfAnEphemeris(@TempDir final Path folder) {
+        final String dt = Double.toString(2.0 * EphemerisBuilder.DEFAULT_GRANULE_LENGTH);
+        final HeadlessSimulation hs = HeadlessSimulation.fromArgs(
+                new String[] {"--headless", "--scenario", "planets", "--dt", dt, "--steps", "10"});
+        assertEquals(10L, hs.steps());
+        hs.run();
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> HeadlessSimulation.fromArgs(new String[] {
+                    "--headless",
+                    "--dt",
+                    dt,
+                    "--steps",
+                    "10",
+                    "--ephemeris",
+                    folder.resolve("run.ssep").toString()
+                }));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "--headless",
+                "--headless --steps 1 --duration 1",
+                "--headless --steps",
+                "--headless --steps -1",
+                "--headless --steps 1 --dt 0",
+                "--headless --steps one",
+                "--headless --steps 1 --integrator unknown",
+                "--headless --steps 1 --verbose yes"
+            })
+    public void invalidArgumentsAreRejected(final String args) {
+        assertThrows(IllegalArgumentException.class, () -> HeadlessSimulation.fromArgs(args.split(" ")));
+    }
+
+    @Test
+    public void finalStateIsWritten(@TempDir final Path folder) throws IOException {
+        final Path output = folder.resolve("state.csv");
+        final Simulation sim = HeadlessSimulation.fromArgs(new String[] {
+                    "--headless",
+                    "--scenario",
+                    "planets",
+                    "--duration",
+                    "86400",
+                    "--dt",
+                    "3600",
+                    "--output",
+                    output.toString()
+                })
+                .run();
+
+        assertEquals(24L, sim.steps());
+        assertEquals(86_400.0, sim.time(), 1e-6);
+        final List<String> lines = Files.readAllLines(output);
+        final List<String> state =
+                lines.stream().filter(l -> !l.startsWith("#")).toList();
+        assertEquals("id,mass,radius,x,y,z,vx,vy,vz", state.get(0));
+        assertEquals(1 + sim.store().size(), state.size());
+        assertEquals(String.valueOf(sim.store().x()[3]), state.get(4).split(",")[3]);
+    }
+}
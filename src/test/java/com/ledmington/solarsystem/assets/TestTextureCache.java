@@ -0,0 +1,173 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.assets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class TestTextureCache {
+
+    private static byte[] image(final int width, final int height) {
+        final byte[] pixels = new byte[width * height * 4];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i * 37);
+        }
+        return pixels;
+    }
+
+    @Test
+    public void downsampleAveragesBlocks() {
+        final byte[] src = {
+            0, 10, 20, (byte) 255, 4, 10, 20, (byte) 255,
+            8, 10, 20, (byte) 255, 12, 10, 21, (byte) 255
+        };
+        assertArrayEquals(new byte[] {6, 10, 20, (byte) 255}, TextureCache.downsample(src, 2, 2));
+    }
+
+    @Test
+    public void downsampleClampsOddSizes() {
+        final byte[] src = image(3, 1);
+        final byte[] dst = TextureCache.downsample(src, 3, 1);
+        assertEquals(4, dst.length);
+        assertEquals(((src[0] & 0xFF) + (src[4] & 0xFF) + 1) / 2, dst[0] & 0xFF);
+    }
+
+    @Test
+    public void writtenFileCanBeMapped(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("test.ktx");
+        final byte[] pixels = image(8, 4);
+        TextureCache.write(file, 8, 4, pixels);
+
+        final MappedKtxTextureData data = new MappedKtxTextureData(file);
+        data.prepare();
+        assertTrue(data.isPrepared());
+        assertEquals(8, data.getWidth());
+        assertEquals(4, data.getHeight());
+        assertEquals(4, data.levels());
+
+        byte[] expected = pixels;
+        int w = 8;
+        int h = 4;
+        for (int l = 0; l < data.levels(); l++) {
+            final ByteBuffer level = data.level(l);
+            final byte[] actual = new byte[level.remaining()];
+            level.get(actual);
+            assertArrayEquals(expected, actual);
+            expected = TextureCache.downsample(expected, w, h);
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+    }
+
+    @Test
+    public void truncatedFileIsRejected(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("test.ktx");
+        TextureCache.write(file, 4, 4, image(4, 4));
+        final byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+        assertThrows(GdxRuntimeException.class, () -> new MappedKtxTextureData(file).prepare());
+    }
+
+    @Test
+    public void fileNameDependsOnContent(@TempDir final Path folder) {
+        final TextureCache cache = new TextureCache(folder);
+        final Path first = cache.cachedFile("earth.jpg", new byte[] {1, 2, 3});
+        assertEquals(first, cache.cachedFile("earth.jpg", new byte[] {1, 2, 3}));
+        assertNotEquals(first, cache.cachedFile("earth.jpg", new byte[] {1, 2, 4}));
+        assertTrue(first.getFileName().toString().startsWith("earth-"));
+        assertTrue(first.getFileName().toString().endsWith(TextureCache.EXTENSION));
+    }
+
+    @Test
+    public void changedTextureReplacesStaleFile(@TempDir final Path folder) throws IOException {
+        GdxNativesLoader.load();
+        final TextureCache cache = new TextureCache(folder.resolve("ktx"));
+        final BufferedImage img = new BufferedImage(5, 3, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(1, 1, 0xFF336699);
+        final Path first = cache.convert("moon.png", png(img));
+        assertTrue(Files.exists(first));
+
+        final MappedKtxTextureData data = new MappedKtxTextureData(first);
+        data.prepare();
+        assertEquals(5, data.getWidth());
+        assertEquals(3, data.getHeight());
+        final ByteBuffer base = data.level(0);
+        final int pixel = (1 * 5 + 1) * 4;
+        assertEquals(0x33, base.get(pixel) & 0xFF);
+        assertEquals(0x66, base.get(pixel + 1) & 0xFF);
+        assertEquals(0x99, base.get(pixel + 2) & 0xFF);
+        assertEquals(0xFF, base.get(pixel + 3) & 0xFF);
+
+        img.setRGB(1, 1, 0xFF000000);
+        final Path second = cache.convert("moon.png", png(img));
+        assertNotEquals(first, second);
+        assertTrue(Files.exists(second));
+        assertFalse(Files.exists(first));
+    }
+
+    @Test
+    public void manifestFindsUnchangedTextures(@TempDir final Path folder) throws IOException {
+        GdxNativesLoader.load();
+        final Path source = folder.resolve("moon.png");
+        Files.write(source, png(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB)));
+        final Path shipped = folder.resolve("shipped");
+        final Path converted = new TextureCache(shipped).convert(source);
+
+        // a new instance, like at the next start, reads the manifest written by the first one
+        final TextureCache cache = new TextureCache(shipped, folder.resolve("user"));
+        assertEquals(Optional.of(converted), cache.lookup(source));
+        final long size = Files.size(source);
+        final long lastModified = Files.getLastModifiedTime(source).toMillis();
+        assertEquals(Optional.empty(), cache.lookup("moon.png", size + 1, lastModified));
+        assertEquals(Optional.empty(), cache.lookup("moon.png", size, lastModified + 1));
+        assertEquals(Optional.empty(), cache.lookup(folder.resolve("sun.png")));
+
+        // a texture converted at runtime goes in the writable directory only
+        Files.setLastModifiedTime(source, FileTime.fromMillis(lastModified + 1_000));
+        final Path reconverted = cache.convert(source);
+        assertTrue(reconverted.startsWith(folder.resolve("user")));
+        assertEquals(Optional.of(reconverted), cache.lookup(source));
+    }
+
+    private static byte[] png(final BufferedImage img) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+}
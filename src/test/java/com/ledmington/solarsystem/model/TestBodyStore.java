@@ -0,0 +1,89 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.badlogic.gdx.math.Vector3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class TestBodyStore {
+
+    private BodyStore store;
+
+    @BeforeEach
+    public void setup() {
+        store = new BodyStore(1);
+    }
+
+    @Test
+    public void idsAreSequential() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, store.add(1, 1, i, 0, 0, 0, 0, 0));
+        }
+        assertEquals(100, store.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, store.x()[i]);
+        }
+    }
+
+    @Test
+    public void cannotCreateWithNegativeCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new BodyStore(-1));
+    }
+
+    @Test
+    public void cannotSetPositionOfMissingBody() {
+        assertThrows(IndexOutOfBoundsException.class, () -> store.setPosition(0, 1, 2, 3));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        store.add(1, 2, 3, 4, 5, 6, 7, 8);
+        final BodyStore copy = store.copy();
+        store.setPosition(0, 0, 0, 0);
+        assertEquals(1, copy.size());
+        assertEquals(3, copy.x()[0]);
+        assertEquals(8, copy.vz()[0]);
+    }
+
+    @Test
+    public void bodyIsAViewOverTheStore() {
+        final Body b = Body.builder()
+                .name("example")
+                .mass(1)
+                .radius(2)
+                .position(new Vector3(1, 2, 3))
+                .build(store);
+        assertSame(store, b.store());
+        store.setPosition(b.id(), 4, 5, 6);
+        assertEquals(new Vector3(4, 5, 6), b.position());
+    }
+
+    @Test
+    public void planetsAreCached() {
+        assertSame(SolarSystem.planets(), SolarSystem.planets());
+        assertEquals(SolarSystem.planets().size(), SolarSystem.store().size());
+        assertNotSame(SolarSystem.store(), SolarSystem.store().copy());
+    }
+}
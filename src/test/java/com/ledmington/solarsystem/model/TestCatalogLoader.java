@@ -0,0 +1,174 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestCatalogLoader {
+
+    @Test
+    public void stateVectorsWithMassAreBodies(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("bodies.csv");
+        Files.writeString(
+                file,
+                "# a comment\n"
+                        + "name, mass, radius, x, y, z, vx, vy, vz\r\n"
+                        + "first, 1e20, 1000, 1.5, -2, 3e3, 4, 5, -6.25\r\n"
+                        + "\n"
+                        + "second, 2e20, 2000, 0, 0, 0, 0, 0, 0.1\n");
+        final BodyStore bodies = new BodyStore();
+        final ParticleStore particles = new ParticleStore();
+        assertEquals(2, CatalogLoader.load(file, bodies, particles));
+
+        assertEquals(2, bodies.size());
+        assertEquals(0, particles.size());
+        assertEquals(1e20, bodies.mass()[0]);
+        assertEquals(1000.0, bodies.radius()[0]);
+        assertEquals(1.5, bodies.x()[0]);
+        assertEquals(-2.0, bodies.y()[0]);
+        assertEquals(3e3, bodies.z()[0]);
+        assertEquals(-6.25, bodies.vz()[0]);
+        assertEquals(0.1, bodies.vz()[1]);
+    }
+
+    @Test
+    public void stateVectorsWithoutMassAreParticles(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("particles.csv");
+        final Random rng = new Random(42);
+        final double[][] expected = new double[1_000][6];
+        final StringBuilder sb = new StringBuilder("vz,vy,vx,z,y,x\n");
+        for (final double[] row : expected) {
+            for (int k = 0; k < 6; k++) {
+                row[k] = rng.nextGaussian() * Math.pow(10.0, rng.nextInt(30) - 10);
+            }
+            sb.append(row[5])
+                    .append(',')
+                    .append(row[4])
+                    .append(',')
+                    .append(row[3])
+                    .append(',')
+                    .append(row[2])
+                    .append(',')
+                    .append(row[1])
+                    .append(',')
+                    .append(row[0])
+                    .append('\n');
+        }
+        Files.writeString(file, sb.toString());
+
+        final BodyStore bodies = new BodyStore();
+        final ParticleStore particles = new ParticleStore();
+        assertEquals(expected.length, CatalogLoader.load(file, bodies, particles));
+        assertEquals(0, bodies.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], particles.x()[i]);
+            assertEquals(expected[i][1], particles.y()[i]);
+            assertEquals(expected[i][2], particles.z()[i]);
+            assertEquals(expected[i][3], particles.vx()[i]);
+            assertEquals(expected[i][4], particles.vy()[i]);
+            assertEquals(expected[i][5], particles.vz()[i]);
+        }
+    }
+
+    @Test
+    public void elementsAreRelativeToTheCentralBody(@TempDir final Path folder) throws IOException {
+        final BodyStore bodies = new BodyStore();
+        bodies.add(2e30, 7e8, 1e9, 0, 0, 0, 1e3, 0);
+        final double a = 1.5e11;
+        final Path file = folder.resolve("elements.csv");
+        Files.writeString(file, "a,e,i,node,peri,M,central\n" + a + ",0,0,0,0,0,0\n");
+        final ParticleStore particles = new ParticleStore();
+        assertEquals(1, CatalogLoader.load(file, bodies, particles));
+
+        // a circular orbit starting at periapsis, along the x axis
+        final double speed = Math.sqrt(Constants.GRAVITATIONAL_CONSTANT * 2e30 / a);
+        assertEquals(1e9 + a, particles.x()[0], 1e-3);
+        assertEquals(0.0, particles.y()[0], 1e-3);
+        assertEquals(0.0, particles.vx()[0], 1e-9);
+        assertEquals(1e3 + speed, particles.vy()[0], 1e-9);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "",
+                "x,y,z\n1,2,3\n",
+                "x,y,z,vx,vy,vz\n1,2,3,4,5\n",
+                "x,y,z,vx,vy,vz\n1,2,3,4,5,six\n",
+                "a,e,i,node,peri,M,central\n1,0,0,0,0,0,3\n",
+                "a,e,i,node,peri,M\n1,1.5,0,0,0,0\n"
+            })
+    public void invalidCatalogsAreRejected(final String content, @TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("invalid.csv");
+        Files.writeString(file, content);
+        final BodyStore bodies = new BodyStore();
+        bodies.add(1e30, 1, 0, 0, 0, 0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> CatalogLoader.load(file, bodies, new ParticleStore()));
+    }
+
+    @Test
+    public void horizonsVectorTableIsConverted(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("horizons.txt");
+        Files.writeString(
+                file,
+                String.join(
+                        "\n",
+                        "*******************************************************************************",
+                        " Revised: April 12, 2021                 Earth                              399",
+                        "*******************************************************************************",
+                        "Center body name: Sun (10)                        {source: DE441}",
+                        "Output units    : AU-D",
+                        "Output type     : GEOMETRIC cartesian states",
+                        "*******************************************************************************",
+                        "            JDTDB,            Calendar Date (TDB),                      X,"
+                                + "                      Y,                      Z,                     VX,"
+                                + "                     VY,                     VZ,",
+                        "**************************************************************************",
+                        "$$SOE",
+                        "2460000.500000000, A.D. 2023-Feb-25 00:00:00.0000, -9.037683497224165E-01,"
+                                + "  4.138040898564291E-01, -1.735720312837924E-05, -7.493519034009007E-03,"
+                                + " -1.577131911131697E-02,  8.702436193581543E-07,",
+                        "2460001.500000000, A.D. 2023-Feb-26 00:00:00.0000, -9.112045213938574E-01,"
+                                + "  3.980042412133581E-01, -1.648325021347713E-05, -7.377636108963047E-03,"
+                                + " -1.582847041391843E-02,  8.781373620624497E-07,",
+                        "$$EOE",
+                        ""));
+        final BodyStore bodies = new BodyStore();
+        assertEquals(0, CatalogLoader.loadHorizons(file, bodies, 5.97e24, 6.371e6));
+
+        final double au = 149_597_870_700.0;
+        assertEquals(1, bodies.size());
+        assertEquals(5.97e24, bodies.mass()[0]);
+        assertEquals(-9.037683497224165E-01 * au, bodies.x()[0]);
+        assertEquals(4.138040898564291E-01 * au, bodies.y()[0]);
+        assertEquals(-1.577131911131697E-02 * au / 86_400.0, bodies.vy()[0], 1e-9);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestSmallBodyPopulation {
+
+    private static final double AU = Constants.oneAstronomicalUnit;
+    private static final double MU = Constants.GRAVITATIONAL_CONSTANT * SolarSystem.SUN.mass();
+
+    /**
+     * Returns the semi-major axis of the given particle from its energy relative to the Sun.
+     */
+    private static double semiMajorAxis(final ParticleStore particles, final BodyStore massive, final int i) {
+        final double dx = particles.x()[i] - massive.x()[0];
+        final double dy = particles.y()[i] - massive.y()[0];
+        final double dz = particles.z()[i] - massive.z()[0];
+        final double dvx = particles.vx()[i] - massive.vx()[0];
+        final double dvy = particles.vy()[i] - massive.vy()[0];
+        final double dvz = particles.vz()[i] - massive.vz()[0];
+        final double r = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        final double v2 = dvx * dvx + dvy * dvy + dvz * dvz;
+        return 1.0 / (2.0 / r - v2 / MU);
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.0, 0.3, 0.9})
+    public void orbitalElementsGiveTheRightEnergy(final double eccentricity) {
+        final OrbitalElements elements = new OrbitalElements(AU, eccentricity, 0.3, 1.0, 2.0, 3.0);
+        final double[] state = new double[6];
+        elements.toCartesian(MU, state);
+        final double r = Math.sqrt(state[0] * state[0] + state[1] * state[1] + state[2] * state[2]);
+        final double v2 = state[3] * state[3] + state[4] * state[4] + state[5] * state[5];
+        assertEquals(-MU / (2.0 * AU), 0.5 * v2 - MU / r, MU / AU * 1e-12);
+    }
+
+    @Test
+    public void keplerEquationIsSolved() {
+        for (final double e : new double[] {0.0, 0.5, 0.99}) {
+            for (double m = -3.0; m <= 3.0; m += 0.25) {
+                final double anomaly = OrbitalElements.eccentricAnomaly(m, e);
+                assertEquals(m, anomaly - e * Math.sin(anomaly), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void mainBeltIsBetweenMarsAndJupiter() {
+        final BodyStore massive = Scenario.PLANETS.create();
+        final ParticleStore particles = new ParticleStore();
+        SmallBodyPopulation.MAIN_BELT.generate(massive, particles, 10_000, new Random(42L));
+        assertEquals(10_000, particles.size());
+        for (int i = 0; i < particles.size(); i++) {
+            final double a = semiMajorAxis(particles, massive, i) / AU;
+            assertTrue(a > 2.1 - 1e-9 && a < 3.3 + 1e-9, String.format("a = %f AU", a));
+            assertTrue(Math.abs(a - 2.502) >= 0.015 - 1e-9, String.format("a = %f AU is in a Kirkwood gap", a));
+        }
+    }
+
+    @Test
+    public void trojansAreAroundTheLagrangianPoints() {
+        final BodyStore massive = Scenario.PLANETS.create();
+        final int jupiter = 5;
+        final double jupiterLongitude =
+                Math.atan2(massive.y()[jupiter] - massive.y()[0], massive.x()[jupiter] - massive.x()[0]);
+        final ParticleStore particles = new ParticleStore();
+        SmallBodyPopulation.TROJANS.generate(massive, particles, 1_000, new Random(42L));
+        for (int i = 0; i < particles.size(); i++) {
+            final double longitude =
+                    Math.atan2(particles.y()[i] - massive.y()[0], particles.x()[i] - massive.x()[0]);
+            final double separation = Math.abs(Math.IEEEremainder(longitude - jupiterLongitude, 2.0 * Math.PI));
+            assertTrue(
+                    Math.abs(separation - Math.PI / 3.0) < Math.toRadians(60.0),
+                    String.format("%f degrees from Jupiter", Math.toDegrees(separation)));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SmallBodyPopulation.class)
+    public void populationsCanBeFoundByName(final SmallBodyPopulation population) {
+        assertEquals(population, SmallBodyPopulation.fromName(population.getName()));
+    }
+
+    @Test
+    public void cannotHaveUnboundOrbits() {
+        assertThrows(IllegalArgumentException.class, () -> new OrbitalElements(AU, 1.0, 0, 0, 0, 0));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestBarnesHutSolver {
+
+    private static final int N = 2_000;
+    private static BodyStore store;
+    private static double[] exactX;
+    private static double[] exactY;
+    private static double[] exactZ;
+
+    @BeforeAll
+    public static void setup() {
+        final Random rng = new Random(1234L);
+        store = new BodyStore(N);
+        for (int i = 0; i < N; i++) {
+            store.add(
+                    1e20 * (1.0 + rng.nextDouble()),
+                    1.0,
+                    1e11 * rng.nextGaussian(),
+                    1e11 * rng.nextGaussian(),
+                    1e10 * rng.nextGaussian(),
+                    0,
+                    0,
+                    0);
+        }
+        exactX = new double[N];
+        exactY = new double[N];
+        exactZ = new double[N];
+        new DirectSumSolver()
+                .computeAccelerations(N, store.x(), store.y(), store.z(), store.mass(), exactX, exactY, exactZ);
+    }
+
+    private static double rmsRelativeError(final ForceSolver solver) {
+        final double[] ax = new double[N];
+        final double[] ay = new double[N];
+        final double[] az = new double[N];
+        solver.computeAccelerations(N, store.x(), store.y(), store.z(), store.mass(), ax, ay, az);
+        double sum = 0.0;
+        for (int i = 0; i < N; i++) {
+            final double dx = ax[i] - exactX[i];
+            final double dy = ay[i] - exactY[i];
+            final double dz = az[i] - exactZ[i];
+            final double norm2 = exactX[i] * exactX[i] + exactY[i] * exactY[i] + exactZ[i] * exactZ[i];
+            sum += (dx * dx + dy * dy + dz * dz) / norm2;
+        }
+        return Math.sqrt(sum / N);
+    }
+
+    @Test
+    public void zeroOpeningAngleIsExact() {
+        assertEquals(0.0, rmsRelativeError(new BarnesHutSolver(0.0)), 1e-12);
+    }
+
+    @Test
+    public void errorGrowsWithOpeningAngle() {
+        final double small = rmsRelativeError(new BarnesHutSolver(0.3));
+        final double medium = rmsRelativeError(new BarnesHutSolver(0.6));
+        final double big = rmsRelativeError(new BarnesHutSolver(1.0));
+        assertTrue(small < medium, () -> String.format("%e >= %e", small, medium));
+        assertTrue(medium < big, () -> String.format("%e >= %e", medium, big));
+        assertTrue(small < 1e-2, () -> String.format("%e >= 1e-2", small));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void repeatedCallsGiveTheSameResult(final int rebuildInterval) {
+        final BarnesHutSolver solver = new BarnesHutSolver(0.5, 0.0, rebuildInterval);
+        final double first = rmsRelativeError(solver);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, rmsRelativeError(solver), 1e-15);
+        }
+    }
+
+    @Test
+    public void coincidentBodiesDoNotBreakTheTree() {
+        final double[] x = {0.0, 0.0, 1.0};
+        final double[] zeros = new double[3];
+        final double[] m = {1.0, 1.0, 1.0};
+        final double[] ax = new double[3];
+        new BarnesHutSolver(0.5).computeAccelerations(3, x, zeros, zeros, m, ax, new double[3], new double[3]);
+        assertTrue(Double.isFinite(ax[2]) && ax[2] < 0.0);
+    }
+
+    @Test
+    public void cannotUseNegativeOpeningAngle() {
+        assertThrows(IllegalArgumentException.class, () -> new BarnesHutSolver(-1.0));
+    }
+}
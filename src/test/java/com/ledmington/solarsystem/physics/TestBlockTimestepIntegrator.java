@@ -0,0 +1,95 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.api.Test;
+
+public final class TestBlockTimestepIntegrator {
+
+    private static final double ONE_DAY = 86_400.0;
+    private static final double MARS_MASS = 6.4171e23;
+    private static final double PHOBOS_DISTANCE = 9.376e6;
+    private static final int MAX_LEVEL = 14;
+
+    /**
+     * The Sun, Mars and Phobos, which orbits Mars in about 7.6 hours.
+     */
+    private static BodyStore marsAndPhobos() {
+        final BodyStore store = new BodyStore(3);
+        final double r = 1.524 * Constants.oneAstronomicalUnit;
+        final double v = 24_070.0;
+        final double moonSpeed = Math.sqrt(Constants.GRAVITATIONAL_CONSTANT * MARS_MASS / PHOBOS_DISTANCE);
+        store.add(1.98847e30, 1.0, 0, 0, 0, 0, 0, 0);
+        store.add(MARS_MASS, 1.0, r, 0, 0, 0, v, 0);
+        store.add(1.0659e16, 1.0, r + PHOBOS_DISTANCE, 0, 0, 0, v + moonSpeed, 0);
+        return store;
+    }
+
+    private static double moonDistance(final BodyStore store) {
+        final double dx = store.x()[2] - store.x()[1];
+        final double dy = store.y()[2] - store.y()[1];
+        final double dz = store.z()[2] - store.z()[1];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Test
+    public void eachBodyGetsItsOwnLevel() {
+        final BlockTimestepIntegrator integrator = new BlockTimestepIntegrator(MAX_LEVEL, 0.01);
+        final Simulation sim = new Simulation(marsAndPhobos(), new DirectSumSolver(), integrator);
+        final int days = 10;
+        sim.step(ONE_DAY, days);
+
+        assertTrue(integrator.level(2) >= 9, () -> String.format("Phobos is on level %d", integrator.level(2)));
+        assertTrue(integrator.level(1) <= 2, () -> String.format("Mars is on level %d", integrator.level(1)));
+        assertEquals(PHOBOS_DISTANCE, moonDistance(sim.store()), PHOBOS_DISTANCE * 1e-2);
+
+        // a global step as small as the one of Phobos would evaluate all the bodies every time
+        final long globalStepEvaluations = 3L * days * (1L << integrator.level(2));
+        assertTrue(
+                integrator.evaluations() < globalStepEvaluations / 2,
+                () -> String.format("%,d evaluations", integrator.evaluations()));
+    }
+
+    @Test
+    public void sameTrajectoryAsSmallGlobalStep() {
+        final Simulation block =
+                new Simulation(marsAndPhobos(), new DirectSumSolver(), new BlockTimestepIntegrator(MAX_LEVEL, 0.01));
+        final Simulation reference = new Simulation(marsAndPhobos(), new DirectSumSolver(), new LeapfrogIntegrator());
+        block.step(ONE_DAY, 2);
+        reference.step(ONE_DAY / (1 << MAX_LEVEL), 2 << MAX_LEVEL);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(reference.store().x()[i], block.store().x()[i], PHOBOS_DISTANCE * 1e-2);
+            assertEquals(reference.store().y()[i], block.store().y()[i], PHOBOS_DISTANCE * 1e-2);
+        }
+    }
+
+    @Test
+    public void cannotHaveTooManyLevels() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new BlockTimestepIntegrator(BlockTimestepIntegrator.MAX_LEVELS + 1, 0.01));
+    }
+}
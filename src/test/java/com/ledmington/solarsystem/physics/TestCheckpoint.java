@@ -0,0 +1,168 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.ParticleStore;
+import com.ledmington.solarsystem.model.Scenario;
+import com.ledmington.solarsystem.model.SmallBodyPopulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class TestCheckpoint {
+
+    private static final double ONE_HOUR = 3_600.0;
+
+    private static Simulation withParticles(final ParticleIntegrator integrator) {
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final ParticleStore particles = new ParticleStore();
+        SmallBodyPopulation.MAIN_BELT.generate(sim.store(), particles, 1_000, new Random(42L));
+        sim.setParticles(particles, integrator);
+        return sim;
+    }
+
+    @Test
+    public void roundTripKeepsEverything(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("state.ssck");
+        try (ParticleIntegrator integrator = new ParticleIntegrator(1)) {
+            final Simulation sim = withParticles(integrator);
+            sim.step(ONE_HOUR, 10);
+            Checkpoint.write(sim, file);
+
+            final Checkpoint saved = Checkpoint.read(file);
+            final int n = sim.store().size();
+            final int p = sim.particles().size();
+            assertEquals(10L, saved.steps());
+            assertEquals(sim.time(), saved.time());
+            assertEquals(n, saved.bodies().size());
+            assertEquals(p, saved.particles().size());
+            assertArrayEquals(
+                    Arrays.copyOf(sim.store().x(), n),
+                    Arrays.copyOf(saved.bodies().x(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(sim.store().vz(), n),
+                    Arrays.copyOf(saved.bodies().vz(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(sim.store().mass(), n),
+                    Arrays.copyOf(saved.bodies().mass(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(sim.store().radius(), n),
+                    Arrays.copyOf(saved.bodies().radius(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(sim.particles().y(), p),
+                    Arrays.copyOf(saved.particles().y(), p));
+            assertArrayEquals(
+                    Arrays.copyOf(sim.particles().vx(), p),
+                    Arrays.copyOf(saved.particles().vx(), p));
+        }
+    }
+
+    @Test
+    public void withoutParticlesThereIsNoParticleStore(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("state.ssck");
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        Checkpoint.write(sim, file);
+        assertEquals(Checkpoint.HEADER_SIZE + 8L * sim.store().size() * Double.BYTES, Files.size(file));
+        assertNull(Checkpoint.read(file).particles());
+    }
+
+    @Test
+    public void resumingIsLikeNeverStopping(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("state.ssck");
+        try (ParticleIntegrator first = new ParticleIntegrator(1);
+                ParticleIntegrator second = new ParticleIntegrator(1)) {
+            final Simulation uninterrupted = withParticles(first);
+            uninterrupted.step(ONE_HOUR, 200);
+
+            final Simulation interrupted = withParticles(second);
+            interrupted.step(ONE_HOUR, 100);
+            Checkpoint.write(interrupted, file);
+            // scramble the state, so that only the checkpoint can bring it back
+            interrupted.step(ONE_HOUR, 37);
+            Checkpoint.read(file).restore(interrupted);
+            interrupted.step(ONE_HOUR, 100);
+
+            final int n = uninterrupted.store().size();
+            final int p = uninterrupted.particles().size();
+            assertEquals(uninterrupted.steps(), interrupted.steps());
+            assertEquals(uninterrupted.time(), interrupted.time());
+            assertArrayEquals(
+                    Arrays.copyOf(uninterrupted.store().x(), n),
+                    Arrays.copyOf(interrupted.store().x(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(uninterrupted.store().vy(), n),
+                    Arrays.copyOf(interrupted.store().vy(), n));
+            assertArrayEquals(
+                    Arrays.copyOf(uninterrupted.particles().z(), p),
+                    Arrays.copyOf(interrupted.particles().z(), p));
+        }
+    }
+
+    @Test
+    public void restoringIntoADifferentSimulationIsRejected(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("state.ssck");
+        Checkpoint.write(
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator()), file);
+        final Simulation other =
+                new Simulation(Scenario.SOLAR_SYSTEM.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file).restore(other));
+    }
+
+    @Test
+    public void invalidFilesAreRejected(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("state.ssck");
+        Checkpoint.write(
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator()), file);
+        final byte[] valid = Files.readAllBytes(file);
+
+        // wrong magic number
+        final byte[] bytes = valid.clone();
+        bytes[0] = 'X';
+        Files.write(file, bytes);
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file));
+
+        // unknown version
+        final byte[] newer = valid.clone();
+        ByteBuffer.wrap(newer).order(ByteOrder.LITTLE_ENDIAN).putInt(4, Checkpoint.VERSION + 1);
+        Files.write(file, newer);
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file));
+
+        // truncated
+        Files.write(file, Arrays.copyOf(valid, valid.length - Double.BYTES));
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file));
+
+        // too short for the header
+        Files.write(file, Arrays.copyOf(valid, 10));
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ledmington.solarsystem.model.Scenario;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class TestEphemeris {
+
+    private static final double ONE_HOUR = 3_600.0;
+
+    // a year and a half of hourly steps, so that the last granule is only partly covered
+    private static final int STEPS = 549 * 24 + 5;
+
+    private static final List<double[]> states = new ArrayList<>();
+    private static final Ephemeris ephemeris = build();
+
+    private static Ephemeris build() {
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final EphemerisBuilder builder = new EphemerisBuilder();
+        builder.add(sim);
+        states.add(state(sim));
+        for (int s = 0; s < STEPS; s++) {
+            sim.step(ONE_HOUR);
+            builder.add(sim);
+            states.add(state(sim));
+        }
+        return builder.build();
+    }
+
+    private static double[] state(final Simulation sim) {
+        final int n = sim.store().size();
+        final double[] state = new double[6 * n];
+        for (int i = 0; i < n; i++) {
+            state[6 * i] = sim.store().x()[i];
+            state[6 * i + 1] = sim.store().y()[i];
+            state[6 * i + 2] = sim.store().z()[i];
+            state[6 * i + 3] = sim.store().vx()[i];
+            state[6 * i + 4] = sim.store().vy()[i];
+            state[6 * i + 5] = sim.store().vz()[i];
+        }
+        return state;
+    }
+
+    @Test
+    public void seriesFollowTheIntegration() {
+        assertEquals(0.0, ephemeris.startTime());
+        assertEquals(STEPS * ONE_HOUR, ephemeris.endTime(), 1e-6);
+        assertEquals((int) Math.ceil(STEPS * ONE_HOUR / EphemerisBuilder.DEFAULT_GRANULE_LENGTH), ephemeris.granules());
+
+        final double[] out = new double[6];
+        final double[] x = new double[ephemeris.bodies()];
+        final double[] y = new double[ephemeris.bodies()];
+        final double[] z = new double[ephemeris.bodies()];
+        double maxPosition = 0.0;
+        double maxVelocity = 0.0;
+        for (int h = 0; h <= STEPS; h++) {
+            final double[] expected = states.get(h);
+            ephemeris.positions(h * ONE_HOUR, 0, ephemeris.bodies(), x, y, z);
+            for (int i = 0; i < ephemeris.bodies(); i++) {
+                ephemeris.state(i, h * ONE_HOUR, out);
+                for (int c = 0; c < 3; c++) {
+                    maxPosition = Math.max(maxPosition, Math.abs(out[c] - expected[6 * i + c]));
+                    maxVelocity = Math.max(maxVelocity, Math.abs(out[3 + c] - expected[6 * i + 3 + c]));
+                }
+                // Clenshaw and the direct sum agree to a few ulps
+                assertEquals(out[0], x[i], 0.01);
+                assertEquals(out[1], y[i], 0.01);
+                assertEquals(out[2], z[i], 0.01);
+            }
+        }
+        // within a few metres everywhere, even in the last partial granule; the velocities of the leapfrog
+        // differ from the slope of its positions by a term of the order of the square of the timestep
+        assertTrue(maxPosition < 5.0, String.format("Position error of %.3e m", maxPosition));
+        assertTrue(maxVelocity < 1.0, String.format("Velocity error of %.3e m/s", maxVelocity));
+    }
+
+    @Test
+    public void playbackShowsTheSeries(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("planets.ssep");
+        ephemeris.write(file);
+        assertTrue(Ephemeris.isEphemeris(file));
+        assertEquals(
+                Ephemeris.HEADER_SIZE
+                        + (long) ephemeris.granules()
+                                * ephemeris.bodies()
+                                * 3
+                                * (ephemeris.degree() + 1)
+                                * Double.BYTES,
+                Files.size(file));
+
+        final double[] out = new double[6];
+        try (Playback playback = Playback.open(file)) {
+            assertEquals(ephemeris.bodies(), playback.bodies());
+            assertEquals(ephemeris.endTime(), playback.endTime());
+            playback.seek(1e12);
+            assertEquals(ephemeris.endTime(), playback.time());
+            for (final double t : new double[] {12_345.0, ephemeris.endTime(), 0.0, 3.3e7}) {
+                playback.seek(t);
+                for (int i = 0; i < playback.bodies(); i++) {
+                    ephemeris.state(i, t, out);
+                    assertEquals(out[0], playback.x(i), 0.01);
+                    assertEquals(out[1], playback.y(i), 0.01);
+                    assertEquals(out[2], playback.z(i), 0.01);
+                }
+            }
+            assertEquals(3.3e7, playback.time());
+        }
+    }
+
+    @Test
+    public void invalidFilesAreRejected(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("planets.ssep");
+        ephemeris.write(file);
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> Ephemeris.read(file));
+
+        final Path recording = folder.resolve("run.sstr");
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(recording, sim, 1)) {
+            sim.setRecorder(recorder);
+            sim.step(ONE_HOUR, 10);
+        }
+        assertFalse(Ephemeris.isEphemeris(recording));
+        assertThrows(IllegalArgumentException.class, () -> Ephemeris.read(recording));
+    }
+}
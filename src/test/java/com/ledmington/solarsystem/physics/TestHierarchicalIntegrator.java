@@ -0,0 +1,150 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.model.BodyHierarchy;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.SolarSystem;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public final class TestHierarchicalIntegrator {
+
+    private static final double ONE_DAY = 86_400.0;
+    private static final int DAYS = 10;
+
+    private static BodyStore reference;
+
+    @BeforeAll
+    public static void integrateReference() {
+        final Simulation sim =
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new LeapfrogIntegrator());
+        sim.step(30.0, (int) (DAYS * ONE_DAY / 30.0));
+        reference = sim.store();
+    }
+
+    /**
+     * Returns the largest distance of a moon from its position relative to its planet in the reference.
+     */
+    private static double largestMoonError(final BodyStore store) {
+        final BodyHierarchy hierarchy = SolarSystem.hierarchy();
+        double largest = 0.0;
+        for (final Body moon : SolarSystem.moons()) {
+            final int i = moon.id();
+            final int p = hierarchy.parent(i);
+            final double dx = (store.x()[i] - store.x()[p])
+                    - (reference.x()[i] - reference.x()[p]);
+            final double dy = (store.y()[i] - store.y()[p])
+                    - (reference.y()[i] - reference.y()[p]);
+            final double dz = (store.z()[i] - store.z()[p])
+                    - (reference.z()[i] - reference.z()[p]);
+            largest = Math.max(largest, Math.sqrt(dx * dx + dy * dy + dz * dz));
+        }
+        return largest;
+    }
+
+    @Test
+    public void detectedHierarchyMatchesTheMoons() {
+        final BodyHierarchy detected = BodyHierarchy.detect(SolarSystem.store());
+        final BodyHierarchy expected = SolarSystem.hierarchy();
+        assertEquals(SolarSystem.moons().size(), detected.satellites());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.parent(i), detected.parent(i), String.format("Wrong parent of body %d", i));
+        }
+    }
+
+    @Test
+    public void detectionScalesToABelt() {
+        final BodyStore store = SolarSystem.store().copy();
+        final int sun = SolarSystem.SUN.id();
+        final double gm = Constants.GRAVITATIONAL_CONSTANT * store.mass()[sun];
+        final Random rnd = new Random(42L);
+        // a brute force search over every pair would take minutes
+        for (int k = 0; k < 100_000; k++) {
+            final double r = (2.2 + 1.1 * rnd.nextDouble()) * Constants.oneAstronomicalUnit;
+            final double angle = 2.0 * Math.PI * rnd.nextDouble();
+            final double v = Math.sqrt(gm / r);
+            store.add(
+                    1e15,
+                    1e4,
+                    store.x()[sun] + r * Math.cos(angle),
+                    store.y()[sun] + r * Math.sin(angle),
+                    store.z()[sun],
+                    store.vx()[sun] - v * Math.sin(angle),
+                    store.vy()[sun] + v * Math.cos(angle),
+                    store.vz()[sun]);
+        }
+
+        final BodyHierarchy detected = BodyHierarchy.detect(store);
+        final BodyHierarchy expected = SolarSystem.hierarchy();
+        assertEquals(SolarSystem.moons().size(), detected.satellites());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.parent(i), detected.parent(i), String.format("Wrong parent of body %d", i));
+        }
+    }
+
+    @Test
+    public void moonsSurviveDailySteps() {
+        final Simulation hierarchical =
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new HierarchicalIntegrator());
+        final Simulation leapfrog =
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new LeapfrogIntegrator());
+        hierarchical.step(ONE_DAY, DAYS);
+        leapfrog.step(ONE_DAY, DAYS);
+
+        // Phobos orbits Mars in less than eight hours, so a global leapfrog loses it within a single step
+        final double error = largestMoonError(hierarchical.store());
+        assertTrue(error < 5e6, String.format("A moon is %,.0f m away from the reference", error));
+        assertTrue(largestMoonError(leapfrog.store()) > 100.0 * error);
+    }
+
+    @Test
+    public void resetRebuildsTheSubsystems() {
+        final BodyStore store = SolarSystem.store().copy();
+        final Simulation sim = new Simulation(store, new DirectSumSolver(), new HierarchicalIntegrator());
+        final int phobos = SolarSystem.PHOBOS.id();
+        sim.step(ONE_DAY, 1);
+        // moving a moon from outside is seen only after a reset
+        final double x = store.x()[phobos] + 1e6;
+        store.x()[phobos] = x;
+        sim.integrator().reset();
+        sim.step(0.0, 1);
+        assertEquals(x, store.x()[phobos], 1e-3);
+    }
+
+    @Test
+    public void hierarchyMustMatchTheStore() {
+        final Simulation sim = new Simulation(
+                SolarSystem.store().copy(),
+                new DirectSumSolver(),
+                new HierarchicalIntegrator(BodyHierarchy.flat(3), HierarchicalIntegrator.DEFAULT_STEPS_PER_ORBIT));
+        assertThrows(IllegalArgumentException.class, () -> sim.step(ONE_DAY, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HierarchicalIntegrator(null, 0));
+        // a satellite of a satellite
+        assertThrows(IllegalArgumentException.class, () -> BodyHierarchy.of(BodyHierarchy.NO_PARENT, 0, 1));
+    }
+}
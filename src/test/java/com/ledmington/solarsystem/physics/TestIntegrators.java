@@ -0,0 +1,95 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public final class TestIntegrators {
+
+    private static final double SUN_MASS = 1.98847e30;
+    private static final double ONE_HOUR = 3_600.0;
+
+    /**
+     * A massless probe on a circular orbit at 1 AU around a fixed-mass Sun.
+     */
+    private static BodyStore circularOrbit() {
+        final BodyStore store = new BodyStore();
+        final double r = Constants.oneAstronomicalUnit;
+        final double v = Math.sqrt(Constants.GRAVITATIONAL_CONSTANT * SUN_MASS / r);
+        store.add(SUN_MASS, 1.0, 0, 0, 0, 0, 0, 0);
+        store.add(1.0, 1.0, r, 0, 0, 0, v, 0);
+        return store;
+    }
+
+    private static double orbitalPeriod() {
+        final double r = Constants.oneAstronomicalUnit;
+        return 2.0 * Math.PI * Math.sqrt(r * r * r / (Constants.GRAVITATIONAL_CONSTANT * SUN_MASS));
+    }
+
+    private static double relativeEnergyError(final IntegratorType type, final double dt) {
+        final Simulation sim = new Simulation(circularOrbit(), new DirectSumSolver(), type.create());
+        final double initial = sim.totalEnergy();
+        sim.step(dt, (int) Math.round(orbitalPeriod() / dt));
+        return Math.abs((sim.totalEnergy() - initial) / initial);
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+            value = IntegratorType.class,
+            names = {"LEAPFROG", "RK4", "BLOCK", "WISDOM_HOLMAN", "GAUSS_RADAU", "HIERARCHICAL"})
+    public void probeReturnsToStartAfterOnePeriod(final IntegratorType type) {
+        final Simulation sim = new Simulation(circularOrbit(), new DirectSumSolver(), type.create());
+        final double period = orbitalPeriod();
+        final int steps = (int) Math.round(period / ONE_HOUR);
+        sim.step(period / steps, steps);
+        final double r = Constants.oneAstronomicalUnit;
+        assertEquals(r, sim.store().x()[1], r * 1e-4);
+        assertEquals(0.0, sim.store().y()[1], r * 1e-4);
+        assertEquals(period, sim.time(), 1e-3);
+        assertEquals(steps, sim.steps());
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+            value = IntegratorType.class,
+            names = {"LEAPFROG", "RK4", "BLOCK", "WISDOM_HOLMAN", "GAUSS_RADAU", "HIERARCHICAL"})
+    public void higherOrderIntegratorsConserveEnergy(final IntegratorType type) {
+        assertTrue(relativeEnergyError(type, ONE_HOUR) < 1e-6);
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+            value = IntegratorType.class,
+            names = {"LEAPFROG", "RK4", "BLOCK", "WISDOM_HOLMAN", "GAUSS_RADAU", "HIERARCHICAL"})
+    public void eulerIsTheLeastAccurate(final IntegratorType type) {
+        assertTrue(relativeEnergyError(IntegratorType.EULER, ONE_HOUR) > relativeEnergyError(type, ONE_HOUR));
+    }
+
+    @ParameterizedTest
+    @EnumSource(IntegratorType.class)
+    public void integratorsCanBeFoundByName(final IntegratorType type) {
+        assertEquals(type, IntegratorType.fromName(type.getName()));
+    }
+}
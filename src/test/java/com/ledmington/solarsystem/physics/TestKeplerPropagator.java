@@ -0,0 +1,142 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.KeplerianOrbits;
+import com.ledmington.solarsystem.model.OrbitalElements;
+import com.ledmington.solarsystem.model.SolarSystem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestKeplerPropagator {
+
+    private static final double MU = Constants.GRAVITATIONAL_CONSTANT * SolarSystem.SUN.mass();
+
+    // enough orbits to be propagated in parallel
+    @ParameterizedTest
+    @ValueSource(ints = {1, 100, 10_000})
+    public void positionsMatchTheElements(final int n) {
+        final Random rng = new Random(n);
+        final OrbitalElements[] elements = new OrbitalElements[n];
+        final KeplerianOrbits orbits = new KeplerianOrbits(0);
+        for (int i = 0; i < n; i++) {
+            elements[i] = new OrbitalElements(
+                    1e11 * (0.5 + 40.0 * rng.nextDouble()),
+                    // up to very eccentric orbits, where the solver needs more iterations
+                    i % 10 == 0 ? 0.999 * rng.nextDouble() : 0.3 * rng.nextDouble(),
+                    Math.PI * rng.nextDouble(),
+                    2.0 * Math.PI * rng.nextDouble(),
+                    2.0 * Math.PI * rng.nextDouble(),
+                    2.0 * Math.PI * rng.nextDouble());
+            orbits.add(3, MU, elements[i]);
+        }
+        assertEquals(n, orbits.size());
+
+        final KeplerPropagator propagator = new KeplerPropagator();
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        final double[] z = new double[n];
+        final double[] expected = new double[6];
+        for (final double t : new double[] {0.0, 86_400.0, -3.7e7, 1e10}) {
+            propagator.propagate(orbits, t, x, y, z);
+            for (int i = 0; i < n; i++) {
+                final OrbitalElements e = elements[i];
+                final double meanMotion = Math.sqrt(MU / Math.pow(e.semiMajorAxis(), 3.0));
+                new OrbitalElements(
+                                e.semiMajorAxis(),
+                                e.eccentricity(),
+                                e.inclination(),
+                                e.longitudeOfAscendingNode(),
+                                e.argumentOfPeriapsis(),
+                                e.meanAnomaly() + meanMotion * t)
+                        .toCartesian(MU, expected);
+                // the mean anomaly after 1e10 s is known within a few ulps of hundreds of radians
+                final double tolerance = 1e-12 * e.semiMajorAxis() * (1.0 + Math.abs(meanMotion * t));
+                assertEquals(expected[0], x[i], tolerance);
+                assertEquals(expected[1], y[i], tolerance);
+                assertEquals(expected[2], z[i], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void moonsStartFromTheirOrbits() {
+        final BodyStore store = SolarSystem.store();
+        final List<Body> moons = SolarSystem.moons();
+        final KeplerianOrbits orbits = SolarSystem.moonOrbits();
+        assertEquals(9, moons.size());
+        assertEquals(moons.size(), orbits.size());
+
+        final double[] x = new double[moons.size()];
+        final double[] y = new double[moons.size()];
+        final double[] z = new double[moons.size()];
+        new KeplerPropagator().propagate(orbits, 0.0, x, y, z);
+        for (int i = 0; i < moons.size(); i++) {
+            final int id = moons.get(i).id();
+            final int parent = orbits.parent()[i];
+            assertEquals(store.x()[id] - store.x()[parent], x[i], 1e-6 * orbits.semiMajorAxis()[i]);
+            assertEquals(store.y()[id] - store.y()[parent], y[i], 1e-6 * orbits.semiMajorAxis()[i]);
+            assertEquals(store.z()[id] - store.z()[parent], z[i], 1e-6 * orbits.semiMajorAxis()[i]);
+        }
+    }
+
+    @Test
+    public void integratedMoonFollowsItsOrbit() {
+        final Simulation sim =
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final int moon = SolarSystem.MOON.id();
+        final int earth = SolarSystem.EARTH.id();
+        final int index = SolarSystem.moons().indexOf(SolarSystem.MOON);
+        final double[] x = new double[SolarSystem.moons().size()];
+        final double[] y = new double[SolarSystem.moons().size()];
+        final double[] z = new double[SolarSystem.moons().size()];
+
+        // in a week, the Sun moves the Moon by a few thousand km from its Keplerian orbit
+        sim.step(60.0, 7 * 24 * 60);
+        new KeplerPropagator().propagate(SolarSystem.moonOrbits(), sim.time(), x, y, z);
+        final BodyStore store = sim.store();
+        final double dx = store.x()[moon] - store.x()[earth] - x[index];
+        final double dy = store.y()[moon] - store.y()[earth] - y[index];
+        final double dz = store.z()[moon] - store.z()[earth] - z[index];
+        final double error = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        assertTrue(error < 1e7, String.format("The integrated Moon is %,.0f m away from its orbit", error));
+    }
+
+    @Test
+    public void outputMustHoldAllTheOrbits() {
+        final KeplerianOrbits orbits = SolarSystem.moonOrbits();
+        final double[] small = new double[orbits.size() - 1];
+        final double[] big = new double[orbits.size()];
+        final KeplerPropagator propagator = new KeplerPropagator();
+        assertThrows(IllegalArgumentException.class, () -> propagator.propagate(orbits, 0.0, small, big, big));
+        assertThrows(IllegalArgumentException.class, () -> propagator.propagate(orbits, Double.NaN, big, big, big));
+        assertThrows(IllegalArgumentException.class, () -> orbits.add(-1, MU, null));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestLongTermIntegrators {
+
+    private static final double SUN_MASS = 1.98847e30;
+    private static final double ONE_DAY = 86_400.0;
+    private static final double ONE_YEAR = 365.25 * ONE_DAY;
+
+    /**
+     * The Sun, the Earth and Jupiter on circular orbits.
+     */
+    private static BodyStore sunEarthJupiter() {
+        final BodyStore store = new BodyStore(3);
+        final double au = Constants.oneAstronomicalUnit;
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * SUN_MASS;
+        store.add(SUN_MASS, 1.0, 0, 0, 0, 0, 0, 0);
+        store.add(5.9722e24, 1.0, au, 0, 0, 0, Math.sqrt(mu / au), 0);
+        store.add(1.8982e27, 1.0, -5.2 * au, 0, 0, 0, -Math.sqrt(mu / (5.2 * au)), 0);
+        return store;
+    }
+
+    private static double relativeEnergyError(final Integrator integrator, final double dt, final double duration) {
+        final Simulation sim = new Simulation(sunEarthJupiter(), new DirectSumSolver(), integrator);
+        final double initial = sim.totalEnergy();
+        final int steps = (int) Math.round(duration / dt);
+        double maxError = 0.0;
+        for (int i = 0; i < steps; i++) {
+            sim.step(dt);
+            maxError = Math.max(maxError, Math.abs((sim.totalEnergy() - initial) / initial));
+        }
+        return maxError;
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {0.0, 0.5, 0.9, 0.99})
+    public void keplerDriftReturnsToStartAfterOnePeriod(final double eccentricity) {
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * SUN_MASS;
+        final double perihelion = Constants.oneAstronomicalUnit;
+        final double semiMajorAxis = perihelion / (1.0 - eccentricity);
+        final double speed = Math.sqrt(mu * (1.0 + eccentricity) / perihelion);
+        final double period = 2.0 * Math.PI * Math.sqrt(semiMajorAxis * semiMajorAxis * semiMajorAxis / mu);
+        final double[] state = {perihelion, 0, 0, 0, speed, 0};
+
+        KeplerDrift.drift(state, mu, period);
+
+        assertEquals(perihelion, state[0], perihelion * 1e-9);
+        assertEquals(0.0, state[1], perihelion * 1e-9);
+        assertEquals(speed, state[4], speed * 1e-9);
+    }
+
+    @Test
+    public void keplerDriftHandlesHyperbolicOrbits() {
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * SUN_MASS;
+        final double r = Constants.oneAstronomicalUnit;
+        final double[] state = {r, 0, 0, 0, 2.0 * Math.sqrt(mu / r), 0};
+        final double energy = 0.5 * state[4] * state[4] - mu / r;
+        final double angularMomentum = r * state[4];
+
+        KeplerDrift.drift(state, mu, ONE_YEAR);
+
+        final double distance = Math.sqrt(state[0] * state[0] + state[1] * state[1]);
+        final double v2 = state[3] * state[3] + state[4] * state[4];
+        assertEquals(energy, 0.5 * v2 - mu / distance, Math.abs(energy) * 1e-9);
+        assertEquals(angularMomentum, state[0] * state[4] - state[1] * state[3], angularMomentum * 1e-9);
+    }
+
+    @Test
+    public void wisdomHolmanKeepsEnergyBoundedWithLongSteps() {
+        // 10-day steps for a century: a leapfrog with the same step drifts way more
+        final double error = relativeEnergyError(new WisdomHolmanIntegrator(), 10.0 * ONE_DAY, 100.0 * ONE_YEAR);
+        final double leapfrogError = relativeEnergyError(new LeapfrogIntegrator(), 10.0 * ONE_DAY, 100.0 * ONE_YEAR);
+        assertTrue(error < 1e-6, () -> String.format("Relative energy error was %.3e", error));
+        assertTrue(error < leapfrogError / 10.0);
+    }
+
+    @Test
+    public void gaussRadauReachesMachinePrecision() {
+        final GaussRadauIntegrator integrator = new GaussRadauIntegrator();
+        final double error = relativeEnergyError(integrator, 30.0 * ONE_DAY, 10.0 * ONE_YEAR);
+        assertTrue(error < 1e-13, () -> String.format("Relative energy error was %.3e", error));
+        // the internal steps adapt to the orbit of the Earth, not to the requested step
+        assertTrue(integrator.steps() > 120L);
+    }
+
+    @Test
+    public void cannotUseNegativeTolerance() {
+        assertThrows(IllegalArgumentException.class, () -> new GaussRadauIntegrator(-1.0));
+    }
+}
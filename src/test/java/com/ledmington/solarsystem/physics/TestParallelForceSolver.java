@@ -0,0 +1,89 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestParallelForceSolver {
+
+    private static BodyStore randomBodies(final int n) {
+        final Random rng = new Random(n);
+        final BodyStore store = new BodyStore(n);
+        for (int i = 0; i < n; i++) {
+            store.add(
+                    1e22 * rng.nextDouble(),
+                    1.0,
+                    1e11 * rng.nextGaussian(),
+                    1e11 * rng.nextGaussian(),
+                    1e11 * rng.nextGaussian(),
+                    0,
+                    0,
+                    0);
+        }
+        return store;
+    }
+
+    private static double[][] accelerations(final ForceSolver solver, final BodyStore store) {
+        final int n = store.size();
+        final double[][] result = new double[3][n];
+        solver.computeAccelerations(n, store.x(), store.y(), store.z(), store.mass(), result[0], result[1], result[2]);
+        return result;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 10, 1_000, 3_001})
+    public void directSumIsExact(final int n) {
+        final BodyStore store = randomBodies(n);
+        final double[][] expected = accelerations(new DirectSumSolver(), store);
+        try (ParallelForceSolver solver = new ParallelForceSolver(4)) {
+            for (int k = 0; k < 3; k++) {
+                final double[][] actual = accelerations(solver, store);
+                for (int c = 0; c < 3; c++) {
+                    assertArrayEquals(expected[c], actual[c]);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 3_001})
+    public void barnesHutIsTheSameAsSerial(final int n) {
+        final BodyStore store = randomBodies(n);
+        final double[][] expected = accelerations(new BarnesHutSolver(0.5), store);
+        try (ParallelForceSolver solver = new ParallelForceSolver(3, new BarnesHutSolver(0.5))) {
+            final double[][] actual = accelerations(solver, store);
+            for (int c = 0; c < 3; c++) {
+                assertArrayEquals(expected[c], actual[c]);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    public void cannotCreateWithoutThreads(final int parallelism) {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelForceSolver(parallelism));
+    }
+}
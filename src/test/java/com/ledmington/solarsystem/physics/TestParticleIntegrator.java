@@ -0,0 +1,106 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.ledmington.solarsystem.Constants;
+import com.ledmington.solarsystem.model.BodyStore;
+import com.ledmington.solarsystem.model.ParticleStore;
+import com.ledmington.solarsystem.model.Scenario;
+import com.ledmington.solarsystem.model.SmallBodyPopulation;
+
+import org.junit.jupiter.api.Test;
+
+public final class TestParticleIntegrator {
+
+    private static final double SUN_MASS = 1.98847e30;
+    private static final double ONE_HOUR = 3_600.0;
+
+    @Test
+    public void particleReturnsToStartAfterOnePeriod() {
+        final BodyStore massive = new BodyStore();
+        massive.add(SUN_MASS, 1.0, 0, 0, 0, 0, 0, 0);
+        final double r = Constants.oneAstronomicalUnit;
+        final double mu = Constants.GRAVITATIONAL_CONSTANT * SUN_MASS;
+        final ParticleStore particles = new ParticleStore();
+        particles.add(r, 0, 0, 0, Math.sqrt(mu / r), 0);
+        final double period = 2.0 * Math.PI * Math.sqrt(r * r * r / mu);
+
+        try (ParticleIntegrator integrator = new ParticleIntegrator(1)) {
+            final Simulation sim = new Simulation(massive, new DirectSumSolver(), new LeapfrogIntegrator());
+            sim.setParticles(particles, integrator);
+            final int steps = (int) Math.round(period / ONE_HOUR);
+            sim.step(period / steps, steps);
+        }
+
+        assertEquals(r, particles.x()[0], r * 1e-4);
+        assertEquals(0.0, particles.y()[0], r * 1e-4);
+    }
+
+    @Test
+    public void particlesDoNotPerturbMassiveBodies() {
+        final Simulation withParticles =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final Simulation without =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final ParticleStore particles = new ParticleStore();
+        SmallBodyPopulation.MAIN_BELT.generate(withParticles.store(), particles, 100, new Random(42L));
+
+        try (ParticleIntegrator integrator = new ParticleIntegrator(1)) {
+            withParticles.setParticles(particles, integrator);
+            withParticles.step(ONE_HOUR, 100);
+            without.step(ONE_HOUR, 100);
+        }
+
+        final int n = without.store().size();
+        assertArrayEquals(
+                Arrays.copyOf(without.store().x(), n),
+                Arrays.copyOf(withParticles.store().x(), n));
+        assertArrayEquals(
+                Arrays.copyOf(without.store().vy(), n),
+                Arrays.copyOf(withParticles.store().vy(), n));
+    }
+
+    @Test
+    public void parallelIsIdenticalToSerial() {
+        final ParticleStore serial = new ParticleStore();
+        SmallBodyPopulation.KUIPER_BELT.generate(Scenario.PLANETS.create(), serial, 10_000, new Random(42L));
+        final ParticleStore parallel = serial.copy();
+
+        final Simulation serialSim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final Simulation parallelSim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        try (ParticleIntegrator one = new ParticleIntegrator(1);
+                ParticleIntegrator four = new ParticleIntegrator(4)) {
+            serialSim.setParticles(serial, one);
+            parallelSim.setParticles(parallel, four);
+            serialSim.step(24.0 * ONE_HOUR, 10);
+            parallelSim.step(24.0 * ONE_HOUR, 10);
+        }
+
+        final int n = serial.size();
+        assertArrayEquals(Arrays.copyOf(serial.x(), n), Arrays.copyOf(parallel.x(), n));
+        assertArrayEquals(Arrays.copyOf(serial.vz(), n), Arrays.copyOf(parallel.vz(), n));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.api.Test;
+
+public final class TestSimulationThread {
+
+    private static Simulation twoBodies() {
+        final BodyStore store = new BodyStore(2);
+        store.add(1e30, 1.0, 0, 0, 0, 0, 0, 0);
+        store.add(1.0, 1.0, 1e11, 0, 0, 0, 3e4, 0);
+        return new Simulation(store, new DirectSumSolver(), new LeapfrogIntegrator());
+    }
+
+    @Test
+    public void readerSeesOnlyTheLatestSnapshot() {
+        final double[] zero = {0.0};
+        final SnapshotBuffer buffer = new SnapshotBuffer(1, zero, zero, zero);
+        final Snapshot initial = buffer.latest();
+        assertSame(initial, buffer.latest());
+
+        for (int i = 1; i <= 3; i++) {
+            final double[] position = {i};
+            buffer.writable().set(1, zero, zero, zero, position, position, position, 0.0, i, i, 0L, 1L);
+            buffer.publish();
+        }
+        final Snapshot latest = buffer.latest();
+        assertEquals(3L, latest.steps());
+        assertEquals(3.0, latest.x(0, 1.0));
+        assertEquals(1.5, latest.x(0, 0.5));
+        assertEquals(1.5, latest.time(0.5));
+        assertSame(latest, buffer.latest());
+    }
+
+    @Test
+    public void simulationAdvancesWithFixedTimestep() throws InterruptedException {
+        try (SimulationThread thread = new SimulationThread(twoBodies(), 60.0)) {
+            thread.setTimeScale(1e6);
+            thread.start();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            Snapshot snapshot = thread.latest();
+            while (snapshot.steps() < 100L && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+                snapshot = thread.latest();
+            }
+            assertTrue(snapshot.steps() >= 100L);
+            assertEquals(60.0 * snapshot.steps(), snapshot.time(), 1e-6);
+            assertTrue(snapshot.y(1, 1.0) > 0.0);
+        }
+    }
+
+    @Test
+    public void pausedSimulationDoesNotAdvance() throws InterruptedException {
+        try (SimulationThread thread = new SimulationThread(twoBodies(), 60.0)) {
+            thread.setTimeScale(1e6);
+            thread.setPaused(true);
+            thread.start();
+            Thread.sleep(100L);
+            assertEquals(0L, thread.latest().steps());
+        }
+    }
+
+    @Test
+    public void cannotUseInvalidTimestep() {
+        assertThrows(IllegalArgumentException.class, () -> new SimulationThread(twoBodies(), 0.0));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.ParticleStore;
+import com.ledmington.solarsystem.model.Scenario;
+import com.ledmington.solarsystem.model.SmallBodyPopulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class TestTrajectoryRecorder {
+
+    private static final double ONE_HOUR = 3_600.0;
+    private static final double POSITION_RESOLUTION = 1.0;
+    private static final double VELOCITY_RESOLUTION = 1e-6;
+
+    @Test
+    public void recordedTrajectoriesAreReadBack(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final List<double[]> expected = new ArrayList<>();
+        final long recorded;
+        try (ParticleIntegrator integrator = new ParticleIntegrator(1)) {
+            final Simulation sim =
+                    new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+            final ParticleStore particles = new ParticleStore();
+            SmallBodyPopulation.MAIN_BELT.generate(sim.store(), particles, 500, new Random(42L));
+            sim.setParticles(particles, integrator);
+
+            // the ring holds the whole run, so that no sample can be dropped
+            final TrajectoryRecorder recorder =
+                    new TrajectoryRecorder(file, sim, 3, 8, 16, POSITION_RESOLUTION, VELOCITY_RESOLUTION);
+            sim.setRecorder(recorder);
+            expected.add(state(sim));
+            for (int s = 1; s <= 100; s++) {
+                sim.step(ONE_HOUR);
+                if (s % 3 == 0) {
+                    expected.add(state(sim));
+                }
+            }
+            recorder.close();
+            assertEquals(0L, recorder.dropped());
+            recorded = recorder.recorded();
+        }
+        assertEquals(expected.size(), recorded);
+
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            final int objects = reader.objects();
+            assertEquals(Scenario.PLANETS.create().size(), reader.bodies());
+            assertEquals(500, reader.particles());
+            assertEquals(3, reader.interval());
+            assertEquals((expected.size() + 7) / 8, reader.chunks());
+
+            int sample = 0;
+            TrajectoryChunk chunk = null;
+            for (int c = 0; c < reader.chunks(); c++) {
+                chunk = reader.readChunk(c, chunk);
+                assertEquals(reader.samples(c), chunk.samples());
+                assertEquals(reader.firstTime(c), chunk.time(0));
+                assertEquals(reader.lastTime(c), chunk.time(chunk.samples() - 1));
+                for (int k = 0; k < chunk.samples(); k++, sample++) {
+                    final double[] state = expected.get(sample);
+                    assertEquals(state[0], chunk.time(k));
+                    for (int i = 0; i < objects; i++) {
+                        assertEquals(state[1 + 6 * i], chunk.x(k, i), POSITION_RESOLUTION);
+                        assertEquals(state[2 + 6 * i], chunk.y(k, i), POSITION_RESOLUTION);
+                        assertEquals(state[3 + 6 * i], chunk.z(k, i), POSITION_RESOLUTION);
+                        assertEquals(state[4 + 6 * i], chunk.vx(k, i), VELOCITY_RESOLUTION);
+                        assertEquals(state[5 + 6 * i], chunk.vy(k, i), VELOCITY_RESOLUTION);
+                        assertEquals(state[6 + 6 * i], chunk.vz(k, i), VELOCITY_RESOLUTION);
+                    }
+                }
+            }
+            assertEquals(expected.size(), sample);
+
+            // decoding only the bodies gives the same values
+            final TrajectoryChunk all = reader.readChunk(1, null);
+            final TrajectoryChunk onlyBodies = reader.readChunk(1, reader.bodies(), null);
+            assertEquals(reader.bodies(), onlyBodies.objects());
+            for (int k = 0; k < all.samples(); k++) {
+                for (int i = 0; i < reader.bodies(); i++) {
+                    assertEquals(all.x(k, i), onlyBodies.x(k, i));
+                    assertEquals(all.vz(k, i), onlyBodies.vz(k, i));
+                }
+            }
+        }
+    }
+
+    private static double[] state(final Simulation sim) {
+        final int n = sim.store().size();
+        final int p = sim.particles().size();
+        final double[] state = new double[1 + 6 * (n + p)];
+        state[0] = sim.time();
+        for (int i = 0; i < n; i++) {
+            state[1 + 6 * i] = sim.store().x()[i];
+            state[2 + 6 * i] = sim.store().y()[i];
+            state[3 + 6 * i] = sim.store().z()[i];
+            state[4 + 6 * i] = sim.store().vx()[i];
+            state[5 + 6 * i] = sim.store().vy()[i];
+            state[6 + 6 * i] = sim.store().vz()[i];
+        }
+        for (int j = 0; j < p; j++) {
+            final int i = n + j;
+            state[1 + 6 * i] = sim.particles().x()[j];
+            state[2 + 6 * i] = sim.particles().y()[j];
+            state[3 + 6 * i] = sim.particles().z()[j];
+            state[4 + 6 * i] = sim.particles().vx()[j];
+            state[5 + 6 * i] = sim.particles().vy()[j];
+            state[6 + 6 * i] = sim.particles().vz()[j];
+        }
+        return state;
+    }
+
+    @Test
+    public void chunksAreFoundByTime(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(file, sim, 1, 10, 8, 1.0, 1e-6)) {
+            sim.setRecorder(recorder);
+            sim.step(ONE_HOUR, 49);
+        }
+
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            // 50 samples, from the initial state
+            assertEquals(5, reader.chunks());
+            assertArrayEquals(Arrays.copyOf(sim.store().mass(), sim.store().size()), reader.masses());
+            assertEquals(0, reader.findChunk(-1.0));
+            assertEquals(0, reader.findChunk(0.0));
+            assertEquals(0, reader.findChunk(9.5 * ONE_HOUR));
+            assertEquals(1, reader.findChunk(10.0 * ONE_HOUR));
+            assertEquals(4, reader.findChunk(1e12));
+        }
+    }
+
+    @Test
+    public void finishedRecordingIsCompletedInTheBackground(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final TrajectoryRecorder recorder = new TrajectoryRecorder(file, sim, 1);
+        sim.setRecorder(recorder);
+        sim.step(ONE_HOUR, 10);
+        recorder.finish();
+        sim.setRecorder(null);
+        assertTrue(recorder.awaitWritten(10_000L));
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            // 11 samples, from the initial state
+            assertEquals(1, reader.chunks());
+            assertEquals(11, reader.samples(0));
+            assertEquals(10.0 * ONE_HOUR, reader.lastTime(0), 1e-6);
+        }
+    }
+
+    @Test
+    public void incompleteRecordingsAreRejected(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(file, sim, 1)) {
+            sim.setRecorder(recorder);
+            sim.step(ONE_HOUR, 10);
+        }
+        final byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IllegalArgumentException.class, () -> new TrajectoryReader(file));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.Scenario;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class TestTrajectoryReplay {
+
+    private static final double ONE_HOUR = 3_600.0;
+
+    /**
+     * Records the planets once a day for a year, keeping every hourly state in memory.
+     * The ring holds the whole run, so that no sample can be dropped.
+     */
+    private static List<double[]> record(final Path file, final int samplesPerChunk) throws IOException {
+        final Simulation sim =
+                new Simulation(Scenario.PLANETS.create(), new DirectSumSolver(), new LeapfrogIntegrator());
+        final List<double[]> states = new ArrayList<>();
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(file, sim, 24, samplesPerChunk, 128, 1.0, 1e-6)) {
+            sim.setRecorder(recorder);
+            states.add(state(sim));
+            for (int s = 0; s < 365 * 24; s++) {
+                sim.step(ONE_HOUR);
+                states.add(state(sim));
+            }
+        }
+        return states;
+    }
+
+    private static double[] state(final Simulation sim) {
+        final int n = sim.store().size();
+        final double[] state = new double[3 * n];
+        for (int i = 0; i < n; i++) {
+            state[3 * i] = sim.store().x()[i];
+            state[3 * i + 1] = sim.store().y()[i];
+            state[3 * i + 2] = sim.store().z()[i];
+        }
+        return state;
+    }
+
+    @Test
+    public void positionsBetweenSamplesAreInterpolated(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final List<double[]> states = record(file, 16);
+
+        try (TrajectoryReplay replay = new TrajectoryReplay(file)) {
+            assertEquals(0.0, replay.startTime());
+            assertEquals(365 * 24 * ONE_HOUR, replay.endTime());
+            double maxHermite = 0.0;
+            double maxLinear = 0.0;
+            for (int h = 0; h < states.size(); h += 5) {
+                replay.seek(h * ONE_HOUR);
+                assertEquals(h * ONE_HOUR, replay.time());
+                final double[] expected = states.get(h);
+                final double[] before = states.get(h - h % 24);
+                final double[] after = states.get(Math.min(states.size() - 1, h - h % 24 + 24));
+                final double s = (h % 24) / 24.0;
+                for (int i = 0; i < replay.bodies(); i++) {
+                    maxHermite = Math.max(maxHermite, Math.abs(replay.x(i) - expected[3 * i]));
+                    maxHermite = Math.max(maxHermite, Math.abs(replay.y(i) - expected[3 * i + 1]));
+                    maxHermite = Math.max(maxHermite, Math.abs(replay.z(i) - expected[3 * i + 2]));
+                    final double linearX = before[3 * i] + (after[3 * i] - before[3 * i]) * s;
+                    maxLinear = Math.max(maxLinear, Math.abs(linearX - expected[3 * i]));
+                }
+            }
+            // Mercury moves up to 6 degrees a day: the spline stays within a few hundred km of its orbit,
+            // while a straight line between the samples misses it by tens of thousands
+            assertTrue(maxHermite < 500_000.0, String.format("Error of %,.0f m", maxHermite));
+            assertTrue(maxHermite * 100.0 < maxLinear);
+        }
+    }
+
+    @Test
+    public void seekingDecodesOnlyTheChunksAroundTheTime(@TempDir final Path folder) throws IOException {
+        final Path file = folder.resolve("run.sstr");
+        final List<double[]> states = record(file, 4);
+        final Random rng = new Random(42L);
+
+        try (TrajectoryReplay replay = new TrajectoryReplay(file)) {
+            for (int j = 0; j < 200; j++) {
+                // a recorded sample, where there is nothing to interpolate
+                final int day = rng.nextInt(366);
+                final long before = replay.decodedChunks();
+                replay.seek(day * 24 * ONE_HOUR);
+                assertTrue(replay.decodedChunks() - before <= 2);
+                final double[] expected = states.get(day * 24);
+                for (int i = 0; i < replay.bodies(); i++) {
+                    assertEquals(expected[3 * i], replay.x(i), 1.0);
+                    assertEquals(expected[3 * i + 1], replay.y(i), 1.0);
+                    assertEquals(expected[3 * i + 2], replay.z(i), 1.0);
+                }
+            }
+
+            // out of the recording, the first and the last samples are shown
+            replay.seek(-1e9);
+            assertEquals(replay.startTime(), replay.time());
+            replay.seek(1e12);
+            assertEquals(replay.endTime(), replay.time());
+        }
+
+        // playing forwards decodes each chunk once
+        try (TrajectoryReplay replay = new TrajectoryReplay(file)) {
+            for (int h = 0; h < states.size(); h++) {
+                replay.seek(h * ONE_HOUR);
+            }
+            assertEquals((366 + 3) / 4, replay.decodedChunks());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import com.ledmington.solarsystem.model.BodyStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestVectorization {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 7, 64, 1_001})
+    public void directSumMatchesTheScalarKernel(final int n) {
+        final Random rng = new Random(n);
+        final BodyStore store = new BodyStore(n);
+        for (int i = 0; i < n; i++) {
+            store.add(
+                    1e22 * rng.nextDouble(),
+                    1.0,
+                    1e11 * rng.nextGaussian(),
+                    1e11 * rng.nextGaussian(),
+                    1e11 * rng.nextGaussian(),
+                    0,
+                    0,
+                    0);
+        }
+        final double[][] expected = new double[3][n];
+        final double[][] actual = new double[3][n];
+        new DirectSumSolver()
+                .computeAccelerations(
+                        n, store.x(), store.y(), store.z(), store.mass(), expected[0], expected[1], expected[2]);
+        Vectorization.directSum(0.0)
+                .computeAccelerations(
+                        n, store.x(), store.y(), store.z(), store.mass(), actual[0], actual[1], actual[2]);
+
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected[c][i], actual[c][i], 1e-12 * Math.abs(expected[c][i]));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 64, 1_001})
+    public void keplerSolverMatchesTheScalarKernel(final int n) {
+        final Random rng = new Random(n);
+        final double[] meanAnomaly = new double[n];
+        final double[] eccentricity = new double[n];
+        for (int i = 0; i < n; i++) {
+            meanAnomaly[i] = Math.PI * (2.0 * rng.nextDouble() - 1.0);
+            eccentricity[i] = 0.99 * rng.nextDouble();
+        }
+        final double[][] expected = new double[3][n];
+        final double[][] actual = new double[3][n];
+        new HalleyKeplerSolver().solve(0, n, meanAnomaly, eccentricity, expected[0], expected[1], expected[2]);
+        Vectorization.keplerSolver().solve(0, n, meanAnomaly, eccentricity, actual[0], actual[1], actual[2]);
+
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected[c][i], actual[c][i], 1e-13);
+            }
+        }
+    }
+
+    @Test
+    public void cannotUseNegativeSoftening() {
+        assertThrows(IllegalArgumentException.class, () -> Vectorization.directSum(-1.0));
+    }
+}
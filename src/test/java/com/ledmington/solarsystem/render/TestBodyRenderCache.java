@@ -0,0 +1,89 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.badlogic.gdx.math.Vector3;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.model.SolarSystem;
+import com.ledmington.solarsystem.physics.DirectSumSolver;
+import com.ledmington.solarsystem.physics.LeapfrogIntegrator;
+import com.ledmington.solarsystem.physics.Simulation;
+import com.ledmington.solarsystem.physics.SimulationThread;
+import com.ledmington.solarsystem.physics.Snapshot;
+import com.ledmington.solarsystem.utils.language.Dictionary;
+import com.ledmington.solarsystem.utils.language.Language;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class TestBodyRenderCache {
+
+    private final Body[] planets = SolarSystem.planets().toArray(new Body[0]);
+    private final BodyRenderCache cache = new BodyRenderCache(planets);
+    private SimulationThread thread;
+
+    @BeforeEach
+    public void setup() {
+        thread = new SimulationThread(
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new LeapfrogIntegrator()), 3_600.0);
+    }
+
+    @AfterEach
+    public void teardown() {
+        thread.close();
+        Dictionary.getInstance().setLanguage(Language.ENGLISH);
+    }
+
+    @Test
+    public void positionsAreScaled() {
+        assertTrue(cache.update(thread.latest(), 1.0));
+        final Vector3 expected = new Vector3();
+        for (int k = 0; k < planets.length; k++) {
+            planets[k].scaledPosition(expected);
+            assertEquals(expected.x, cache.x()[k], 1e-3f * Math.abs(expected.x));
+            assertEquals(expected.y, cache.y()[k], 1e-3f * Math.abs(expected.y));
+            assertEquals(expected.z, cache.z()[k], 1e-3f * Math.abs(expected.z));
+            assertEquals(planets[k].scaledRadius(), cache.radius()[k]);
+            assertEquals(k, cache.indexOf(planets[k]));
+        }
+    }
+
+    @Test
+    public void positionsAreRecomputedOnlyWhenTheyChange() {
+        final Snapshot snapshot = thread.latest();
+        assertTrue(cache.update(snapshot, 1.0));
+        assertFalse(cache.update(snapshot, 1.0));
+        assertTrue(cache.update(snapshot, 0.5));
+    }
+
+    @Test
+    public void namesFollowTheLanguage() {
+        final int sun = cache.indexOf(SolarSystem.SUN);
+        Dictionary.getInstance().setLanguage(Language.ENGLISH);
+        final String english = cache.name(sun);
+        Dictionary.getInstance().setLanguage(Language.ITALIAN);
+        assertNotEquals(english, cache.name(sun));
+        assertEquals(SolarSystem.SUN.name().orElseThrow(), cache.name(sun));
+    }
+}
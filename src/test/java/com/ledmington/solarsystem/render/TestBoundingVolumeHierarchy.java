@@ -0,0 +1,185 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestBoundingVolumeHierarchy {
+
+    private static final int N = 10_000;
+    private static final double SLACK = 0.05;
+
+    private final float[] x = new float[N];
+    private final float[] y = new float[N];
+    private final float[] z = new float[N];
+    private final float[] r = new float[N];
+    private final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy();
+    private PerspectiveCamera camera;
+
+    @BeforeAll
+    public static void loadNatives() {
+        // the camera needs the native matrix operations
+        GdxNativesLoader.load();
+    }
+
+    @BeforeEach
+    public void setup() {
+        final Random rng = new Random(42L);
+        for (int i = 0; i < N; i++) {
+            x[i] = 1_000.0f * (rng.nextFloat() - 0.5f);
+            y[i] = 1_000.0f * (rng.nextFloat() - 0.5f);
+            z[i] = 100.0f * (rng.nextFloat() - 0.5f);
+            r[i] = 5.0f * rng.nextFloat();
+        }
+        bvh.build(N, x, y, z, r);
+
+        camera = new PerspectiveCamera(45.0f, 1280, 720);
+        camera.position.set(0.0f, -600.0f, 200.0f);
+        camera.lookAt(0.0f, 0.0f, 0.0f);
+        camera.near = 0.1f;
+        camera.far = 10_000.0f;
+        camera.update();
+    }
+
+    private int[] bruteForceVisible() {
+        return IntStream.range(0, N)
+                .filter(i -> camera.frustum.sphereInFrustum(x[i], y[i], z[i], r[i]))
+                .toArray();
+    }
+
+    private int[] visible() {
+        final int[] out = new int[N];
+        final int count = bvh.queryFrustum(camera.frustum, out);
+        final int[] result = Arrays.copyOf(out, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    @Test
+    public void frustumQueryMatchesBruteForce() {
+        final int[] expected = bruteForceVisible();
+        assertArrayEquals(expected, visible());
+    }
+
+    @Test
+    public void refitFollowsMovingSpheres() {
+        for (int i = 0; i < N; i++) {
+            x[i] = -x[i];
+            z[i] += 50.0f;
+        }
+        bvh.refit();
+        assertArrayEquals(bruteForceVisible(), visible());
+    }
+
+    /**
+     * Returns the distance along the ray of the first hit with the given enlarged sphere,
+     * whose radius is further increased by the given slack.
+     */
+    private double hitDistance(final int i, final Ray ray, final float tolerance, final double slack) {
+        if (i < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double cx = x[i] - ray.origin.x;
+        final double cy = y[i] - ray.origin.y;
+        final double cz = z[i] - ray.origin.z;
+        final double distanceSquared = cx * cx + cy * cy + cz * cz;
+        final double radius = Math.max(r[i], tolerance * Math.sqrt(distanceSquared)) + slack;
+        final double b = cx * ray.direction.x + cy * ray.direction.y + cz * ray.direction.z;
+        final double discriminant = b * b - distanceSquared + radius * radius;
+        if (discriminant < 0.0 || b + Math.sqrt(discriminant) < 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(0.0, b - Math.sqrt(discriminant));
+    }
+
+    @ParameterizedTest
+    @ValueSource(floats = {0.0f, 0.01f})
+    public void pickFindsTheClosestHit(final float tolerance) {
+        final Random rng = new Random(123L);
+        int hits = 0;
+        for (int k = 0; k < 200; k++) {
+            final Vector3 target =
+                    new Vector3(1_000.0f * (rng.nextFloat() - 0.5f), 1_000.0f * (rng.nextFloat() - 0.5f), 0.0f);
+            final Ray ray = new Ray(camera.position, target.sub(camera.position).nor());
+
+            // grazing hits depend on rounding, so they are checked with a small slack on the radii
+            double expected = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < N; i++) {
+                expected = Math.min(expected, hitDistance(i, ray, tolerance, -SLACK));
+            }
+
+            final int picked = bvh.pick(ray, tolerance);
+            final double actual = hitDistance(picked, ray, tolerance, SLACK);
+            assertTrue(picked < 0 || Double.isFinite(actual));
+            if (Double.isFinite(expected)) {
+                assertTrue(actual <= expected);
+                hits++;
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void missingPickIsPruned() {
+        final int n = 100_000;
+        final float[] bx = new float[n];
+        final float[] by = new float[n];
+        final float[] bz = new float[n];
+        final float[] br = new float[n];
+        final Random rng = new Random(7L);
+        // two clusters, with the ray passing between them inside the box of the whole hierarchy
+        for (int i = 0; i < n; i++) {
+            final float side = i % 2 == 0 ? -1.0f : 1.0f;
+            bx[i] = side * (100.0f + 900.0f * rng.nextFloat());
+            by[i] = 1_000.0f * (rng.nextFloat() - 0.5f);
+            bz[i] = 1_000.0f * (rng.nextFloat() - 0.5f);
+            br[i] = 1.0f;
+        }
+        final BoundingVolumeHierarchy big = new BoundingVolumeHierarchy();
+        big.build(n, bx, by, bz, br);
+
+        assertEquals(-1, big.pick(new Ray(new Vector3(0.0f, -1_000.0f, 0.0f), new Vector3(0.0f, 1.0f, 0.0f)), 0.0f));
+        // a whole walk of the tree would visit about 2n / leaf size nodes
+        final int visits = big.lastPickVisits();
+        assertTrue(visits <= 64, String.format("A missing pick visited %d nodes", visits));
+    }
+
+    @Test
+    public void emptyHierarchyFindsNothing() {
+        bvh.build(0, x, y, z, r);
+        assertEquals(0, bvh.queryFrustum(camera.frustum, new int[0]));
+        assertEquals(-1, bvh.pick(new Ray(camera.position, camera.direction), 0.0f));
+    }
+}
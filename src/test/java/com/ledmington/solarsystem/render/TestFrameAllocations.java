@@ -0,0 +1,144 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.Ray;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.ledmington.solarsystem.model.Body;
+import com.ledmington.solarsystem.model.SolarSystem;
+import com.ledmington.solarsystem.physics.DirectSumSolver;
+import com.ledmington.solarsystem.physics.LeapfrogIntegrator;
+import com.ledmington.solarsystem.physics.Simulation;
+import com.ledmington.solarsystem.physics.SimulationThread;
+import com.ledmington.solarsystem.physics.Snapshot;
+import com.ledmington.solarsystem.utils.FormatUtils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the per-frame work of the renderer which does not need a GL context does not allocate:
+ * moving the bodies and the moons through the {@link RenderScene}, as the main screen does,
+ * culling, picking, projecting the labels and formatting the HUD.
+ */
+public final class TestFrameAllocations {
+
+    /**
+     * Enough frames for the JIT to compile the SIMD Kepler solver, whose vectors are allocated until then.
+     */
+    private static final int WARMUP_FRAMES = 100_000;
+
+    private static final int FRAMES = 10_000;
+
+    /**
+     * Allows for the rare allocation of the JIT or of the test harness itself.
+     */
+    private static final double MAX_BYTES_PER_FRAME = 8.0;
+
+    private final RenderScene scene = new RenderScene(
+            SolarSystem.planets().toArray(new Body[0]),
+            SolarSystem.moons().stream().mapToInt(Body::id).toArray(),
+            SolarSystem.moonOrbits());
+    private final PerspectiveCamera camera = new PerspectiveCamera(45.0f, 1280, 720);
+    private final StringBuilder text = new StringBuilder(64);
+    private final Ray ray = new Ray();
+    private final Vector3 target = new Vector3();
+    private SimulationThread thread;
+    private long checksum = 0L;
+
+    @BeforeAll
+    public static void loadNatives() {
+        // the camera needs the native matrix operations
+        GdxNativesLoader.load();
+    }
+
+    @AfterEach
+    public void teardown() {
+        thread.close();
+    }
+
+    private void frame(final Snapshot snapshot, final int i) {
+        // a different interpolation factor at each frame, so that the bodies and the moons always move
+        scene.update(snapshot, (i % 1_000) / 1_000.0);
+
+        final BodyRenderCache bodies = scene.bodies();
+        final int earth = bodies.indexOf(SolarSystem.EARTH);
+        target.set(bodies.x()[earth], bodies.y()[earth], bodies.z()[earth]);
+        camera.position.set(target).add(0.0f, -0.5f, 0.1f + (i % 100) * 1e-3f);
+        camera.lookAt(target);
+        camera.update();
+        final int count = scene.cull(camera.frustum);
+        scene.project(camera, 0.0f, 0.0f, 1280.0f, 720.0f);
+
+        ray.set(camera.position, camera.direction);
+        final int hovered = scene.pick(ray, 0.01f);
+        final int closest = scene.closest(camera.position);
+
+        text.setLength(0);
+        FormatUtils.appendFixed(text.append("FPS: "), 1.0 / (0.016 + i * 1e-6), 1);
+        text.setLength(0);
+        FormatUtils.appendThousands(text.append("Distance to Sun: "), (long)
+                        scene.distance(camera.position, bodies.indexOf(SolarSystem.SUN)))
+                .append(" km");
+        checksum += count + hovered + closest + text.length();
+    }
+
+    @Test
+    public void frameDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        // the thread is not started: its first snapshot is enough to drive the scene
+        final Simulation simulation =
+                new Simulation(SolarSystem.store().copy(), new DirectSumSolver(), new LeapfrogIntegrator());
+        thread = new SimulationThread(simulation, 3_600.0);
+        final Snapshot snapshot = thread.latest();
+        camera.near = 0.01f;
+        camera.far = 1_000_000.0f;
+        // the moons on their Keplerian orbits are the most expensive frames
+        scene.setKeplerianSatellites(true);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame(snapshot, i);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            frame(snapshot, i);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        final double perFrame = (double) allocated / FRAMES;
+        assertTrue(
+                perFrame <= MAX_BYTES_PER_FRAME,
+                String.format("Expected at most %.1f bytes per frame but were %.1f", MAX_BYTES_PER_FRAME, perFrame));
+        assertTrue(checksum != 0L);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestSphereLod {
+
+    @ParameterizedTest
+    @ValueSource(floats = {0.0f, 0.5f, 1.999f, Float.NaN})
+    public void smallSpheresBecomePoints(final float screenRadius) {
+        assertEquals(-1, SphereLod.levelFor(screenRadius));
+    }
+
+    @Test
+    public void largerSpheresGetFinerLevels() {
+        int previous = SphereLod.levelFor(SphereLod.IMPOSTOR_PIXELS);
+        assertEquals(0, previous);
+        for (float r = SphereLod.IMPOSTOR_PIXELS; r < 10_000.0f; r *= 1.1f) {
+            final int level = SphereLod.levelFor(r);
+            assertTrue(level >= previous && level < SphereLod.levels());
+            previous = level;
+        }
+        assertEquals(SphereLod.levels() - 1, previous);
+        assertEquals(SphereLod.levels() - 1, SphereLod.levelFor(Float.POSITIVE_INFINITY));
+    }
+}
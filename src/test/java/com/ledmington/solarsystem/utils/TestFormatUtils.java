@@ -0,0 +1,78 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public final class TestFormatUtils {
+
+    @ParameterizedTest
+    @CsvSource(
+            delimiter = ';',
+            value = {
+                "0;0",
+                "7;7",
+                "999;999",
+                "1000;1,000",
+                "1234567;1,234,567",
+                "-123;-123",
+                "-1234;-1,234",
+                "-9223372036854775808;-9,223,372,036,854,775,808"
+            })
+    public void appendThousands(final long value, final String expected) {
+        assertEquals(
+                expected,
+                FormatUtils.appendThousands(new StringBuilder("x"), value).substring(1));
+    }
+
+    @ParameterizedTest
+    @CsvSource(
+            delimiter = ';',
+            value = {
+                "0.0;1;0.0",
+                "59.96;1;60.0",
+                "3.14159;2;3.14",
+                "2.005;0;2",
+                "-0.04;1;0.0",
+                "-1.25;1;-1.3",
+                "0.05;3;0.050"
+            })
+    public void appendFixed(final double value, final int decimals, final String expected) {
+        assertEquals(
+                expected,
+                FormatUtils.appendFixed(new StringBuilder(), value, decimals).toString());
+    }
+
+    @Test
+    public void appendFixedKeepsNonFiniteValues() {
+        assertEquals(
+                "Infinity",
+                FormatUtils.appendFixed(new StringBuilder(), Double.POSITIVE_INFINITY, 1)
+                        .toString());
+    }
+
+    @Test
+    public void cannotAppendTooManyDecimals() {
+        assertThrows(IllegalArgumentException.class, () -> FormatUtils.appendFixed(new StringBuilder(), 1.0, 10));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public final class TestMappedTextReader {
+
+    private static MappedTextReader reader(final Path folder, final String content) throws IOException {
+        final Path file = folder.resolve("test.txt");
+        Files.writeString(file, content);
+        return new MappedTextReader(file);
+    }
+
+    @Test
+    public void linesAndFieldsAreSplit(@TempDir final Path folder) throws IOException {
+        final MappedTextReader r = reader(folder, "a, b ,c\r\n\n  x\t,,  \nlast");
+        assertTrue(r.nextLine());
+        assertEquals(3, r.split(','));
+        assertEquals("a", r.field(0));
+        assertEquals("b", r.field(1));
+        assertTrue(r.fieldEquals(2, "C"));
+        assertTrue(r.nextLine());
+        assertTrue(r.isBlank());
+        assertTrue(r.nextLine());
+        assertTrue(r.startsWith("x"));
+        assertEquals(3, r.split(','));
+        assertTrue(r.isEmpty(1));
+        assertTrue(r.isEmpty(2));
+        assertTrue(r.nextLine());
+        assertEquals(4, r.lineNumber());
+        assertEquals(1, r.split(','));
+        assertEquals("last", r.field(0));
+        assertFalse(r.nextLine());
+        assertThrows(IllegalArgumentException.class, () -> r.field(1));
+    }
+
+    @Test
+    public void doublesAreParsedLikeTheJdk(@TempDir final Path folder) throws IOException {
+        final Random rng = new Random(42);
+        final String[] values = new String[10_000];
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            final double v = rng.nextGaussian() * Math.pow(10.0, rng.nextInt(60) - 30);
+            values[i] = switch (i % 4) {
+                case 0 -> Double.toString(v);
+                case 1 -> String.format("%.15e", v);
+                case 2 -> String.format("%.6f", v);
+                default -> Long.toString((long) v);};
+            sb.append(values[i]).append('\n');
+        }
+        final MappedTextReader r = reader(folder, sb.toString());
+        for (final String v : values) {
+            assertTrue(r.nextLine());
+            r.split(',');
+            assertEquals(Double.parseDouble(v), r.parseDouble(0), v);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-0.0", "+1", ".5", "5.", "1e22", "1E-22", "123456789012345678901234", "4.9e-324"})
+    public void edgeCasesAreParsedLikeTheJdk(final String value, @TempDir final Path folder) throws IOException {
+        final MappedTextReader r = reader(folder, value);
+        r.nextLine();
+        r.split(',');
+        assertEquals(Double.parseDouble(value), r.parseDouble(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "-", ".", "1e", "1.2.3", "abc", "1,5"})
+    public void invalidDoublesAreRejected(final String value, @TempDir final Path folder) throws IOException {
+        final MappedTextReader r = reader(folder, value);
+        r.nextLine();
+        r.split(';');
+        assertThrows(IllegalArgumentException.class, () -> r.parseDouble(0));
+    }
+
+    @Test
+    public void longsAreParsed(@TempDir final Path folder) throws IOException {
+        final MappedTextReader r =
+                reader(folder, "0,-42,+7,9223372036854775807,-9223372036854775808,9223372036854775808");
+        r.nextLine();
+        r.split(',');
+        assertEquals(0L, r.parseLong(0));
+        assertEquals(-42L, r.parseLong(1));
+        assertEquals(7L, r.parseLong(2));
+        assertEquals(Long.MAX_VALUE, r.parseLong(3));
+        assertEquals(Long.MIN_VALUE, r.parseLong(4));
+        assertThrows(IllegalArgumentException.class, () -> r.parseLong(5));
+    }
+}
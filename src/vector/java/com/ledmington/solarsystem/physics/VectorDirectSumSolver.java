@@ -0,0 +1,154 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import com.ledmington.solarsystem.Constants;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes the exact pairwise gravitational accelerations in O(N^2), like {@link DirectSumSolver},
+ * but processing as many sources per instruction as the widest vector registers of the CPU can hold.
+ * <p>
+ * This class needs the incubating {@code jdk.incubator.vector} module, so it lives in its own
+ * source set and must never be referenced directly: use {@link Vectorization} instead,
+ * which falls back to the scalar kernel when the module is not available.
+ * <p>
+ * The sources are summed lane by lane and the lanes are reduced at the end, so the results
+ * differ from the ones of the scalar kernel in the last bits. Pairs of coincident bodies
+ * are ignored instead of producing NaNs.
+ */
+public final class VectorDirectSumSolver implements ForceSolver {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final double softeningSquared;
+
+    /**
+     * Creates a VectorDirectSumSolver with the given softening length.
+     *
+     * @param softening
+     *      The softening length (in m).
+     */
+    public VectorDirectSumSolver(final double softening) {
+        if (softening < 0.0) {
+            throw new IllegalArgumentException("Cannot set a negative softening length");
+        }
+        this.softeningSquared = softening * softening;
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        for (int i = 0; i < n; i++) {
+            accelerationOf(i, n, x, y, z, mass, ax, ay, az);
+        }
+    }
+
+    @Override
+    public void computeAccelerations(
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final int[] targets,
+            final int count,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        for (int k = 0; k < count; k++) {
+            accelerationOf(targets[k], n, x, y, z, mass, ax, ay, az);
+        }
+    }
+
+    private void accelerationOf(
+            final int i,
+            final int n,
+            final double[] x,
+            final double[] y,
+            final double[] z,
+            final double[] mass,
+            final double[] ax,
+            final double[] ay,
+            final double[] az) {
+        final double g = Constants.GRAVITATIONAL_CONSTANT;
+        final int upperBound = SPECIES.loopBound(n);
+        final DoubleVector eps2 = DoubleVector.broadcast(SPECIES, softeningSquared);
+        final DoubleVector zero = DoubleVector.zero(SPECIES);
+        final DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+        final double xi = x[i];
+        final double yi = y[i];
+        final double zi = z[i];
+        DoubleVector sx = zero;
+        DoubleVector sy = zero;
+        DoubleVector sz = zero;
+
+        int j = 0;
+        for (; j < upperBound; j += SPECIES.length()) {
+            final DoubleVector dx = DoubleVector.fromArray(SPECIES, x, j).sub(xi);
+            final DoubleVector dy = DoubleVector.fromArray(SPECIES, y, j).sub(yi);
+            final DoubleVector dz = DoubleVector.fromArray(SPECIES, z, j).sub(zi);
+            final DoubleVector r2 = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).add(eps2);
+            // the target itself (and any coincident body) has r2 = 0 without softening
+            final VectorMask<Double> self = r2.compare(VectorOperators.EQ, 0.0);
+            final DoubleVector invR = one.div(r2.sqrt());
+            final DoubleVector f = DoubleVector.fromArray(SPECIES, mass, j)
+                    .mul(invR)
+                    .mul(invR)
+                    .mul(invR)
+                    .blend(zero, self);
+            sx = sx.add(dx.mul(f));
+            sy = sy.add(dy.mul(f));
+            sz = sz.add(dz.mul(f));
+        }
+
+        double tx = sx.reduceLanes(VectorOperators.ADD);
+        double ty = sy.reduceLanes(VectorOperators.ADD);
+        double tz = sz.reduceLanes(VectorOperators.ADD);
+        for (; j < n; j++) {
+            final double dx = x[j] - xi;
+            final double dy = y[j] - yi;
+            final double dz = z[j] - zi;
+            final double r2 = dx * dx + dy * dy + dz * dz + softeningSquared;
+            if (r2 == 0.0) {
+                continue;
+            }
+            final double invR = 1.0 / Math.sqrt(r2);
+            final double f = mass[j] * invR * invR * invR;
+            tx += f * dx;
+            ty += f * dy;
+            tz += f * dz;
+        }
+
+        ax[i] = g * tx;
+        ay[i] = g * ty;
+        az[i] = g * tz;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+* solarsystem - A real-time solar system simulation.
+* Copyright (C) 2023-2023 Filippo Barbari <filippo.barbari@gmail.com>
+*
+* This program is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* This program is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License
+* along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.ledmington.solarsystem.physics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Solves Kepler's equation with the same iteration as {@link HalleyKeplerSolver}, but on as many orbits
+ * per instruction as the widest vector registers of the CPU can hold, including the sine and the cosine.
+ * <p>
+ * This class needs the incubating {@code jdk.incubator.vector} module, so it lives in its own
+ * source set and must never be referenced directly: use {@link Vectorization} instead,
+ * which falls back to the scalar kernel when the module is not available.
+ * <p>
+ * The vector sine and cosine are not the ones of {@link Math}, so the results differ from the ones
+ * of the scalar kernel in the last bits.
+ */
+public final class VectorKeplerSolver implements KeplerSolver {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final HalleyKeplerSolver tail = new HalleyKeplerSolver();
+
+    /**
+     * Creates a VectorKeplerSolver.
+     */
+    public VectorKeplerSolver() {}
+
+    @Override
+    public void solve(
+            final int from,
+            final int to,
+            final double[] meanAnomaly,
+            final double[] eccentricity,
+            final double[] eccentricAnomaly,
+            final double[] cos,
+            final double[] sin) {
+        final int lanes = SPECIES.length();
+        final int upperBound = from + SPECIES.loopBound(to - from);
+        for (int start = from; start < upperBound; start += HalleyKeplerSolver.TILE) {
+            final int end = Math.min(upperBound, start + HalleyKeplerSolver.TILE);
+            for (int i = start; i < end; i += lanes) {
+                final DoubleVector m = DoubleVector.fromArray(SPECIES, meanAnomaly, i);
+                final DoubleVector offset =
+                        DoubleVector.fromArray(SPECIES, eccentricity, i).mul(0.85);
+                final VectorMask<Double> negative = m.compare(VectorOperators.LT, 0.0);
+                m.add(offset.blend(offset.neg(), negative)).intoArray(eccentricAnomaly, i);
+            }
+            for (int iteration = 0; iteration < HalleyKeplerSolver.MAX_ITERATIONS; iteration++) {
+                DoubleVector largest = DoubleVector.zero(SPECIES);
+                for (int i = start; i < end; i += lanes) {
+                    final DoubleVector anomaly = DoubleVector.fromArray(SPECIES, eccentricAnomaly, i);
+                    final DoubleVector e = DoubleVector.fromArray(SPECIES, eccentricity, i);
+                    final DoubleVector s = anomaly.lanewise(VectorOperators.SIN);
+                    final DoubleVector c = anomaly.lanewise(VectorOperators.COS);
+                    s.intoArray(sin, i);
+                    c.intoArray(cos, i);
+                    final DoubleVector es = e.mul(s);
+                    final DoubleVector f = anomaly.sub(es).sub(DoubleVector.fromArray(SPECIES, meanAnomaly, i));
+                    final DoubleVector fPrime = e.mul(c).neg().add(1.0);
+                    final DoubleVector delta =
+                            f.mul(fPrime).div(fPrime.mul(fPrime).sub(f.mul(es).mul(0.5)));
+                    anomaly.sub(delta).intoArray(eccentricAnomaly, i);
+                    largest = largest.max(delta.abs());
+                }
+                if (largest.reduceLanes(VectorOperators.MAX) <= HalleyKeplerSolver.TOLERANCE) {
+                    break;
+                }
+            }
+        }
+        tail.solve(upperBound, to, meanAnomaly, eccentricity, eccentricAnomaly, cos, sin);
+    }
+}